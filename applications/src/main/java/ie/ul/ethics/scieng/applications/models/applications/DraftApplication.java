@@ -89,7 +89,7 @@ public class DraftApplication extends Application {
     @Override
     public boolean canBeViewedBy(User user, boolean answerRequest) {
         return (answerRequest && accessList.contains(new UserAccess(null, user))) || this.user.getUsername().equals(user.getUsername()) &&
-                user.getRole().getPermissions().contains(Permissions.VIEW_OWN_APPLICATIONS);
+                user.getRole().hasPermission(Permissions.VIEW_OWN_APPLICATIONS);
     }
 
     /**
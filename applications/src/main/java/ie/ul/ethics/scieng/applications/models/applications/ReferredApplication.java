@@ -5,7 +5,7 @@ import ie.ul.ethics.scieng.applications.exceptions.InvalidStatusException;
 import ie.ul.ethics.scieng.applications.templates.ApplicationTemplate;
 import ie.ul.ethics.scieng.users.authorization.Permissions;
 import ie.ul.ethics.scieng.users.models.User;
-import ie.ul.ethics.scieng.users.models.authorization.Permission;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -108,7 +108,7 @@ public class ReferredApplication extends SubmittedApplication {
      * @param referredBy the user that referred the application
      */
     public void setReferredBy(User referredBy) {
-        if (referredBy != null && !referredBy.getRole().getPermissions().contains(Permissions.REFER_APPLICATIONS))
+        if (referredBy != null && !referredBy.getRole().hasPermission(Permissions.REFER_APPLICATIONS))
             throw new ApplicationException("The referredBy user must contain the REFER_APPLICATION permission");
 
         this.referredBy = referredBy;
@@ -126,15 +126,15 @@ public class ReferredApplication extends SubmittedApplication {
     @Override
     public ReferredApplication clean(User user) {
         ReferredApplication application = copy();
-        Collection<Permission> permissions = user.getRole().getPermissions();
-        boolean review = permissions.contains(Permissions.REVIEW_APPLICATIONS);
+        Role role = user.getRole();
+        boolean review = role.hasPermission(Permissions.REVIEW_APPLICATIONS);
 
         if (!review) {
             application.assignedCommitteeMembers.clear();
             application.previousCommitteeMembers.clear();
         }
 
-        application.comments = filterComments(application.comments, permissions, user);
+        application.comments = filterComments(application.comments, role, user);
 
         return application;
     }
@@ -5,7 +5,7 @@ import ie.ul.ethics.scieng.applications.exceptions.InvalidStatusException;
 import ie.ul.ethics.scieng.applications.templates.ApplicationTemplate;
 import ie.ul.ethics.scieng.users.authorization.Permissions;
 import ie.ul.ethics.scieng.users.models.User;
-import ie.ul.ethics.scieng.users.models.authorization.Permission;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -161,7 +161,7 @@ public class SubmittedApplication extends Application {
      * @param member the member to verify
      */
     private static void verifyMemberReview(User member) {
-        if (!member.getRole().getPermissions().contains(Permissions.REVIEW_APPLICATIONS))
+        if (!member.getRole().hasPermission(Permissions.REVIEW_APPLICATIONS))
             throw new ApplicationException("The user being assigned to the SubmittedApplication must have the REVIEW_APPLICATIONS permission");
     }
 
@@ -263,15 +263,15 @@ public class SubmittedApplication extends Application {
         if (answerRequest && this.accessList.contains(new UserAccess(null, user))) {
             return true;
         } else {
-            Collection<Permission> permissions = user.getRole().getPermissions();
+            Role role = user.getRole();
 
             String username = user.getUsername();
             boolean isAssigned = assignedCommitteeMembers.stream().map(AssignedCommitteeMember::getUser)
                     .anyMatch(u -> u.getUsername().equals(username));
 
-            return (this.user.getUsername().equals(user.getUsername()) && permissions.contains(Permissions.VIEW_OWN_APPLICATIONS))
-                    || (permissions.contains(Permissions.REVIEW_APPLICATIONS) && isAssigned)
-                    || permissions.contains(Permissions.VIEW_ALL_APPLICATIONS);
+            return (this.user.getUsername().equals(user.getUsername()) && role.hasPermission(Permissions.VIEW_OWN_APPLICATIONS))
+                    || (role.hasPermission(Permissions.REVIEW_APPLICATIONS) && isAssigned)
+                    || role.hasPermission(Permissions.VIEW_ALL_APPLICATIONS);
         }
     }
 
@@ -314,14 +314,14 @@ public class SubmittedApplication extends Application {
     /**
      * Filters comments based on permissions and application shared
      * @param comments the comments to filter
-     * @param permissions the permissions of the user
+     * @param role the role of the user
      * @param user the user viewing the application
      * @return the filtered comments
      */
-    protected Map<String, ApplicationComments> filterComments(Map<String, ApplicationComments> comments, Collection<Permission> permissions, User user) {
+    protected Map<String, ApplicationComments> filterComments(Map<String, ApplicationComments> comments, Role role, User user) {
         Map<String, ApplicationComments> filtered = new HashMap<>();
-        boolean review = permissions.contains(Permissions.REVIEW_APPLICATIONS);
-        boolean admin = permissions.contains(Permissions.ADMIN);
+        boolean review = role.hasPermission(Permissions.REVIEW_APPLICATIONS);
+        boolean admin = role.hasPermission(Permissions.ADMIN);
 
         for (Map.Entry<String, ApplicationComments> e : comments.entrySet()) {
             String id = e.getKey();
@@ -352,21 +352,21 @@ public class SubmittedApplication extends Application {
     @Override
     public SubmittedApplication clean(User user) {
         SubmittedApplication application = copy();
-        Collection<Permission> permissions = user.getRole().getPermissions();
-        boolean review = permissions.contains(Permissions.REVIEW_APPLICATIONS);
+        Role role = user.getRole();
+        boolean review = role.hasPermission(Permissions.REVIEW_APPLICATIONS);
 
         if (!review)
             application.assignedCommitteeMembers.clear();
 
         if (status == ApplicationStatus.SUBMITTED || status == ApplicationStatus.REVIEW || status == ApplicationStatus.REVIEWED) {
-            application.comments = filterComments(application.comments, permissions, user);
+            application.comments = filterComments(application.comments, role, user);
 
             if (!review) {
                 application.finalComment = null;
                 application.assignedCommitteeMembers.clear();
             }
         } else if (status == ApplicationStatus.RESUBMITTED) {
-            application.comments = filterComments(application.comments, permissions, user);
+            application.comments = filterComments(application.comments, role, user);
 
             if (!review) {
                 application.finalComment = null;
@@ -2,8 +2,10 @@ package ie.ul.ethics.scieng.applications.repositories;
 
 import ie.ul.ethics.scieng.applications.models.applications.Application;
 import ie.ul.ethics.scieng.applications.models.applications.ApplicationStatus;
+import ie.ul.ethics.scieng.applications.models.applications.AttachedFile;
 import ie.ul.ethics.scieng.common.search.SearchableRepository;
 import ie.ul.ethics.scieng.users.models.User;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -35,4 +37,11 @@ public interface ApplicationRepository extends CrudRepository<Application, Long>
      * @return the list of found applications
      */
     List<Application> findByStatus(ApplicationStatus status);
+
+    /**
+     * Find the files attached to any application. Files that were detached from an application are not included
+     * @return the list of attached files
+     */
+    @Query("SELECT DISTINCT f FROM Application a JOIN a.attachedFiles f")
+    List<AttachedFile> findAllAttachedFiles();
 }
@@ -148,7 +148,7 @@ public class ApplicationServiceImpl implements ApplicationService {
      */
     @Override
     public List<Application> getAssignedApplications(User assigned) {
-        if (!assigned.getRole().getPermissions().contains(Permissions.REVIEW_APPLICATIONS))
+        if (!assigned.getRole().hasPermission(Permissions.REVIEW_APPLICATIONS))
             throw new ApplicationException("The user must have the REVIEW_APPLICATIONS permission");
 
         List<Application> applications = new ArrayList<>();
@@ -401,7 +401,7 @@ public class ApplicationServiceImpl implements ApplicationService {
         application.getAssignedCommitteeMembers()
                 .stream()
                 .filter(u -> u.getUser().getUsername().equals(member))
-                .filter(u -> u.getUser().getRole().getPermissions().contains(Permissions.REVIEW_APPLICATIONS))
+                .filter(u -> u.getUser().getRole().hasPermission(Permissions.REVIEW_APPLICATIONS))
                 .findFirst().ifPresent(assigned -> assigned.setFinishReview(true));
 
         return this.createApplication(application, true);
@@ -0,0 +1,44 @@
+package ie.ul.ethics.scieng.applications.services;
+
+import ie.ul.ethics.scieng.applications.models.applications.AttachedFile;
+import ie.ul.ethics.scieng.applications.repositories.ApplicationRepository;
+import ie.ul.ethics.scieng.files.gc.FileReference;
+import ie.ul.ethics.scieng.files.gc.FileReferenceProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.function.Consumer;
+
+/**
+ * This class marks the files attached to applications, including drafts and referred applications, as referenced so
+ * that the file collector does not delete them
+ */
+@Component
+public class AttachedFileReferenceProvider implements FileReferenceProvider {
+    /**
+     * The repository of applications
+     */
+    private final ApplicationRepository applicationRepository;
+
+    /**
+     * Create an AttachedFileReferenceProvider
+     * @param applicationRepository the repository of applications
+     */
+    @Autowired
+    public AttachedFileReferenceProvider(ApplicationRepository applicationRepository) {
+        this.applicationRepository = applicationRepository;
+    }
+
+    /**
+     * Mark every file attached to an application
+     *
+     * @param marker the consumer to pass each referenced file to
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void markReferences(Consumer<FileReference> marker) {
+        for (AttachedFile attachedFile : applicationRepository.findAllAttachedFiles())
+            marker.accept(new FileReference(attachedFile.getUsername(), attachedFile.getDirectory(), attachedFile.getFilename()));
+    }
+}
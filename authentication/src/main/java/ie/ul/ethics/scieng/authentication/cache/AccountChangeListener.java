@@ -0,0 +1,15 @@
+package ie.ul.ethics.scieng.authentication.cache;
+
+/**
+ * This interface represents a listener for account changes on this node, such as a changed email or a deleted account.
+ * Register an implementation as a bean to have it called once the change has committed, whether it was made on this
+ * node or received from another node, so that state derived from the account can be refreshed. Unlike
+ * {@link AccountInvalidationBroadcaster}, listeners are never used to publish changes to other nodes
+ */
+public interface AccountChangeListener {
+    /**
+     * Called when the account with the provided username has changed or been deleted
+     * @param username the username of the changed account
+     */
+    void accountChanged(String username);
+}
@@ -0,0 +1,15 @@
+package ie.ul.ethics.scieng.authentication.cache;
+
+/**
+ * This interface represents a hook for broadcasting account cache invalidations to other nodes running the application.
+ * Register an implementation as a bean to have it called whenever an account is invalidated locally. Nodes receiving
+ * the broadcast should call {@link AccountSnapshotCache#evict(String)} so that the invalidation is not re-broadcast.
+ * To react to account changes on this node, implement {@link AccountChangeListener} instead
+ */
+public interface AccountInvalidationBroadcaster {
+    /**
+     * Broadcast that the account with the provided username has been invalidated
+     * @param username the username of the invalidated account
+     */
+    void broadcast(String username);
+}
@@ -0,0 +1,36 @@
+package ie.ul.ethics.scieng.authentication.cache;
+
+import ie.ul.ethics.scieng.authentication.models.Account;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * This class represents an immutable snapshot of the state of an account that is required to authenticate a request
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public final class AccountSnapshot {
+    /**
+     * The username of the account
+     */
+    private final String username;
+    /**
+     * The encoded password of the account
+     */
+    private final String password;
+    /**
+     * Determines if the account is confirmed
+     */
+    private final boolean confirmed;
+
+    /**
+     * Create a snapshot of the provided account
+     * @param account the account to take the snapshot of
+     * @return the snapshot of the account
+     */
+    public static AccountSnapshot of(Account account) {
+        return new AccountSnapshot(account.getUsername(), account.getPassword(), account.isConfirmed());
+    }
+}
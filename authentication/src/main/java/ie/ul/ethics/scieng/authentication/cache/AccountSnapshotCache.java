@@ -0,0 +1,150 @@
+package ie.ul.ethics.scieng.authentication.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import ie.ul.ethics.scieng.authentication.models.Account;
+import ie.ul.ethics.scieng.common.transaction.AfterCommit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This class provides a bounded in-memory cache of account snapshots used to authenticate requests without querying the
+ * database on every request. Entries must be invalidated whenever the state of the account changes
+ */
+@Component
+@Log4j2
+public class AccountSnapshotCache {
+    /**
+     * The name the cache metrics are registered under
+     */
+    public static final String CACHE_NAME = "accounts";
+
+    /**
+     * The cache of account snapshots keyed by username
+     */
+    private final Cache<String, AccountSnapshot> cache;
+    /**
+     * The broadcasters invalidations are published to
+     */
+    private final List<AccountInvalidationBroadcaster> broadcasters;
+    /**
+     * The listeners notified of account changes on this node
+     */
+    private final List<AccountChangeListener> listeners;
+
+    /**
+     * Create the account snapshot cache with any broadcaster and listener beans registered in the context
+     * @param size the maximum number of accounts to cache
+     * @param expiry the number of minutes after which a cached account is reloaded even if not invalidated
+     * @param broadcasters the provider of the broadcasters to publish invalidations to
+     * @param listeners the provider of the listeners to notify of account changes
+     * @param meterRegistry the registry to record the cache metrics in
+     */
+    @Autowired
+    public AccountSnapshotCache(@Value("${auth.account-cache.size:10000}") long size,
+                                @Value("${auth.account-cache.expiry:60}") long expiry,
+                                ObjectProvider<AccountInvalidationBroadcaster> broadcasters,
+                                ObjectProvider<AccountChangeListener> listeners, MeterRegistry meterRegistry) {
+        this(size, expiry, broadcasters.orderedStream().collect(Collectors.toList()),
+                listeners.orderedStream().collect(Collectors.toList()), meterRegistry);
+    }
+
+    /**
+     * Create the account snapshot cache
+     * @param size the maximum number of accounts to cache
+     * @param expiry the number of minutes after which a cached account is reloaded even if not invalidated
+     * @param broadcasters the broadcasters to publish invalidations to
+     * @param listeners the listeners to notify of account changes
+     * @param meterRegistry the registry to record the cache metrics in
+     */
+    public AccountSnapshotCache(long size, long expiry, List<AccountInvalidationBroadcaster> broadcasters,
+                                List<AccountChangeListener> listeners, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofMinutes(expiry))
+                .recordStats()
+                .build();
+        this.broadcasters = broadcasters;
+        this.listeners = listeners;
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Get the snapshot of the account with the provided username, loading the account if it is not cached
+     * @param username the username of the account
+     * @param loader the function to load the account by username if not cached. May return null if not found
+     * @return the snapshot of the account, or null if the account was not found
+     */
+    public AccountSnapshot get(String username, Function<String, Account> loader) {
+        return cache.get(username, key -> {
+            Account account = loader.apply(key);
+
+            return (account == null) ? null : AccountSnapshot.of(account);
+        });
+    }
+
+    /**
+     * Invalidate the cached account, notifying the listeners and broadcasting the invalidation to other nodes. If
+     * called within a transaction, the account is evicted again, and the listeners and broadcasters called, once the
+     * transaction commits, since a request loading the account before the commit would otherwise re-cache its old state
+     * @param username the username of the account to invalidate
+     */
+    public void invalidate(String username) {
+        cache.invalidate(username);
+        AfterCommit.run(() -> {
+            evict(username);
+            broadcast(username);
+        });
+    }
+
+    /**
+     * Broadcast the invalidation of the account to the broadcasters
+     * @param username the username of the invalidated account
+     */
+    private void broadcast(String username) {
+        for (AccountInvalidationBroadcaster broadcaster : broadcasters) {
+            try {
+                broadcaster.broadcast(username);
+            } catch (RuntimeException ex) {
+                log.error("Failed to broadcast invalidation of account {}", username, ex);
+            }
+        }
+    }
+
+    /**
+     * Evict the cached account from this node only and notify the listeners, without broadcasting. Used when receiving
+     * an invalidation from another node
+     * @param username the username of the account to evict
+     */
+    public void evict(String username) {
+        cache.invalidate(username);
+
+        for (AccountChangeListener listener : listeners) {
+            try {
+                listener.accountChanged(username);
+            } catch (RuntimeException ex) {
+                log.error("Failed to notify {} of the change to account {}", listener, username, ex);
+            }
+        }
+    }
+
+    /**
+     * Get the statistics of the cache, such as hit rate
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+}
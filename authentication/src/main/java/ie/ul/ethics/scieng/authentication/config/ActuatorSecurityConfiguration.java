@@ -0,0 +1,89 @@
+package ie.ul.ethics.scieng.authentication.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+
+/**
+ * This class secures the actuator endpoints served on the management port. The health endpoint is open so that load
+ * balancers can probe it, while the metrics endpoints require HTTP basic authentication as the metrics user, so that
+ * they stay private even if the management port is opened to the network. If no metrics password is configured, the
+ * metrics endpoints cannot be accessed at all
+ */
+@Configuration
+@Order(SecurityProperties.BASIC_AUTH_ORDER - 1)
+@Log4j2
+public class ActuatorSecurityConfiguration extends WebSecurityConfigurerAdapter {
+    /**
+     * The role granted to the metrics user
+     */
+    private static final String METRICS_ROLE = "METRICS";
+
+    /**
+     * The username the metrics scraper authenticates with
+     */
+    private final String username;
+    /**
+     * The password the metrics scraper authenticates with, empty if metrics cannot be accessed
+     */
+    private final String password;
+
+    /**
+     * Create the ActuatorSecurityConfiguration
+     * @param username the username the metrics scraper authenticates with
+     * @param password the password the metrics scraper authenticates with, empty to deny access to metrics
+     */
+    public ActuatorSecurityConfiguration(@Value("${auth.metrics.username:metrics}") String username,
+                                         @Value("${auth.metrics.password:}") String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Configure the metrics user the actuator endpoints are authenticated against, if a password is configured
+     * @param auth the auth builder
+     * @throws Exception if configuration fails
+     */
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+        if (password.isEmpty()) {
+            log.info("No metrics password is configured, so the metrics endpoints cannot be accessed");
+            auth.inMemoryAuthentication();
+
+            return;
+        }
+
+        auth.inMemoryAuthentication()
+                .passwordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder())
+                .withUser(username)
+                .password("{noop}" + password)
+                .roles(METRICS_ROLE);
+    }
+
+    /**
+     * Configure the http security for the actuator endpoints
+     * @param http the security config object
+     * @throws Exception if an error occurs configuring it
+     */
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.requestMatcher(EndpointRequest.toAnyEndpoint())
+                .csrf().disable()
+                .authorizeRequests()
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                .anyRequest().hasRole(METRICS_ROLE)
+                .and()
+                .httpBasic()
+                .and()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+    }
+}
@@ -25,12 +25,22 @@ public class AuthenticationConfiguration {
      * The number of days to allow pass before unconfirmed accounts are removed
      */
     private int unconfirmedRemoval;
+    /**
+     * The password hashing config object
+     */
+    private Hashing hashing;
+    /**
+     * The attempt throttling config object
+     */
+    private Throttle throttle;
 
     /**
      * Create a default authentication configuration object
      */
     public AuthenticationConfiguration() {
         this.jwt = new Jwt();
+        this.hashing = new Hashing();
+        this.throttle = new Throttle();
     }
 
     /**
@@ -103,6 +113,38 @@ public class AuthenticationConfiguration {
         this.unconfirmedRemoval = unconfirmedRemoval;
     }
 
+    /**
+     * Get the password hashing config object
+     * @return password hashing config object
+     */
+    public Hashing getHashing() {
+        return hashing;
+    }
+
+    /**
+     * Set the password hashing config object to use
+     * @param hashing the password hashing config object
+     */
+    public void setHashing(Hashing hashing) {
+        this.hashing = hashing;
+    }
+
+    /**
+     * Get the attempt throttling config object
+     * @return attempt throttling config object
+     */
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Set the attempt throttling config object to use
+     * @param throttle the attempt throttling config object
+     */
+    public void setThrottle(Throttle throttle) {
+        this.throttle = throttle;
+    }
+
     /**
      * This class provides the JWT config
      */
@@ -115,6 +157,10 @@ public class AuthenticationConfiguration {
          * The token config object
          */
         private Token token;
+        /**
+         * The maximum number of verified tokens to cache
+         */
+        private long cacheSize;
 
         /**
          * Creates a default Jwt
@@ -122,6 +168,7 @@ public class AuthenticationConfiguration {
         public Jwt() {
             this.secret = null;
             this.token = new Token();
+            this.cacheSize = 10000;
         }
 
         /**
@@ -163,6 +210,22 @@ public class AuthenticationConfiguration {
             this.token = token;
         }
 
+        /**
+         * Get the maximum number of verified tokens to cache
+         * @return the maximum size of the verified token cache
+         */
+        public long getCacheSize() {
+            return cacheSize;
+        }
+
+        /**
+         * Set the maximum number of verified tokens to cache
+         * @param cacheSize the maximum size of the verified token cache
+         */
+        public void setCacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
         /**
          * This class provides the JWT Token config
          */
@@ -171,12 +234,17 @@ public class AuthenticationConfiguration {
              * The validity of the token
              */
             private long validity;
+            /**
+             * The validity of refresh tokens in days
+             */
+            private long refreshValidity;
 
             /**
              * Creates a default Token config object
              */
             public Token() {
                 this.validity = 2;
+                this.refreshValidity = 14;
             }
 
             /**
@@ -194,6 +262,236 @@ public class AuthenticationConfiguration {
             public void setValidity(long validity) {
                 this.validity = validity;
             }
+
+            /**
+             * Get the validity of refresh tokens
+             * @return the refresh token validity in days
+             */
+            public long getRefreshValidity() {
+                return refreshValidity;
+            }
+
+            /**
+             * Sets the validity of refresh tokens in days
+             * @param refreshValidity the validity to use in days
+             */
+            public void setRefreshValidity(long refreshValidity) {
+                this.refreshValidity = refreshValidity;
+            }
+        }
+    }
+
+    /**
+     * This class provides the config for the executor passwords are hashed and verified on
+     */
+    public static class Hashing {
+        /**
+         * The number of threads hashing passwords
+         */
+        private int threads;
+        /**
+         * The number of hashing requests that can wait for a thread before further requests are rejected
+         */
+        private int queueCapacity;
+        /**
+         * The number of seconds to wait for a hashing request to complete
+         */
+        private long timeout;
+        /**
+         * The number of seconds a client should wait before retrying a rejected request
+         */
+        private long retryAfter;
+
+        /**
+         * Creates a default Hashing config object
+         */
+        public Hashing() {
+            this.threads = Runtime.getRuntime().availableProcessors();
+            this.queueCapacity = 64;
+            this.timeout = 10;
+            this.retryAfter = 5;
+        }
+
+        /**
+         * Get the number of threads hashing passwords
+         * @return the number of hashing threads
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Set the number of threads hashing passwords
+         * @param threads the number of hashing threads
+         */
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        /**
+         * Get the number of hashing requests that can wait for a thread
+         * @return the capacity of the hashing queue
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * Set the number of hashing requests that can wait for a thread
+         * @param queueCapacity the capacity of the hashing queue
+         */
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * Get the number of seconds to wait for a hashing request to complete
+         * @return the hashing timeout in seconds
+         */
+        public long getTimeout() {
+            return timeout;
+        }
+
+        /**
+         * Set the number of seconds to wait for a hashing request to complete
+         * @param timeout the hashing timeout in seconds
+         */
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * Get the number of seconds a client should wait before retrying a rejected request
+         * @return the retry after value in seconds
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+
+        /**
+         * Set the number of seconds a client should wait before retrying a rejected request
+         * @param retryAfter the retry after value in seconds
+         */
+        public void setRetryAfter(long retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * This class provides the config for throttling authentication attempts
+     */
+    public static class Throttle {
+        /**
+         * The number of failed login attempts allowed on an account within the window before backing off
+         */
+        private int accountAttempts;
+        /**
+         * The number of seconds an account backs off for after the allowed failed attempts, doubling with each further
+         * failure
+         */
+        private long backoff;
+        /**
+         * The maximum number of seconds an account backs off for
+         */
+        private long maxBackoff;
+        /**
+         * The number of failed attempts allowed from a single address within the window
+         */
+        private int addressAttempts;
+        /**
+         * The number of minutes attempts are counted over
+         */
+        private long window;
+
+        /**
+         * Creates a default Throttle config object
+         */
+        public Throttle() {
+            this.accountAttempts = 5;
+            this.backoff = 1;
+            this.maxBackoff = 300;
+            this.addressAttempts = 100;
+            this.window = 15;
+        }
+
+        /**
+         * Get the number of failed login attempts allowed on an account within the window before backing off
+         * @return the number of allowed failed attempts per account
+         */
+        public int getAccountAttempts() {
+            return accountAttempts;
+        }
+
+        /**
+         * Set the number of failed login attempts allowed on an account within the window before backing off
+         * @param accountAttempts the number of allowed failed attempts per account
+         */
+        public void setAccountAttempts(int accountAttempts) {
+            this.accountAttempts = accountAttempts;
+        }
+
+        /**
+         * Get the number of seconds an account backs off for after the allowed failed attempts
+         * @return the initial backoff in seconds
+         */
+        public long getBackoff() {
+            return backoff;
+        }
+
+        /**
+         * Set the number of seconds an account backs off for after the allowed failed attempts
+         * @param backoff the initial backoff in seconds
+         */
+        public void setBackoff(long backoff) {
+            this.backoff = backoff;
+        }
+
+        /**
+         * Get the maximum number of seconds an account backs off for
+         * @return the maximum backoff in seconds
+         */
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        /**
+         * Set the maximum number of seconds an account backs off for
+         * @param maxBackoff the maximum backoff in seconds
+         */
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        /**
+         * Get the number of failed attempts allowed from a single address within the window
+         * @return the number of allowed failed attempts per address
+         */
+        public int getAddressAttempts() {
+            return addressAttempts;
+        }
+
+        /**
+         * Set the number of failed attempts allowed from a single address within the window
+         * @param addressAttempts the number of allowed failed attempts per address
+         */
+        public void setAddressAttempts(int addressAttempts) {
+            this.addressAttempts = addressAttempts;
+        }
+
+        /**
+         * Get the number of minutes attempts are counted over
+         * @return the throttling window in minutes
+         */
+        public long getWindow() {
+            return window;
+        }
+
+        /**
+         * Set the number of minutes attempts are counted over
+         * @param window the throttling window in minutes
+         */
+        public void setWindow(long window) {
+            this.window = window;
         }
     }
 }
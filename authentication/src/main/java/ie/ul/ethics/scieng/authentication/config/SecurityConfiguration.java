@@ -2,7 +2,9 @@ package ie.ul.ethics.scieng.authentication.config;
 
 import ie.ul.ethics.scieng.authentication.jwt.JwtAuthenticationEntrypoint;
 import ie.ul.ethics.scieng.authentication.jwt.JwtRequestFilter;
+import ie.ul.ethics.scieng.authentication.security.BoundedPasswordEncoder;
 import ie.ul.ethics.scieng.common.properties.PropertyFinder;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.context.annotation.Bean;
@@ -42,18 +44,31 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
      * The request filter for JWT processing
      */
     private final JwtRequestFilter requestFilter;
+    /**
+     * The configuration for the authentication module
+     */
+    private final AuthenticationConfiguration authenticationConfiguration;
+    /**
+     * The registry the metrics of password hashing are recorded in
+     */
+    private final MeterRegistry meterRegistry;
 
     /**
      * Create a SecurityConfiguration
      * @param entrypoint the entrypoint for jwt authentication
      * @param userDetailsService the service for retrieving user details
      * @param requestFilter the request filter for jwt processing
+     * @param authenticationConfiguration the configuration for the authentication module
+     * @param meterRegistry the registry the metrics of password hashing are recorded in
      */
     @Autowired
-    public SecurityConfiguration(JwtAuthenticationEntrypoint entrypoint, UserDetailsService userDetailsService, JwtRequestFilter requestFilter) {
+    public SecurityConfiguration(JwtAuthenticationEntrypoint entrypoint, UserDetailsService userDetailsService, JwtRequestFilter requestFilter,
+                                 AuthenticationConfiguration authenticationConfiguration, MeterRegistry meterRegistry) {
         this.entrypoint = entrypoint;
         this.userDetailsService = userDetailsService;
         this.requestFilter = requestFilter;
+        this.authenticationConfiguration = authenticationConfiguration;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -77,7 +92,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * Configure the http security for the endpoints
+     * Configure the http security for the endpoints. Actuator endpoints are secured by the
+     * {@link ActuatorSecurityConfiguration} instead
      * @param http the security config object
      * @throws Exception if an error occurs configuring it
      */
@@ -97,6 +113,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .authorizeRequests().antMatchers(
                         createApiPath(Endpoint.AUTHENTICATION, "register"),
                         createApiPath(Endpoint.AUTHENTICATION, "login"),
+                        createApiPath(Endpoint.AUTHENTICATION, "refresh"),
                         createApiPath(Endpoint.AUTHENTICATION, true,"account", "confirmed"),
                         createApiPath(Endpoint.AUTHENTICATION, "account", "confirm"),
                         createApiPath(Endpoint.AUTHENTICATION, true, "account", "confirm", "resend"),
@@ -116,11 +133,14 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * The encoder used for encoding passwords
+     * The encoder used for encoding passwords. Hashing runs on a bounded executor so that it does not tie up request threads
      * @return the password encoder implementation for the system
      */
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        AuthenticationConfiguration.Hashing hashing = authenticationConfiguration.getHashing();
+
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), hashing.getThreads(), hashing.getQueueCapacity(),
+                hashing.getTimeout() * 1000, hashing.getRetryAfter(), meterRegistry);
     }
 }
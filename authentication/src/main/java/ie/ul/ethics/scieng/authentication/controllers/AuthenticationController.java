@@ -3,21 +3,25 @@ package ie.ul.ethics.scieng.authentication.controllers;
 import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
 import ie.ul.ethics.scieng.authentication.email.AuthenticationEmailService;
 import ie.ul.ethics.scieng.authentication.exceptions.EmailExistsException;
+import ie.ul.ethics.scieng.authentication.exceptions.HashingRejectedException;
 import ie.ul.ethics.scieng.authentication.exceptions.IllegalUpdateException;
 import ie.ul.ethics.scieng.authentication.exceptions.UsernameExistsException;
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.authentication.jwt.JWT;
+import ie.ul.ethics.scieng.authentication.security.AttemptThrottle;
 import ie.ul.ethics.scieng.authentication.services.AccountService;
 import ie.ul.ethics.scieng.authentication.models.*;
 import ie.ul.ethics.scieng.common.properties.PropertyFinder;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.HashMap;
 import java.util.Map;
@@ -53,6 +57,10 @@ public class AuthenticationController {
      * The email service for the authentication module e-mail notifications
      */
     private final AuthenticationEmailService emailService;
+    /**
+     * The throttle limiting authentication attempts per account and per client address
+     */
+    private final AttemptThrottle attemptThrottle;
 
     /**
      * Create an AuthenticationController
@@ -60,13 +68,16 @@ public class AuthenticationController {
      * @param accountService the service used for creating and retrieving accounts
      * @param authenticationConfiguration the configuration for the authentication module
      * @param emailService the email service for sending emails
+     * @param attemptThrottle the throttle limiting authentication attempts
      */
     @Autowired
     public AuthenticationController(JWT jwt, AccountService accountService,
-                                    AuthenticationConfiguration authenticationConfiguration, @Qualifier("authenticationEmail") AuthenticationEmailService emailService) {
+                                    AuthenticationConfiguration authenticationConfiguration, @Qualifier("authenticationEmail") AuthenticationEmailService emailService,
+                                    AttemptThrottle attemptThrottle) {
         this.jwt = jwt;
         this.accountService = accountService;
         this.authenticationConfiguration = authenticationConfiguration;
+        this.attemptThrottle = attemptThrottle;
 
         if (authenticationConfiguration.isAlwaysConfirm())
             log.warn("The system is configured to automatically confirm any new account. This is dangerous and should only be used for testing");
@@ -96,13 +107,72 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Respond with the error and a Retry-After header telling the client how long to wait before retrying
+     * @param status the status of the response
+     * @param error the error message
+     * @param retryAfter the number of seconds to wait before retrying
+     * @return the response
+     */
+    private static ResponseEntity<?> respondRetryAfter(HttpStatus status, String error, long retryAfter) {
+        Map<String, Object> response = new HashMap<>();
+        response.put(ERROR, error);
+
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(response);
+    }
+
+    /**
+     * Check if the client address is throttled. Only failed attempts are counted against an address, so that users
+     * sharing an address are not throttled by each other's successful logins. The address is the client's, resolved from
+     * the forwarded headers of trusted proxies by server.forward-headers-strategy
+     * @param servletRequest the request from the client
+     * @return the throttled response if the client is throttled, null if not
+     */
+    private ResponseEntity<?> throttleAddress(HttpServletRequest servletRequest) {
+        String address = servletRequest.getRemoteAddr();
+        long retryAfter = attemptThrottle.addressRetryAfter(address);
+
+        if (retryAfter > 0) {
+            log.warn("Throttling authentication attempts from address {} for {} seconds", address, retryAfter);
+            return respondRetryAfter(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY_ATTEMPTS, retryAfter);
+        }
+
+        return null;
+    }
+
+    /**
+     * Record a failed attempt against the client address
+     * @param servletRequest the request from the client
+     */
+    private void recordAddressFailure(HttpServletRequest servletRequest) {
+        attemptThrottle.recordAddressFailure(servletRequest.getRemoteAddr());
+    }
+
+    /**
+     * Respond to a request whose password hashing was rejected
+     * @param ex the rejection exception
+     * @return the response
+     */
+    private static ResponseEntity<?> respondHashingRejected(HashingRejectedException ex) {
+        log.warn("Responding with service busy as password hashing was rejected: {}", ex.getMessage());
+        return respondRetryAfter(HttpStatus.SERVICE_UNAVAILABLE, SERVICE_BUSY, ex.getRetryAfter());
+    }
+
     /**
      * This endpoint provides the registration endpoint
      * @param request the registration request
+     * @param servletRequest the request from the client, used for throttling
      * @return the JSON response
      */
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody @Valid RegistrationRequest request) {
+    public ResponseEntity<?> register(@RequestBody @Valid RegistrationRequest request, HttpServletRequest servletRequest) {
+        ResponseEntity<?> throttled = throttleAddress(servletRequest);
+
+        if (throttled != null)
+            return throttled;
+
         Account createdAccount;
 
         try {
@@ -122,10 +192,14 @@ public class AuthenticationController {
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (UsernameExistsException ex) {
             log.error(ex);
+            recordAddressFailure(servletRequest);
             return respondError(USERNAME_EXISTS);
         } catch (EmailExistsException ex) {
             log.error(ex);
+            recordAddressFailure(servletRequest);
             return respondError(EMAIL_EXISTS);
+        } catch (HashingRejectedException ex) {
+            return respondHashingRejected(ex);
         }
     }
 
@@ -152,22 +226,35 @@ public class AuthenticationController {
     /**
      * This endpoint resets the password using the given token
      * @param request the request to reset the password
+     * @param servletRequest the request from the client, used for throttling
      * @return the response body
      */
     @PostMapping("/reset-password")
-    public ResponseEntity<?> forgetPassword(@RequestBody ResetPasswordRequest request) {
+    public ResponseEntity<?> forgetPassword(@RequestBody ResetPasswordRequest request, HttpServletRequest servletRequest) {
+        ResponseEntity<?> throttled = throttleAddress(servletRequest);
+
+        if (throttled != null)
+            return throttled;
+
         String username = request.getUsername();
         Account account = accountService.getAccount(username);
 
         if (account == null) {
+            recordAddressFailure(servletRequest);
             return ResponseEntity.notFound().build();
         } else {
             String token = request.getToken();
 
             if (!accountService.verifyPasswordResetToken(account, token)) {
+                recordAddressFailure(servletRequest);
                 return respondError(INVALID_RESET_TOKEN);
             } else {
-                accountService.resetPassword(account, request.getPassword());
+                try {
+                    accountService.resetPassword(account, request.getPassword());
+                } catch (HashingRejectedException ex) {
+                    return respondHashingRejected(ex);
+                }
+
                 Map<String, Object> response = new HashMap<>();
                 response.put(MESSAGE, ACCOUNT_UPDATED);
 
@@ -201,33 +288,90 @@ public class AuthenticationController {
     /**
      * The endpoint for authentication
      * @param request the authentication request object
+     * @param servletRequest the request from the client, used for throttling
      * @return the response of the request
      */
     @PostMapping("/login")
-    public ResponseEntity<?> authenticate(@RequestBody @Valid AuthenticationRequest request) {
+    public ResponseEntity<?> authenticate(@RequestBody @Valid AuthenticationRequest request, HttpServletRequest servletRequest) {
+        ResponseEntity<?> throttled = throttleAddress(servletRequest);
+
+        if (throttled != null)
+            return throttled;
+
         String username = request.getUsername();
         String password = request.getPassword();
 
         Account account = accountService.getAccount(username, request.isEmail());
 
         if (account == null) {
+            recordAddressFailure(servletRequest);
             return respondError(ACCOUNT_NOT_EXISTS);
         } else {
+            String accountUsername = account.getUsername();
+            long retryAfter = attemptThrottle.accountRetryAfter(accountUsername);
+
+            if (retryAfter > 0) {
+                log.warn("Throttling login attempts on account {} for {} seconds", accountUsername, retryAfter);
+                return respondRetryAfter(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY_ATTEMPTS, retryAfter);
+            }
+
             AtomicReference<String> error = new AtomicReference<>();
-            authenticateInternal(account, password, error);
+
+            try {
+                authenticateInternal(account, password, error);
+            } catch (HashingRejectedException ex) {
+                return respondHashingRejected(ex);
+            }
+
             String errorMsg = error.get();
 
+            if (INVALID_CREDENTIALS.equals(errorMsg)) {
+                attemptThrottle.recordAccountFailure(accountUsername);
+                recordAddressFailure(servletRequest);
+            } else {
+                attemptThrottle.reset(accountUsername);
+            }
+
             if (errorMsg == null) {
-                String token = jwt.generateToken(account, request.getExpiry());
-                AuthenticatedAccount authenticatedAccount = (AuthenticatedAccount) jwt.getAuthenticatedAccount(token);
-                return ResponseEntity.ok(new AuthenticationResponse(authenticatedAccount.getUsername(),
-                        authenticatedAccount.getJwtToken(), authenticatedAccount.getExpiration()));
+                return ResponseEntity.ok(issueTokens(account, request.getExpiry()));
             } else {
                 return respondError(errorMsg);
             }
         }
     }
 
+    /**
+     * Issue a JWT token and a new refresh token for the authenticated account
+     * @param account the account that has been authenticated
+     * @param expiry the expiry in hours of the JWT token, null for the default
+     * @return the response containing the issued tokens
+     */
+    private AuthenticationResponse issueTokens(Account account, Long expiry) {
+        String token = jwt.generateToken(account, expiry);
+        AuthenticatedAccount authenticatedAccount = (AuthenticatedAccount) jwt.getAuthenticatedAccount(token);
+
+        return new AuthenticationResponse(authenticatedAccount.getUsername(), authenticatedAccount.getJwtToken(),
+                authenticatedAccount.getExpiration(), accountService.createRefreshToken(account));
+    }
+
+    /**
+     * Exchange a refresh token for a new JWT token without the password. The refresh token is consumed and a new one
+     * issued in the response
+     * @param request the request containing the refresh token
+     * @return the response of the request
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody @Valid RefreshRequest request) {
+        Account account = accountService.consumeRefreshToken(request.getRefreshToken());
+
+        if (account == null)
+            return respondError(INVALID_REFRESH_TOKEN);
+        else if (!account.isConfirmed())
+            return respondError(ACCOUNT_NOT_CONFIRMED);
+        else
+            return ResponseEntity.ok(issueTokens(account, request.getExpiry()));
+    }
+
     /**
      * This method retrieves the user with the given username or email
      * @param username the username or email if email param is true
@@ -268,6 +412,8 @@ public class AuthenticationController {
         } catch (IllegalUpdateException ex) {
             ex.printStackTrace();
             return respondError(ILLEGAL_UPDATE);
+        } catch (HashingRejectedException ex) {
+            return respondHashingRejected(ex);
         }
     }
 
@@ -6,17 +6,50 @@ import ie.ul.ethics.scieng.authentication.models.ConfirmationToken;
 import ie.ul.ethics.scieng.authentication.models.ResetPasswordToken;
 import ie.ul.ethics.scieng.common.email.AsyncEmailService;
 import ie.ul.ethics.scieng.common.email.EmailSender;
+import ie.ul.ethics.scieng.common.email.EmailTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * This class provides the email service for the authentication module
  */
 @Service("authenticationEmail")
 public class AuthenticationEmailService extends AsyncEmailService {
+    /**
+     * The template for the account confirmation email
+     */
+    private static final EmailTemplate CONFIRMATION_TEMPLATE = EmailTemplate.compile("<h2>Confirm Account</h2>"
+            + "<p>Hello %s,<br>We have received a registration request for an account. You will need to confirm" +
+            " the email address before we can proceed with registration</p>"
+            + "<br>"
+            + "<p>Your username is: <b>%s</b></p>"
+            + "<p>Follow this link to confirm your account: <a href=\"%s\">Confirm Account</a></p>"
+            + "<p>If for some reason, the link doesn't work, go to the <a href=\"%s\">confirm account</a> page"
+            + " and enter the following details in the first 2 fields:</p>"
+            + "<ul>"
+            + "<li><b>E-mail:</b> %s</li>"
+            + "<li><b>Confirmation Token:</b> %s</li>"
+            + "</ul>"
+            + "<p><b>Do not</b> give this token (or above link) to anybody else</p>"
+            + "<br>"
+            + "<p>If you did not request an account, you can safely ignore this e-mail</p>"
+            + "<p><b>Warning:</b> Unconfirmed accounts will be removed after %d days</p>");
+    /**
+     * The template for the password reset email
+     */
+    private static final EmailTemplate RESET_PASSWORD_TEMPLATE = EmailTemplate.compile("<h2>Reset Password</h2>"
+            + "<p>Hello %s,<br>We have received a request to reset the password of your account"
+            + "<br>"
+            + "<p>Your username is: <b>%s</b></p>"
+            + "<p>Follow this link to reset your password: <a href=\"%s\">Reset Password</a></p>"
+            + "<p>If for some reason, the link does not work, paste the following link into your browser: %s</p>"
+            + "<p><b>Do not</b> give this token (or above link) to anybody else</p>"
+            + "<br>"
+            + "<p>This request will expire at <b>%s</b>, after which you will need to request another password reset</p>"
+            + "<p>If you did not request for your password to be changed, you can safely ignore this e-mail</p>");
+
     /**
      * Instantiate the email service
      *
@@ -34,35 +67,17 @@ public class AuthenticationEmailService extends AsyncEmailService {
      * @param authenticationConfiguration configuration properties for the confirmation email to query
      */
     public void sendConfirmationEmail(Account account, ConfirmationToken confirmationToken, AuthenticationConfiguration authenticationConfiguration) {
-        String content = "<h2>Confirm Account</h2>"
-                + "<p>Hello %s,<br>We have received a registration request for an account. You will need to confirm" +
-                " the email address before we can proceed with registration</p>"
-                + "<br>"
-                + "<p>Your username is: <b>%s</b></p>"
-                + "<p>Follow this link to confirm your account: <a href=\"%s\">Confirm Account</a></p>"
-                + "<p>If for some reason, the link doesn't work, go to the <a href=\"%s\">confirm account</a> page"
-                + " and enter the following details in the first 2 fields:</p>"
-                + "<ul>"
-                + "<li><b>E-mail:</b> %s</li>"
-                + "<li><b>Confirmation Token:</b> %s</li>"
-                + "</ul>"
-                + "<p><b>Do not</b> give this token (or above link) to anybody else</p>"
-                + "<br>"
-                + "<p>If you did not request an account, you can safely ignore this e-mail</p>"
-                + "<p><b>Warning:</b> Unconfirmed accounts will be removed after %d days</p>";
-
         String urlBase = getFrontendURL();
         urlBase = urlBase + "/confirm-account";
 
         String username = account.getUsername();
         String email = account.getEmail();
         String token = confirmationToken.getToken();
-        content = String.format(content, username, username,
-                String.format("%s?email=%s&token=%s", urlBase, email, token),
+        String content = CONFIRMATION_TEMPLATE.render(username, username,
+                urlBase + "?email=" + email + "&token=" + token,
                 urlBase, email, token, authenticationConfiguration.getUnconfirmedRemoval());
 
-        sendEmail(email, String.format("Confirm Account Registration - %s",
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"))), content);
+        sendEmail(email, "Confirm Account Registration - " + LocalDateTime.now().format(DATE_TIME_FORMATTER), content);
     }
 
     /**
@@ -71,27 +86,15 @@ public class AuthenticationEmailService extends AsyncEmailService {
      * @param resetPasswordToken the token used for resetting the password
      */
     public void sendPasswordResetEmail(Account account, ResetPasswordToken resetPasswordToken) {
-        String content = "<h2>Reset Password</h2>"
-                + "<p>Hello %s,<br>We have received a request to reset the password of your account"
-                + "<br>"
-                + "<p>Your username is: <b>%s</b></p>"
-                + "<p>Follow this link to reset your password: <a href=\"%s\">Reset Password</a></p>"
-                + "<p>If for some reason, the link does not work, paste the following link into your browser: %s</p>"
-                + "<p><b>Do not</b> give this token (or above link) to anybody else</p>"
-                + "<br>"
-                + "<p>This request will expire at <b>%s</b>, after which you will need to request another password reset</p>"
-                + "<p>If you did not request for your password to be changed, you can safely ignore this e-mail</p>";
-
         String urlBase = getFrontendURL();
         urlBase = urlBase + "/reset-password";
 
         String username = account.getUsername();
         String email = account.getEmail();
-        String resetLink = String.format("%s?username=%s&token=%s", urlBase, username, resetPasswordToken.getToken());
-        content = String.format(content, username, username,
-                resetLink, resetLink, resetPasswordToken.getExpiry().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")));
+        String resetLink = urlBase + "?username=" + username + "&token=" + resetPasswordToken.getToken();
+        String content = RESET_PASSWORD_TEMPLATE.render(username, username,
+                resetLink, resetLink, resetPasswordToken.getExpiry().format(DATE_TIME_FORMATTER));
 
-        sendEmail(email, String.format("Reset Password - %s",
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"))), content);
+        sendEmail(email, "Reset Password - " + LocalDateTime.now().format(DATE_TIME_FORMATTER), content);
     }
 }
@@ -0,0 +1,30 @@
+package ie.ul.ethics.scieng.authentication.exceptions;
+
+/**
+ * This exception is thrown when a password cannot be hashed or verified because the hashing executor is saturated
+ */
+public class HashingRejectedException extends RuntimeException {
+    /**
+     * The number of seconds the client should wait before retrying
+     */
+    private final long retryAfter;
+
+    /**
+     * Creates an exception with the provided message and retry after value
+     * @param message the message to display on the exception
+     * @param retryAfter the number of seconds the client should wait before retrying
+     * @param throwable the throwable that caused this exception, may be null
+     */
+    public HashingRejectedException(String message, long retryAfter, Throwable throwable) {
+        super(message, throwable);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Get the number of seconds the client should wait before retrying
+     * @return the retry after value in seconds
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -4,17 +4,26 @@ import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
 import ie.ul.ethics.scieng.authentication.exceptions.AuthenticationException;
 import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.models.AuthenticatedAccount;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +48,16 @@ public class JWT {
      */
     private final AuthenticationConfiguration authConfig;
 
+    /**
+     * The parser used to verify tokens. Parsers are immutable and thread-safe so one is shared by all requests
+     */
+    private final JwtParser parser;
+
+    /**
+     * The cache of verified tokens, keyed by a hash of the token. Entries expire when their token expires
+     */
+    private final Cache<String, AuthenticatedAccount> verifiedTokens;
+
     /**
      * Creates a JWT object
      * @throws AuthenticationException if the secret key cannot be found
@@ -47,6 +66,13 @@ public class JWT {
     public JWT(AuthenticationConfiguration authConfig) {
         this.authConfig = authConfig;
         this.secret = initialiseSecret();
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(secret)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(authConfig.getJwt().getCacheSize())
+                .expireAfter(new TokenExpiry())
+                .build();
     }
 
     /**
@@ -71,20 +97,39 @@ public class JWT {
      * @return the parsed Claims
      */
     private Claims getTokenClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secret)
-                .build()
-                .parseClaimsJws(token)
+        return parser.parseClaimsJws(token)
                 .getBody();
     }
 
+    /**
+     * Hash the token to use as the key in the verified tokens cache
+     * @param token the token to hash
+     * @return the hash of the token
+     */
+    private static String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex); // every JVM is required to support SHA-256
+        }
+    }
 
     /**
-     * Get the account represented by the provided token
-     * @param token the token to parse into an AuthenticatedAccount instance
-     * @return the account representing the authenticated user (instance of {@link AuthenticatedAccount})
+     * Verify the token, returning the account it authenticates. The signature of a token is only verified the first time
+     * it is seen, after which the verified account is returned from the cache until the token expires
+     * @param token the token to verify
+     * @return the account represented by the token, or null if the token is expired
+     * @throws AuthenticationException if the token is not valid
      */
-    public Account getAuthenticatedAccount(String token) {
+    public AuthenticatedAccount verifyToken(String token) {
+        String key = hashToken(token);
+        AuthenticatedAccount cached = verifiedTokens.getIfPresent(key);
+
+        if (cached != null && !cached.isExpired())
+            return cached;
+
         try {
             Claims claims = getTokenClaims(token);
             String username = claims.getSubject();
@@ -93,27 +138,38 @@ public class JWT {
                     .atZone(ZoneId.systemDefault())
                     .toLocalDateTime();
 
-            return new AuthenticatedAccount(username, token, localDate);
+            AuthenticatedAccount account = new AuthenticatedAccount(username, token, localDate);
+            verifiedTokens.put(key, account);
+
+            return account;
+        } catch (ExpiredJwtException e) {
+            return null;
         } catch (JwtException e) {
-            throw new AuthenticationException("The provided token is not a valid token. Is the token malformed or expired?");
+            throw new AuthenticationException("The provided token is not a valid token. Is the token malformed?", e);
         }
     }
 
+    /**
+     * Get the account represented by the provided token
+     * @param token the token to parse into an AuthenticatedAccount instance
+     * @return the account representing the authenticated user (instance of {@link AuthenticatedAccount})
+     */
+    public Account getAuthenticatedAccount(String token) {
+        AuthenticatedAccount account = verifyToken(token);
+
+        if (account == null)
+            throw new AuthenticationException("The provided token is not a valid token. Is the token malformed or expired?");
+
+        return account;
+    }
+
     /**
      * Checks if the provided token is expired
      * @param token the token to check
      * @return true if expired, false if not
      */
     public boolean isTokenExpired(String token) {
-        try {
-            getTokenClaims(token);
-
-            return false;
-        } catch (ExpiredJwtException e) {
-            return true;
-        } catch (JwtException e) {
-            throw new AuthenticationException("An error occurred checking if the provided token is expired", e);
-        }
+        return verifyToken(token) == null;
     }
 
     /**
@@ -134,4 +190,56 @@ public class JWT {
                 .setExpiration(Date.from(expiration.atZone(ZoneId.systemDefault()).toInstant()))
                 .signWith(secret).compact();
     }
+
+    /**
+     * Expires the cached verified tokens at the expiration of the token
+     */
+    private static class TokenExpiry implements Expiry<String, AuthenticatedAccount> {
+        /**
+         * Get the time until the cached token expires
+         * @param account the verified account
+         * @return the nanoseconds until the token expires
+         */
+        private static long untilExpiry(AuthenticatedAccount account) {
+            return Math.max(0, Duration.between(LocalDateTime.now(), account.getExpiration()).toNanos());
+        }
+
+        /**
+         * Expire the entry when the token expires
+         * @param key the hash of the token
+         * @param account the verified account
+         * @param currentTime the current time in nanoseconds
+         * @return the nanoseconds until the entry expires
+         */
+        @Override
+        public long expireAfterCreate(String key, AuthenticatedAccount account, long currentTime) {
+            return untilExpiry(account);
+        }
+
+        /**
+         * Expire the entry when the token expires
+         * @param key the hash of the token
+         * @param account the verified account
+         * @param currentTime the current time in nanoseconds
+         * @param currentDuration the current nanoseconds until the entry expires
+         * @return the nanoseconds until the entry expires
+         */
+        @Override
+        public long expireAfterUpdate(String key, AuthenticatedAccount account, long currentTime, long currentDuration) {
+            return untilExpiry(account);
+        }
+
+        /**
+         * Reading the entry does not change when it expires
+         * @param key the hash of the token
+         * @param account the verified account
+         * @param currentTime the current time in nanoseconds
+         * @param currentDuration the current nanoseconds until the entry expires
+         * @return the nanoseconds until the entry expires
+         */
+        @Override
+        public long expireAfterRead(String key, AuthenticatedAccount account, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -1,7 +1,8 @@
 package ie.ul.ethics.scieng.authentication.jwt;
 
+import ie.ul.ethics.scieng.authentication.cache.AccountSnapshot;
+import ie.ul.ethics.scieng.authentication.cache.AccountSnapshotCache;
 import ie.ul.ethics.scieng.authentication.exceptions.AuthenticationException;
-import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.models.AuthenticatedAccount;
 import ie.ul.ethics.scieng.authentication.services.AccountService;
 import lombok.extern.log4j.Log4j2;
@@ -37,6 +38,10 @@ public class JwtRequestFilter extends OncePerRequestFilter {
      * The authentication utility class providing Jwt authentication
      */
     private final JWT jwt;
+    /**
+     * The cache of account snapshots so that authenticating a request does not query the database
+     */
+    private final AccountSnapshotCache accountCache;
     /**
      * The authentication information object to set authentication information
      */
@@ -57,11 +62,13 @@ public class JwtRequestFilter extends OncePerRequestFilter {
      * Construct a filter for JWT processing
      * @param accountService the service providing account access
      * @param jwt the authentication object for JWT utilities
+     * @param accountCache the cache of account snapshots
      */
     @Autowired
-    public JwtRequestFilter(AccountService accountService, JWT jwt) {
+    public JwtRequestFilter(AccountService accountService, JWT jwt, AccountSnapshotCache accountCache) {
         this.accountService = accountService;
         this.jwt = jwt;
+        this.accountCache = accountCache;
     }
 
     /**
@@ -83,9 +90,9 @@ public class JwtRequestFilter extends OncePerRequestFilter {
             token = tokenHeader.substring(BEARER.length());
 
             try {
-                if (!jwt.isTokenExpired(token))
-                    authenticated = (AuthenticatedAccount) jwt.getAuthenticatedAccount(token);
-                else
+                authenticated = jwt.verifyToken(token);
+
+                if (authenticated == null)
                     log.error("Failed to authenticate with JWT due to an expired token");
             } catch (AuthenticationException ex) {
                 log.error("An error occurred filtering the JWT request", ex);
@@ -97,7 +104,7 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         if (authenticated != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             String username = authenticated.getUsername();
 
-            Account account = accountService.getAccount(username);
+            AccountSnapshot account = accountCache.get(username, accountService::getAccount);
 
             if (account == null)
                 throw new UsernameNotFoundException(username);
@@ -23,6 +23,10 @@ public class AuthenticationResponse {
      * The expiry timestamp for when the JWT token expires
      */
     private LocalDateTime expiry;
+    /**
+     * The refresh token that can be exchanged for a new JWT token without the password
+     */
+    private String refreshToken;
 
     /**
      * Creates a default authentication response
@@ -38,8 +42,20 @@ public class AuthenticationResponse {
      * @param expiry the timestamp it expires at
      */
     public AuthenticationResponse(String username, String token, LocalDateTime expiry) {
+        this(username, token, expiry, null);
+    }
+
+    /**
+     * Creates an authentication response with the provided parameters
+     * @param username the username the authentication is for
+     * @param token the JWT token issued to the user
+     * @param expiry the timestamp it expires at
+     * @param refreshToken the refresh token issued to the user
+     */
+    public AuthenticationResponse(String username, String token, LocalDateTime expiry, String refreshToken) {
         this.username = username;
         this.token = token;
         this.expiry = expiry;
+        this.refreshToken = refreshToken;
     }
 }
@@ -2,6 +2,8 @@ package ie.ul.ethics.scieng.authentication.models;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.Objects;
 import java.util.UUID;
@@ -10,6 +12,7 @@ import java.util.UUID;
  * This class represents a token used to confirm an account
  */
 @Entity
+@Table(indexes = @Index(name = "confirmation_token_time_created", columnList = "timeCreated"))
 public class ConfirmationToken {
     /**
      * Use the email as the key since we are using email for confirmation
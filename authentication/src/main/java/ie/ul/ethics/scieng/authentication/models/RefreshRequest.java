@@ -0,0 +1,27 @@
+package ie.ul.ethics.scieng.authentication.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+
+/**
+ * This class represents a request to exchange a refresh token for a new JWT token
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshRequest {
+    /**
+     * The refresh token issued on the previous authentication
+     */
+    @NotBlank
+    private String refreshToken;
+    /**
+     * The expiry (in hours), the issued authentication should be valid for
+     */
+    private Long expiry;
+}
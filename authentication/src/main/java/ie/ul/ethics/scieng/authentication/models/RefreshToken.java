@@ -0,0 +1,70 @@
+package ie.ul.ethics.scieng.authentication.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * This class represents a refresh token that can be exchanged for a new JWT token without the password. Only the hash of
+ * the token is stored, so a leaked database does not leak usable tokens
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "refresh_token_username", columnList = "username"),
+        @Index(name = "refresh_token_expiry", columnList = "expiry")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshToken {
+    /**
+     * The SHA-256 hash of the token issued to the client
+     */
+    @Id
+    private String tokenHash;
+    /**
+     * The username of the account the token belongs to
+     */
+    private String username;
+    /**
+     * The expiry timestamp of when the token expires
+     */
+    private LocalDateTime expiry;
+
+    /**
+     * Determines if the token is expired or not
+     * @return true if expired, false if not
+     */
+    public boolean isExpired() {
+        return LocalDateTime.now().isAfter(expiry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        RefreshToken that = (RefreshToken) o;
+        return Objects.equals(tokenHash, that.tokenHash) && Objects.equals(username, that.username) && Objects.equals(expiry, that.expiry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(tokenHash, username, expiry);
+    }
+}
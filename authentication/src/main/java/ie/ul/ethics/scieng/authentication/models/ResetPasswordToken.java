@@ -8,6 +8,8 @@ import org.hibernate.Hibernate;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
@@ -15,6 +17,7 @@ import java.util.Objects;
  * This class represents a token used for password resets
  */
 @Entity
+@Table(indexes = @Index(name = "reset_password_token_expiry", columnList = "expiry"))
 @Getter
 @Setter
 @AllArgsConstructor
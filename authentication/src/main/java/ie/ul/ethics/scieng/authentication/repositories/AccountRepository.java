@@ -1,9 +1,14 @@
 package ie.ul.ethics.scieng.authentication.repositories;
 
 import ie.ul.ethics.scieng.authentication.models.Account;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,4 +29,22 @@ public interface AccountRepository extends CrudRepository<Account, String> {
      * @return the optional containing the account, empty if not found
      */
     Optional<Account> findByEmail(String email);
+
+    /**
+     * Find the usernames of the unconfirmed accounts with the provided emails
+     * @param emails the emails of the accounts to find
+     * @return the usernames of the unconfirmed accounts
+     */
+    @Query("SELECT a.username FROM Account a WHERE a.email IN ?1 AND a.confirmed = false")
+    List<String> findUnconfirmedUsernamesByEmailIn(Collection<String> emails);
+
+    /**
+     * Delete the accounts with the provided usernames in a single statement
+     * @param usernames the usernames of the accounts to delete
+     * @return the number of accounts deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Account a WHERE a.username IN ?1")
+    int deleteByUsernameIn(Collection<String> usernames);
 }
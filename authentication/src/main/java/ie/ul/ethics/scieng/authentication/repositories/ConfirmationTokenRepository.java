@@ -1,9 +1,16 @@
 package ie.ul.ethics.scieng.authentication.repositories;
 
 import ie.ul.ethics.scieng.authentication.models.ConfirmationToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -17,4 +24,23 @@ public interface ConfirmationTokenRepository extends CrudRepository<Confirmation
      * @return the confirmation token if found, empty if not.
      */
     Optional<ConfirmationToken> findByEmail(String email);
+
+    /**
+     * Find a batch of emails of the tokens created before the provided timestamp
+     * @param timestamp the timestamp to find tokens created before
+     * @param pageable the page limiting the size of the batch
+     * @return the emails of the tokens
+     */
+    @Query("SELECT t.email FROM ConfirmationToken t WHERE t.timeCreated < ?1")
+    List<String> findEmailsCreatedBefore(LocalDateTime timestamp, Pageable pageable);
+
+    /**
+     * Delete the tokens of the provided emails in a single statement
+     * @param emails the emails of the tokens to delete
+     * @return the number of tokens deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ConfirmationToken t WHERE t.email IN ?1")
+    int deleteByEmailIn(Collection<String> emails);
 }
@@ -0,0 +1,46 @@
+package ie.ul.ethics.scieng.authentication.repositories;
+
+import ie.ul.ethics.scieng.authentication.models.RefreshToken;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * This interface represents a repository used for storing/retrieving refresh tokens
+ */
+@Repository
+public interface RefreshTokenRepository extends CrudRepository<RefreshToken, String> {
+    /**
+     * Delete the token with the provided hash in a single statement, so that only one caller can consume a token
+     * @param tokenHash the hash of the token to delete
+     * @return the number of tokens deleted, 0 if the token was already consumed
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RefreshToken t WHERE t.tokenHash = ?1")
+    int deleteByTokenHash(String tokenHash);
+
+    /**
+     * Delete all the tokens belonging to the provided username
+     * @param username the username of the account to revoke the tokens of
+     * @return the number of tokens deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RefreshToken t WHERE t.username = ?1")
+    int deleteByUsername(String username);
+
+    /**
+     * Delete all the tokens that expired before the provided timestamp
+     * @param timestamp the timestamp to delete tokens expired before
+     * @return the number of tokens deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RefreshToken t WHERE t.expiry < ?1")
+    int deleteByExpiryBefore(LocalDateTime timestamp);
+}
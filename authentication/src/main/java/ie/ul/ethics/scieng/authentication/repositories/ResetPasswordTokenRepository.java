@@ -1,8 +1,15 @@
 package ie.ul.ethics.scieng.authentication.repositories;
 
 import ie.ul.ethics.scieng.authentication.models.ResetPasswordToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -15,4 +22,23 @@ public interface ResetPasswordTokenRepository extends CrudRepository<ResetPasswo
      * @return the found token, or empty optional if not found
      */
     Optional<ResetPasswordToken> findByUsername(String username);
+
+    /**
+     * Find a batch of usernames of the tokens that expired before the provided timestamp
+     * @param timestamp the timestamp to find tokens expired before
+     * @param pageable the page limiting the size of the batch
+     * @return the usernames of the expired tokens
+     */
+    @Query("SELECT t.username FROM ResetPasswordToken t WHERE t.expiry < ?1")
+    List<String> findUsernamesExpiredBefore(LocalDateTime timestamp, Pageable pageable);
+
+    /**
+     * Delete the tokens of the provided usernames in a single statement
+     * @param usernames the usernames of the tokens to delete
+     * @return the number of tokens deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ResetPasswordToken t WHERE t.username IN ?1")
+    int deleteByUsernameIn(Collection<String> usernames);
 }
@@ -0,0 +1,188 @@
+package ie.ul.ethics.scieng.authentication.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class throttles authentication attempts. Failed attempts are counted per account and per client address over a
+ * fixed window starting at the first failure. Once an account has used up its allowed failures, each further failure
+ * doubles the time it has to wait before the next attempt, up to a maximum, so that guessing is slowed down without
+ * letting anyone lock the owner out for the whole window. Once an address reaches its limit, further attempts are
+ * refused until the window ends. Both are checked before any password hashing is performed
+ */
+@Component
+public class AttemptThrottle {
+    /**
+     * The name of the counter recording throttled attempts
+     */
+    public static final String THROTTLED_COUNTER = "auth.attempts.throttled";
+
+    /**
+     * The failed attempts keyed by account username
+     */
+    private final Cache<String, Failures> accounts;
+    /**
+     * The failed attempts keyed by client address
+     */
+    private final Cache<String, Failures> addresses;
+    /**
+     * The number of failed attempts allowed per account within a window before backing off
+     */
+    private final int accountAttempts;
+    /**
+     * The initial backoff in milliseconds
+     */
+    private final long backoff;
+    /**
+     * The maximum backoff in milliseconds
+     */
+    private final long maxBackoff;
+    /**
+     * The number of failed attempts allowed per address within a window
+     */
+    private final int addressAttempts;
+    /**
+     * The length of a window in milliseconds
+     */
+    private final long window;
+    /**
+     * The counter of throttled attempts
+     */
+    private final Counter throttled;
+
+    /**
+     * Create the attempt throttle
+     * @param configuration the authentication configuration
+     * @param meterRegistry the registry to record metrics in
+     */
+    @Autowired
+    public AttemptThrottle(AuthenticationConfiguration configuration, MeterRegistry meterRegistry) {
+        AuthenticationConfiguration.Throttle throttle = configuration.getThrottle();
+        Duration window = Duration.ofMinutes(throttle.getWindow());
+
+        this.accountAttempts = throttle.getAccountAttempts();
+        this.backoff = Duration.ofSeconds(throttle.getBackoff()).toMillis();
+        this.maxBackoff = Duration.ofSeconds(throttle.getMaxBackoff()).toMillis();
+        this.addressAttempts = throttle.getAddressAttempts();
+        this.window = window.toMillis();
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(window)
+                .build();
+        this.addresses = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(window)
+                .build();
+        this.throttled = Counter.builder(THROTTLED_COUNTER).register(meterRegistry);
+    }
+
+    /**
+     * Get the number of seconds before the account can attempt to log in again, which is the backoff for the number of
+     * failures beyond those allowed, counted from the last failure
+     * @param username the username of the account
+     * @return the number of seconds to wait, 0 if the account is not throttled
+     */
+    public long accountRetryAfter(String username) {
+        Failures failures = accounts.getIfPresent(username);
+
+        if (failures == null)
+            return 0;
+
+        int excess = failures.count.get() - accountAttempts;
+
+        if (excess < 0)
+            return 0;
+
+        long delay = Math.min(maxBackoff, backoff << Math.min(excess, 30));
+
+        return retryAfter(failures.last + delay);
+    }
+
+    /**
+     * Get the number of seconds before the address can attempt to authenticate again
+     * @param address the client address
+     * @return the number of seconds to wait, 0 if the address is not throttled
+     */
+    public long addressRetryAfter(String address) {
+        Failures failures = addresses.getIfPresent(address);
+
+        if (failures == null || failures.count.get() < addressAttempts)
+            return 0;
+
+        return retryAfter(failures.started + window);
+    }
+
+    /**
+     * Record a failed attempt from the client address, such as invalid credentials or an unknown account
+     * @param address the client address
+     */
+    public void recordAddressFailure(String address) {
+        addresses.get(address, k -> new Failures()).record();
+    }
+
+    /**
+     * Record a failed login attempt on the account
+     * @param username the username of the account
+     */
+    public void recordAccountFailure(String username) {
+        accounts.get(username, k -> new Failures()).record();
+    }
+
+    /**
+     * Clear the failed attempts on the account after a successful login
+     * @param username the username of the account
+     */
+    public void reset(String username) {
+        accounts.invalidate(username);
+    }
+
+    /**
+     * Calculate the number of seconds until attempts are allowed again
+     * @param until the time in milliseconds attempts are allowed again
+     * @return the number of seconds to wait, 0 if not throttled
+     */
+    private long retryAfter(long until) {
+        long remaining = until - System.currentTimeMillis();
+
+        if (remaining <= 0)
+            return 0;
+
+        throttled.increment();
+
+        return Math.max(1, (remaining + 999) / 1000);
+    }
+
+    /**
+     * The failed attempts counted within a window
+     */
+    private static class Failures {
+        /**
+         * The time in milliseconds the window started
+         */
+        private final long started = System.currentTimeMillis();
+        /**
+         * The number of failed attempts in the window
+         */
+        private final AtomicInteger count = new AtomicInteger();
+        /**
+         * The time in milliseconds of the last failed attempt
+         */
+        private volatile long last;
+
+        /**
+         * Record a failed attempt
+         */
+        private void record() {
+            last = System.currentTimeMillis();
+            count.incrementAndGet();
+        }
+    }
+}
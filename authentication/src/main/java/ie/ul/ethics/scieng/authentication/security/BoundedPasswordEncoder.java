@@ -0,0 +1,181 @@
+package ie.ul.ethics.scieng.authentication.security;
+
+import ie.ul.ethics.scieng.authentication.exceptions.HashingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class decorates a password encoder so that the CPU heavy hashing and verification runs on a dedicated executor
+ * with a bounded number of threads and a bounded queue. When the queue is full, requests are rejected immediately with a
+ * {@link HashingRejectedException} rather than tying up request threads waiting to hash, so that a burst of logins
+ * degrades gracefully instead of starving other endpoints
+ */
+@Log4j2
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    /**
+     * The name of the timer recording the cost of hashing operations
+     */
+    public static final String HASH_TIMER = "auth.password.hashing";
+    /**
+     * The name of the counter recording rejected hashing operations
+     */
+    public static final String REJECTED_COUNTER = "auth.password.hashing.rejected";
+
+    /**
+     * The encoder performing the hashing
+     */
+    private final PasswordEncoder delegate;
+    /**
+     * The executor hashing passwords
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * The number of milliseconds to wait for a hashing operation to complete
+     */
+    private final long timeout;
+    /**
+     * The number of seconds a client should wait before retrying a rejected operation
+     */
+    private final long retryAfter;
+    /**
+     * The timer for encoding passwords
+     */
+    private final Timer encodeTimer;
+    /**
+     * The timer for verifying passwords
+     */
+    private final Timer matchTimer;
+    /**
+     * The counter of rejected operations
+     */
+    private final Counter rejected;
+
+    /**
+     * Create a BoundedPasswordEncoder
+     * @param delegate the encoder performing the hashing
+     * @param threads the number of threads hashing passwords
+     * @param queueCapacity the number of operations that can wait for a thread before further operations are rejected
+     * @param timeout the number of milliseconds to wait for a hashing operation to complete
+     * @param retryAfter the number of seconds a client should wait before retrying a rejected operation
+     * @param meterRegistry the registry to record the metrics of hashing in
+     */
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long timeout, long retryAfter,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+        this.retryAfter = retryAfter;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder(HASH_TIMER).tag("operation", "encode").register(meterRegistry);
+        this.matchTimer = Timer.builder(HASH_TIMER).tag("operation", "matches").register(meterRegistry);
+        this.rejected = Counter.builder(REJECTED_COUNTER).register(meterRegistry);
+        meterRegistry.gauge(HASH_TIMER + ".queued", executor, e -> e.getQueue().size());
+    }
+
+    /**
+     * Encode the raw password on the hashing executor
+     * @param rawPassword the password to encode
+     * @return the encoded password
+     * @throws HashingRejectedException if the executor is saturated
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword)));
+    }
+
+    /**
+     * Verify the raw password against the encoded password on the hashing executor
+     * @param rawPassword the raw password to verify
+     * @param encodedPassword the encoded password to verify against
+     * @return true if the passwords match
+     * @throws HashingRejectedException if the executor is saturated
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> matchTimer.recordCallable(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * Determine if the encoded password should be encoded again for better security
+     * @param encodedPassword the encoded password to check
+     * @return true if the password should be encoded again
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Get the number of hashing operations waiting for a thread
+     * @return the number of queued operations
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Shut down the hashing executor
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run the operation on the executor, waiting for its result
+     * @param operation the operation to run
+     * @param <T> the type of the result
+     * @return the result of the operation
+     * @throws HashingRejectedException if the operation is rejected or does not complete in time
+     */
+    private <T> T execute(Callable<T> operation) {
+        Future<T> future;
+
+        try {
+            future = executor.submit(operation);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            log.warn("Rejected password hashing request as the hashing queue is full");
+            throw new HashingRejectedException("The password hashing queue is full", retryAfter, ex);
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            rejected.increment();
+            throw new HashingRejectedException("Timed out waiting for the password to be hashed", retryAfter, ex);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HashingRejectedException("Interrupted waiting for the password to be hashed", retryAfter, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new IllegalStateException("Failed to hash password", cause);
+        }
+    }
+}
@@ -101,4 +101,25 @@ public interface AccountService extends UserDetailsService {
      * @param password the password to set for the account
      */
     void resetPassword(Account account, String password);
+
+    /**
+     * Issue a new refresh token for the account. Only the hash of the token is stored
+     * @param account the account to issue the token for
+     * @return the raw token to give to the client
+     */
+    String createRefreshToken(Account account);
+
+    /**
+     * Consume the provided refresh token, so it cannot be used again. Tokens rotate, so the caller should issue a new
+     * refresh token with {@link #createRefreshToken(Account)} if the token is valid
+     * @param token the raw refresh token given by the client
+     * @return the account the token belongs to, null if the token does not exist, was already used or is expired
+     */
+    Account consumeRefreshToken(String token);
+
+    /**
+     * Revoke all the refresh tokens issued to the account
+     * @param account the account to revoke the refresh tokens of
+     */
+    void revokeRefreshTokens(Account account);
 }
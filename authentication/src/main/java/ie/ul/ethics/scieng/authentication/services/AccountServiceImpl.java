@@ -1,33 +1,49 @@
 package ie.ul.ethics.scieng.authentication.services;
 
+import ie.ul.ethics.scieng.authentication.cache.AccountSnapshotCache;
+import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
 import ie.ul.ethics.scieng.authentication.exceptions.EmailExistsException;
 import ie.ul.ethics.scieng.authentication.exceptions.IllegalUpdateException;
 import ie.ul.ethics.scieng.authentication.exceptions.UsernameExistsException;
 import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.models.ConfirmationToken;
+import ie.ul.ethics.scieng.authentication.models.RefreshToken;
 import ie.ul.ethics.scieng.authentication.models.ResetPasswordToken;
 import ie.ul.ethics.scieng.authentication.repositories.AccountRepository;
 import ie.ul.ethics.scieng.authentication.repositories.ConfirmationTokenRepository;
+import ie.ul.ethics.scieng.authentication.repositories.RefreshTokenRepository;
 import ie.ul.ethics.scieng.authentication.repositories.ResetPasswordTokenRepository;
 
 import ie.ul.ethics.scieng.common.properties.PropertyFinder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The implementation of the AccountService interface
@@ -55,32 +71,87 @@ public class AccountServiceImpl implements AccountService {
      */
     private final ResetPasswordTokenRepository resetTokenRepository;
 
+    /**
+     * The cache of account snapshots used for authentication, invalidated whenever an account changes
+     */
+    private final AccountSnapshotCache accountCache;
+
+    /**
+     * The repository used for storing/retrieving the hashed refresh tokens
+     */
+    private final RefreshTokenRepository refreshTokenRepository;
+
+    /**
+     * The registry the metrics of purges are recorded in
+     */
+    private final MeterRegistry meterRegistry;
+    /**
+     * The authentication configuration providing the validity of refresh tokens
+     */
+    private final AuthenticationConfiguration configuration;
+
     /**
      * The number of days after which unconfirmed accounts are removed
      */
     @Value("${auth.unconfirmed-removal:31}")
     private int unconfirmedRemoval;
 
+    /**
+     * The maximum number of rows deleted in a single purge statement
+     */
+    @Value("${auth.purge.batch-size:500}")
+    private int purgeBatchSize;
+
+    /**
+     * Determines if the purges should run in the background when the application is ready
+     */
+    @Value("${auth.purge.on-startup:true}")
+    private boolean purgeOnStartup;
+
+    /**
+     * The name of the counter recording the number of rows purged
+     */
+    public static final String PURGE_ROWS = "auth.purge.rows";
+
+    /**
+     * The name of the timer recording the duration of purges
+     */
+    public static final String PURGE_DURATION = "auth.purge.duration";
+
+    /**
+     * The number of random bytes in a refresh token
+     */
+    private static final int REFRESH_TOKEN_BYTES = 32;
+
+    /**
+     * The source of randomness for refresh tokens
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     /**
      * Instantiate an AccountServiceImpl with the provided dependencies
      * @param accountRepository the account repository to access accounts with
      * @param passwordEncoder the encoder for encoding passwords
      * @param tokenRepository the repository used for creating and retrieving tokens
      * @param resetTokenRepository the repository used for storing/retrieving the reset password tokens
+     * @param accountCache the cache of account snapshots used for authentication
+     * @param refreshTokenRepository the repository used for storing/retrieving the refresh tokens
+     * @param meterRegistry the registry to record the metrics of purges in
+     * @param configuration the authentication configuration
      */
     @Autowired
     public AccountServiceImpl(AccountRepository accountRepository, @Lazy PasswordEncoder passwordEncoder,
-                              ConfirmationTokenRepository tokenRepository, ResetPasswordTokenRepository resetTokenRepository) {
+                              ConfirmationTokenRepository tokenRepository, ResetPasswordTokenRepository resetTokenRepository,
+                              AccountSnapshotCache accountCache, RefreshTokenRepository refreshTokenRepository,
+                              MeterRegistry meterRegistry, AuthenticationConfiguration configuration) {
         this.accountRepository = accountRepository;
         this.passwordEncoder = passwordEncoder;
         this.tokenRepository = tokenRepository;
         this.resetTokenRepository = resetTokenRepository;
-    }
-
-    @PostConstruct
-    private void runScheduled() {
-        this.purgeExpiredResetTokens();
-        this.purgeUnconfirmedAccounts();
+        this.accountCache = accountCache;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.meterRegistry = meterRegistry;
+        this.configuration = configuration;
     }
 
     /**
@@ -114,6 +185,8 @@ public class AccountServiceImpl implements AccountService {
     @Override
     public void deleteAccount(Account account) {
         accountRepository.delete(account);
+        revokeRefreshTokens(account);
+        accountCache.invalidate(account.getUsername());
     }
 
     /**
@@ -147,6 +220,8 @@ public class AccountServiceImpl implements AccountService {
             throw new IllegalUpdateException(email, true);
 
         accountRepository.save(account);
+        revokeRefreshTokens(account);
+        accountCache.invalidate(username);
     }
 
     /**
@@ -222,6 +297,7 @@ public class AccountServiceImpl implements AccountService {
             account.setConfirmed(true);
             accountRepository.save(account); // update the confirmation status
             tokenRepository.delete(confirmationToken);
+            accountCache.invalidate(account.getUsername());
 
             return true;
         }
@@ -280,43 +356,190 @@ public class AccountServiceImpl implements AccountService {
         account.setPassword(passwordEncoder.encode(password));
         resetTokenRepository.deleteById(account.getUsername());
         accountRepository.save(account);
+        revokeRefreshTokens(account);
+        accountCache.invalidate(account.getUsername());
+    }
+
+    /**
+     * Hash the raw refresh token for storage and lookup. The tokens are random with enough entropy that a fast hash is
+     * sufficient, so exchanging a refresh token does not require a password hashing round
+     * @param token the raw token
+     * @return the hex encoded SHA-256 hash of the token
+     */
+    private static String hashToken(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    /**
+     * Issue a new refresh token for the account. Only the hash of the token is stored
+     *
+     * @param account the account to issue the token for
+     * @return the raw token to give to the client
+     */
+    @Override
+    public String createRefreshToken(Account account) {
+        byte[] bytes = new byte[REFRESH_TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(new RefreshToken(hashToken(token), account.getUsername(),
+                LocalDateTime.now().plusDays(configuration.getJwt().getToken().getRefreshValidity())));
+
+        return token;
+    }
+
+    /**
+     * Consume the provided refresh token, so it cannot be used again. Tokens rotate, so the caller should issue a new
+     * refresh token with {@link #createRefreshToken(Account)} if the token is valid
+     *
+     * @param token the raw refresh token given by the client
+     * @return the account the token belongs to, null if the token does not exist, was already used or is expired
+     */
+    @Override
+    public Account consumeRefreshToken(String token) {
+        String hash = hashToken(token);
+        RefreshToken refreshToken = refreshTokenRepository.findById(hash).orElse(null);
+
+        if (refreshToken == null || refreshTokenRepository.deleteByTokenHash(hash) == 0)
+            return null;
+
+        if (refreshToken.isExpired())
+            return null;
+
+        return getAccount(refreshToken.getUsername());
+    }
+
+    /**
+     * Revoke all the refresh tokens issued to the account
+     *
+     * @param account the account to revoke the refresh tokens of
+     */
+    @Override
+    public void revokeRefreshTokens(Account account) {
+        int revoked = refreshTokenRepository.deleteByUsername(account.getUsername());
+        log.debug("Revoked {} refresh tokens for account {}", revoked, account.getUsername());
+    }
+
+    /**
+     * Record the metrics of a purge
+     * @param type the type of rows purged
+     * @param rows the number of rows purged
+     * @param startTime the time in nanoseconds the purge started at
+     */
+    private void recordPurge(String type, long rows, long startTime) {
+        long duration = System.nanoTime() - startTime;
+
+        Counter.builder(PURGE_ROWS)
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(rows);
+        Timer.builder(PURGE_DURATION)
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(duration, TimeUnit.NANOSECONDS);
+
+        if (rows > 0)
+            log.info("Purged {} {} in {} ms", rows, type, TimeUnit.NANOSECONDS.toMillis(duration));
+    }
+
+    /**
+     * Run all the purges, logging rather than propagating any failure
+     */
+    private void runPurges() {
+        try {
+            purgeExpiredResetTokens();
+            purgeExpiredRefreshTokens();
+            purgeUnconfirmedAccounts();
+        } catch (RuntimeException ex) {
+            log.error("Failed to purge expired accounts and tokens", ex);
+        }
+    }
+
+    /**
+     * Run the purges in the background once the application is ready, so that they do not delay startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void purgeOnStartup() {
+        if (!purgeOnStartup)
+            return;
+
+        Thread thread = new Thread(this::runPurges, "account-purge");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
      * A method that purges expired reset tokens. Not exposed by the AccountService API (interface). Just provided by
-     * this implementation
+     * this implementation. The tokens are deleted in batches of set-based deletes using the expiry index
      */
-    @Transactional
     @Scheduled(cron = "${auth.scheduling.cron:0 0 5 * * ?}")
     public void purgeExpiredResetTokens() {
-        this.resetTokenRepository.findAll()
-            .forEach(token -> {
-                if (token.isExpired())
-                    this.resetTokenRepository.delete(token);
-            });
+        long startTime = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        Pageable batch = PageRequest.of(0, purgeBatchSize);
+        long purged = 0;
+        List<String> usernames;
+
+        do {
+            usernames = this.resetTokenRepository.findUsernamesExpiredBefore(now, batch);
+
+            if (!usernames.isEmpty())
+                purged += this.resetTokenRepository.deleteByUsernameIn(usernames);
+        } while (usernames.size() >= purgeBatchSize);
+
+        recordPurge("reset-tokens", purged, startTime);
+    }
+
+    /**
+     * Purge the expired refresh tokens in a single statement using the expiry index
+     */
+    @Scheduled(cron = "${auth.scheduling.cron:0 0 5 * * ?}")
+    public void purgeExpiredRefreshTokens() {
+        long startTime = System.nanoTime();
+        int purged = this.refreshTokenRepository.deleteByExpiryBefore(LocalDateTime.now());
+
+        recordPurge("refresh-tokens", purged, startTime);
     }
 
     /**
      * Purge the unconfirmed accounts. Another method not exposed by the public AccountService API as it is an implementation
-     * detail that client code does not need to know about
+     * detail that client code does not need to know about. The confirmation tokens past the threshold are found in batches
+     * using the creation time index, and their unconfirmed accounts and the tokens are deleted with set-based deletes
      */
-    @Transactional
     @Scheduled(cron = "${auth.scheduling.cron:0 0 5 * * ?}")
     public void purgeUnconfirmedAccounts() {
+        long startTime = System.nanoTime();
         LocalDateTime threshold = LocalDateTime.now().minusDays(unconfirmedRemoval);
+        Pageable batch = PageRequest.of(0, purgeBatchSize);
+        long purged = 0;
+        List<String> emails;
 
-        this.tokenRepository.findAll()
-            .forEach(token -> {
-                if (token.getTimeCreated().isBefore(threshold)) {
-                    Account account = this.accountRepository.findByEmail(token.getEmail()).orElse(null);
+        do {
+            emails = this.tokenRepository.findEmailsCreatedBefore(threshold, batch);
 
-                    if (account != null && !account.isConfirmed()) {
-                        log.info("Purging account with username {} as it is not confirmed and has exceeded the threshold to remove unconfirmed accounts", account.getUsername());
-                        this.accountRepository.delete(account);
-                    }
+            if (!emails.isEmpty()) {
+                List<String> usernames = this.accountRepository.findUnconfirmedUsernamesByEmailIn(emails);
 
-                    this.tokenRepository.delete(token);
+                if (!usernames.isEmpty()) {
+                    log.info("Purging accounts with usernames {} as they are not confirmed and have exceeded the threshold to remove unconfirmed accounts", usernames);
+                    purged += this.accountRepository.deleteByUsernameIn(usernames);
+                    usernames.forEach(this.accountCache::invalidate);
                 }
-            });
+
+                this.tokenRepository.deleteByEmailIn(emails);
+            }
+        } while (emails.size() >= purgeBatchSize);
+
+        recordPurge("unconfirmed-accounts", purged, startTime);
     }
 }
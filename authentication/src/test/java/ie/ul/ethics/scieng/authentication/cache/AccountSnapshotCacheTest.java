@@ -0,0 +1,141 @@
+package ie.ul.ethics.scieng.authentication.cache;
+
+import ie.ul.ethics.scieng.authentication.models.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static ie.ul.ethics.scieng.test.utils.constants.Authentication.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides unit tests for the AccountSnapshotCache
+ */
+public class AccountSnapshotCacheTest {
+    /**
+     * The usernames broadcast as invalidated
+     */
+    private List<String> broadcast;
+    /**
+     * The usernames the listener was notified of as changed
+     */
+    private List<String> changed;
+    /**
+     * The number of times the loader was called
+     */
+    private AtomicInteger loads;
+    /**
+     * The loader returning the test account
+     */
+    private Function<String, Account> loader;
+    /**
+     * The cache being tested
+     */
+    private AccountSnapshotCache cache;
+
+    /**
+     * Create the cache being tested
+     */
+    @BeforeEach
+    public void setup() {
+        broadcast = new ArrayList<>();
+        changed = new ArrayList<>();
+        loads = new AtomicInteger();
+        loader = username -> {
+            loads.incrementAndGet();
+            return new Account(username, EMAIL, PASSWORD, true);
+        };
+        cache = new AccountSnapshotCache(100, 60, Collections.singletonList(broadcast::add),
+                Collections.singletonList(changed::add), new SimpleMeterRegistry());
+    }
+
+    /**
+     * Tests that the account is only loaded once while cached
+     */
+    @Test
+    public void shouldLoadAccountOnce() {
+        AccountSnapshot first = cache.get(USERNAME, loader);
+        AccountSnapshot second = cache.get(USERNAME, loader);
+
+        assertEquals(new AccountSnapshot(USERNAME, PASSWORD, true), first);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+
+    /**
+     * Tests that a missing account is not cached
+     */
+    @Test
+    public void shouldNotCacheMissingAccount() {
+        assertNull(cache.get(USERNAME, username -> null));
+        assertNotNull(cache.get(USERNAME, loader));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Tests that invalidating an account reloads it, notifies the listeners and broadcasts the invalidation
+     */
+    @Test
+    public void shouldInvalidateAndBroadcast() {
+        cache.get(USERNAME, loader);
+        cache.invalidate(USERNAME);
+        cache.get(USERNAME, loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(Collections.singletonList(USERNAME), changed);
+        assertEquals(Collections.singletonList(USERNAME), broadcast);
+    }
+
+    /**
+     * Tests that invalidating an account within a transaction evicts it again and broadcasts once the transaction
+     * commits, so that an old snapshot re-cached before the commit does not survive
+     */
+    @Test
+    public void shouldInvalidateAgainAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            cache.get(USERNAME, loader);
+            cache.invalidate(USERNAME);
+            cache.get(USERNAME, loader); // a concurrent request re-caching the uncommitted state
+
+            assertTrue(changed.isEmpty());
+            assertTrue(broadcast.isEmpty());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        cache.get(USERNAME, loader);
+
+        assertEquals(3, loads.get());
+        assertEquals(Collections.singletonList(USERNAME), changed);
+        assertEquals(Collections.singletonList(USERNAME), broadcast);
+    }
+
+    /**
+     * Tests that evicting an account received from another node notifies the local listeners but does not re-broadcast
+     * the invalidation
+     */
+    @Test
+    public void shouldEvictWithoutBroadcast() {
+        cache.get(USERNAME, loader);
+        cache.evict(USERNAME);
+        cache.get(USERNAME, loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(Collections.singletonList(USERNAME), changed);
+        assertTrue(broadcast.isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+package ie.ul.ethics.scieng.authentication.config;
+
+import ie.ul.ethics.scieng.authentication.test.config.TestConfiguration;
+import ie.ul.ethics.scieng.common.email.EmailSender;
+import ie.ul.ethics.scieng.test.utils.TestApplication;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * This class tests that the actuator endpoints are secured with the metrics user
+ */
+@SpringBootTest(classes = {
+        TestApplication.class,
+        TestConfiguration.class
+}, properties = {
+        "management.endpoints.web.exposure.include=health,metrics",
+        "auth.metrics.username=scraper",
+        "auth.metrics.password=secret"
+})
+public class ActuatorSecurityConfigurationTest {
+    /**
+     * Web app context used for testing
+     */
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    /**
+     * The security filter chain the requests pass through
+     */
+    @Autowired
+    private Filter springSecurityFilterChain;
+
+    /**
+     * The mocked email sender
+     */
+    @MockBean
+    private EmailSender emailSender;
+
+    /**
+     * Used for mocking interactions with the model view controller
+     */
+    private MockMvc mockMvc;
+
+    /**
+     * Create the mock MVC with the security filters before each test
+     */
+    @BeforeEach
+    public void setup() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .addFilters(springSecurityFilterChain)
+                .build();
+    }
+
+    /**
+     * Create the HTTP basic authorization header
+     * @param username the username to authenticate with
+     * @param password the password to authenticate with
+     * @return the header value
+     */
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that the health endpoint is open while the metrics endpoints require the metrics user
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldRequireMetricsUser() throws Exception {
+        int health = mockMvc.perform(get("/actuator/health")).andReturn().getResponse().getStatus();
+        assertNotEquals(401, health);
+
+        mockMvc.perform(get("/actuator/metrics"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics").header(HttpHeaders.AUTHORIZATION, basic("scraper", "wrong")))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics").header(HttpHeaders.AUTHORIZATION, basic("scraper", "secret")))
+                .andExpect(status().isOk());
+    }
+}
@@ -1,10 +1,12 @@
 package ie.ul.ethics.scieng.authentication.controllers;
 
 import ie.ul.ethics.scieng.authentication.exceptions.EmailExistsException;
+import ie.ul.ethics.scieng.authentication.exceptions.HashingRejectedException;
 import ie.ul.ethics.scieng.authentication.exceptions.UsernameExistsException;
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.authentication.jwt.JWT;
 import ie.ul.ethics.scieng.authentication.models.*;
+import ie.ul.ethics.scieng.authentication.security.AttemptThrottle;
 import ie.ul.ethics.scieng.authentication.services.AccountService;
 import static ie.ul.ethics.scieng.common.Constants.*;
 import static ie.ul.ethics.scieng.authentication.services.AccountServiceTest.*;
@@ -13,6 +15,7 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import ie.ul.ethics.scieng.common.email.EmailSender;
@@ -79,6 +82,12 @@ public class AuthenticationControllerTest {
     @MockBean
     private AuthenticationInformation authenticationInformation;
 
+    /**
+     * The mock used for throttling authentication attempts
+     */
+    @MockBean
+    private AttemptThrottle attemptThrottle;
+
     /**
      * A fake jwt token to use for testing
      */
@@ -255,6 +264,148 @@ public class AuthenticationControllerTest {
 
         verify(accountService).authenticateAccount(account, PASSWORD);
         verify(accountService).getAccount(USERNAME, false);
+        verify(attemptThrottle).reset(USERNAME);
+        verify(attemptThrottle, never()).recordAddressFailure(anyString());
+    }
+
+    /**
+     * This method tests that a refresh token can be exchanged for a new JWT token and a rotated refresh token
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldRefreshToken() throws Exception {
+        Account account = createTestAccount();
+        account.setConfirmed(true);
+        String refreshToken = "refresh_token";
+        String newRefreshToken = "new_refresh_token";
+        String json = JSON.convertJSON(new RefreshRequest(refreshToken, null));
+
+        AuthenticatedAccount authenticatedAccount = createAuthenticatedAccount();
+        AuthenticationResponse authenticationResponse = new AuthenticationResponse(authenticatedAccount.getUsername(),
+                authenticatedAccount.getJwtToken(), authenticatedAccount.getExpiration(), newRefreshToken);
+        String resultJson = JSON.convertJSON(authenticationResponse);
+
+        given(accountService.consumeRefreshToken(refreshToken))
+                .willReturn(account);
+        given(accountService.createRefreshToken(account))
+                .willReturn(newRefreshToken);
+        given(jwt.generateToken(account, null))
+                .willReturn(JWT_TOKEN);
+        given(jwt.getAuthenticatedAccount(JWT_TOKEN))
+                .willReturn(authenticatedAccount);
+
+        mockMvc.perform(post(createApiPath(Endpoint.AUTHENTICATION, "refresh"))
+                        .contentType(JSON.MEDIA_TYPE)
+                        .content(json))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(JSON.MEDIA_TYPE))
+                .andExpect(content().json(resultJson));
+
+        verify(accountService).consumeRefreshToken(refreshToken);
+        verify(accountService).createRefreshToken(account);
+        verify(accountService, never()).authenticateAccount(any(), any());
+    }
+
+    /**
+     * This method tests that an invalid refresh token is rejected
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldNotRefreshInvalidToken() throws Exception {
+        String json = JSON.convertJSON(new RefreshRequest("invalid", null));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put(ERROR, INVALID_REFRESH_TOKEN);
+        String resultJson = JSON.convertJSON(response);
+
+        given(accountService.consumeRefreshToken("invalid"))
+                .willReturn(null);
+
+        mockMvc.perform(post(createApiPath(Endpoint.AUTHENTICATION, "refresh"))
+                        .contentType(JSON.MEDIA_TYPE)
+                        .content(json))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(resultJson));
+
+        verify(accountService, never()).createRefreshToken(any());
+    }
+
+    /**
+     * This method tests that a login attempt is refused with a Retry-After header if the client address is throttled
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldThrottleLoginFromAddress() throws Exception {
+        AuthenticationRequest authenticationRequest = new AuthenticationRequest(USERNAME, PASSWORD, null, null);
+        String json = JSON.convertJSON(authenticationRequest);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put(ERROR, TOO_MANY_ATTEMPTS);
+        String resultJson = JSON.convertJSON(response);
+
+        given(attemptThrottle.addressRetryAfter(anyString()))
+                .willReturn(30L);
+
+        mockMvc.perform(post(createApiPath(Endpoint.AUTHENTICATION, "login"))
+                        .contentType(JSON.MEDIA_TYPE)
+                        .content(json))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"))
+                .andExpect(content().json(resultJson));
+
+        verifyNoInteractions(accountService);
+    }
+
+    /**
+     * This method tests that failed login attempts are refused once the account is throttled
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldThrottleLoginOnAccount() throws Exception {
+        Account account = createTestAccount();
+        AuthenticationRequest authenticationRequest = new AuthenticationRequest(USERNAME, PASSWORD, null, null);
+        String json = JSON.convertJSON(authenticationRequest);
+
+        given(accountService.getAccount(USERNAME, false))
+                .willReturn(account);
+        given(attemptThrottle.accountRetryAfter(USERNAME))
+                .willReturn(60L);
+
+        mockMvc.perform(post(createApiPath(Endpoint.AUTHENTICATION, "login"))
+                        .contentType(JSON.MEDIA_TYPE)
+                        .content(json))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"));
+
+        verify(accountService).getAccount(USERNAME, false);
+        verify(accountService, never()).authenticateAccount(any(), any());
+    }
+
+    /**
+     * This method tests that a login is refused with service unavailable if the password hashing is saturated
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldRespondServiceBusyIfHashingRejected() throws Exception {
+        Account account = createTestAccount();
+        AuthenticationRequest authenticationRequest = new AuthenticationRequest(USERNAME, PASSWORD, null, null);
+        String json = JSON.convertJSON(authenticationRequest);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put(ERROR, SERVICE_BUSY);
+        String resultJson = JSON.convertJSON(response);
+
+        given(accountService.getAccount(USERNAME, false))
+                .willReturn(account);
+        given(accountService.authenticateAccount(account, PASSWORD))
+                .willThrow(new HashingRejectedException("busy", 5, null));
+
+        mockMvc.perform(post(createApiPath(Endpoint.AUTHENTICATION, "login"))
+                        .contentType(JSON.MEDIA_TYPE)
+                        .content(json))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"))
+                .andExpect(content().json(resultJson));
     }
 
     /**
@@ -396,6 +547,8 @@ public class AuthenticationControllerTest {
 
         verify(accountService).authenticateAccount(account, PASSWORD);
         verify(accountService).getAccount(USERNAME, false);
+        verify(attemptThrottle).recordAccountFailure(USERNAME);
+        verify(attemptThrottle).recordAddressFailure(anyString());
     }
 
     /**
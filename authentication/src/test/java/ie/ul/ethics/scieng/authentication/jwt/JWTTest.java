@@ -0,0 +1,77 @@
+package ie.ul.ethics.scieng.authentication.jwt;
+
+import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
+import ie.ul.ethics.scieng.authentication.exceptions.AuthenticationException;
+import ie.ul.ethics.scieng.authentication.models.Account;
+import ie.ul.ethics.scieng.authentication.models.AuthenticatedAccount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static ie.ul.ethics.scieng.test.utils.constants.Authentication.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides unit tests for the JWT class
+ */
+public class JWTTest {
+    /**
+     * The JWT instance being tested
+     */
+    private JWT jwt;
+
+    /**
+     * Create the JWT instance with a test secret
+     */
+    @BeforeEach
+    public void setup() {
+        AuthenticationConfiguration configuration = new AuthenticationConfiguration();
+        configuration.getJwt().setSecret("ethics-secret-hashing-key-thirty-five-characters-long");
+
+        jwt = new JWT(configuration);
+    }
+
+    /**
+     * Tests that a generated token is verified and the verified account is cached
+     */
+    @Test
+    public void shouldVerifyAndCacheToken() {
+        Account account = new Account(USERNAME, EMAIL, PASSWORD, true);
+        String token = jwt.generateToken(account, 2L);
+
+        AuthenticatedAccount authenticated = jwt.verifyToken(token);
+
+        assertNotNull(authenticated);
+        assertEquals(USERNAME, authenticated.getUsername());
+        assertEquals(token, authenticated.getJwtToken());
+        assertFalse(jwt.isTokenExpired(token));
+        assertSame(authenticated, jwt.verifyToken(token)); // the second verification is served from the cache
+        assertSame(authenticated, jwt.getAuthenticatedAccount(token));
+    }
+
+    /**
+     * Tests that an expired token is not verified
+     */
+    @Test
+    public void shouldNotVerifyExpiredToken() {
+        Account account = new Account(USERNAME, EMAIL, PASSWORD, true);
+        String token = jwt.generateToken(account, -2L);
+
+        assertNull(jwt.verifyToken(token));
+        assertTrue(jwt.isTokenExpired(token));
+        assertThrows(AuthenticationException.class, () -> jwt.getAuthenticatedAccount(token));
+    }
+
+    /**
+     * Tests that an invalid token throws an AuthenticationException
+     */
+    @Test
+    public void shouldThrowIfTokenInvalid() {
+        AuthenticationConfiguration otherConfiguration = new AuthenticationConfiguration();
+        otherConfiguration.getJwt().setSecret("another-secret-hashing-key-thirty-five-characters-long");
+        Account account = new Account(USERNAME, EMAIL, PASSWORD, true);
+        String otherToken = new JWT(otherConfiguration).generateToken(account, 2L);
+
+        assertThrows(AuthenticationException.class, () -> jwt.verifyToken(otherToken));
+        assertThrows(AuthenticationException.class, () -> jwt.verifyToken("not_a_token"));
+    }
+}
@@ -0,0 +1,88 @@
+package ie.ul.ethics.scieng.authentication.security;
+
+import ie.ul.ethics.scieng.authentication.config.AuthenticationConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static ie.ul.ethics.scieng.test.utils.constants.Authentication.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides unit tests for the AttemptThrottle
+ */
+public class AttemptThrottleTest {
+    /**
+     * The address used for testing
+     */
+    private static final String ADDRESS = "127.0.0.1";
+    /**
+     * The throttle being tested
+     */
+    private AttemptThrottle throttle;
+
+    /**
+     * Create the throttle being tested
+     */
+    @BeforeEach
+    public void setup() {
+        AuthenticationConfiguration configuration = new AuthenticationConfiguration();
+        configuration.getThrottle().setAccountAttempts(2);
+        configuration.getThrottle().setBackoff(60);
+        configuration.getThrottle().setMaxBackoff(150);
+        configuration.getThrottle().setAddressAttempts(3);
+        configuration.getThrottle().setWindow(15);
+
+        throttle = new AttemptThrottle(configuration, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Tests that an account backs off once the failed attempt limit is reached, doubling with each further failure up to
+     * the maximum
+     */
+    @Test
+    public void shouldBackOffAccountAfterFailures() {
+        assertEquals(0, throttle.accountRetryAfter(USERNAME));
+
+        throttle.recordAccountFailure(USERNAME);
+        assertEquals(0, throttle.accountRetryAfter(USERNAME));
+
+        throttle.recordAccountFailure(USERNAME);
+        long retryAfter = throttle.accountRetryAfter(USERNAME);
+        assertTrue(retryAfter > 55 && retryAfter <= 60);
+
+        throttle.recordAccountFailure(USERNAME);
+        retryAfter = throttle.accountRetryAfter(USERNAME);
+        assertTrue(retryAfter > 115 && retryAfter <= 120);
+
+        throttle.recordAccountFailure(USERNAME);
+        retryAfter = throttle.accountRetryAfter(USERNAME);
+        assertTrue(retryAfter > 145 && retryAfter <= 150);
+    }
+
+    /**
+     * Tests that a successful login resets the failed attempts on the account
+     */
+    @Test
+    public void shouldResetAccount() {
+        throttle.recordAccountFailure(USERNAME);
+        throttle.recordAccountFailure(USERNAME);
+        throttle.reset(USERNAME);
+
+        assertEquals(0, throttle.accountRetryAfter(USERNAME));
+    }
+
+    /**
+     * Tests that an address is throttled once the failed attempt limit is reached
+     */
+    @Test
+    public void shouldThrottleAddress() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, throttle.addressRetryAfter(ADDRESS));
+            throttle.recordAddressFailure(ADDRESS);
+        }
+
+        assertTrue(throttle.addressRetryAfter(ADDRESS) > 0);
+        assertEquals(0, throttle.addressRetryAfter("127.0.0.2"));
+    }
+}
@@ -0,0 +1,126 @@
+package ie.ul.ethics.scieng.authentication.security;
+
+import ie.ul.ethics.scieng.authentication.exceptions.HashingRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides unit tests for the BoundedPasswordEncoder
+ */
+public class BoundedPasswordEncoderTest {
+    /**
+     * The encoder being tested
+     */
+    private BoundedPasswordEncoder encoder;
+    /**
+     * The executor used to submit concurrent hashing requests
+     */
+    private ExecutorService callers;
+    /**
+     * The registry the encoder records its metrics in
+     */
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Shut down the encoder and callers after each test
+     */
+    @AfterEach
+    public void shutdown() {
+        if (encoder != null)
+            encoder.shutdown();
+
+        if (callers != null)
+            callers.shutdownNow();
+    }
+
+    /**
+     * Create a delegate encoder that blocks until the latch is released
+     * @param started counted down when a hashing operation starts
+     * @param release the latch to wait on before hashing completes
+     * @return the delegate encoder
+     */
+    private static PasswordEncoder blockingEncoder(CountDownLatch started, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return "encoded-" + rawPassword;
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encode(rawPassword).equals(encodedPassword);
+            }
+        };
+    }
+
+    /**
+     * Tests that the encoder delegates encoding and matching
+     */
+    @Test
+    public void shouldDelegateHashing() {
+        CountDownLatch released = new CountDownLatch(0);
+        encoder = new BoundedPasswordEncoder(blockingEncoder(new CountDownLatch(1), released), 1, 1, 1000, 5, meterRegistry);
+
+        assertEquals("encoded-password", encoder.encode("password"));
+        assertTrue(encoder.matches("password", "encoded-password"));
+        assertFalse(encoder.matches("other", "encoded-password"));
+        assertEquals(1, meterRegistry.get(BoundedPasswordEncoder.HASH_TIMER).tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get(BoundedPasswordEncoder.HASH_TIMER).tag("operation", "matches").timer().count());
+    }
+
+    /**
+     * Tests that hashing requests are rejected once the executor and its queue are full
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void shouldRejectWhenSaturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(blockingEncoder(started, release), 1, 1, 10000, 5, meterRegistry);
+        callers = Executors.newFixedThreadPool(2);
+
+        callers.submit(() -> encoder.encode("first"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        callers.submit(() -> encoder.encode("second"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (encoder.getQueued() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        HashingRejectedException ex = assertThrows(HashingRejectedException.class, () -> encoder.encode("third"));
+        assertEquals(5, ex.getRetryAfter());
+        assertEquals(1, meterRegistry.get(BoundedPasswordEncoder.REJECTED_COUNTER).counter().count());
+
+        release.countDown();
+    }
+
+    /**
+     * Tests that a hashing request that does not complete in time is rejected
+     */
+    @Test
+    public void shouldRejectOnTimeout() {
+        CountDownLatch release = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(blockingEncoder(new CountDownLatch(1), release), 1, 1, 50, 5, meterRegistry);
+
+        assertThrows(HashingRejectedException.class, () -> encoder.encode("password"));
+
+        release.countDown();
+    }
+}
@@ -1,22 +1,27 @@
 package ie.ul.ethics.scieng.authentication.services;
 
+import ie.ul.ethics.scieng.authentication.cache.AccountSnapshotCache;
 import ie.ul.ethics.scieng.authentication.exceptions.EmailExistsException;
 import ie.ul.ethics.scieng.authentication.exceptions.IllegalUpdateException;
 import ie.ul.ethics.scieng.authentication.exceptions.UsernameExistsException;
 import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.models.ConfirmationToken;
+import ie.ul.ethics.scieng.authentication.models.RefreshToken;
 import ie.ul.ethics.scieng.authentication.models.ResetPasswordToken;
 import ie.ul.ethics.scieng.authentication.repositories.AccountRepository;
 import ie.ul.ethics.scieng.authentication.repositories.ConfirmationTokenRepository;
+import ie.ul.ethics.scieng.authentication.repositories.RefreshTokenRepository;
 import ie.ul.ethics.scieng.authentication.repositories.ResetPasswordTokenRepository;
 import ie.ul.ethics.scieng.authentication.test.config.TestConfiguration;
 import ie.ul.ethics.scieng.test.utils.TestApplication;
 import static ie.ul.ethics.scieng.test.utils.constants.Authentication.*;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -24,6 +29,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -60,6 +67,16 @@ public class AccountServiceTest {
      */
     @MockBean
     private PasswordEncoder passwordEncoder;
+    /**
+     * The mocked account snapshot cache
+     */
+    @MockBean
+    private AccountSnapshotCache accountCache;
+    /**
+     * The mocked refresh token repository
+     */
+    @MockBean
+    private RefreshTokenRepository refreshTokenRepository;
     /**
      * The account service being tested
      */
@@ -171,6 +188,7 @@ public class AccountServiceTest {
         Account account = createTestAccount();
         accountService.deleteAccount(account); // can only test that no error occurs in deleteAccount since it is just a delegate
         verify(accountRepository).delete(account);
+        verify(accountCache).invalidate(USERNAME);
     }
 
     /**
@@ -208,6 +226,7 @@ public class AccountServiceTest {
         verify(accountRepository).findByUsername(USERNAME);
         verify(accountRepository).findByEmail(EMAIL);
         verify(passwordEncoder).encode(PASSWORD);
+        verify(accountCache).invalidate(USERNAME);
     }
 
     /**
@@ -357,6 +376,7 @@ public class AccountServiceTest {
         assertTrue(confirmed);
         assertTrue(account.isConfirmed());
         verify(accountRepository).save(account);
+        verify(accountCache).invalidate(USERNAME);
     }
 
     /**
@@ -474,5 +494,135 @@ public class AccountServiceTest {
         assertEquals(encrypted, account.getPassword());
         verify(resetTokenRespository).deleteById(USERNAME);
         verify(accountRepository).save(account);
+        verify(refreshTokenRepository).deleteByUsername(USERNAME);
+        verify(accountCache).invalidate(USERNAME);
+    }
+
+    /**
+     * Tests that a refresh token is issued with only its hash stored
+     */
+    @Test
+    public void shouldCreateRefreshToken() {
+        Account account = createTestAccount();
+
+        String token = accountService.createRefreshToken(account);
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        RefreshToken saved = captor.getValue();
+
+        assertNotNull(token);
+        assertNotEquals(token, saved.getTokenHash());
+        assertEquals(64, saved.getTokenHash().length());
+        assertEquals(USERNAME, saved.getUsername());
+        assertFalse(saved.isExpired());
+    }
+
+    /**
+     * Tests that a valid refresh token is consumed and the account returned
+     */
+    @Test
+    public void shouldConsumeRefreshToken() {
+        Account account = createTestAccount();
+        String token = accountService.createRefreshToken(account);
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        RefreshToken saved = captor.getValue();
+        String hash = saved.getTokenHash();
+
+        given(refreshTokenRepository.findById(hash))
+                .willReturn(Optional.of(saved));
+        given(refreshTokenRepository.deleteByTokenHash(hash))
+                .willReturn(1);
+        given(accountRepository.findByUsername(USERNAME))
+                .willReturn(Optional.of(account));
+
+        assertEquals(account, accountService.consumeRefreshToken(token));
+        verify(refreshTokenRepository).deleteByTokenHash(hash);
+        verifyNoInteractions(passwordEncoder);
+    }
+
+    /**
+     * Tests that a refresh token that was already consumed or is expired is rejected
+     */
+    @Test
+    public void shouldNotConsumeInvalidRefreshToken() {
+        Account account = createTestAccount();
+        String token = accountService.createRefreshToken(account);
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        RefreshToken saved = captor.getValue();
+        String hash = saved.getTokenHash();
+
+        given(refreshTokenRepository.findById(hash))
+                .willReturn(Optional.of(saved));
+        given(refreshTokenRepository.deleteByTokenHash(hash))
+                .willReturn(0);
+
+        assertNull(accountService.consumeRefreshToken(token));
+
+        saved.setExpiry(LocalDateTime.now().minusDays(1));
+        given(refreshTokenRepository.deleteByTokenHash(hash))
+                .willReturn(1);
+
+        assertNull(accountService.consumeRefreshToken(token));
+        assertNull(accountService.consumeRefreshToken("unknown"));
+    }
+
+    /**
+     * Tests that expired reset tokens are purged with a set-based delete
+     */
+    @Test
+    public void shouldPurgeExpiredResetTokens() {
+        List<String> usernames = List.of(USERNAME);
+
+        given(resetTokenRespository.findUsernamesExpiredBefore(any(LocalDateTime.class), any(Pageable.class)))
+                .willReturn(usernames);
+        given(resetTokenRespository.deleteByUsernameIn(usernames))
+                .willReturn(1);
+
+        ((AccountServiceImpl) accountService).purgeExpiredResetTokens();
+
+        verify(resetTokenRespository).deleteByUsernameIn(usernames);
+        verify(resetTokenRespository, never()).findAll();
+    }
+
+    /**
+     * Tests that unconfirmed accounts and their tokens are purged with set-based deletes
+     */
+    @Test
+    public void shouldPurgeUnconfirmedAccounts() {
+        List<String> emails = List.of(EMAIL, "confirmed@email.com");
+        List<String> usernames = List.of(USERNAME);
+
+        given(tokenRepository.findEmailsCreatedBefore(any(LocalDateTime.class), any(Pageable.class)))
+                .willReturn(emails);
+        given(accountRepository.findUnconfirmedUsernamesByEmailIn(emails))
+                .willReturn(usernames);
+        given(accountRepository.deleteByUsernameIn(usernames))
+                .willReturn(1);
+
+        ((AccountServiceImpl) accountService).purgeUnconfirmedAccounts();
+
+        verify(accountRepository).deleteByUsernameIn(usernames);
+        verify(tokenRepository).deleteByEmailIn(emails);
+        verify(accountCache).invalidate(USERNAME);
+        verify(accountRepository, never()).delete(any());
+    }
+
+    /**
+     * Tests that nothing is deleted if there are no unconfirmed accounts to purge
+     */
+    @Test
+    public void shouldNotPurgeIfNoUnconfirmedAccounts() {
+        given(tokenRepository.findEmailsCreatedBefore(any(LocalDateTime.class), any(Pageable.class)))
+                .willReturn(Collections.emptyList());
+
+        ((AccountServiceImpl) accountService).purgeUnconfirmedAccounts();
+
+        verify(accountRepository, never()).deleteByUsernameIn(any());
+        verify(tokenRepository, never()).deleteByEmailIn(any());
     }
 }
@@ -82,6 +82,11 @@ public final class Constants {
      */
     public static final String ROLE_NOT_FOUND = "role_not_found";
 
+    /**
+     * An error message for when a role that can only be held by one user is assigned to more than one user
+     */
+    public static final String ROLE_SINGLE_USER = "role_single_user";
+
     /**
      * An error message for when file upload/download fails
      */
@@ -102,6 +107,26 @@ public final class Constants {
      */
     public static final String FILE_PERMISSION_DENIED = "file_permission_denied";
 
+    /**
+     * An error thrown when a resumable upload is larger than the maximum size
+     */
+    public static final String UPLOAD_TOO_LARGE = "upload_too_large";
+
+    /**
+     * An error thrown when a chunk of a resumable upload is outside the upload or is not the expected size
+     */
+    public static final String UPLOAD_INVALID_CHUNK = "upload_invalid_chunk";
+
+    /**
+     * An error thrown when the checksum of a chunk of a resumable upload is missing or does not match its content
+     */
+    public static final String UPLOAD_CHECKSUM_MISMATCH = "upload_checksum_mismatch";
+
+    /**
+     * An error thrown when a resumable upload is completed before all of its chunks have been received
+     */
+    public static final String UPLOAD_INCOMPLETE = "upload_incomplete";
+
     /**
      * The message for when an application is updated
      */
@@ -127,6 +152,31 @@ public final class Constants {
      */
     public static final String EXPORT_FAILED = "export_failed";
 
+    /**
+     * The message for when the properties have been reloaded
+     */
+    public static final String PROPERTIES_RELOADED = "properties_reloaded";
+
+    /**
+     * The error for when too many attempts have been made and the client needs to wait before trying again
+     */
+    public static final String TOO_MANY_ATTEMPTS = "too_many_attempts";
+
+    /**
+     * The error for when the server is too busy to handle the request and the client needs to retry later
+     */
+    public static final String SERVICE_BUSY = "service_busy";
+
+    /**
+     * The error for when a refresh token does not exist, was already used or has expired
+     */
+    public static final String INVALID_REFRESH_TOKEN = "invalid_refresh_token";
+
+    /**
+     * The error for when a list is requested to be sorted by a field that cannot be sorted on
+     */
+    public static final String INVALID_SORT = "invalid_sort";
+
     /**
      * This enum provides endpoint constants identifying the endpoints.
      * The endpoint name as seen in the /api/<endpoint> URL can be gotten by Endpoints.endpoint()
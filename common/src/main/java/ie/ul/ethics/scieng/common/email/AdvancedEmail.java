@@ -6,8 +6,6 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
 import javax.activation.DataHandler;
-import javax.activation.DataSource;
-import javax.activation.FileDataSource;
 import javax.activation.URLDataSource;
 import javax.mail.BodyPart;
 import javax.mail.Message;
@@ -18,8 +16,10 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +28,57 @@ import java.util.List;
  * but contains nested images also
  */
 public class AdvancedEmail {
+    /**
+     * The header HTML containing the committee title and UL logo
+     */
+    private static final String HEADER_HTML = "<table width=\"100%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">" +
+            "<tr>" +
+            "<td align=\"center\">" +
+            "<h2>University of Limerick Faculty of Science and Engineering Research Ethics Committee</h2>" +
+            "</td>" +
+            "</tr>" +
+            "<tr>" +
+            "<td align=\"center\">" +
+            "<img src=\"cid:ul-logo\">" +
+            "</td>" +
+            "</tr>" +
+            "</table>";
+    /**
+     * The template for the footer HTML
+     */
+    private static final EmailTemplate FOOTER_TEMPLATE = EmailTemplate.compile("<br>" +
+            "<p>Thank You,<p>" +
+            "<p>The Committee</p>" +
+            "<br><hr>" +
+            "<table width=\"100%%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">" +
+            "<tr>" +
+            "<td align=\"center\" style=\"color: gray;\">" +
+            "%s" +
+            "</td>" +
+            "</tr>" +
+            "</table>");
+    /**
+     * The template for the contact content of the footer
+     */
+    private static final EmailTemplate CONTACT_TEMPLATE = EmailTemplate.compile("<p>Please do not reply to this e-mail. " +
+            "Should you have the need to contact the committee, please contact <a href=\"mailto:%s\">%s</a></p>");
+    /**
+     * The classpath resource of the UL logo
+     */
+    private static final String LOGO_RESOURCE = "ul-logo.jpg";
+    /**
+     * The cached footer HTML, null until first rendered
+     */
+    private static volatile String footerHTML;
+    /**
+     * The cached data handler for the UL logo, null until first loaded
+     */
+    private static volatile DataHandler logo;
+
+    static {
+        PropertyFinder.addReloadListener(() -> footerHTML = null); // the footer contains the contact property
+    }
+
     /**
      * The message representing the email
      */
@@ -158,61 +209,69 @@ public class AdvancedEmail {
      * @throws EmailException if an error occurs
      */
     public AdvancedEmail attachImage(String imageID, Resource image) {
+        try {
+            return attachImage(imageID, new DataHandler(new URLDataSource(image.getURL())));
+        } catch (IOException ex) {
+            throw new EmailException("Failed to attach image", ex);
+        }
+    }
+
+    /**
+     * Add the image to the e-mail from the provided data handler. A new body part is created on each call since a part
+     * can only belong to one message, but the data handler can be shared
+     * @param imageID the ID mentioned in the html content as <img src="cid:imageID">
+     * @param image the handler for the image data
+     * @return instance of this for chaining
+     * @throws EmailException if an error occurs
+     */
+    private AdvancedEmail attachImage(String imageID, DataHandler image) {
         try {
             BodyPart bodyPart = new MimeBodyPart();
-            DataSource fds = new URLDataSource(image.getURL());
-            bodyPart.setDataHandler(new DataHandler(fds));
+            bodyPart.setDataHandler(image);
             bodyPart.setHeader("Content-ID", "<" + imageID + ">");
             bodyPart.setFileName(imageID);
             bodyParts.add(bodyPart);
 
             return this;
-        } catch (MessagingException | IOException ex) {
+        } catch (MessagingException ex) {
             throw new EmailException("Failed to attach image", ex);
         }
     }
 
     /**
-     * Get the header HTML
-     * @return header html containing title and UL logo
+     * Get the footer HTML. The footer is rendered once with the contact e-mail and cached
+     * @return the footer HTML
      */
-    private String getHeaderHTML() {
-        return "<table width=\"100%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">" +
-                "<tr>" +
-                "<td align=\"center\">" +
-                "<h2>University of Limerick Faculty of Science and Engineering Research Ethics Committee</h2>" +
-                "</td>" +
-                "</tr>" +
-                "<tr>" +
-                "<td align=\"center\">" +
-                "<img src=\"cid:ul-logo\">" +
-                "</td>" +
-                "</tr>" +
-                "</table>";
+    private static String getFooterHTML() {
+        String footer = footerHTML;
+
+        if (footer == null) {
+            String contactEmail = PropertyFinder.findProperty("ETHICS_EMAIL_CONTACT", "email.contact");
+            footer = FOOTER_TEMPLATE.render(CONTACT_TEMPLATE.render(contactEmail, contactEmail));
+            footerHTML = footer;
+        }
+
+        return footer;
     }
 
     /**
-     * Get the HTML for the footer
-     * @return the footer HTML
+     * Get the data handler for the UL logo. The logo is read from the classpath once and the bytes kept in memory
+     * @return the logo data handler
+     * @throws EmailException if the logo cannot be read
      */
-    private String getFooterHTML() {
-        String footer = "<br>" +
-                "<p>Thank You,<p>" +
-                "<p>The Committee</p>" +
-                "<br><hr>" +
-                "<table width=\"100%%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">" +
-                "<tr>" +
-                "<td align=\"center\" style=\"color: gray;\">" +
-                "%s" +
-                "</td>" +
-                "</tr>" +
-                "</table>";
-
-        String contactEmail = PropertyFinder.findProperty("ETHICS_EMAIL_CONTACT", "email.contact");
-        String footerContent = String.format("<p>Please do not reply to this e-mail. Should you have the need to contact" +
-                " the committee, please contact <a href=\"mailto:%s\">%s</a></p>", contactEmail, contactEmail);
-
-        return String.format(footer, footerContent);
+    private static DataHandler getLogo() {
+        DataHandler handler = logo;
+
+        if (handler == null) {
+            try (InputStream inputStream = new ClassPathResource(LOGO_RESOURCE).getInputStream()) {
+                handler = new DataHandler(new ByteArrayDataSource(inputStream, "image/jpeg"));
+                logo = handler;
+            } catch (IOException ex) {
+                throw new EmailException("Failed to load the logo", ex);
+            }
+        }
+
+        return handler;
     }
 
     /**
@@ -224,10 +283,8 @@ public class AdvancedEmail {
         String content = this.htmlContent;
 
         if (this.addULHeader) {
-            content = getHeaderHTML() + content;
-
-            Resource resource = new ClassPathResource("ul-logo.jpg");
-            attachImage("ul-logo", resource);
+            content = HEADER_HTML + content;
+            attachImage("ul-logo", getLogo());
         }
 
         if (this.addFooter)
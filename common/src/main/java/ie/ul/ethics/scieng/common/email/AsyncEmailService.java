@@ -4,6 +4,7 @@ import ie.ul.ethics.scieng.common.email.exceptions.EmailException;
 import ie.ul.ethics.scieng.common.properties.PropertyFinder;
 
 import java.io.File;
+import java.time.format.DateTimeFormatter;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -11,17 +12,47 @@ import java.util.concurrent.Executors;
  * This is a base class which implements sendEmail as an asynchronous email sender. Can be extended by domain specific implementations
  */
 public abstract class AsyncEmailService implements EmailService {
+    /**
+     * The formatter used for timestamps displayed in emails
+     */
+    protected static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
     /**
      * The email sender object to send the emails
      */
     private final EmailSender sender;
+    /**
+     * The executor the emails are handed to the sender on. Threads are reused so that concurrent emails are queued onto
+     * the sender's pooled connections rather than each creating a new executor
+     */
+    private final ExecutorService executorService;
+    /**
+     * The digest notifications can be queued on, null if the service does not support digests
+     */
+    private final EmailDigest digest;
 
     /**
      * Instantiate the email service
      * @param sender the object to use for sending emails
      */
     protected AsyncEmailService(EmailSender sender) {
+        this(sender, null);
+    }
+
+    /**
+     * Instantiate the email service with support for digests
+     * @param sender the object to use for sending emails
+     * @param digest the digest notifications can be queued on
+     */
+    protected AsyncEmailService(EmailSender sender, EmailDigest digest) {
         this.sender = sender;
+        this.digest = digest;
+        this.executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "async-email");
+            thread.setDaemon(true);
+
+            return thread;
+        });
     }
 
     /**
@@ -34,8 +65,6 @@ public abstract class AsyncEmailService implements EmailService {
      */
     @Override
     public void sendEmail(String to, String subject, String email, File... attachments) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-
         executorService.submit(() -> {
             try {
                 sender.sendEmail(to, subject, email, attachments);
@@ -45,6 +74,22 @@ public abstract class AsyncEmailService implements EmailService {
         });
     }
 
+    /**
+     * Send the email to the specified recipient, or queue it on the recipient's digest if they prefer digest delivery.
+     * If this service was not created with a digest, the email is sent immediately
+     *
+     * @param to          the email address of the recipient
+     * @param subject     the subject to add to the email
+     * @param email       the email to send
+     * @param digested    true to queue the email on the recipient's digest, false to send it immediately
+     */
+    protected void sendEmail(String to, String subject, String email, boolean digested) {
+        if (digested && digest != null)
+            digest.add(to, subject, email);
+        else
+            sendEmail(to, subject, email);
+    }
+
     /**
      * Get the sender being used to send the emails
      *
@@ -62,8 +107,6 @@ public abstract class AsyncEmailService implements EmailService {
      */
     @Override
     public void sendEmail(AdvancedEmail advancedEmail) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-
         executorService.submit(() -> {
             try {
                 EmailService.super.sendEmail(advancedEmail);
@@ -21,6 +21,10 @@ public class DefaultEmailSender implements EmailSender {
      * The java mail session
      */
     private final Session session;
+    /**
+     * The pool of SMTP connections used to send the emails
+     */
+    private final TransportPool transportPool;
 
     /**
      * Create a DefaultEmailSender with the provided properties
@@ -46,6 +50,9 @@ public class DefaultEmailSender implements EmailSender {
         session.setDebug(configurationProperties.isDebug());
 
         this.session = session;
+
+        EmailConfigurationProperties.Pool pool = configurationProperties.getPool();
+        this.transportPool = new TransportPool(session, pool.getSize(), pool.getIdleTimeout() * 1000, pool.getBatchSize());
     }
 
     /**
@@ -79,13 +86,7 @@ public class DefaultEmailSender implements EmailSender {
      */
     @Override
     public void sendEmail(AdvancedEmail advancedEmail) throws EmailException {
-        Message message = advancedEmail.buildMessage();
-
-        try {
-            Transport.send(message);
-        } catch (MessagingException ex) {
-            throw new EmailException("An error occurred sending email", ex);
-        }
+        transportPool.send(advancedEmail.buildMessage());
     }
 
     /**
@@ -97,4 +98,11 @@ public class DefaultEmailSender implements EmailSender {
     public AdvancedEmail createAdvancedEmail() {
         return new AdvancedEmail(session);
     }
+
+    /**
+     * Shuts down the sender, closing the pooled SMTP connections. Called by Spring when the bean is destroyed
+     */
+    public void shutdown() {
+        transportPool.shutdown();
+    }
 }
@@ -0,0 +1,182 @@
+package ie.ul.ethics.scieng.common.email;
+
+import ie.ul.ethics.scieng.common.email.config.EmailConfigurationProperties;
+import ie.ul.ethics.scieng.common.email.exceptions.EmailException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class queues notifications per recipient and coalesces them into a single digest email once the first queued
+ * notification for a recipient is older than the configured digest window
+ */
+@Component
+@Log4j2
+public class EmailDigest {
+    /**
+     * The template for the body of the digest email
+     */
+    private static final EmailTemplate DIGEST_TEMPLATE = EmailTemplate.compile("<h2>Notification Digest</h2>"
+            + "<p>You have received %d notifications since %s. Each of them is included below</p>"
+            + "%s");
+    /**
+     * The template for a notification included in the digest
+     */
+    private static final EmailTemplate ENTRY_TEMPLATE = EmailTemplate.compile("<hr>"
+            + "<h3>%s</h3>"
+            + "%s");
+
+    /**
+     * The sender used to send the digests
+     */
+    private final EmailSender sender;
+    /**
+     * The amount of time notifications are held for before being sent in a digest
+     */
+    private final Duration window;
+    /**
+     * The pending digests keyed by recipient email address
+     */
+    private final Map<String, PendingDigest> pending;
+
+    /**
+     * Create the email digest
+     * @param sender the sender used to send the digests
+     * @param configurationProperties the properties configuring email
+     */
+    public EmailDigest(EmailSender sender, EmailConfigurationProperties configurationProperties) {
+        this.sender = sender;
+        this.window = Duration.ofMinutes(configurationProperties.getDigest().getWindow());
+        this.pending = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Queue the notification for the recipient's next digest
+     * @param to the email address of the recipient
+     * @param subject the subject of the notification
+     * @param content the HTML content of the notification
+     */
+    public void add(String to, String subject, String content) {
+        pending.compute(to, (recipient, digest) -> {
+            if (digest == null)
+                digest = new PendingDigest();
+
+            digest.notifications.add(new Notification(subject, content));
+
+            return digest;
+        });
+    }
+
+    /**
+     * Get the number of recipients with notifications waiting to be sent
+     * @return the number of pending digests
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Send the digests of any recipients whose first queued notification has waited for longer than the window
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void flushDue() {
+        flush(false);
+    }
+
+    /**
+     * Send all pending digests regardless of the window. Called on shutdown so queued notifications are not lost
+     */
+    @PreDestroy
+    public void flushAll() {
+        flush(true);
+    }
+
+    /**
+     * Send the pending digests
+     * @param all true to send all the digests, false to only send those that have exceeded the window
+     */
+    private void flush(boolean all) {
+        LocalDateTime threshold = LocalDateTime.now().minus(window);
+
+        for (Map.Entry<String, PendingDigest> entry : pending.entrySet()) {
+            String recipient = entry.getKey();
+            PendingDigest digest = entry.getValue();
+
+            if ((all || !digest.started.isAfter(threshold)) && pending.remove(recipient, digest))
+                send(recipient, digest);
+        }
+    }
+
+    /**
+     * Send the digest to the recipient. A digest of a single notification is sent as that notification
+     * @param recipient the recipient of the digest
+     * @param digest the digest to send
+     */
+    private void send(String recipient, PendingDigest digest) {
+        List<Notification> notifications = digest.notifications;
+
+        try {
+            if (notifications.size() == 1) {
+                Notification notification = notifications.get(0);
+                sender.sendEmail(recipient, notification.subject, notification.content);
+            } else {
+                StringBuilder entries = new StringBuilder();
+
+                for (Notification notification : notifications)
+                    entries.append(ENTRY_TEMPLATE.render(notification.subject, notification.content));
+
+                String started = digest.started.format(AsyncEmailService.DATE_TIME_FORMATTER);
+                String content = DIGEST_TEMPLATE.render(notifications.size(), started, entries);
+                sender.sendEmail(recipient, "Notification Digest - " + notifications.size() + " notifications since " + started, content);
+            }
+        } catch (EmailException ex) {
+            log.error("Failed to send notification digest to {}", recipient, ex);
+        }
+    }
+
+    /**
+     * The notifications queued for a recipient
+     */
+    private static class PendingDigest {
+        /**
+         * The time the first notification was queued
+         */
+        private final LocalDateTime started = LocalDateTime.now();
+        /**
+         * The queued notifications
+         */
+        private final List<Notification> notifications = new ArrayList<>();
+    }
+
+    /**
+     * A single notification in a digest
+     */
+    private static class Notification {
+        /**
+         * The subject of the notification
+         */
+        private final String subject;
+        /**
+         * The HTML content of the notification
+         */
+        private final String content;
+
+        /**
+         * Create a notification
+         * @param subject the subject of the notification
+         * @param content the HTML content of the notification
+         */
+        private Notification(String subject, String content) {
+            this.subject = subject;
+            this.content = content;
+        }
+    }
+}
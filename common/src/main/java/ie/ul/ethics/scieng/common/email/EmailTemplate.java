@@ -0,0 +1,101 @@
+package ie.ul.ethics.scieng.common.email;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents an email template compiled once so that rendering it does not re-parse the template on every send
+ * the way String.format does. A template is text with positional placeholders: %s and %d are replaced by the next argument
+ * and %% is a literal percent sign
+ */
+public final class EmailTemplate {
+    /**
+     * The literal text segments of the template. There is one more segment than there are placeholders
+     */
+    private final String[] segments;
+    /**
+     * The combined length of the literal segments, used to size the rendered output
+     */
+    private final int literalLength;
+
+    /**
+     * Create the template from its parsed segments
+     * @param segments the literal segments between the placeholders
+     */
+    private EmailTemplate(String[] segments) {
+        this.segments = segments;
+
+        int length = 0;
+        for (String segment : segments)
+            length += segment.length();
+
+        this.literalLength = length;
+    }
+
+    /**
+     * Compile the provided template
+     * @param template the template text containing the placeholders
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template contains an unsupported placeholder
+     */
+    public static EmailTemplate compile(String template) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = template.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = template.charAt(i);
+
+            if (c == '%') {
+                if (i + 1 >= length)
+                    throw new IllegalArgumentException("Template ends with an incomplete placeholder");
+
+                char specifier = template.charAt(++i);
+
+                if (specifier == '%') {
+                    current.append('%');
+                } else if (specifier == 's' || specifier == 'd') {
+                    segments.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    throw new IllegalArgumentException("Unsupported template placeholder %" + specifier);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+
+        segments.add(current.toString());
+
+        return new EmailTemplate(segments.toArray(new String[0]));
+    }
+
+    /**
+     * Get the number of arguments the template expects
+     * @return the number of placeholders in the template
+     */
+    public int getArgumentCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Render the template, replacing each placeholder with the next argument
+     * @param args the arguments to substitute into the template
+     * @return the rendered text
+     * @throws IllegalArgumentException if the number of arguments does not match the number of placeholders
+     */
+    public String render(Object...args) {
+        if (args.length != getArgumentCount())
+            throw new IllegalArgumentException("Template expects " + getArgumentCount() + " arguments but received " + args.length);
+
+        StringBuilder builder = new StringBuilder(literalLength + args.length * 16);
+        builder.append(segments[0]);
+
+        for (int i = 0; i < args.length; i++) {
+            builder.append(args[i]);
+            builder.append(segments[i + 1]);
+        }
+
+        return builder.toString();
+    }
+}
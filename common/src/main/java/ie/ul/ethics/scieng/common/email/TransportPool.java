@@ -0,0 +1,307 @@
+package ie.ul.ethics.scieng.common.email;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPTransport;
+import ie.ul.ethics.scieng.common.email.exceptions.EmailException;
+import lombok.extern.log4j.Log4j2;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides a bounded pool of long-lived SMTP connections. Messages are queued and each worker in the pool owns
+ * one connection, draining the queue in batches so that many messages are sent over a single authenticated connection rather
+ * than connecting and authenticating once per message. A connection is closed after it has been idle for the configured
+ * timeout and is re-opened on demand. A connection that fails before the message content is sent is re-opened and
+ * the message retried once; once the server has accepted the DATA command the message is never retried, since the
+ * server may already have queued it and retrying could deliver it twice
+ */
+@Log4j2
+public class TransportPool {
+    /**
+     * The mail session used to create transports
+     */
+    private final Session session;
+    /**
+     * The maximum number of messages sent over a connection in one batch
+     */
+    private final int batchSize;
+    /**
+     * The number of milliseconds a connection may remain idle before it is closed. A value <= 0 keeps connections open
+     */
+    private final long idleTimeout;
+    /**
+     * The queue of messages waiting to be sent
+     */
+    private final BlockingQueue<QueuedMessage> queue;
+    /**
+     * The executor running the pool workers
+     */
+    private final ExecutorService workers;
+    /**
+     * Determines if the pool has been shut down
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Create a TransportPool
+     * @param session the mail session to create the transports with
+     * @param size the number of connections (and workers) in the pool
+     * @param idleTimeout the number of milliseconds a connection can be idle before being closed, <= 0 to never close idle connections
+     * @param batchSize the maximum number of messages to send over a connection in one batch
+     */
+    public TransportPool(Session session, int size, long idleTimeout, int batchSize) {
+        if (size < 1)
+            throw new IllegalArgumentException("The size of the transport pool must be at least 1");
+
+        if (batchSize < 1)
+            throw new IllegalArgumentException("The batch size of the transport pool must be at least 1");
+
+        this.session = session;
+        this.batchSize = batchSize;
+        this.idleTimeout = idleTimeout;
+        this.queue = new LinkedBlockingQueue<>();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "smtp-transport-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        for (int i = 0; i < size; i++)
+            this.workers.submit(new Worker());
+    }
+
+    /**
+     * Queue the message to be sent by the pool
+     * @param message the message to send
+     * @return the future that is completed when the message is sent, or completed exceptionally with an EmailException
+     * if sending failed
+     */
+    public CompletableFuture<Void> submit(Message message) {
+        if (shutdown)
+            throw new EmailException("The SMTP transport pool has been shut down", null);
+
+        QueuedMessage queued = new QueuedMessage(message);
+        queue.add(queued);
+
+        return queued.future;
+    }
+
+    /**
+     * Send the message using the pool, blocking until it has been sent
+     * @param message the message to send
+     * @throws EmailException if the message fails to send
+     */
+    public void send(Message message) throws EmailException {
+        try {
+            submit(message).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EmailException("Interrupted while waiting for the email to be sent", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof EmailException)
+                throw (EmailException) cause;
+            else
+                throw new EmailException("An error occurred sending email", cause);
+        }
+    }
+
+    /**
+     * Shut down the pool, closing any open connections. Messages still queued are failed
+     */
+    public void shutdown() {
+        shutdown = true;
+        workers.shutdownNow();
+
+        List<QueuedMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(queued -> queued.future.completeExceptionally(
+                new EmailException("The SMTP transport pool was shut down before the email was sent", null)));
+    }
+
+    /**
+     * A message waiting in the queue with the future to complete once it is sent
+     */
+    private static class QueuedMessage {
+        /**
+         * The message to send
+         */
+        private final Message message;
+        /**
+         * The future completed with the outcome of sending
+         */
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * Create a QueuedMessage
+         * @param message the message to send
+         */
+        private QueuedMessage(Message message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * A worker owning a single connection which sends queued messages in batches
+     */
+    private class Worker implements Runnable {
+        /**
+         * The connection owned by this worker, null if not connected
+         */
+        private Transport transport;
+
+        /**
+         * Take batches of messages off the queue and send them until the pool is shut down
+         */
+        @Override
+        public void run() {
+            List<QueuedMessage> batch = new ArrayList<>(batchSize);
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    QueuedMessage first = (idleTimeout > 0) ? queue.poll(idleTimeout, TimeUnit.MILLISECONDS) : queue.take();
+
+                    if (first == null) {
+                        close(); // the connection has been idle for the timeout
+                    } else {
+                        batch.add(first);
+                        queue.drainTo(batch, batchSize - 1);
+                        sendBatch(batch);
+                        batch.clear();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Send the batch of messages over this worker's connection, completing each message's future
+         * @param batch the batch of messages to send
+         */
+        private void sendBatch(List<QueuedMessage> batch) {
+            for (QueuedMessage queued : batch) {
+                try {
+                    deliver(queued.message);
+                    queued.future.complete(null);
+                } catch (MessagingException | RuntimeException ex) {
+                    queued.future.completeExceptionally(new EmailException("An error occurred sending email", ex));
+                }
+            }
+        }
+
+        /**
+         * Deliver the message over the connection. If the connection fails before the message content is sent, it is
+         * re-opened and the send retried once
+         * @param message the message to deliver
+         * @throws MessagingException if the message cannot be sent
+         */
+        private void deliver(Message message) throws MessagingException {
+            message.saveChanges();
+            Address[] recipients = message.getAllRecipients();
+            Transport connection = connect();
+
+            try {
+                connection.sendMessage(message, recipients);
+            } catch (MessagingException | IllegalStateException ex) {
+                if (isRejected(ex, connection))
+                    throw ex; // the server rejected the recipients but the connection is still usable
+
+                close();
+
+                if (isDataSent(ex, connection))
+                    throw ex; // the server may have accepted the message, so a retry could deliver it twice
+
+                log.warn("SMTP connection failed while sending email, reconnecting and retrying", ex);
+                connect().sendMessage(message, recipients);
+            }
+        }
+
+        /**
+         * Determine if the send failed because the server rejected the recipients while the connection stayed open,
+         * rather than because the connection was lost (a dropped connection is also reported as a SendFailedException)
+         * @param ex the exception the send failed with
+         * @param connection the connection the send was attempted on
+         * @return true if the recipients were rejected over a live connection
+         */
+        private boolean isRejected(Exception ex, Transport connection) {
+            if (!(ex instanceof SendFailedException))
+                return false;
+
+            Address[] invalid = ((SendFailedException) ex).getInvalidAddresses();
+
+            return invalid != null && invalid.length > 0 && connection.isConnected();
+        }
+
+        /**
+         * Determine if the send failed after the server accepted the DATA command, i.e. while or after the message
+         * content was being written
+         * @param ex the exception the send failed with
+         * @param connection the connection the send was attempted on
+         * @return true if the message content may have reached the server
+         */
+        private boolean isDataSent(Exception ex, Transport connection) {
+            if (ex instanceof IllegalStateException)
+                return false; // the transport was not connected so nothing was sent
+
+            if (!(connection instanceof SMTPTransport))
+                return true; // there is no way to tell how far the send got
+
+            if (ex instanceof SMTPSendFailedException && ".".equals(((SMTPSendFailedException) ex).getCommand()))
+                return true; // the end of data marker was written
+
+            return ((SMTPTransport) connection).getLastReturnCode() == 354; // DATA was accepted, content being written
+        }
+
+        /**
+         * Retrieve the open connection, connecting a new one if required
+         * @return the connected transport
+         * @throws MessagingException if the connection fails
+         */
+        private Transport connect() throws MessagingException {
+            if (transport == null) {
+                Transport created = session.getTransport();
+                created.connect();
+                transport = created;
+            }
+
+            return transport;
+        }
+
+        /**
+         * Close the connection if it is open
+         */
+        private void close() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException ex) {
+                    log.debug("Failed to cleanly close SMTP connection", ex);
+                } finally {
+                    transport = null;
+                }
+            }
+        }
+    }
+}
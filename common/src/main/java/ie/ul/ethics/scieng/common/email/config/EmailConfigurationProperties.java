@@ -33,6 +33,14 @@ public class EmailConfigurationProperties {
      * Enables/Disables email debug
      */
     private boolean debug;
+    /**
+     * The configuration of the pool of SMTP connections
+     */
+    private Pool pool = new Pool();
+    /**
+     * The configuration of notification digests
+     */
+    private Digest digest = new Digest();
 
     /**
      * Sets the sender email address
@@ -82,4 +90,34 @@ public class EmailConfigurationProperties {
         if (debug != null)
             properties.debug = true;
     }
+
+    /**
+     * This class configures the pool of SMTP connections used to send emails
+     */
+    @Data
+    public static class Pool {
+        /**
+         * The number of SMTP connections kept open to the email server
+         */
+        private int size = 2;
+        /**
+         * The number of seconds a connection can be idle before it is closed
+         */
+        private long idleTimeout = 60;
+        /**
+         * The maximum number of queued emails sent over a connection at once
+         */
+        private int batchSize = 20;
+    }
+
+    /**
+     * This class configures the digests that notifications are coalesced into for users who prefer digest delivery
+     */
+    @Data
+    public static class Digest {
+        /**
+         * The number of minutes notifications are held for before they are sent together in one digest
+         */
+        private long window = 30;
+    }
 }
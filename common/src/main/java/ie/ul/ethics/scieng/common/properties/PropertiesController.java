@@ -0,0 +1,32 @@
+package ie.ul.ethics.scieng.common.properties;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static ie.ul.ethics.scieng.common.Constants.*;
+
+/**
+ * This controller provides endpoints for managing the properties found by the {@link PropertyFinder}
+ */
+@RestController
+@RequestMapping("/api/properties")
+public class PropertiesController {
+    /**
+     * Reload the properties from their sources. As an admin endpoint, this should be locked to users with ADMIN permissions
+     * @return the response body
+     */
+    @PostMapping("/admin/reload")
+    public ResponseEntity<?> reload() {
+        PropertyFinder.reload();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put(MESSAGE, PROPERTIES_RELOADED);
+
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,141 @@
+package ie.ul.ethics.scieng.common.properties;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class watches the loaded properties files that exist on the file system and reloads the {@link PropertyFinder}
+ * snapshot when any of them change. Properties files packaged inside JARs cannot change and so are not watched
+ */
+@Component
+@Log4j2
+public class PropertiesWatcher {
+    /**
+     * The loaded properties resources to watch
+     */
+    private final LoadedProperties loadedProperties;
+    /**
+     * Determines if the watcher is enabled
+     */
+    private final boolean enabled;
+    /**
+     * The watch service, null if not watching
+     */
+    private WatchService watchService;
+
+    /**
+     * Create the properties watcher
+     * @param loadedProperties the loaded properties resources to watch
+     * @param enabled true to watch the properties files for changes
+     */
+    public PropertiesWatcher(LoadedProperties loadedProperties, @Value("${properties.watch:true}") boolean enabled) {
+        this.loadedProperties = loadedProperties;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Start watching the properties files once the application is ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        Resource[] resources = loadedProperties.getResources();
+
+        if (!enabled || resources == null || watchService != null)
+            return;
+
+        Set<Path> files = new HashSet<>();
+
+        for (Resource resource : resources) {
+            try {
+                if (resource.isFile())
+                    files.add(resource.getFile().toPath().toAbsolutePath());
+            } catch (IOException ex) {
+                log.debug("Properties resource {} is not a file so will not be watched", resource);
+            }
+        }
+
+        if (files.isEmpty())
+            return;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            for (Path file : files)
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+            WatchService service = watchService;
+            Thread thread = new Thread(() -> watch(service, files), "properties-watcher");
+            thread.setDaemon(true);
+            thread.start();
+
+            log.info("Watching properties files {} for changes", files);
+        } catch (IOException ex) {
+            log.error("Failed to watch properties files for changes", ex);
+        }
+    }
+
+    /**
+     * Wait for changes to the properties files and reload the properties when they change
+     * @param service the watch service to wait on
+     * @param files the files being watched
+     */
+    private void watch(WatchService service, Set<Path> files) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = (Path) key.watchable();
+                boolean changed = false;
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+
+                    if (context instanceof Path && files.contains(directory.resolve((Path) context)))
+                        changed = true;
+                }
+
+                key.reset();
+
+                if (changed) {
+                    log.info("Properties files changed, reloading properties");
+                    PropertyFinder.reload();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // watcher stopped
+        }
+    }
+
+    /**
+     * Stop watching the properties files
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                log.debug("Failed to close properties watch service", ex);
+            } finally {
+                watchService = null;
+            }
+        }
+    }
+}
@@ -1,36 +1,110 @@
 package ie.ul.ethics.scieng.common.properties;
 
+import lombok.extern.log4j.Log4j2;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * This class provides utilities for retrieving properties from a specified order
+ * This class provides utilities for retrieving properties from a specified order. The properties of all registered sources
+ * are merged into an immutable snapshot which is loaded once, so a lookup is a single map read. The snapshot can be
+ * atomically replaced by calling {@link #reload()}
  */
+@Log4j2
 public final class PropertyFinder {
     /**
      * The set of sources in the order registered
      */
     private static final Set<PropertySource> sources = new LinkedHashSet<>();
+    /**
+     * The listeners to notify when the properties are reloaded
+     */
+    private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    /**
+     * The merged snapshot of properties from all the registered sources. Null if it needs to be loaded
+     */
+    private static volatile Map<String, String> snapshot;
 
     /**
      * Register the property source. Call this for all property sources in the order you wish to find the properties in first
      * @param propertySource the source to register
      */
-    public static void registerSource(PropertySource propertySource) {
+    public static synchronized void registerSource(PropertySource propertySource) {
         sources.add(propertySource);
+        snapshot = null;
     }
 
     /**
-     * Set the loaded properties to use for resolution from property files
+     * Set the loaded properties to use for resolution from property files and reload the properties
      * @param loadedProperties the loaded property file resources
      */
     public static void configure(LoadedProperties loadedProperties) {
         PropertyFileResolver.loadedProperties = loadedProperties;
+        reload();
+    }
+
+    /**
+     * Add a listener that is called after the properties are reloaded, for example to invalidate values derived from properties
+     * @param listener the listener to call on reload
+     */
+    public static void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Reload the properties from all registered sources, replacing the current snapshot atomically. Lookups in progress
+     * continue to see the previous snapshot
+     */
+    public static void reload() {
+        synchronized (PropertyFinder.class) {
+            snapshot = loadSnapshot();
+        }
+
+        log.debug("Reloaded properties snapshot");
+        reloadListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Get the current snapshot, loading it if it has not been loaded yet
+     * @return the current snapshot of properties
+     */
+    private static Map<String, String> getSnapshot() {
+        Map<String, String> current = snapshot;
+
+        if (current == null) {
+            synchronized (PropertyFinder.class) {
+                current = snapshot;
+
+                if (current == null) {
+                    current = loadSnapshot();
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Load the properties from each source in order, keeping the value of the first source that defines a property
+     * @return the merged, immutable snapshot
+     */
+    private static Map<String, String> loadSnapshot() {
+        Map<String, String> merged = new HashMap<>();
+
+        for (PropertySource source : sources)
+            source.propertyResolver.load().forEach(merged::putIfAbsent);
+
+        return Collections.unmodifiableMap(merged);
     }
 
     /**
@@ -40,22 +114,20 @@ public final class PropertyFinder {
      * @return the property if found, null if not
      */
     public static String findProperty(String...propertyNames) {
-        String property;
+        Map<String, String> properties = getSnapshot();
 
         for (String propertyName : propertyNames) {
-            for (PropertySource source : sources) {
-                property = source.propertyResolver.resolve(propertyName);
+            String property = properties.get(propertyName);
 
-                if (property != null)
-                    return property;
-            }
+            if (property != null)
+                return property;
         }
 
         return null;
     }
 
     /**
-     * This enum represents th
+     * This enum represents the sources properties can be found in
      */
     public enum PropertySource {
         /**
@@ -86,15 +158,14 @@ public final class PropertyFinder {
     }
 
     /**
-     * This interface resolves the given property
+     * This interface loads the properties of a source
      */
     private interface PropertyResolver {
         /**
-         * Resolve the property by propertyName
-         * @param propertyName the name of the property
-         * @return the resolved property if found, else null
+         * Load all the properties available from the source
+         * @return the map of property names to values
          */
-        String resolve(String propertyName);
+        Map<String, String> load();
     }
 
     /**
@@ -102,14 +173,19 @@ public final class PropertyFinder {
      */
     private static class SystemPropertyResolver implements PropertyResolver {
         /**
-         * Resolve the property by propertyName
+         * Load all the properties available from the source
          *
-         * @param propertyName the name of the property
-         * @return the resolved property if found, else null
+         * @return the map of property names to values
          */
         @Override
-        public String resolve(String propertyName) {
-            return System.getProperty(propertyName);
+        public Map<String, String> load() {
+            Map<String, String> loaded = new HashMap<>();
+            Properties properties = System.getProperties();
+
+            for (String name : properties.stringPropertyNames())
+                loaded.put(name, properties.getProperty(name));
+
+            return loaded;
         }
     }
 
@@ -118,14 +194,13 @@ public final class PropertyFinder {
      */
     private static class EnvironmentPropertyResolver implements PropertyResolver {
         /**
-         * Resolve the property by propertyName
+         * Load all the properties available from the source
          *
-         * @param propertyName the name of the property
-         * @return the resolved property if found, else null
+         * @return the map of property names to values
          */
         @Override
-        public String resolve(String propertyName) {
-            return System.getenv(propertyName);
+        public Map<String, String> load() {
+            return System.getenv();
         }
     }
 
@@ -136,31 +211,33 @@ public final class PropertyFinder {
         /**
          * The loaded properties. Needs to be configured by {@link PropertyFinder#configure(LoadedProperties)}
          */
-        private static LoadedProperties loadedProperties;
+        private static volatile LoadedProperties loadedProperties;
 
         /**
-         * Resolve the property by propertyName
+         * Load all the properties available from the source. If a property is defined in multiple files, the value in the
+         * first file is used
          *
-         * @param propertyName the name of the property
-         * @return the resolved property if found, else null
+         * @return the map of property names to values
          */
         @Override
-        public String resolve(String propertyName) {
-            if (loadedProperties != null) {
-                try {
-                    for (Resource resource : loadedProperties.getResources()) {
+        public Map<String, String> load() {
+            Map<String, String> loaded = new HashMap<>();
+            Resource[] resources = (loadedProperties == null) ? null : loadedProperties.getResources();
+
+            if (resources != null) {
+                for (Resource resource : resources) {
+                    try {
                         Properties properties = PropertiesLoaderUtils.loadProperties(resource);
-                        String property = properties.getProperty(propertyName);
 
-                        if (property != null)
-                            return property;
+                        for (String name : properties.stringPropertyNames())
+                            loaded.putIfAbsent(name, properties.getProperty(name));
+                    } catch (IOException ex) {
+                        log.error("Failed to load properties from {}", resource, ex);
                     }
-                } catch (IOException ex) {
-                    ex.printStackTrace();
                 }
             }
 
-            return null;
+            return loaded;
         }
     }
 }
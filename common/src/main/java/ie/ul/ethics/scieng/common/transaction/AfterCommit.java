@@ -0,0 +1,33 @@
+package ie.ul.ethics.scieng.common.transaction;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A utility class for deferring work, such as evicting caches, until the current transaction has committed. Evicting a
+ * cache before the commit lets a concurrent reader re-cache the old state, which then lives until the entry expires
+ */
+public final class AfterCommit {
+    /**
+     * Prevent instantiation
+     */
+    private AfterCommit() {}
+
+    /**
+     * Run the action once the current transaction commits, or immediately if there is no transaction. The action is not
+     * run if the transaction rolls back
+     * @param action the action to run
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
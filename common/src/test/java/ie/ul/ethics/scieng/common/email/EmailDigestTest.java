@@ -0,0 +1,109 @@
+package ie.ul.ethics.scieng.common.email;
+
+import ie.ul.ethics.scieng.common.email.config.EmailConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Provides unit tests for the EmailDigest class
+ */
+public class EmailDigestTest {
+    /**
+     * The recipient used in the tests
+     */
+    private static final String RECIPIENT = "user@email.com";
+    /**
+     * The mocked email sender
+     */
+    private EmailSender sender;
+
+    /**
+     * Create the mocked sender
+     */
+    @BeforeEach
+    public void setup() {
+        sender = mock(EmailSender.class);
+    }
+
+    /**
+     * Create a digest with the provided window
+     * @param window the window in minutes
+     * @return the created digest
+     */
+    private EmailDigest createDigest(long window) {
+        EmailConfigurationProperties properties = new EmailConfigurationProperties();
+        properties.getDigest().setWindow(window);
+
+        return new EmailDigest(sender, properties);
+    }
+
+    /**
+     * Tests that a digest containing a single notification is sent as that notification
+     */
+    @Test
+    public void shouldSendSingleNotificationUnchanged() {
+        EmailDigest digest = createDigest(30);
+
+        digest.add(RECIPIENT, "Subject", "<p>Content</p>");
+        digest.flushAll();
+
+        verify(sender).sendEmail(RECIPIENT, "Subject", "<p>Content</p>");
+        assertEquals(0, digest.getPendingCount());
+    }
+
+    /**
+     * Tests that multiple notifications for a recipient are coalesced into one email
+     */
+    @Test
+    public void shouldCoalesceNotifications() {
+        EmailDigest digest = createDigest(30);
+
+        digest.add(RECIPIENT, "Subject 1", "<p>Content 1</p>");
+        digest.add(RECIPIENT, "Subject 2", "<p>Content 2</p>");
+        digest.add("other@email.com", "Subject 3", "<p>Content 3</p>");
+        digest.flushAll();
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(sender).sendEmail(eq(RECIPIENT), anyString(), captor.capture());
+        verify(sender).sendEmail("other@email.com", "Subject 3", "<p>Content 3</p>");
+
+        String content = captor.getValue();
+        assertTrue(content.contains("Subject 1") && content.contains("<p>Content 1</p>"));
+        assertTrue(content.contains("Subject 2") && content.contains("<p>Content 2</p>"));
+    }
+
+    /**
+     * Tests that notifications are held until the window has passed
+     */
+    @Test
+    public void shouldHoldNotificationsUntilWindowPassed() {
+        EmailDigest digest = createDigest(30);
+
+        digest.add(RECIPIENT, "Subject", "<p>Content</p>");
+        digest.flushDue();
+
+        verifyNoInteractions(sender);
+        assertEquals(1, digest.getPendingCount());
+    }
+
+    /**
+     * Tests that notifications are sent once the window has passed
+     */
+    @Test
+    public void shouldSendNotificationsOnceWindowPassed() {
+        EmailDigest digest = createDigest(0);
+
+        digest.add(RECIPIENT, "Subject", "<p>Content</p>");
+        digest.flushDue();
+
+        verify(sender).sendEmail(RECIPIENT, "Subject", "<p>Content</p>");
+        assertEquals(0, digest.getPendingCount());
+    }
+}
@@ -0,0 +1,53 @@
+package ie.ul.ethics.scieng.common.email;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Provides unit tests for the EmailTemplate class
+ */
+public class EmailTemplateTest {
+    /**
+     * Tests that a rendered template matches the output of String.format for the same template
+     */
+    @Test
+    public void shouldRenderLikeStringFormat() {
+        String template = "<p>Hello %s,</p><table width=\"100%%\"><tr><td>%s</td><td>%d days</td></tr></table>";
+        EmailTemplate compiled = EmailTemplate.compile(template);
+
+        assertEquals(3, compiled.getArgumentCount());
+        assertEquals(String.format(template, "user", null, 31), compiled.render("user", null, 31));
+    }
+
+    /**
+     * Tests that a template without placeholders renders to itself
+     */
+    @Test
+    public void shouldRenderTemplateWithoutPlaceholders() {
+        EmailTemplate compiled = EmailTemplate.compile("<h2>Title</h2>");
+
+        assertEquals(0, compiled.getArgumentCount());
+        assertEquals("<h2>Title</h2>", compiled.render());
+    }
+
+    /**
+     * Tests that an IllegalArgumentException is thrown if the wrong number of arguments is passed
+     */
+    @Test
+    public void shouldThrowIfArgumentCountMismatch() {
+        EmailTemplate compiled = EmailTemplate.compile("%s and %s");
+
+        assertThrows(IllegalArgumentException.class, () -> compiled.render("one"));
+    }
+
+    /**
+     * Tests that an IllegalArgumentException is thrown if the template contains unsupported placeholders
+     */
+    @Test
+    public void shouldThrowIfUnsupportedPlaceholder() {
+        assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("%5.2f"));
+        assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("trailing %"));
+    }
+}
@@ -0,0 +1,182 @@
+package ie.ul.ethics.scieng.common.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal plain-text SMTP server stand-in used for testing. It accepts every command apart from recipients containing
+ * "rejected", counts the connections made and records the messages received
+ */
+public class FakeSMTPServer implements AutoCloseable {
+    /**
+     * The socket the server listens on
+     */
+    private final ServerSocket serverSocket;
+    /**
+     * The number of connections accepted
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+    /**
+     * The bodies of the messages received
+     */
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    /**
+     * The sockets of the currently open connections
+     */
+    private final List<Socket> openSockets = new CopyOnWriteArrayList<>();
+    /**
+     * Determines if connections are dropped after the message content is received instead of acknowledging it
+     */
+    private volatile boolean dropAfterData;
+
+    /**
+     * Start the server on a random local port
+     * @throws IOException if the server fails to start
+     */
+    public FakeSMTPServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "fake-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @return the server port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of connections accepted
+     * @return the number of connections
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Get the messages received
+     * @return the received messages
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Set whether connections are dropped after the message content is received instead of acknowledging it
+     * @param dropAfterData true to drop connections at the end of the message content
+     */
+    public void setDropAfterData(boolean dropAfterData) {
+        this.dropAfterData = dropAfterData;
+    }
+
+    /**
+     * Abruptly drop all the currently open connections
+     */
+    public void dropConnections() throws IOException {
+        for (Socket socket : openSockets)
+            socket.close();
+
+        openSockets.clear();
+    }
+
+    /**
+     * Accept connections until the server is closed
+     */
+    private void accept() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                openSockets.add(socket);
+
+                Thread handler = new Thread(() -> handle(socket), "fake-smtp-connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException ignored) {
+            // server closed
+        }
+    }
+
+    /**
+     * Handle the SMTP conversation on the socket
+     * @param socket the connection to the client
+     */
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             OutputStream out = socket.getOutputStream()) {
+            reply(out, "220 localhost ESMTP fake");
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String command = line.toUpperCase();
+
+                if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder data = new StringBuilder();
+
+                    while ((line = reader.readLine()) != null && !line.equals("."))
+                        data.append(line).append("\n");
+
+                    messages.add(data.toString());
+
+                    if (dropAfterData)
+                        break;
+
+                    reply(out, "250 OK queued");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    break;
+                } else if (command.startsWith("RCPT") && command.contains("REJECTED")) {
+                    reply(out, "550 No such user");
+                } else if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(out, "250 localhost");
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (SocketException ignored) {
+            // connection dropped
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    /**
+     * Write the reply line to the client
+     * @param out the stream to the client
+     * @param reply the reply to write
+     * @throws IOException if the write fails
+     */
+    private void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Stop the server
+     * @throws IOException if the server fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+}
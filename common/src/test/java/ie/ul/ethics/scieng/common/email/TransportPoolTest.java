@@ -0,0 +1,206 @@
+package ie.ul.ethics.scieng.common.email;
+
+import ie.ul.ethics.scieng.common.email.exceptions.EmailException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Provides tests for the TransportPool against a local SMTP stand-in
+ */
+public class TransportPoolTest {
+    /**
+     * The fake SMTP server to send to
+     */
+    private FakeSMTPServer server;
+    /**
+     * The mail session pointing at the fake server
+     */
+    private Session session;
+    /**
+     * The pool under test
+     */
+    private TransportPool pool;
+
+    /**
+     * Start the fake server and create a session for it
+     */
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new FakeSMTPServer();
+
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", "127.0.0.1");
+        properties.put("mail.smtp.port", String.valueOf(server.getPort()));
+        properties.put("mail.smtp.timeout", "5000");
+        session = Session.getInstance(properties);
+    }
+
+    /**
+     * Shut down the pool and the fake server
+     */
+    @AfterEach
+    public void teardown() throws Exception {
+        if (pool != null)
+            pool.shutdown();
+
+        server.close();
+    }
+
+    /**
+     * Create a message to send
+     * @param subject the subject of the message
+     * @return the created message
+     */
+    private Message createMessage(String subject) throws MessagingException {
+        return createMessage(subject, "recipient@email.com");
+    }
+
+    /**
+     * Create a message to send to the recipient
+     * @param subject the subject of the message
+     * @param recipient the address to send the message to
+     * @return the created message
+     */
+    private Message createMessage(String subject, String recipient) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("sender@email.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+        message.setSubject(subject);
+        message.setText("Hello World");
+
+        return message;
+    }
+
+    /**
+     * Tests that many messages are sent over the one connection
+     */
+    @Test
+    public void shouldReuseConnection() throws Exception {
+        pool = new TransportPool(session, 1, 0, 5);
+
+        for (int i = 0; i < 20; i++)
+            pool.send(createMessage("Subject " + i));
+
+        assertEquals(20, server.getMessages().size());
+        assertEquals(1, server.getConnections());
+    }
+
+    /**
+     * Tests that concurrently queued messages are sent over no more connections than the size of the pool
+     */
+    @Test
+    public void shouldSendQueuedMessagesInBatches() throws Exception {
+        pool = new TransportPool(session, 2, 0, 10);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++)
+            futures.add(pool.submit(createMessage("Subject " + i)));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertEquals(50, server.getMessages().size());
+        assertTrue(server.getConnections() <= 2);
+    }
+
+    /**
+     * Tests that the pool reconnects and retries if the connection is dropped while idle
+     */
+    @Test
+    public void shouldReconnectOnFailure() throws Exception {
+        pool = new TransportPool(session, 1, 0, 5);
+
+        for (int i = 0; i < 10; i++) {
+            pool.send(createMessage("Message " + i));
+            server.dropConnections();
+        }
+
+        assertEquals(10, server.getMessages().size());
+        assertEquals(10, server.getConnections());
+    }
+
+    /**
+     * Tests that rejected recipients fail the message without dropping the connection
+     */
+    @Test
+    public void shouldNotRetryRejectedRecipients() throws Exception {
+        pool = new TransportPool(session, 1, 0, 5);
+
+        EmailException thrown = assertThrows(EmailException.class,
+                () -> pool.send(createMessage("Rejected", "rejected@email.com")));
+        assertTrue(thrown.getCause() instanceof SendFailedException);
+        pool.send(createMessage("Accepted"));
+
+        assertEquals(1, server.getMessages().size());
+        assertEquals(1, server.getConnections());
+    }
+
+    /**
+     * Tests that a message is not resent if the connection fails after its content was sent, as the server may have
+     * accepted it
+     */
+    @Test
+    public void shouldNotRetryAfterData() throws Exception {
+        pool = new TransportPool(session, 1, 0, 5);
+        server.setDropAfterData(true);
+
+        assertThrows(EmailException.class, () -> pool.send(createMessage("Subject")));
+
+        assertEquals(1, server.getMessages().size());
+        assertEquals(1, server.getConnections());
+    }
+
+    /**
+     * Tests that idle connections are closed and re-opened when needed
+     */
+    @Test
+    public void shouldCloseIdleConnections() throws Exception {
+        pool = new TransportPool(session, 1, 100, 5);
+
+        pool.send(createMessage("First"));
+        Thread.sleep(500);
+        pool.send(createMessage("Second"));
+
+        assertEquals(2, server.getMessages().size());
+        assertEquals(2, server.getConnections());
+    }
+
+    /**
+     * Tests that an EmailException is thrown if the server cannot be reached
+     */
+    @Test
+    public void shouldThrowIfServerUnavailable() throws Exception {
+        server.close();
+        pool = new TransportPool(session, 1, 0, 5);
+
+        assertThrows(EmailException.class, () -> pool.send(createMessage("Subject")));
+    }
+
+    /**
+     * Tests that messages cannot be submitted after the pool is shut down
+     */
+    @Test
+    public void shouldNotSubmitAfterShutdown() throws Exception {
+        pool = new TransportPool(session, 1, 0, 5);
+        pool.shutdown();
+        Message message = createMessage("Subject");
+
+        assertThrows(EmailException.class, () -> pool.submit(message));
+    }
+}
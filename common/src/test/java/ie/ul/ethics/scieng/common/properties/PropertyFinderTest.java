@@ -0,0 +1,111 @@
+package ie.ul.ethics.scieng.common.properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Provides unit tests for the PropertyFinder class
+ */
+public class PropertyFinderTest {
+    /**
+     * The name of the property used in the tests
+     */
+    private static final String PROPERTY = "test.property-finder.value";
+    /**
+     * The loaded properties configured for the finder
+     */
+    private LoadedProperties loadedProperties;
+
+    /**
+     * Register the sources and configure the finder
+     */
+    @BeforeEach
+    public void setup() {
+        for (PropertyFinder.PropertySource source : PropertyFinder.PropertySource.values())
+            PropertyFinder.registerSource(source);
+
+        loadedProperties = new LoadedProperties();
+        loadedProperties.setResources(new Resource[]{
+                createResource(PROPERTY + "=first\nfirst.only=1"),
+                createResource(PROPERTY + "=second\nsecond.only=2")
+        });
+        PropertyFinder.configure(loadedProperties);
+    }
+
+    /**
+     * Clear the configured properties
+     */
+    @AfterEach
+    public void teardown() {
+        System.clearProperty(PROPERTY);
+        PropertyFinder.configure(new LoadedProperties());
+    }
+
+    /**
+     * Create a properties resource with the provided content
+     * @param content the content of the properties file
+     * @return the created resource
+     */
+    private static Resource createResource(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that properties are found in the property files, with the first file taking precedence
+     */
+    @Test
+    public void shouldFindPropertyFromFiles() {
+        assertEquals("first", PropertyFinder.findProperty(PROPERTY));
+        assertEquals("1", PropertyFinder.findProperty("first.only"));
+        assertEquals("2", PropertyFinder.findProperty("second.only"));
+        assertNull(PropertyFinder.findProperty("not.a.property"));
+    }
+
+    /**
+     * Tests that the first property name found is returned
+     */
+    @Test
+    public void shouldFindFirstPropertyName() {
+        assertEquals("2", PropertyFinder.findProperty("not.a.property", "second.only", "first.only"));
+    }
+
+    /**
+     * Tests that system properties take precedence over the property files once reloaded
+     */
+    @Test
+    public void shouldPreferSystemPropertiesAfterReload() {
+        System.setProperty(PROPERTY, "system");
+        assertEquals("first", PropertyFinder.findProperty(PROPERTY)); // the snapshot has not been reloaded
+
+        PropertyFinder.reload();
+
+        assertEquals("system", PropertyFinder.findProperty(PROPERTY));
+    }
+
+    /**
+     * Tests that reloading picks up changes to the property files and notifies listeners
+     */
+    @Test
+    public void shouldReloadChangedFiles() {
+        AtomicInteger reloads = new AtomicInteger();
+        PropertyFinder.addReloadListener(reloads::incrementAndGet);
+
+        loadedProperties.setResources(new Resource[]{createResource(PROPERTY + "=changed")});
+        assertEquals("first", PropertyFinder.findProperty(PROPERTY));
+
+        PropertyFinder.reload();
+
+        assertEquals("changed", PropertyFinder.findProperty(PROPERTY));
+        assertNull(PropertyFinder.findProperty("first.only"));
+        assertEquals(1, reloads.get());
+    }
+}
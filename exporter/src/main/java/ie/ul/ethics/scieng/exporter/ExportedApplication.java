@@ -4,6 +4,7 @@ import ie.ul.ethics.scieng.applications.models.applications.Application;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -28,4 +29,11 @@ public interface ExportedApplication {
      * @return application being exported
      */
     Application getApplication();
+
+    /**
+     * Get the temporary directories holding local copies of attachments held by a remote storage backend. They must be
+     * deleted once the application has been exported
+     * @return the list of temporary directories, empty if none were created
+     */
+    List<Path> getTemporaryDirectories();
 }
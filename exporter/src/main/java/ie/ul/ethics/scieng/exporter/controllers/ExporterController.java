@@ -3,14 +3,16 @@ package ie.ul.ethics.scieng.exporter.controllers;
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.exporter.services.ExporterService;
 import ie.ul.ethics.scieng.exporter.task.ExportTask;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.download.DownloadHandler;
+import ie.ul.ethics.scieng.files.download.FileDownload;
 import ie.ul.ethics.scieng.files.services.FileService;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageObject;
 import static ie.ul.ethics.scieng.common.Constants.*;
 
 import ie.ul.ethics.scieng.users.models.User;
 import ie.ul.ethics.scieng.users.services.UserService;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,9 +21,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.format.DateTimeParseException;
 
 @RestController
@@ -39,6 +44,18 @@ public class ExporterController {
      * Service for loading users
      */
     private final UserService userService;
+    /**
+     * The handler serving downloads with conditional and ranged requests
+     */
+    private final DownloadHandler downloadHandler;
+    /**
+     * The backend exports are published to
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * How long presigned download URLs are valid for
+     */
+    private final Duration presignExpiry;
     /**
      * Information of the authenticated user
      */
@@ -49,33 +66,82 @@ public class ExporterController {
      * Construct a controller instance
      * @param exporterService the service for exporting applications
      * @param fileService the service for querying storage locations
+     * @param userService the service for loading users
+     * @param downloadHandler the handler serving downloads with conditional and ranged requests
+     * @param storageBackend the backend exports are published to
+     * @param properties the configuration properties for the files module
      */
-    public ExporterController(ExporterService exporterService, FileService fileService, UserService userService) {
+    public ExporterController(ExporterService exporterService, FileService fileService, UserService userService,
+                              DownloadHandler downloadHandler, StorageBackend storageBackend,
+                              FilesConfigurationProperties properties) {
         this.exporterService = exporterService;
         this.storageLocation = fileService.getStorageLocation();
         this.userService = userService;
+        this.downloadHandler = downloadHandler;
+        this.storageBackend = storageBackend;
+        this.presignExpiry = Duration.ofMinutes(properties.getStorage().getPresignExpiry());
     }
 
     /**
-     * Endpoint for downloading the zip file
+     * Download the ZIP file from the storage backend it was published to, by redirecting to a presigned URL
      * @param filename the name of the ZIP file to download
+     * @param request the request object
+     * @param response the response object
      * @return the response body
+     * @throws IOException if the backend cannot be reached
+     */
+    private ResponseEntity<?> downloadRemote(String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String key = "exports/" + filename;
+        StorageObject object = storageBackend.stat(key);
+
+        if (object == null)
+            return ResponseEntity.notFound().build();
+
+        long size = object.getSize();
+        long lastModified = object.getLastModified();
+
+        return downloadHandler.serve(new FileDownload(null, filename, size, lastModified, FileDownload.weakETag(size, lastModified),
+                "application/zip", storageBackend.presign(key, filename, "application/zip", presignExpiry)), request, response);
+    }
+
+    /**
+     * Endpoint for downloading the zip file. The response carries a weak ETag built from the size and last modified
+     * time of the ZIP (see {@link FileDownload#weakETag(long, long)}), so the ZIP is never read to validate it and
+     * repeat downloads are answered with a 304. A Range header is supported so interrupted downloads can be resumed,
+     * validated with an If-Range date as a weak ETag cannot validate ranges. If exports are published to a remote
+     * storage backend, the download is redirected to it
+     * @param filename the name of the ZIP file to download
+     * @param request the request object
+     * @param response the response object the ZIP is written to
+     * @return the response body, null if the ZIP has been written to the response
      */
     @GetMapping("/download/{filename:.+}")
-    public ResponseEntity<?> download(@PathVariable String filename) {
-        Path exported = storageLocation.resolve("exports").resolve(filename);
+    public ResponseEntity<?> download(@PathVariable String filename, HttpServletRequest request, HttpServletResponse response) {
+        if (!storageBackend.isLocal()) {
+            if (filename.contains(".."))
+                return ResponseEntity.notFound().build();
 
-        if (Files.isRegularFile(exported)) {
-            Resource resource = new FileSystemResource(exported);
+            try {
+                return downloadRemote(filename, request, response);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return respondError(FILE_ERROR);
+            }
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.set(HttpHeaders.CONTENT_TYPE, "application/zip");
-            headers.set(HttpHeaders.CONTENT_DISPOSITION,
-                    "attachment; filename=\"" + resource.getFilename() + "\"");
+        Path exported = storageLocation.resolve("exports").resolve(filename);
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(resource);
+        if (Files.isRegularFile(exported)) {
+            try {
+                return downloadHandler.serve(downloadHandler.describe(exported, exported.getFileName().toString(),
+                        "application/zip"), request, response);
+            } catch (IOException ex) {
+                if (response.isCommitted())
+                    return null;
+
+                ex.printStackTrace();
+                return respondError(FILE_ERROR);
+            }
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -2,6 +2,7 @@ package ie.ul.ethics.scieng.exporter.email;
 
 import ie.ul.ethics.scieng.common.email.AsyncEmailService;
 import ie.ul.ethics.scieng.common.email.EmailSender;
+import ie.ul.ethics.scieng.common.email.EmailTemplate;
 import ie.ul.ethics.scieng.users.models.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -9,13 +10,35 @@ import org.springframework.stereotype.Service;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * An e-mail service for the exporter module
  */
 @Service("exporterEmail")
 public class ExporterEmailService extends AsyncEmailService {
+    /**
+     * The template for the email containing the link to the exported file
+     */
+    private static final EmailTemplate EXPORT_LINK_TEMPLATE = EmailTemplate.compile("<h2>Application Export Success</h2>"
+            + "<p>Hello %s<br>This e-mail is a quick notification that the export application "
+            + "task you requested at <b>%s</b> has been completed successfully</p>"
+            + "<br>"
+            + "<h3>Download the Exported File</h3>"
+            + "<p>The file is a ZIP archive of the application(s) that you have requested to be exported, with each "
+            + "application in PDF format and that application's attachments in another zip called <i>attachments.zip</i><p>"
+            + "<p>Follow this link to download the archive: <a href=\"%s\">Download Archive</a></p>"
+            + "<p>If for some reason, the link doesn't work, paste the following link into your browser: %s</p>");
+    /**
+     * The template for the email notifying that the export failed
+     */
+    private static final EmailTemplate EXPORT_FAILED_TEMPLATE = EmailTemplate.compile("<h2>Application Export Failure</h2>"
+            + "<p>Hello %s<br>This e-mail is a quick notification that the export application "
+            + "task you requested at <b>%s</b> could not be completed successfully</p>"
+            + "<br>"
+            + "<h3>What do I need to do?</h3>"
+            + "<p>You can try exporting the application(s) again. If the error persists, please try again later<p>"
+            + "<p>Sorry for any inconvenience caused</p>");
+
     /**
      * Instantiate the email service
      *
@@ -33,16 +56,6 @@ public class ExporterEmailService extends AsyncEmailService {
      * @param requestedAt the timestamp of when the export task was requested
      */
     public void sendExportLinkEmail(User user, String name, LocalDateTime requestedAt) {
-        String content = "<h2>Application Export Success</h2>"
-                + "<p>Hello %s<br>This e-mail is a quick notification that the export application "
-                + "task you requested at <b>%s</b> has been completed successfully</p>"
-                + "<br>"
-                + "<h3>Download the Exported File</h3>"
-                + "<p>The file is a ZIP archive of the application(s) that you have requested to be exported, with each "
-                + "application in PDF format and that application's attachments in another zip called <i>attachments.zip</i><p>"
-                + "<p>Follow this link to download the archive: <a href=\"%s\">Download Archive</a></p>"
-                + "<p>If for some reason, the link doesn't work, paste the following link into your browser: %s</p>";
-
         String urlBase = getFrontendURL();
         urlBase = urlBase + "/export-downloader?filename=";
         String filename = URLEncoder.encode(name, StandardCharsets.UTF_8);
@@ -50,10 +63,10 @@ public class ExporterEmailService extends AsyncEmailService {
 
         String userName = user.getName();
         String email = user.getAccount().getEmail();
-        String requested = requestedAt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-        content = String.format(content, userName, requested, urlBase, urlBase);
+        String requested = requestedAt.format(DATE_TIME_FORMATTER);
+        String content = EXPORT_LINK_TEMPLATE.render(userName, requested, urlBase, urlBase);
 
-        sendEmail(email, String.format("Application Export Successful - %s", requested), content);
+        sendEmail(email, "Application Export Successful - " + requested, content);
     }
 
     /**
@@ -62,19 +75,11 @@ public class ExporterEmailService extends AsyncEmailService {
      * @param requestedAt the timestamp of when the export task was requested
      */
     public void sendExportFailedEmail(User user, LocalDateTime requestedAt) {
-        String content = "<h2>Application Export Failure</h2>"
-                + "<p>Hello %s<br>This e-mail is a quick notification that the export application "
-                + "task you requested at <b>%s</b> could not be completed successfully</p>"
-                + "<br>"
-                + "<h3>What do I need to do?</h3>"
-                + "<p>You can try exporting the application(s) again. If the error persists, please try again later<p>"
-                + "<p>Sorry for any inconvenience caused</p>";
-
         String userName = user.getName();
         String email = user.getAccount().getEmail();
-        String requested = requestedAt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-        content = String.format(content, userName, requested);
+        String requested = requestedAt.format(DATE_TIME_FORMATTER);
+        String content = EXPORT_FAILED_TEMPLATE.render(userName, requested);
 
-        sendEmail(email, String.format("Application Export Failure - %s", requested), content);
+        sendEmail(email, "Application Export Failure - " + requested, content);
     }
 }
@@ -5,6 +5,7 @@ import ie.ul.ethics.scieng.exporter.ExportedApplication;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -23,17 +24,24 @@ public class PDFExportedApplication implements ExportedApplication {
      * Application being exported
      */
     private final Application application;
+    /**
+     * The temporary directories holding local copies of remote attachments
+     */
+    private final List<Path> temporaryDirectories;
 
     /**
      * Create an instance
      * @param inputStream the stream the PDF is being written to
      * @param exportedAttachments the list of file attachments to export
      * @param application the application being exported
+     * @param temporaryDirectories the temporary directories holding local copies of remote attachments
      */
-    public PDFExportedApplication(InputStream inputStream, List<File> exportedAttachments, Application application) {
+    public PDFExportedApplication(InputStream inputStream, List<File> exportedAttachments, Application application,
+                                  List<Path> temporaryDirectories) {
         this.inputStream = inputStream;
         this.exportedAttachments = exportedAttachments;
         this.application = application;
+        this.temporaryDirectories = temporaryDirectories;
     }
 
     /**
@@ -65,4 +73,14 @@ public class PDFExportedApplication implements ExportedApplication {
     public Application getApplication() {
         return application;
     }
+
+    /**
+     * Get the temporary directories holding local copies of attachments held by a remote storage backend
+     *
+     * @return the list of temporary directories, empty if none were created
+     */
+    @Override
+    public List<Path> getTemporaryDirectories() {
+        return temporaryDirectories;
+    }
 }
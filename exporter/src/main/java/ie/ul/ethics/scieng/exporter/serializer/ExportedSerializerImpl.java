@@ -2,6 +2,7 @@ package ie.ul.ethics.scieng.exporter.serializer;
 
 import ie.ul.ethics.scieng.exporter.ExportedApplication;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.services.BlobStore;
 import ie.ul.ethics.scieng.files.services.FileService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -23,14 +24,20 @@ public class ExportedSerializerImpl implements ExportedSerializer {
      * Path representing location to store files at
      */
     private final Path storageLocation;
+    /**
+     * The blob store used to link attachments into exports
+     */
+    private final BlobStore blobStore;
 
     /**
      * Create an instance
      * @param fileService used to query storage information
+     * @param blobStore the blob store used to link attachments into exports
      */
     @Autowired
-    public ExportedSerializerImpl(FileService fileService) {
+    public ExportedSerializerImpl(FileService fileService, BlobStore blobStore) {
         this.storageLocation = fileService.getStorageLocation();
+        this.blobStore = blobStore;
     }
 
     /**
@@ -62,7 +69,8 @@ public class ExportedSerializerImpl implements ExportedSerializer {
     }
 
     /**
-     * Export the attachments to the storage path
+     * Export the attachments to the storage path. The attachments are hard linked rather than copied where possible, so
+     * exporting does not duplicate their content on disk
      * @param attachments the list of attachments
      * @param storage the storage location of the exported application
      */
@@ -71,15 +79,11 @@ public class ExportedSerializerImpl implements ExportedSerializer {
             storage = storage.resolve("attachments");
             createDirectory(storage);
 
-            try {
-                for (File attachment : attachments) {
-                    Path source = attachment.toPath();
-                    Path destination = storage.resolve(source.getFileName());
+            for (File attachment : attachments) {
+                Path source = attachment.toPath();
+                Path destination = storage.resolve(source.getFileName());
 
-                    Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException ex) {
-                throw new FileException("Failed to export attachments", ex);
+                blobStore.link(source, destination);
             }
         }
     }
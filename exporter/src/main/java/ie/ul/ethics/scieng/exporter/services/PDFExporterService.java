@@ -19,12 +19,15 @@ import ie.ul.ethics.scieng.exporter.task.RangeExportTask;
 import ie.ul.ethics.scieng.exporter.task.SingleExportTask;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
 import ie.ul.ethics.scieng.files.services.FileService;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
 import ie.ul.ethics.scieng.users.models.User;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,6 +44,7 @@ import java.util.List;
  * This class represents a service to export applications to PDF
  */
 @Service
+@Log4j2
 public class PDFExporterService implements ExporterService {
     /**
      * The service for retrieving applications
@@ -62,6 +66,10 @@ public class PDFExporterService implements ExporterService {
      * Service to send export emails
      */
     private final ExporterEmailService emailService;
+    /**
+     * The backend finished exports are published to
+     */
+    private final StorageBackend storageBackend;
     /**
      * A temporary directory for carrying out actions
      */
@@ -73,15 +81,17 @@ public class PDFExporterService implements ExporterService {
      * @param fileService the service to load files
      * @param serializer the serializer to serialize exported applications with
      * @param emailService the service to send export emails with
+     * @param storageBackend the backend finished exports are published to
      */
     @Autowired
     public PDFExporterService(ApplicationService applicationService, FileService fileService, ExportedSerializer serializer,
-                              @Qualifier("exporterEmail") ExporterEmailService emailService) {
+                              @Qualifier("exporterEmail") ExporterEmailService emailService, StorageBackend storageBackend) {
         this.applicationService = applicationService;
         this.fileService = fileService;
         this.storageLocation = this.fileService.getStorageLocation();
         this.serializer = serializer;
         this.emailService = emailService;
+        this.storageBackend = storageBackend;
     }
 
     /**
@@ -94,12 +104,35 @@ public class PDFExporterService implements ExporterService {
         return renderer.render();
     }
 
+    /**
+     * Get the attachment as a local file, copying it to a temporary directory if it is held by a remote storage backend
+     * @param resource the loaded attachment
+     * @param temporaryDirectories the list the created temporary directory is added to, to be deleted after export
+     * @return the local file
+     * @throws IOException if the attachment cannot be copied
+     */
+    private File toLocalFile(Resource resource, List<Path> temporaryDirectories) throws IOException {
+        if (resource.isFile())
+            return resource.getFile();
+
+        Path directory = Files.createTempDirectory("ethics_attachment");
+        temporaryDirectories.add(directory);
+        Path copy = directory.resolve(resource.getFilename());
+
+        try (InputStream inputStream = resource.getInputStream()) {
+            Files.copy(inputStream, copy);
+        }
+
+        return copy.toFile();
+    }
+
     /**
      * Create the list of files to export for the application
      * @param application the application being exported
+     * @param temporaryDirectories the list any temporary directories holding copies of remote attachments are added to
      * @return the list of files to export
      */
-    private List<File> exportFiles(Application application) {
+    private List<File> exportFiles(Application application, List<Path> temporaryDirectories) {
         List<AttachedFile> attachedFiles = application.getAttachedFiles();
         List<File> files = new ArrayList<>();
 
@@ -109,7 +142,7 @@ public class PDFExporterService implements ExporterService {
                     Resource resource = fileService.loadFile(attachedFile.getFilename(), attachedFile.getDirectory(), attachedFile.getUsername());
 
                     if (resource != null)
-                        files.add(resource.getFile());
+                        files.add(toLocalFile(resource, temporaryDirectories));
                 } catch (FileException | IOException ex) {
                     ex.printStackTrace();
                 }
@@ -128,8 +161,10 @@ public class PDFExporterService implements ExporterService {
     private ExportedApplication export(Application application) {
         if (application.getStatus() != ApplicationStatus.DRAFT) {
             InputStream inputStream = renderApplication(application);
+            List<Path> temporaryDirectories = new ArrayList<>();
+            List<File> files = exportFiles(application, temporaryDirectories);
 
-            return new PDFExportedApplication(inputStream, exportFiles(application), application);
+            return new PDFExportedApplication(inputStream, files, application, temporaryDirectories);
         } else {
             return null;
         }
@@ -217,6 +252,20 @@ public class PDFExporterService implements ExporterService {
         }
     }
 
+    /**
+     * Delete the temporary copies of remote attachments made for the exported application
+     * @param exportedApplication the exported application
+     */
+    private void deleteTemporaryDirectories(ExportedApplication exportedApplication) {
+        for (Path directory : exportedApplication.getTemporaryDirectories()) {
+            try {
+                FileSystemUtils.deleteRecursively(directory);
+            } catch (IOException ex) {
+                log.warn("Failed to delete temporary attachment directory {}", directory, ex);
+            }
+        }
+    }
+
     /**
      * Export the application to ZIP
      *
@@ -227,11 +276,16 @@ public class PDFExporterService implements ExporterService {
      */
     @Override
     public File exportToZip(ExportedApplication exportedApplication, String name) throws IOException {
-        File file = serializer.saveToDisk(exportedApplication, exportedApplication.getApplication().getApplicationId(), null);
-        Path path = file.toPath();
-        zipAttachments(path);
+        try {
+            String applicationId = exportedApplication.getApplication().getApplicationId();
+            File file = serializer.saveToDisk(exportedApplication, applicationId, null);
+            Path path = file.toPath();
+            zipAttachments(path);
 
-        return Zip.zipFile(name, file);
+            return publish(Zip.zipFile(name, file));
+        } finally {
+            deleteTemporaryDirectories(exportedApplication);
+        }
     }
 
     /**
@@ -248,16 +302,33 @@ public class PDFExporterService implements ExporterService {
         List<Zippable> toZip = new ArrayList<>();
         Path parentPath = Path.of(parentDirectory);
 
-        for (ExportedApplication exported : exportedApplications) {
-            String applicationId = exported.getApplication().getApplicationId();
-            File file = serializer.saveToDisk(exported, applicationId, parentDirectory);
-            Path path = file.toPath().resolve(applicationId);
-            zipAttachments(path);
+        try {
+            for (ExportedApplication exported : exportedApplications) {
+                String applicationId = exported.getApplication().getApplicationId();
+                File file = serializer.saveToDisk(exported, applicationId, parentDirectory);
+                Path path = file.toPath().resolve(applicationId);
+                zipAttachments(path);
 
-            toZip.add(Zip.createZippable(new File(parentPath.resolve(applicationId).toString())));
+                toZip.add(Zip.createZippable(new File(parentPath.resolve(applicationId).toString())));
+            }
+
+            return publish(Zip.zipFiles(name, toZip));
+        } finally {
+            exportedApplications.forEach(this::deleteTemporaryDirectories);
         }
+    }
+
+    /**
+     * Publish the ZIP to the storage backend under exports/ so it can be downloaded from any application node. With a
+     * local backend, the ZIP is already in place
+     * @param zip the ZIP to publish
+     * @return the ZIP, which may no longer exist locally if published to a remote backend
+     * @throws IOException if the ZIP cannot be published
+     */
+    private File publish(File zip) throws IOException {
+        storageBackend.put("exports/" + zip.getName(), zip.toPath());
 
-        return Zip.zipFiles(name, toZip);
+        return zip;
     }
 
     /**
@@ -22,4 +22,12 @@ public interface AntivirusScanner {
      * @throws AntivirusException if an error occurs that prevents scanning for viruses
      */
     boolean isFileSafe(InputStream inputStream) throws AntivirusException;
+
+    /**
+     * Get the version of the engine and signature database the scanner is using, so that verdicts can be tied to the
+     * signatures that produced them
+     * @return the signature version, or null if the scanner is disabled
+     * @throws AntivirusException if an error occurs that prevents querying the version
+     */
+    String getSignatureVersion() throws AntivirusException;
 }
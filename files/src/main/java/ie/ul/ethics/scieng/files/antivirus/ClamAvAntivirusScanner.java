@@ -6,7 +6,13 @@ import xyz.capybara.clamav.ClamavException;
 import xyz.capybara.clamav.Platform;
 import xyz.capybara.clamav.commands.scan.result.ScanResult;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class provides antivirus scanning
@@ -21,6 +27,19 @@ public class ClamAvAntivirusScanner implements AntivirusScanner {
      */
     @Getter
     private final ClamavClient client;
+    /**
+     * The hostname of the clamAV daemon
+     */
+    private final String host;
+    /**
+     * The port of the daemon
+     */
+    private final int port;
+
+    /**
+     * The number of milliseconds to wait for the daemon when querying its version
+     */
+    private static final int VERSION_TIMEOUT = 5000;
 
     /**
      * Construct an Antivirus scanner with the provided parameters
@@ -32,6 +51,8 @@ public class ClamAvAntivirusScanner implements AntivirusScanner {
     public ClamAvAntivirusScanner(boolean enabled, String host, int port, String platform) {
         this.enabled = enabled;
         this.client = (enabled) ? new ClamavClient(host, port, Platform.valueOf(platform)):null;
+        this.host = host;
+        this.port = port;
     }
 
     /**
@@ -64,4 +85,48 @@ public class ClamAvAntivirusScanner implements AntivirusScanner {
             return true;
         }
     }
+
+    /**
+     * Parse the signature version from the response to the VERSION command, e.g. ClamAV 0.103.8/26950/Mon Jun 12 07:00:00 2023
+     * @param response the response to the VERSION command
+     * @return the engine and signature database version, without the date the signatures were built
+     */
+    static String parseSignatureVersion(String response) {
+        int first = response.indexOf('/');
+        int second = (first == -1) ? -1 : response.indexOf('/', first + 1);
+
+        return (second == -1) ? response.trim() : response.substring(0, second).trim();
+    }
+
+    /**
+     * Get the version of the engine and signature database the daemon is using by sending it the VERSION command
+     *
+     * @return the signature version, or null if the scanner is disabled
+     * @throws AntivirusException if an error occurs that prevents querying the version
+     */
+    @Override
+    public String getSignatureVersion() throws AntivirusException {
+        if (!enabled)
+            return null;
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), VERSION_TIMEOUT);
+            socket.setSoTimeout(VERSION_TIMEOUT);
+
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("zVERSION\0".getBytes(StandardCharsets.US_ASCII));
+            outputStream.flush();
+
+            InputStream inputStream = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            int read;
+
+            while ((read = inputStream.read()) != -1 && read != 0)
+                response.write(read);
+
+            return parseSignatureVersion(response.toString(StandardCharsets.US_ASCII));
+        } catch (IOException ex) {
+            throw new AntivirusException("Failed to query the antivirus signature version", ex);
+        }
+    }
 }
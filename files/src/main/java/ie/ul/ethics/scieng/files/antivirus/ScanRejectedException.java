@@ -0,0 +1,24 @@
+package ie.ul.ethics.scieng.files.antivirus;
+
+import lombok.Getter;
+
+/**
+ * This exception represents an upload being rejected because the queue of uploads waiting to be scanned is full
+ */
+@Getter
+public class ScanRejectedException extends AntivirusException {
+    /**
+     * The number of seconds the client should wait before retrying
+     */
+    private final long retryAfter;
+
+    /**
+     * Construct an exception with the provided error message
+     * @param message the error message
+     * @param retryAfter the number of seconds the client should wait before retrying
+     */
+    public ScanRejectedException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,205 @@
+package ie.ul.ethics.scieng.files.antivirus;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.models.ScanVerdict;
+import ie.ul.ethics.scieng.files.repositories.ScanVerdictRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class provides a persistent cache of scan verdicts keyed by the SHA-256 hash of the content and the version of
+ * the signatures it was scanned with, so that content uploaded repeatedly is only scanned once per signature update.
+ * The daemon's signature version is polled at most once per configured interval and when it changes, for example after
+ * clamav-update.sh has refreshed the signatures, the verdicts of the previous version are purged. Only one thread polls
+ * the daemon at a time, without holding the lock, while other threads keep using the last known version
+ */
+@Component
+@Log4j2
+public class ScanVerdictCache {
+    /**
+     * The name of the counter recording cache lookups
+     */
+    public static final String CACHE_COUNTER = "files.antivirus.verdict.cache";
+    /**
+     * The name of the gauge recording the ratio of lookups that were hits
+     */
+    public static final String HIT_RATIO_GAUGE = "files.antivirus.verdict.cache.hit.ratio";
+
+    /**
+     * The scanner for antivirus in uploaded files
+     */
+    private final AntivirusScanner antivirusScanner;
+    /**
+     * The repository the verdicts are stored in
+     */
+    private final ScanVerdictRepository repository;
+    /**
+     * True if the cache is enabled
+     */
+    private final boolean enabled;
+    /**
+     * The minimum number of nanoseconds between checks of the signature version
+     */
+    private final long versionCheckNanos;
+    /**
+     * The counter of lookups that found a verdict
+     */
+    private final Counter hits;
+    /**
+     * The counter of lookups that did not find a verdict
+     */
+    private final Counter misses;
+    /**
+     * The number of lookups that found a verdict, kept apart from the meters so the hit ratio does not depend on the
+     * registry they are recorded in
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * The number of lookups that did not find a verdict
+     */
+    private final LongAdder missCount = new LongAdder();
+    /**
+     * The last signature version reported by the scanner. Guarded by this
+     */
+    private String version;
+    /**
+     * The time in nanoseconds of the last check of the signature version. Guarded by this
+     */
+    private long lastCheck;
+    /**
+     * True if the signature version has been checked at least once. Guarded by this
+     */
+    private boolean checked;
+    /**
+     * True while a thread is querying the scanner for the signature version. Guarded by this
+     */
+    private boolean refreshing;
+
+    /**
+     * Create a ScanVerdictCache
+     * @param properties the properties configuration
+     * @param antivirusScanner the scanner for antivirus in uploaded files
+     * @param repository the repository the verdicts are stored in
+     * @param meterRegistry the registry to record the metrics of lookups in
+     */
+    @Autowired
+    public ScanVerdictCache(FilesConfigurationProperties properties, AntivirusScanner antivirusScanner,
+                            ScanVerdictRepository repository, MeterRegistry meterRegistry) {
+        FilesConfigurationProperties.Antivirus antivirus = properties.getAntivirus();
+        this.antivirusScanner = antivirusScanner;
+        this.repository = repository;
+        this.enabled = antivirus.isEnabled() && antivirus.isVerdictCache();
+        this.versionCheckNanos = TimeUnit.SECONDS.toNanos(antivirus.getVersionCheck());
+        this.hits = Counter.builder(CACHE_COUNTER).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(CACHE_COUNTER).tag("result", "miss").register(meterRegistry);
+
+        meterRegistry.gauge(HIT_RATIO_GAUGE, this, ScanVerdictCache::hitRatio);
+    }
+
+    /**
+     * Get the ratio of lookups that found a verdict
+     * @return the hit ratio, 0 if there have been no lookups
+     */
+    public double hitRatio() {
+        long hit = hitCount.sum();
+        long total = hit + missCount.sum();
+
+        return (total == 0) ? 0 : (double) hit / total;
+    }
+
+    /**
+     * Get the signature version the scanner is currently using, querying the scanner if the last check is older than
+     * the configured interval. If the version has changed since the last check, verdicts from other versions are
+     * purged. The scanner is queried without holding the lock, and only by one thread at a time; other threads calling
+     * this in the meantime get the last known version (null before the first check) rather than waiting on the daemon
+     * @return the current signature version, or null if the cache is disabled or the version cannot be determined, in
+     * which case the cache should be bypassed
+     */
+    public String currentVersion() {
+        if (!enabled)
+            return null;
+
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            if ((checked && now - lastCheck < versionCheckNanos) || refreshing)
+                return version;
+
+            refreshing = true;
+        }
+
+        String latest = null;
+        String previous;
+
+        try {
+            latest = antivirusScanner.getSignatureVersion();
+        } catch (AntivirusException ex) {
+            log.warn("Failed to query the antivirus signature version, bypassing the scan verdict cache", ex);
+        } finally {
+            synchronized (this) {
+                previous = version;
+                version = latest;
+                lastCheck = now;
+                checked = true;
+                refreshing = false;
+            }
+        }
+
+        if (latest != null && !latest.equals(previous)) {
+            int purged = repository.deleteBySignatureVersionNot(latest);
+
+            if (purged > 0)
+                log.info("Antivirus signatures are now at {}, purged {} cached scan verdicts", latest, purged);
+        }
+
+        return latest;
+    }
+
+    /**
+     * Look up the verdict of previously scanned content
+     * @param sha256 the hex encoded SHA-256 hash of the content
+     * @param signatureVersion the current signature version. If null, the cache is bypassed and the lookup is not counted
+     * @return the cached verdict, CLEAN or INFECTED, or null if the content has not been scanned with this version
+     */
+    public ScanStatus lookup(String sha256, String signatureVersion) {
+        if (sha256 == null || signatureVersion == null)
+            return null;
+
+        ScanStatus verdict = repository.findById(ScanVerdict.createId(sha256, signatureVersion))
+                .map(ScanVerdict::getVerdict)
+                .orElse(null);
+
+        if (verdict != null) {
+            hitCount.increment();
+            hits.increment();
+        } else {
+            missCount.increment();
+            misses.increment();
+        }
+
+        return verdict;
+    }
+
+    /**
+     * Record the verdict of scanning the content. Only CLEAN and INFECTED verdicts are recorded since a failed scan
+     * says nothing about the content
+     * @param sha256 the hex encoded SHA-256 hash of the content
+     * @param signatureVersion the signature version the content was scanned with. If null, nothing is recorded
+     * @param verdict the verdict of the scan
+     */
+    public void record(String sha256, String signatureVersion, ScanStatus verdict) {
+        if (sha256 == null || signatureVersion == null || (verdict != ScanStatus.CLEAN && verdict != ScanStatus.INFECTED))
+            return;
+
+        repository.save(new ScanVerdict(ScanVerdict.createId(sha256, signatureVersion), sha256, signatureVersion,
+                verdict, LocalDateTime.now()));
+    }
+}
@@ -4,6 +4,10 @@ import ie.ul.ethics.scieng.common.properties.PropertyFinder;
 import ie.ul.ethics.scieng.files.antivirus.AntivirusException;
 import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
 import ie.ul.ethics.scieng.files.antivirus.ClamAvAntivirusScanner;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.storage.LocalStorageBackend;
+import ie.ul.ethics.scieng.files.storage.S3StorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,6 +16,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * This class provides configuration of the files module and any beans required
@@ -73,4 +78,29 @@ public class FilesConfiguration {
 
         return scanner;
     }
+
+    /**
+     * Returns the storage backend bean the content of files is kept in
+     * @return the bean for the storage backend
+     */
+    @Bean
+    public StorageBackend storageBackend() {
+        FilesConfigurationProperties.Storage storage = properties.getStorage();
+        StorageBackend backend;
+
+        if (storage.getBackend().equalsIgnoreCase("local")) {
+            backend = new LocalStorageBackend(Paths.get(properties.getStorageDir()));
+        } else if (storage.getBackend().equalsIgnoreCase("s3")) {
+            if (storage.getS3().getBucket() == null)
+                throw new FileException("The files.storage.s3.bucket property is required for the s3 storage backend", null);
+
+            backend = S3StorageBackend.create(storage.getS3());
+        } else {
+            throw new FileException("Unknown storage backend " + storage.getBackend() + ", expected local or s3", null);
+        }
+
+        log.info("The content of files is stored by {}", backend);
+
+        return backend;
+    }
 }
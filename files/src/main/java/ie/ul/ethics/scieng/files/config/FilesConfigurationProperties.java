@@ -34,6 +34,22 @@ public class FilesConfigurationProperties {
      * The antivirus configuration properties
      */
     private Antivirus antivirus = new Antivirus();
+    /**
+     * The resumable upload configuration properties
+     */
+    private Resumable resumable = new Resumable();
+    /**
+     * The storage backend configuration properties
+     */
+    private Storage storage = new Storage();
+    /**
+     * The garbage collection configuration properties
+     */
+    private Gc gc = new Gc();
+    /**
+     * The image rendition configuration properties
+     */
+    private Renditions renditions = new Renditions();
 
     /**
      * Get the configured location to store files
@@ -86,5 +102,185 @@ public class FilesConfigurationProperties {
          * The platform on which the ClamAv antivirus daemon is running on
          */
         private String platform = "UNIX";
+        /**
+         * Determines if uploads are quarantined and scanned in the background rather than on the request thread. Off by
+         * default since clients have to poll the scan status before the upload can be used
+         */
+        private boolean async = false;
+        /**
+         * The maximum number of concurrent connections to the ClamAv antivirus daemon for background scans
+         */
+        private int connections = 4;
+        /**
+         * The number of quarantined uploads that can wait for a scan before further uploads are rejected
+         */
+        private int queueCapacity = 100;
+        /**
+         * The number of seconds a client should wait before retrying an upload rejected because the scan queue is full
+         */
+        private long retryAfter = 30;
+        /**
+         * Determines if scan verdicts are cached by content hash and signature version so identical content is not rescanned
+         */
+        private boolean verdictCache = true;
+        /**
+         * The minimum number of seconds between checks of the daemon's signature version
+         */
+        private long versionCheck = 60;
+        /**
+         * The number of hours the records of completed scans are kept for clients to poll before they are purged
+         */
+        private long retention = 24;
+    }
+
+    /**
+     * This class provides configuration properties for resumable uploads, which are sent in chunks that can be retried
+     * individually and in parallel
+     */
+    @Getter
+    @Setter
+    public static class Resumable {
+        /**
+         * The size in bytes of each chunk of an upload. The last chunk may be smaller
+         */
+        private int chunkSize = 5 * 1024 * 1024;
+        /**
+         * The maximum size in bytes of an upload
+         */
+        private long maxSize = 200L * 1024 * 1024;
+        /**
+         * The number of hours an upload can be resumed for before it is discarded
+         */
+        private long expiry = 24;
+    }
+
+    /**
+     * This class provides configuration properties for collecting files that are no longer referenced
+     */
+    @Getter
+    @Setter
+    public static class Gc {
+        /**
+         * Determines if the collector runs on its schedule
+         */
+        private boolean enabled = true;
+        /**
+         * Determines if the collector only reports the files it would delete rather than deleting them
+         */
+        private boolean dryRun = true;
+        /**
+         * The number of hours a file must have been stored for before it can be collected if unreferenced, so that
+         * files uploaded for applications not yet saved are not collected
+         */
+        private long gracePeriod = 72;
+        /**
+         * The number of hours an export is kept for before it is collected
+         */
+        private long exportRetention = 24;
+        /**
+         * The maximum number of files the collector examines or deletes per second, so that it does not compete with
+         * requests for I/O
+         */
+        private int maxOperationsPerSecond = 200;
+    }
+
+    /**
+     * This class provides configuration properties for the resized renditions of uploaded images, such as the thumbnails
+     * of profile photos
+     */
+    @Getter
+    @Setter
+    public static class Renditions {
+        /**
+         * Determines if renditions are generated in the background when images are uploaded. If false, they are still
+         * generated when first requested
+         */
+        private boolean enabled = true;
+        /**
+         * The sizes in pixels of the longest side of each rendition. A requested size is served by the smallest
+         * rendition at least as large, or the largest if none is
+         */
+        private List<Integer> sizes = new ArrayList<>(Arrays.asList(64, 128, 256));
+        /**
+         * The JPEG quality of renditions, from 0 to 1
+         */
+        private float quality = 0.8f;
+        /**
+         * The number of threads generating renditions in the background
+         */
+        private int threads = 2;
+        /**
+         * The number of uploads that can wait for their renditions to be generated before further uploads are skipped
+         * and rendered when first requested instead
+         */
+        private int queueCapacity = 100;
+        /**
+         * The maximum number of pixels of an image that renditions are generated from, so that an image with huge
+         * dimensions cannot exhaust the memory of the server
+         */
+        private long maxPixels = 50_000_000;
+        /**
+         * The number of minutes content that could not be decoded is remembered for, during which requests for its
+         * renditions are served the original without decoding it again
+         */
+        private long failureExpiry = 60;
+    }
+
+    /**
+     * This class provides configuration properties for the backend the content of files is kept in
+     */
+    @Getter
+    @Setter
+    public static class Storage {
+        /**
+         * The backend to keep the content of files in, local for the storage directory or s3 for an S3-compatible
+         * object store
+         */
+        private String backend = "local";
+        /**
+         * The number of minutes presigned download URLs are valid for, if the backend supports them
+         */
+        private long presignExpiry = 15;
+        /**
+         * The S3 configuration properties, used if the backend is s3
+         */
+        private S3 s3 = new S3();
+    }
+
+    /**
+     * This class provides configuration properties for an S3-compatible object store
+     */
+    @Getter
+    @Setter
+    public static class S3 {
+        /**
+         * The endpoint of the object store, such as http://localhost:9000 for MinIO. If null, the AWS endpoint of the
+         * region is used
+         */
+        private String endpoint;
+        /**
+         * The region of the bucket
+         */
+        private String region = "us-east-1";
+        /**
+         * The bucket to store objects in
+         */
+        private String bucket;
+        /**
+         * The access key. If null, credentials are taken from the default AWS provider chain
+         */
+        private String accessKey;
+        /**
+         * The secret key
+         */
+        private String secretKey;
+        /**
+         * True to address the bucket in the path rather than the host name, as required by MinIO
+         */
+        private boolean pathStyle;
+        /**
+         * The size in bytes of each part of a multipart upload, at least 5MB. Files larger than this are uploaded in parts
+         */
+        private int partSize = 8 * 1024 * 1024;
     }
 }
@@ -2,17 +2,25 @@ package ie.ul.ethics.scieng.files.controllers;
 
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
 import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.download.DownloadHandler;
+import ie.ul.ethics.scieng.files.download.FileDownload;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
 import ie.ul.ethics.scieng.files.exceptions.PermissionDeniedException;
+import ie.ul.ethics.scieng.files.exceptions.VirusFoundException;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.models.ScanStatusResponse;
 import ie.ul.ethics.scieng.files.models.UploadFileRequest;
 import static ie.ul.ethics.scieng.common.Constants.*;
 
 import ie.ul.ethics.scieng.files.models.UploadFileResponse;
 import ie.ul.ethics.scieng.files.services.FileService;
+import ie.ul.ethics.scieng.files.services.QuarantineService;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,12 +28,15 @@ import org.springframework.web.multipart.MultipartFile;
 import xyz.capybara.clamav.ClamavException;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This controller represents the controller for uploading and downloading files
@@ -43,9 +54,17 @@ public class FileController {
      */
     private final List<String> supportedTypes;
     /**
-     * The scanner for antivirus in uploaded files
+     * The service holding uploads in quarantine while they are scanned in the background
      */
-    private final AntivirusScanner antivirusScanner;
+    private final QuarantineService quarantineService;
+    /**
+     * True if uploads are quarantined and scanned in the background rather than before responding
+     */
+    private final boolean asyncScanning;
+    /**
+     * The handler serving downloads with conditional and ranged requests
+     */
+    private final DownloadHandler downloadHandler;
     /**
      * The authentication information object
      */
@@ -57,11 +76,16 @@ public class FileController {
      * @param fileService the file service for uploading and downloading files
      * @param properties the configuration properties for the files module
      * @param antivirusScanner the scanner for antivirus in uploaded files
+     * @param quarantineService the service holding uploads in quarantine while they are scanned in the background
+     * @param downloadHandler the handler serving downloads with conditional and ranged requests
      */
-    public FileController(FileService fileService, FilesConfigurationProperties properties, AntivirusScanner antivirusScanner) {
+    public FileController(FileService fileService, FilesConfigurationProperties properties, AntivirusScanner antivirusScanner,
+                          QuarantineService quarantineService, DownloadHandler downloadHandler) {
         this.fileService = fileService;
         this.supportedTypes = properties.getSupportedTypes();
-        this.antivirusScanner = antivirusScanner;
+        this.quarantineService = quarantineService;
+        this.asyncScanning = antivirusScanner.isEnabled() && properties.getAntivirus().isAsync();
+        this.downloadHandler = downloadHandler;
 
         if (!antivirusScanner.isEnabled())
             log.warn("Antivirus scanning is disabled. Uploaded files will not be scanned for viruses. This is dangerous and " +
@@ -103,7 +127,7 @@ public class FileController {
      * @param value the value to encode
      * @return the encoded value
      */
-    private String encodeValue(String value) {
+    static String encodeValue(String value) {
         try {
             return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
         } catch (UnsupportedEncodingException ex) {
@@ -113,7 +137,31 @@ public class FileController {
     }
 
     /**
-     * This is the endpoint for uploading files
+     * Build the URI to download the uploaded file from
+     * @param directory the directory the file is stored in, null if the root
+     * @param fileName the name of the file
+     * @param username the username of the user that uploaded the file
+     * @return the download URI
+     */
+    static String buildDownloadUri(String directory, String fileName, String username) {
+        String uri = "/api/files/download/" + fileName;
+        String queryParams = "";
+
+        if (directory != null)
+            queryParams += "directory=" + encodeValue(directory);
+
+        if (!queryParams.isEmpty())
+            queryParams += "&";
+
+        queryParams += "username=" + encodeValue(username);
+
+        return uri + "?" + queryParams;
+    }
+
+    /**
+     * This is the endpoint for uploading files. If antivirus scanning is asynchronous, the file is accepted into
+     * quarantine and a 202 is returned with the ID to poll the scan status with. The file can be downloaded from the
+     * returned URI once the scan finds it to be virus-free
      * @param request the request for uploading the file
      * @return the response body
      */
@@ -122,73 +170,129 @@ public class FileController {
         try {
             MultipartFile file = request.getFile();
 
-            if (!antivirusScanner.isFileSafe(file.getInputStream())) {
-                return respondError(VIRUS_FOUND_FILE);
-            } else if (!supportedTypes.contains(file.getContentType())) {
+            if (!supportedTypes.contains(file.getContentType()))
                 return respondError(UNSUPPORTED_FILE_TYPE);
-            }
 
             String username = authenticationInformation.getUsername();
+
+            if (asyncScanning) {
+                QuarantinedUpload quarantined = fileService.quarantineFile(file, request.getDirectory(), request.getTarget(), username);
+                String uri = buildDownloadUri(request.getDirectory(), request.getTarget(), username);
+
+                return ResponseEntity.accepted().body(new UploadFileResponse(request.getTarget(), uri, file.getContentType(),
+                        file.getSize(), quarantined.getId(), ScanStatus.PENDING));
+            }
+
             String fileName = fileService.storeFile(file, request.getDirectory(), request.getTarget(), username);
             String[] resolved = resolveUploadedFilename(fileName);
             String directory = resolved[0];
             fileName = resolved[1];
 
-            String uri = "/api/files/download/" + fileName;
-            String queryParams = "";
-
-            if (directory != null)
-                queryParams += "directory=" + encodeValue(directory);
-
-            if (!queryParams.isEmpty())
-                queryParams += "&";
+            return ResponseEntity.ok(new UploadFileResponse(fileName, buildDownloadUri(directory, fileName, username),
+                    file.getContentType(), file.getSize()));
+        } catch (VirusFoundException ex) {
+            log.warn("Rejected upload from {} as it contains a virus", authenticationInformation.getUsername());
+            return respondError(VIRUS_FOUND_FILE);
+        } catch (ScanRejectedException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put(ERROR, SERVICE_BUSY);
 
-            queryParams += "username=" + encodeValue(username);
-            uri += "?" + queryParams;
-
-            return ResponseEntity.ok(new UploadFileResponse(fileName, uri, file.getContentType(), file.getSize()));
-        } catch (FileException | IOException | ClamavException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()))
+                    .body(response);
+        } catch (FileException | ClamavException ex) {
             ex.printStackTrace();
             return respondError(FILE_ERROR);
         }
     }
 
     /**
-     * The endpoint for downloading a file
+     * The endpoint for polling the antivirus scan status of a quarantined upload. Only the user that uploaded the file
+     * can poll its status
+     * @param id the ID of the quarantined upload
+     * @return the response body
+     */
+    @GetMapping("/scan/{id}")
+    public ResponseEntity<?> getScanStatus(@PathVariable String id) {
+        QuarantinedUpload quarantined = quarantineService.getUpload(id);
+
+        if (quarantined == null || !quarantined.getUsername().equals(authenticationInformation.getUsername()))
+            return ResponseEntity.notFound().build();
+
+        return ResponseEntity.ok(new ScanStatusResponse(id, quarantined.getStatus(), quarantined.getCompletedAt()));
+    }
+
+    /**
+     * Build the URI of a rendition of the file, versioned by the hash of its content so that it can be cached forever
+     * @param directory the directory the file is stored in, null if the root
+     * @param fileName the name of the file
+     * @param username the username of the user that uploaded the file
+     * @param size the requested size of the rendition
+     * @param version the version of the rendition
+     * @return the versioned rendition URI
+     */
+    static String buildRenditionUri(String directory, String fileName, String username, int size, String version) {
+        return buildDownloadUri(directory, fileName, username) + "&size=" + size + "&v=" + encodeValue(version);
+    }
+
+    /**
+     * The endpoint for downloading a file. The response carries an ETag from the hash of the file's content so repeat
+     * downloads are answered with a 304, and supports a Range header so interrupted downloads can be resumed. If a size
+     * is requested and the file is an image, a resized rendition is served instead. Requests for a rendition without its
+     * current version are redirected to the URI with the version, which is served with headers allowing it to be cached
+     * without revalidation, as its content never changes. If the image has no rendition, the original is served
      * @param filename the name of the file to download
      * @param directory the directory to retrieve the file from
      * @param username the username of the file to retrieve. Defaults to authentication information
+     * @param size the size in pixels of the longest side of the rendition to download, null for the original
+     * @param v the version of the rendition from its content-hash URI
      * @param request the request object
-     * @return the response body
+     * @param response the response object the file is written to
+     * @return the response body, null if the file has been written to the response
      */
     @GetMapping("/download/{filename:.+}")
     public ResponseEntity<?> downloadFile(@PathVariable String filename, @RequestParam(required = false) String directory,
-                                          @RequestParam(required = false) String username, HttpServletRequest request) {
+                                          @RequestParam(required = false) String username,
+                                          @RequestParam(required = false) Integer size,
+                                          @RequestParam(required = false) String v, HttpServletRequest request,
+                                          HttpServletResponse response) {
         try {
             username = (username == null) ? authenticationInformation.getUsername():username;
-            Resource resource = fileService.loadFile(filename, directory, username);
 
-            if (resource == null)
-                return ResponseEntity.notFound().build();
+            if (size != null && size > 0) {
+                FileDownload rendition = fileService.describeRendition(filename, directory, username, size);
 
-            String contentType;
+                if (rendition != null) {
+                    if (!rendition.getVersion().equals(v))
+                        return ResponseEntity.status(HttpStatus.FOUND)
+                                .header(HttpHeaders.LOCATION, buildRenditionUri(directory, filename, username, size, rendition.getVersion()))
+                                .header(HttpHeaders.CACHE_CONTROL, "private, no-cache")
+                                .build();
 
-            try {
-                contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
-            } catch (IOException ex) {
-                contentType = "application/octet-stream";
+                    return downloadHandler.serve(rendition.immutable(), request, response);
+                }
             }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
+            FileDownload download = fileService.describeFile(filename, directory, username);
+
+            if (download == null)
+                return ResponseEntity.notFound().build();
+
+            return downloadHandler.serve(download, request, response);
         } catch (PermissionDeniedException ex) {
             ex.printStackTrace();
             return respondError(FILE_PERMISSION_DENIED);
         } catch (FileException ex) {
             ex.printStackTrace();
             return respondError(FILE_ERROR);
+        } catch (IOException ex) {
+            if (!response.isCommitted()) {
+                ex.printStackTrace();
+                return respondError(FILE_ERROR);
+            }
+
+            log.debug("Download of {} was interrupted", filename, ex);
+            return null;
         }
     }
 
@@ -0,0 +1,275 @@
+package ie.ul.ethics.scieng.files.controllers;
+
+import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.ChecksumMismatchException;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.exceptions.InvalidChunkException;
+import ie.ul.ethics.scieng.files.exceptions.UploadIncompleteException;
+import ie.ul.ethics.scieng.files.exceptions.VirusFoundException;
+import ie.ul.ethics.scieng.files.models.CreateUploadSessionRequest;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.models.UploadFileResponse;
+import ie.ul.ethics.scieng.files.models.UploadSession;
+import ie.ul.ethics.scieng.files.models.UploadSessionResponse;
+import ie.ul.ethics.scieng.files.services.FileService;
+import ie.ul.ethics.scieng.files.services.ResumableUploadService;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import static ie.ul.ethics.scieng.common.Constants.*;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import xyz.capybara.clamav.ClamavException;
+
+import javax.validation.Valid;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This controller provides resumable uploads of large files. A session is created with the length of the file, the
+ * file is then sent in fixed-size chunks, each verified against its SHA-256 checksum, which can be sent in any order
+ * and in parallel and retried individually. Once every chunk has been received, the session is completed and the file
+ * is scanned and stored as with a single request upload
+ */
+@RestController
+@RequestMapping("/api/files/uploads")
+@Log4j2
+public class UploadSessionController {
+    /**
+     * The header the offset of the upload is returned in
+     */
+    public static final String UPLOAD_OFFSET = "Upload-Offset";
+    /**
+     * The header the checksum of a chunk is sent in
+     */
+    public static final String UPLOAD_CHECKSUM = "Upload-Checksum";
+
+    /**
+     * The service for resumable uploads
+     */
+    private final ResumableUploadService uploadService;
+    /**
+     * The file service completed uploads are stored with
+     */
+    private final FileService fileService;
+    /**
+     * The list of supported MIME types
+     */
+    private final List<String> supportedTypes;
+    /**
+     * The maximum length of a resumable upload in bytes
+     */
+    private final long maxSize;
+    /**
+     * True if uploads are quarantined and scanned in the background rather than before responding
+     */
+    private final boolean asyncScanning;
+    /**
+     * The authentication information object
+     */
+    @javax.annotation.Resource(name = "authenticationInformation")
+    private AuthenticationInformation authenticationInformation;
+
+    /**
+     * Create the controller
+     * @param uploadService the service for resumable uploads
+     * @param fileService the file service completed uploads are stored with
+     * @param properties the configuration properties for the files module
+     * @param antivirusScanner the scanner for antivirus in uploaded files
+     */
+    public UploadSessionController(ResumableUploadService uploadService, FileService fileService,
+                                   FilesConfigurationProperties properties, AntivirusScanner antivirusScanner) {
+        this.uploadService = uploadService;
+        this.fileService = fileService;
+        this.supportedTypes = properties.getSupportedTypes();
+        this.maxSize = properties.getResumable().getMaxSize();
+        this.asyncScanning = antivirusScanner.isEnabled() && properties.getAntivirus().isAsync();
+    }
+
+    /**
+     * Describe the progress of the session
+     * @param session the upload session
+     * @return the response describing the session
+     */
+    private UploadSessionResponse describe(UploadSession session) {
+        List<Integer> received = uploadService.getReceivedChunks(session);
+        long offset = 0;
+
+        for (int i = 0; i < received.size() && received.get(i) == i; i++)
+            offset += session.getChunkLength(i);
+
+        return new UploadSessionResponse(session.getId(), session.getLength(), session.getChunkSize(), offset, received,
+                session.getExpiresAt());
+    }
+
+    /**
+     * Get the session of the authenticated user
+     * @param id the ID of the session
+     * @return the session, null if not found
+     */
+    private UploadSession findSession(String id) {
+        return uploadService.getSession(id, authenticationInformation.getUsername());
+    }
+
+    /**
+     * The endpoint for starting a resumable upload. The Location header of the response is the URI of the session
+     * @param request the request to start the upload
+     * @return the response body
+     */
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestBody @Valid CreateUploadSessionRequest request) {
+        if (!supportedTypes.contains(request.getContentType()))
+            return respondError(UNSUPPORTED_FILE_TYPE);
+
+        if (request.getLength() <= 0 || request.getLength() > maxSize)
+            return respondError(UPLOAD_TOO_LARGE);
+
+        try {
+            UploadSession session = uploadService.createSession(authenticationInformation.getUsername(),
+                    request.getDirectory(), request.getTarget(), request.getContentType(), request.getLength());
+
+            return ResponseEntity.created(URI.create("/api/files/uploads/" + session.getId()))
+                    .body(describe(session));
+        } catch (FileException ex) {
+            ex.printStackTrace();
+            return respondError(FILE_ERROR);
+        }
+    }
+
+    /**
+     * The endpoint for getting the progress of a resumable upload, used to determine which chunks to resend after an
+     * interruption
+     * @param id the ID of the session
+     * @return the response body
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getSession(@PathVariable String id) {
+        UploadSession session = findSession(id);
+
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        UploadSessionResponse response = describe(session);
+
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(response.getOffset()))
+                .body(response);
+    }
+
+    /**
+     * The endpoint for sending a chunk of a resumable upload. Every chunk but the last must be exactly the chunk size
+     * of the session
+     * @param id the ID of the session
+     * @param index the index of the chunk
+     * @param checksum the checksum of the chunk in the form "sha256 base64-digest"
+     * @param body the content of the chunk
+     * @return the response body
+     */
+    @PutMapping(value = "/{id}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> writeChunk(@PathVariable String id, @PathVariable int index,
+                                        @RequestHeader(value = UPLOAD_CHECKSUM, required = false) String checksum,
+                                        InputStream body) {
+        UploadSession session = findSession(id);
+
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        try {
+            uploadService.writeChunk(session, index, body, checksum);
+
+            return ResponseEntity.noContent().build();
+        } catch (InvalidChunkException ex) {
+            log.debug("Rejected chunk {} of upload {}", index, id, ex);
+            return respondError(UPLOAD_INVALID_CHUNK);
+        } catch (ChecksumMismatchException ex) {
+            log.debug("Rejected chunk {} of upload {}", index, id, ex);
+            return respondError(UPLOAD_CHECKSUM_MISMATCH);
+        } catch (FileException ex) {
+            ex.printStackTrace();
+            return respondError(FILE_ERROR);
+        }
+    }
+
+    /**
+     * The endpoint for completing a resumable upload once every chunk has been received. The file is then scanned and
+     * stored as with a single request upload, so if antivirus scanning is asynchronous, a 202 is returned with the ID
+     * to poll the scan status with
+     * @param id the ID of the session
+     * @return the response body
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(@PathVariable String id) {
+        UploadSession session = findSession(id);
+
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        String username = session.getUsername();
+        String directory = session.getDirectory();
+        String target = session.getTarget();
+
+        try {
+            StagedUpload upload = uploadService.complete(session);
+            String uri = FileController.buildDownloadUri(directory, target, username);
+
+            if (asyncScanning) {
+                QuarantinedUpload quarantined = fileService.quarantineUpload(upload, directory, target, username);
+
+                return ResponseEntity.accepted().body(new UploadFileResponse(target, uri, session.getContentType(),
+                        upload.getSize(), quarantined.getId(), ScanStatus.PENDING));
+            }
+
+            fileService.storeUpload(upload, directory, target, username);
+
+            return ResponseEntity.ok(new UploadFileResponse(target, uri, session.getContentType(), upload.getSize()));
+        } catch (UploadIncompleteException ex) {
+            log.debug("Upload {} completed before all chunks were received", id, ex);
+            return respondError(UPLOAD_INCOMPLETE);
+        } catch (VirusFoundException ex) {
+            log.warn("Rejected upload from {} as it contains a virus", username);
+            return respondError(VIRUS_FOUND_FILE);
+        } catch (ScanRejectedException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put(ERROR, SERVICE_BUSY);
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()))
+                    .body(response);
+        } catch (FileException | ClamavException ex) {
+            ex.printStackTrace();
+            return respondError(FILE_ERROR);
+        }
+    }
+
+    /**
+     * The endpoint for aborting a resumable upload, discarding any chunks received
+     * @param id the ID of the session
+     * @return the response body
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abort(@PathVariable String id) {
+        UploadSession session = findSession(id);
+
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        try {
+            uploadService.abort(session);
+
+            return ResponseEntity.ok().build();
+        } catch (FileException ex) {
+            ex.printStackTrace();
+            return respondError(FILE_ERROR);
+        }
+    }
+}
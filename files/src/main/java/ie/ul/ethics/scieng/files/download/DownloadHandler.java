@@ -0,0 +1,255 @@
+package ie.ul.ethics.scieng.files.download;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class serves files from disk with support for conditional and ranged requests. Responses carry an ETag,
+ * Last-Modified and Accept-Ranges, so repeat views are answered with a 304 and interrupted downloads can be resumed
+ * with a Range request. The body is handed to the servlet container to send with sendfile where it supports it, and is
+ * otherwise written with FileChannel.transferTo rather than being copied through a Resource's input stream
+ */
+@Component
+@Log4j2
+public class DownloadHandler {
+    /**
+     * The name of the counter recording the responses to downloads
+     */
+    public static final String DOWNLOAD_COUNTER = "files.downloads";
+    /**
+     * The Cache-Control of downloads whose content never changes at their URL, allowing clients to cache them for a year
+     * without revalidating
+     */
+    public static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+    /**
+     * The request attribute set by Tomcat if the connector supports sendfile
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    /**
+     * The request attribute for the file to send with sendfile
+     */
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    /**
+     * The request attribute for the offset to start sending from with sendfile
+     */
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    /**
+     * The request attribute for the offset to stop sending at (exclusive) with sendfile
+     */
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * The counter of full responses
+     */
+    private final Counter full;
+    /**
+     * The counter of partial responses
+     */
+    private final Counter partial;
+    /**
+     * The counter of responses answered from the client's cache
+     */
+    private final Counter notModified;
+    /**
+     * The counter of responses redirecting to the storage backend
+     */
+    private final Counter redirected;
+
+    /**
+     * Create a DownloadHandler
+     * @param meterRegistry the registry to record the metrics of downloads in
+     */
+    public DownloadHandler(MeterRegistry meterRegistry) {
+        this.full = Counter.builder(DOWNLOAD_COUNTER).tag("response", "full").register(meterRegistry);
+        this.partial = Counter.builder(DOWNLOAD_COUNTER).tag("response", "partial").register(meterRegistry);
+        this.notModified = Counter.builder(DOWNLOAD_COUNTER).tag("response", "not_modified").register(meterRegistry);
+        this.redirected = Counter.builder(DOWNLOAD_COUNTER).tag("response", "redirect").register(meterRegistry);
+    }
+
+    /**
+     * Describe a file whose content hash is not tracked, such as an export, giving it a weak ETag from its size and
+     * last modified time. The file is not read, so describing a large export costs a single stat on the request
+     * thread. Ranged requests for it can still be validated with an If-Range date
+     * @param path the path of the file
+     * @param filename the name to give the file in the Content-Disposition header
+     * @param contentType the content type of the file
+     * @return the described file
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public FileDownload describe(Path path, String filename, String contentType) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        return new FileDownload(path, filename, size, lastModified, FileDownload.weakETag(size, lastModified),
+                contentType);
+    }
+
+    /**
+     * Determine if the If-Range precondition of the request holds, i.e. the client's partial copy is of the current
+     * representation. A Range request whose If-Range does not hold is answered with the full file
+     * @param download the file being downloaded
+     * @param request the request
+     * @return true if there is no If-Range header or it matches the file
+     */
+    private static boolean ifRangeMatches(FileDownload download, HttpServletRequest request) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+        if (ifRange == null)
+            return true;
+        else if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return download.isStrongETag() && ifRange.equals(download.getETag());
+
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == (download.getLastModified() / 1000) * 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Serve the file, answering conditional requests with a 304 and a single Range with a 206. Requests for multiple
+     * ranges and malformed Range headers are answered with the full file, as HTTP permits a Range header to be ignored.
+     * The response is written directly, so a null response entity is returned unless the range cannot be satisfied. If
+     * the file has a presigned location, requests that are not answered with a 304 are redirected to it so the content
+     * is sent by the storage backend, which handles ranges itself
+     * @param download the file to download
+     * @param request the request
+     * @param response the response to write the file to
+     * @return a 416 response if the requested range cannot be satisfied or a 302 to the file's location, otherwise null
+     * as the response has been written
+     * @throws IOException if the file cannot be sent
+     */
+    public ResponseEntity<?> serve(FileDownload download, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = download.getSize();
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, download.isImmutable() ? IMMUTABLE_CACHE_CONTROL : "private, no-cache");
+
+        if (new ServletWebRequest(request, response).checkNotModified(download.getETag(), download.getLastModified())) {
+            notModified.increment();
+
+            return null;
+        }
+
+        if (download.getLocation() != null) {
+            redirected.increment();
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(download.getLocation())
+                    .build();
+        }
+
+        long start = 0;
+        long length = size;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+
+        if (rangeHeader != null && HttpMethod.GET.matches(request.getMethod()) && ifRangeMatches(download, request)) {
+            List<HttpRange> ranges = parseRanges(rangeHeader);
+
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                start = range.getRangeStart(size);
+
+                if (start >= size)
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                            .build();
+
+                length = range.getRangeEnd(size) - start + 1;
+            }
+        }
+
+        if (length < size) {
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+            partial.increment();
+        } else {
+            full.increment();
+        }
+
+        response.setContentType(download.getContentType());
+        response.setContentLengthLong(length);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + download.getFilename() + "\"");
+
+        if (!HttpMethod.HEAD.matches(request.getMethod()))
+            writeBody(download.getPath(), start, length, request, response);
+
+        return null;
+    }
+
+    /**
+     * Parse the ranges of the Range header
+     * @param rangeHeader the value of the Range header
+     * @return the requested ranges, empty if the header is malformed so that it is ignored
+     */
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException ex) {
+            log.debug("Ignoring malformed Range header {}", rangeHeader);
+
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Write the range of the file to the response. If the container supports sendfile, the range is handed to it to
+     * send from the kernel once the request completes. Otherwise the file channel transfers the range to the response
+     * @param path the path of the file
+     * @param start the offset of the first byte to send
+     * @param length the number of bytes to send
+     * @param request the request
+     * @param response the response
+     * @throws IOException if the file cannot be sent
+     */
+    private void writeBody(Path path, long start, long length, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + length;
+
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, out);
+
+                if (sent <= 0)
+                    throw new EOFException("File " + path + " was truncated while being sent");
+
+                position += sent;
+            }
+        }
+
+        response.flushBuffer();
+    }
+}
@@ -0,0 +1,121 @@
+package ie.ul.ethics.scieng.files.download;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * This class represents a file on disk that is ready to be served, along with the metadata needed to answer
+ * conditional and ranged requests for it without touching the file again. Files held by a remote storage backend have
+ * no path, and are instead served by redirecting to a presigned URL
+ */
+@Getter
+@AllArgsConstructor
+public class FileDownload {
+    /**
+     * The path of the file on disk, null if the file is downloaded from its location
+     */
+    private final Path path;
+    /**
+     * The name to give the file in the Content-Disposition header
+     */
+    private final String filename;
+    /**
+     * The size of the file in bytes
+     */
+    private final long size;
+    /**
+     * The last modified time of the file in epoch milliseconds
+     */
+    private final long lastModified;
+    /**
+     * The entity tag of the file, quoted. This is strong if derived from the hash of the content, and weak otherwise
+     */
+    private final String eTag;
+    /**
+     * The content type of the file
+     */
+    private final String contentType;
+    /**
+     * The presigned URL to download the file from directly, null if the file is served from its path
+     */
+    private final URI location;
+    /**
+     * True if the content at the URL of the download never changes, such as a rendition requested by the hash of its
+     * content, so that clients can cache it without revalidating
+     */
+    private final boolean immutable;
+
+    /**
+     * Create a FileDownload that may be downloaded from its location
+     * @param path the path of the file on disk, null if the file is downloaded from its location
+     * @param filename the name to give the file in the Content-Disposition header
+     * @param size the size of the file in bytes
+     * @param lastModified the last modified time of the file in epoch milliseconds
+     * @param eTag the quoted entity tag of the file
+     * @param contentType the content type of the file
+     * @param location the presigned URL to download the file from, null if served from its path
+     */
+    public FileDownload(Path path, String filename, long size, long lastModified, String eTag, String contentType,
+                        URI location) {
+        this(path, filename, size, lastModified, eTag, contentType, location, false);
+    }
+
+    /**
+     * Create a FileDownload for a file on disk
+     * @param path the path of the file on disk
+     * @param filename the name to give the file in the Content-Disposition header
+     * @param size the size of the file in bytes
+     * @param lastModified the last modified time of the file in epoch milliseconds
+     * @param eTag the quoted entity tag of the file
+     * @param contentType the content type of the file
+     */
+    public FileDownload(Path path, String filename, long size, long lastModified, String eTag, String contentType) {
+        this(path, filename, size, lastModified, eTag, contentType, null);
+    }
+
+    /**
+     * Copy the download, marking its content as never changing at the URL it is requested from
+     * @return the immutable copy
+     */
+    public FileDownload immutable() {
+        return new FileDownload(path, filename, size, lastModified, eTag, contentType, location, true);
+    }
+
+    /**
+     * Create a strong entity tag from the hash of the content
+     * @param hash the hash of the content
+     * @return the quoted entity tag
+     */
+    public static String strongETag(String hash) {
+        return "\"" + hash + "\"";
+    }
+
+    /**
+     * Create a weak entity tag from the size and last modified time, for files whose content hash is not known
+     * @param size the size of the file
+     * @param lastModified the last modified time of the file
+     * @return the quoted weak entity tag
+     */
+    public static String weakETag(long size, long lastModified) {
+        return "W/\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * Determine if the entity tag is strong, i.e. can be used to validate ranged requests
+     * @return true if strong
+     */
+    public boolean isStrongETag() {
+        return eTag != null && !eTag.startsWith("W/");
+    }
+
+    /**
+     * Get the version of the content for content-addressed URLs, which is the strong entity tag without its quotes
+     * @return the version, null if the entity tag is not strong
+     */
+    public String getVersion() {
+        return isStrongETag() ? eTag.substring(1, eTag.length() - 1) : null;
+    }
+}
@@ -0,0 +1,16 @@
+package ie.ul.ethics.scieng.files.exceptions;
+
+/**
+ * This exception represents an exception when the checksum of a chunk of a resumable upload is missing, malformed or does not match the content received
+ */
+public class ChecksumMismatchException extends FileException {
+    /**
+     * Create a ChecksumMismatchException with the provided message and causing throwable
+     *
+     * @param message   the message to display
+     * @param throwable the throwable that caused this exception
+     */
+    public ChecksumMismatchException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,16 @@
+package ie.ul.ethics.scieng.files.exceptions;
+
+/**
+ * This exception represents an exception when a chunk of a resumable upload is outside the upload or is not the expected size
+ */
+public class InvalidChunkException extends FileException {
+    /**
+     * Create an InvalidChunkException with the provided message and causing throwable
+     *
+     * @param message   the message to display
+     * @param throwable the throwable that caused this exception
+     */
+    public InvalidChunkException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
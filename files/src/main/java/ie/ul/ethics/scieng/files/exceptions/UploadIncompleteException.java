@@ -0,0 +1,16 @@
+package ie.ul.ethics.scieng.files.exceptions;
+
+/**
+ * This exception represents an exception when a resumable upload is completed before all of its chunks have been received
+ */
+public class UploadIncompleteException extends FileException {
+    /**
+     * Create an UploadIncompleteException with the provided message and causing throwable
+     *
+     * @param message   the message to display
+     * @param throwable the throwable that caused this exception
+     */
+    public UploadIncompleteException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
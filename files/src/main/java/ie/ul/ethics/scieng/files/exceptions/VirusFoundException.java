@@ -0,0 +1,16 @@
+package ie.ul.ethics.scieng.files.exceptions;
+
+/**
+ * This exception represents an exception when an uploaded file is found to contain a virus
+ */
+public class VirusFoundException extends FileException {
+    /**
+     * Create a VirusFoundException with the provided message and causing throwable
+     *
+     * @param message   the message to display
+     * @param throwable the throwable that caused this exception
+     */
+    public VirusFoundException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
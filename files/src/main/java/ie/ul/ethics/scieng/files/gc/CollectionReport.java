@@ -0,0 +1,97 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import lombok.Getter;
+
+/**
+ * This class represents the outcome of a run of the {@link FileCollector}. In a dry run, the counts are of the files that
+ * would have been deleted
+ */
+@Getter
+public class CollectionReport {
+    /**
+     * True if nothing was deleted
+     */
+    private final boolean dryRun;
+    /**
+     * The number of references marked
+     */
+    private long marked;
+    /**
+     * The number of files examined
+     */
+    private long examined;
+    /**
+     * The number of unreferenced files deleted
+     */
+    private long filesDeleted;
+    /**
+     * The number of exports deleted
+     */
+    private long exportsDeleted;
+    /**
+     * The number of bytes reclaimed by deleting files and exports
+     */
+    private long bytesReclaimed;
+    /**
+     * The number of files that could not be deleted
+     */
+    private long failures;
+
+    /**
+     * Create a CollectionReport
+     * @param dryRun true if nothing is deleted
+     */
+    public CollectionReport(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Record the number of references marked
+     * @param marked the number of references
+     */
+    void setMarked(long marked) {
+        this.marked = marked;
+    }
+
+    /**
+     * Record that a file was examined
+     */
+    void examined() {
+        examined++;
+    }
+
+    /**
+     * Record that an unreferenced file was deleted
+     * @param size the size of the file in bytes
+     */
+    void fileDeleted(long size) {
+        filesDeleted++;
+        bytesReclaimed += size;
+    }
+
+    /**
+     * Record that an export was deleted
+     * @param size the size of the export in bytes
+     */
+    void exportDeleted(long size) {
+        exportsDeleted++;
+        bytesReclaimed += size;
+    }
+
+    /**
+     * Record that a file could not be deleted
+     */
+    void failed() {
+        failures++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: marked %d references, examined %d files, %s %d files and %d exports (%d bytes), %d failures",
+                dryRun ? "Dry run" : "Collection", marked, examined, dryRun ? "would delete" : "deleted", filesDeleted,
+                exportsDeleted, bytesReclaimed, failures);
+    }
+}
@@ -0,0 +1,19 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+
+/**
+ * This interface represents a mark-and-sweep collector of stored files that are no longer referenced, such as uploads
+ * that were never attached to an application, attachments left behind when deleting an application failed, and stale
+ * exports
+ */
+public interface FileCollector {
+    /**
+     * Mark the files referenced by every {@link FileReferenceProvider} and sweep the unreferenced files older than the
+     * grace period, along with exports older than the export retention
+     * @param dryRun true to only report the files that would be deleted without deleting them
+     * @return the report of the files collected
+     * @throws FileException if the references cannot be marked
+     */
+    CollectionReport collect(boolean dryRun) throws FileException;
+}
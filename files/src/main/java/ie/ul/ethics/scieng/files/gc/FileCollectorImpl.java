@@ -0,0 +1,541 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.models.FileBlob;
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import ie.ul.ethics.scieng.files.repositories.FileBlobRepository;
+import ie.ul.ethics.scieng.files.repositories.StoredFileRepository;
+import ie.ul.ethics.scieng.files.services.BlobStore;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.users.services.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is the implementing class of FileCollector. References are marked from every {@link FileReferenceProvider}, and
+ * profile photos are kept for as long as their user exists, as they are referenced by name rather than by a record. The
+ * user directories under data/ are then swept, along with the stored files only kept in the storage backend if it is
+ * remote. A file is only deleted if it is unreferenced and was stored longer ago than the grace period, and deleting it
+ * releases its blob as deleting it through the file service would. Exports under exports/ are deleted once older than
+ * the export retention. The sweep is paced by an {@link IoThrottle} and is run on a schedule
+ */
+@Service
+@Log4j2
+public class FileCollectorImpl implements FileCollector {
+    /**
+     * The name of the counter recording the files deleted by the collector
+     */
+    public static final String DELETED_COUNTER = "files.gc.deleted";
+    /**
+     * The name of the counter recording the bytes reclaimed by the collector
+     */
+    public static final String RECLAIMED_COUNTER = "files.gc.reclaimed";
+    /**
+     * The part of the name of a file that identifies it as a profile photo
+     */
+    public static final String PROFILE_PHOTO = "profile-photo";
+
+    /**
+     * The directory of the users' directories
+     */
+    private final Path dataLocation;
+    /**
+     * The directory of exports
+     */
+    private final Path exportsLocation;
+    /**
+     * The backend the content of files is kept in
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * The content-addressed store the content of files is kept in
+     */
+    private final BlobStore blobStore;
+    /**
+     * The repository of files stored through the blob store
+     */
+    private final StoredFileRepository storedFileRepository;
+    /**
+     * The repository for blobs
+     */
+    private final FileBlobRepository blobRepository;
+    /**
+     * The service for loading the owners of profile photos
+     */
+    private final UserService userService;
+    /**
+     * The providers of references to files
+     */
+    private final ObjectProvider<FileReferenceProvider> providers;
+    /**
+     * The configuration properties of the collector
+     */
+    private final FilesConfigurationProperties.Gc properties;
+    /**
+     * The registry the files and bytes reclaimed are recorded in
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Create a FileCollectorImpl
+     * @param properties the configuration properties for the files module
+     * @param storageBackend the backend the content of files is kept in
+     * @param blobStore the content-addressed store the content of files is kept in
+     * @param storedFileRepository the repository of files stored through the blob store
+     * @param blobRepository the repository for blobs
+     * @param userService the service for loading the owners of profile photos
+     * @param providers the providers of references to files
+     * @param meterRegistry the registry to record the files and bytes reclaimed in
+     */
+    @Autowired
+    public FileCollectorImpl(FilesConfigurationProperties properties, StorageBackend storageBackend, BlobStore blobStore,
+                             StoredFileRepository storedFileRepository, FileBlobRepository blobRepository,
+                             UserService userService, ObjectProvider<FileReferenceProvider> providers,
+                             MeterRegistry meterRegistry) {
+        Path storageLocation = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize();
+        this.dataLocation = storageLocation.resolve("data");
+        this.exportsLocation = storageLocation.resolve("exports");
+        this.storageBackend = storageBackend;
+        this.blobStore = blobStore;
+        this.storedFileRepository = storedFileRepository;
+        this.blobRepository = blobRepository;
+        this.userService = userService;
+        this.providers = providers;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties.getGc();
+    }
+
+    /**
+     * Run the collector on its schedule if enabled, in dry run mode if configured
+     */
+    @Scheduled(cron = "${files.gc.cron:0 30 3 * * ?}")
+    public void scheduledCollect() {
+        if (properties.isEnabled()) {
+            try {
+                collect(properties.isDryRun());
+            } catch (FileException ex) {
+                log.error("Failed to collect unreferenced files", ex);
+            }
+        }
+    }
+
+    /**
+     * Mark the files referenced by every {@link FileReferenceProvider} and sweep the unreferenced files older than the
+     * grace period, along with exports older than the export retention
+     *
+     * @param dryRun true to only report the files that would be deleted without deleting them
+     * @return the report of the files collected
+     * @throws FileException if the references cannot be marked
+     */
+    @Override
+    public synchronized CollectionReport collect(boolean dryRun) throws FileException {
+        CollectionReport report = new CollectionReport(dryRun);
+        Sweep sweep = new Sweep(mark(), report);
+        report.setMarked(sweep.marked.size());
+
+        try {
+            if (sweep.sweepData() && !storageBackend.isLocal())
+                sweep.sweepStoredFiles();
+
+            sweep.sweepExports();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("File collection was interrupted");
+        }
+
+        String tag = String.valueOf(dryRun);
+        Counter.builder(DELETED_COUNTER).tag("dryRun", tag).register(meterRegistry)
+                .increment(report.getFilesDeleted() + report.getExportsDeleted());
+        Counter.builder(RECLAIMED_COUNTER).tag("dryRun", tag).baseUnit("bytes").register(meterRegistry)
+                .increment(report.getBytesReclaimed());
+        log.info("{}", report);
+
+        return report;
+    }
+
+    /**
+     * Mark the files referenced by every provider. If any provider fails, nothing can be swept safely, so the collection
+     * is abandoned
+     * @return the referenced files
+     * @throws FileException if a provider fails
+     */
+    private Set<FileReference> mark() throws FileException {
+        Set<FileReference> marked = new HashSet<>();
+
+        providers.orderedStream().forEach(provider -> {
+            try {
+                provider.markReferences(marked::add);
+            } catch (RuntimeException ex) {
+                throw new FileException("Failed to mark the files referenced by " + provider, ex);
+            }
+        });
+
+        return marked;
+    }
+
+    /**
+     * Convert the file time to a local date time
+     * @param millis the time in milliseconds since the epoch
+     * @return the local date time
+     */
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Get the size of the file or of all the files under the directory
+     * @param path the file or directory
+     * @return the size in bytes
+     * @throws IOException if the size cannot be read
+     */
+    private static long sizeOf(Path path) throws IOException {
+        long[] size = {0};
+
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                size[0] += attributes.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return size[0];
+    }
+
+    /**
+     * Delete the file or the directory and all the files under it
+     * @param path the file or directory
+     * @throws IOException if it cannot be deleted
+     */
+    private static void deleteRecursively(Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * This class holds the state of a single run of the collector
+     */
+    private class Sweep {
+        /**
+         * The referenced files
+         */
+        private final Set<FileReference> marked;
+        /**
+         * The report of the run
+         */
+        private final CollectionReport report;
+        /**
+         * The throttle pacing the I/O of the run
+         */
+        private final IoThrottle throttle;
+        /**
+         * The files stored through the blob store that have not yet been swept
+         */
+        private final Map<FileReference, StoredFile> storedFiles = new HashMap<>();
+        /**
+         * Whether the owners of profile photos exist, keyed by username
+         */
+        private final Map<String, Boolean> users = new HashMap<>();
+        /**
+         * The time files must have been stored before to be collected
+         */
+        private final LocalDateTime cutoff;
+
+        /**
+         * Create a Sweep
+         * @param marked the referenced files
+         * @param report the report of the run
+         */
+        private Sweep(Set<FileReference> marked, CollectionReport report) {
+            this.marked = marked;
+            this.report = report;
+            this.throttle = new IoThrottle(properties.getMaxOperationsPerSecond());
+            this.cutoff = LocalDateTime.now().minus(Duration.ofHours(properties.getGracePeriod()));
+
+            for (StoredFile stored : storedFileRepository.findAll())
+                storedFiles.put(new FileReference(stored.getUsername(), stored.getDirectory(), stored.getFilename()), stored);
+        }
+
+        /**
+         * Determine if the file is referenced, either marked by a provider or a profile photo of an existing user
+         * @param reference the file
+         * @return true if the file must be kept
+         */
+        private boolean isLive(FileReference reference) {
+            if (marked.contains(reference))
+                return true;
+
+            return reference.getFilename().contains(PROFILE_PHOTO) &&
+                    users.computeIfAbsent(reference.getUsername(), username -> userService.loadUser(username) != null);
+        }
+
+        /**
+         * Determine if the file was stored before the grace period. A stored file without a recorded time is stamped
+         * with the current time instead, so it is given the full grace period from the first run that sees it
+         * @param stored the stored file, null if the file was stored before the blob store
+         * @param lastModified the last modified time of the file on disk, used if there is no stored file
+         * @return true if the file is old enough to collect
+         */
+        private boolean isExpired(StoredFile stored, LocalDateTime lastModified) {
+            if (stored == null)
+                return lastModified != null && lastModified.isBefore(cutoff);
+
+            if (stored.getStoredAt() == null) {
+                stored.setStoredAt(LocalDateTime.now());
+                storedFileRepository.save(stored);
+
+                return false;
+            }
+
+            return stored.getStoredAt().isBefore(cutoff);
+        }
+
+        /**
+         * Release the reference the stored file holds on its blob
+         * @param reference the file
+         */
+        private void release(FileReference reference) {
+            blobStore.release(reference.getUsername(), reference.getDirectory(), reference.getFilename());
+        }
+
+        /**
+         * Parse the file's path relative to the data directory as a reference, the first name being the username and the
+         * last the filename
+         * @param file the file under the data directory
+         * @return the reference, null if the file is not in a user's directory
+         */
+        private FileReference parse(Path file) {
+            Path relative = dataLocation.relativize(file);
+            int count = relative.getNameCount();
+
+            if (count < 2)
+                return null;
+
+            List<String> directories = new ArrayList<>();
+
+            for (int i = 1; i < count - 1; i++)
+                directories.add(relative.getName(i).toString());
+
+            return new FileReference(relative.getName(0).toString(),
+                    directories.isEmpty() ? null : String.join("/", directories), relative.getFileName().toString());
+        }
+
+        /**
+         * Sweep the users' directories, deleting unreferenced expired files and then the directories left empty by them
+         * @return true if every directory was swept, false if the sweep was interrupted or a directory could not be read
+         * @throws InterruptedException if interrupted while throttled
+         */
+        private boolean sweepData() throws InterruptedException {
+            if (!Files.isDirectory(dataLocation))
+                return true;
+
+            boolean[] complete = {true};
+            InterruptedException[] interrupted = {null};
+            Set<Path> emptied = new HashSet<>();
+
+            try {
+                Files.walkFileTree(dataLocation, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        try {
+                            throttle.acquire();
+                        } catch (InterruptedException ex) {
+                            interrupted[0] = ex;
+                            return FileVisitResult.TERMINATE;
+                        }
+
+                        FileReference reference = parse(file);
+
+                        if (reference != null && attributes.isRegularFile()) {
+                            report.examined();
+                            StoredFile stored = storedFiles.remove(reference);
+
+                            if (!isLive(reference) && isExpired(stored, toLocalDateTime(attributes.lastModifiedTime().toMillis()))
+                                    && deleteFile(file, reference, stored, attributes.size()))
+                                emptied.add(file.getParent());
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                        log.warn("Could not read {} while collecting files", file, ex);
+                        complete[0] = false;
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException ex) {
+                        if (ex != null)
+                            complete[0] = false;
+
+                        if (emptied.remove(dir) && !dir.equals(dataLocation)) {
+                            try {
+                                Files.delete(dir);
+                            } catch (DirectoryNotEmptyException ignored) {
+                                // other files remain in the directory
+                            } catch (IOException deleteEx) {
+                                log.debug("Could not delete directory {}", dir, deleteEx);
+                            }
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException ex) {
+                log.error("Failed to sweep {}", dataLocation, ex);
+                return false;
+            }
+
+            if (interrupted[0] != null)
+                throw interrupted[0];
+
+            return complete[0];
+        }
+
+        /**
+         * Delete the unreferenced file and release its blob
+         * @param file the file on disk
+         * @param reference the file's reference
+         * @param stored the stored file, null if stored before the blob store
+         * @param size the size of the file
+         * @return true if the file was deleted, false in a dry run or if it could not be deleted
+         */
+        private boolean deleteFile(Path file, FileReference reference, StoredFile stored, long size) {
+            log.debug("{} unreferenced file {}", report.isDryRun() ? "Would delete" : "Deleting", reference);
+
+            if (report.isDryRun()) {
+                report.fileDeleted(size);
+                return false;
+            }
+
+            try {
+                Files.deleteIfExists(file);
+
+                if (stored != null)
+                    release(reference);
+
+                report.fileDeleted(size);
+
+                return true;
+            } catch (IOException | FileException ex) {
+                log.warn("Failed to delete unreferenced file {}", reference, ex);
+                report.failed();
+
+                return false;
+            }
+        }
+
+        /**
+         * Sweep the stored files that were not found on disk, which with a remote backend are kept only in the backend
+         * @throws InterruptedException if interrupted while throttled
+         */
+        private void sweepStoredFiles() throws InterruptedException {
+            for (Map.Entry<FileReference, StoredFile> entry : storedFiles.entrySet()) {
+                throttle.acquire();
+                FileReference reference = entry.getKey();
+                StoredFile stored = entry.getValue();
+                report.examined();
+
+                if (isLive(reference) || !isExpired(stored, null))
+                    continue;
+
+                long size = (stored.getHash() == null) ? 0 : blobRepository.findById(stored.getHash())
+                        .map(FileBlob::getSize)
+                        .orElse(0L);
+                log.debug("{} unreferenced file {}", report.isDryRun() ? "Would delete" : "Deleting", reference);
+
+                if (report.isDryRun()) {
+                    report.fileDeleted(size);
+                } else {
+                    try {
+                        release(reference);
+                        report.fileDeleted(size);
+                    } catch (FileException ex) {
+                        log.warn("Failed to delete unreferenced file {}", reference, ex);
+                        report.failed();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Delete the exports, and the directories exports are assembled in, that are older than the export retention
+         * @throws InterruptedException if interrupted while throttled
+         */
+        private void sweepExports() throws InterruptedException {
+            if (!Files.isDirectory(exportsLocation))
+                return;
+
+            LocalDateTime retention = LocalDateTime.now().minus(Duration.ofHours(properties.getExportRetention()));
+
+            try (DirectoryStream<Path> exports = Files.newDirectoryStream(exportsLocation)) {
+                for (Path export : exports) {
+                    throttle.acquire();
+                    report.examined();
+
+                    try {
+                        LocalDateTime lastModified = toLocalDateTime(Files.getLastModifiedTime(export).toMillis());
+
+                        if (lastModified.isBefore(retention)) {
+                            long size = sizeOf(export);
+                            log.debug("{} expired export {}", report.isDryRun() ? "Would delete" : "Deleting", export);
+
+                            if (!report.isDryRun())
+                                deleteRecursively(export);
+
+                            report.exportDeleted(size);
+                        }
+                    } catch (NoSuchFileException ignored) {
+                        // deleted since listed
+                    } catch (IOException ex) {
+                        log.warn("Failed to delete expired export {}", export, ex);
+                        report.failed();
+                    }
+                }
+            } catch (IOException ex) {
+                log.error("Failed to sweep {}", exportsLocation, ex);
+            }
+        }
+    }
+}
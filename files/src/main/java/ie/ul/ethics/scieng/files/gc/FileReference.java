@@ -0,0 +1,65 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import lombok.Getter;
+
+import java.util.Objects;
+
+/**
+ * This class represents a reference to a file at a logical path in a user's directory, as held by a record such as an
+ * attached file. A file with no reference is eligible for collection once it is older than the grace period
+ */
+@Getter
+public class FileReference {
+    /**
+     * The username of the user that owns the file
+     */
+    private final String username;
+    /**
+     * The directory of the file relative to the user's directory, null if the root
+     */
+    private final String directory;
+    /**
+     * The name of the file
+     */
+    private final String filename;
+
+    /**
+     * Create a FileReference. An empty directory is treated as the root of the user's directory
+     * @param username the username of the user that owns the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename the name of the file
+     */
+    public FileReference(String username, String directory, String filename) {
+        this.username = username;
+        this.directory = (directory == null || directory.isEmpty()) ? null : directory;
+        this.filename = filename;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileReference that = (FileReference) o;
+        return Objects.equals(username, that.username) && Objects.equals(directory, that.directory)
+                && Objects.equals(filename, that.filename);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, directory, filename);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return username + "/" + ((directory == null) ? "" : directory + "/") + filename;
+    }
+}
@@ -0,0 +1,16 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import java.util.function.Consumer;
+
+/**
+ * This interface represents a source of references to stored files, such as the files attached to applications.
+ * Register an implementation as a bean to have the files it references marked as live whenever the {@link FileCollector}
+ * runs, as modules that reference files depend on this module rather than the other way round
+ */
+public interface FileReferenceProvider {
+    /**
+     * Mark every file currently referenced by this provider
+     * @param marker the consumer to pass each referenced file to
+     */
+    void markReferences(Consumer<FileReference> marker);
+}
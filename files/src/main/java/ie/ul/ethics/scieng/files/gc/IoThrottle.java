@@ -0,0 +1,44 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class paces the I/O of the collector to a maximum number of operations per second by sleeping between them, so
+ * a sweep of a large storage directory is spread out rather than competing with requests for the disk
+ */
+class IoThrottle {
+    /**
+     * The minimum interval between operations in nanoseconds
+     */
+    private final long interval;
+    /**
+     * The earliest time in nanoseconds the next operation can start
+     */
+    private long next;
+
+    /**
+     * Create an IoThrottle
+     * @param operationsPerSecond the maximum number of operations per second, unlimited if not positive
+     */
+    IoThrottle(int operationsPerSecond) {
+        this.interval = (operationsPerSecond <= 0) ? 0 : TimeUnit.SECONDS.toNanos(1) / operationsPerSecond;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Wait until the next operation can start
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        if (interval == 0)
+            return;
+
+        long now = System.nanoTime();
+        long wait = next - now;
+
+        if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+
+        next = Math.max(now, next) + interval;
+    }
+}
@@ -0,0 +1,37 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * This request represents a request to start a resumable upload
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreateUploadSessionRequest {
+    /**
+     * The directory within the defined uploads directory to store the file
+     */
+    private String directory;
+    /**
+     * The target file name
+     */
+    @NotNull
+    private String target;
+    /**
+     * The content type of the file
+     */
+    @NotNull
+    private String contentType;
+    /**
+     * The total length of the file in bytes
+     */
+    @NotNull
+    private Long length;
+}
@@ -0,0 +1,55 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * This class represents the content of an uploaded file stored once in the blob store, keyed by its SHA-256 hash. The
+ * number of stored files referencing the blob is counted so that it can be deleted when it is no longer referenced
+ */
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileBlob {
+    /**
+     * The hex encoded SHA-256 hash of the content
+     */
+    @Id
+    private String hash;
+    /**
+     * The size of the content in bytes
+     */
+    private long size;
+    /**
+     * The number of stored files referencing this blob
+     */
+    private int refCount;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        FileBlob that = (FileBlob) o;
+        return size == that.size && refCount == that.refCount && Objects.equals(hash, that.hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(hash, size, refCount);
+    }
+}
@@ -0,0 +1,89 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * This class represents an upload that has been accepted into quarantine to be scanned for viruses in the background.
+ * The upload is only stored at its logical path once the scan has found it to be virus-free
+ */
+@Entity
+@Table(indexes = @Index(name = "quarantined_upload_status", columnList = "status"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuarantinedUpload {
+    /**
+     * The ID of the quarantined upload, used by the client to poll the scan status
+     */
+    @Id
+    private String id;
+    /**
+     * The username of the user that uploaded the file
+     */
+    private String username;
+    /**
+     * The directory to store the file in, relative to the user's directory. Null if the root
+     */
+    private String directory;
+    /**
+     * The name to store the file as
+     */
+    private String filename;
+    /**
+     * The hex encoded SHA-256 hash of the upload
+     */
+    private String sha256;
+    /**
+     * The size of the upload in bytes
+     */
+    private long size;
+    /**
+     * The status of the scan
+     */
+    @Enumerated(EnumType.STRING)
+    private ScanStatus status;
+    /**
+     * The timestamp of when the upload was quarantined
+     */
+    private LocalDateTime createdAt;
+    /**
+     * The timestamp of when the scan completed, null if still pending
+     */
+    private LocalDateTime completedAt;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        QuarantinedUpload that = (QuarantinedUpload) o;
+        return size == that.size && Objects.equals(id, that.id) && Objects.equals(username, that.username)
+                && Objects.equals(directory, that.directory) && Objects.equals(filename, that.filename)
+                && Objects.equals(sha256, that.sha256) && status == that.status && Objects.equals(createdAt, that.createdAt)
+                && Objects.equals(completedAt, that.completedAt);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, username, directory, filename, sha256, size, status, createdAt, completedAt);
+    }
+}
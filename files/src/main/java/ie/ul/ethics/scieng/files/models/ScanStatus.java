@@ -0,0 +1,23 @@
+package ie.ul.ethics.scieng.files.models;
+
+/**
+ * This enum represents the status of the antivirus scan of a quarantined upload
+ */
+public enum ScanStatus {
+    /**
+     * The upload is quarantined and waiting for or undergoing a scan
+     */
+    PENDING,
+    /**
+     * The upload was found to be virus-free and has been stored
+     */
+    CLEAN,
+    /**
+     * The upload was found to contain a virus and has been deleted
+     */
+    INFECTED,
+    /**
+     * The upload could not be scanned or stored and has been deleted
+     */
+    FAILED
+}
@@ -0,0 +1,30 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * The response to a request for the scan status of a quarantined upload
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanStatusResponse {
+    /**
+     * The ID of the quarantined upload
+     */
+    private String id;
+    /**
+     * The status of the scan
+     */
+    private ScanStatus status;
+    /**
+     * The timestamp of when the scan completed, null if still pending
+     */
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,81 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * This class represents the verdict of scanning content with a particular version of the antivirus signatures, so that
+ * identical content does not need to be scanned again until the signatures change
+ */
+@Entity
+@Table(indexes = @Index(name = "scan_verdict_signature_version", columnList = "signatureVersion"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanVerdict {
+    /**
+     * The ID of the verdict, made up of the hash and signature version
+     */
+    @Id
+    private String id;
+    /**
+     * The hex encoded SHA-256 hash of the scanned content
+     */
+    private String hash;
+    /**
+     * The version of the signatures the content was scanned with
+     */
+    private String signatureVersion;
+    /**
+     * The verdict of the scan, either CLEAN or INFECTED
+     */
+    @Enumerated(EnumType.STRING)
+    private ScanStatus verdict;
+    /**
+     * The timestamp of when the content was scanned
+     */
+    private LocalDateTime scannedAt;
+
+    /**
+     * Create the ID of the verdict for the provided hash and signature version
+     * @param hash the hash of the scanned content
+     * @param signatureVersion the version of the signatures
+     * @return the ID of the verdict
+     */
+    public static String createId(String hash, String signatureVersion) {
+        return hash + ":" + signatureVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        ScanVerdict that = (ScanVerdict) o;
+        return Objects.equals(id, that.id) && Objects.equals(hash, that.hash) && Objects.equals(signatureVersion, that.signatureVersion)
+                && verdict == that.verdict && Objects.equals(scannedAt, that.scannedAt);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, hash, signatureVersion, verdict, scannedAt);
+    }
+}
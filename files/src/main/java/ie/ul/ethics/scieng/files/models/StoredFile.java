@@ -0,0 +1,85 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * This class represents a file stored at a logical path in a user's directory, mapping it to the blob holding its content.
+ * Attached files reference the logical path, so any copies of an attached file share the same stored file
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "stored_file_path", columnList = "username,directory,filename"),
+        @Index(name = "stored_file_hash", columnList = "hash")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class StoredFile {
+    /**
+     * The ID of the stored file
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    /**
+     * The username of the user that owns the file
+     */
+    private String username;
+    /**
+     * The directory the file is stored in, relative to the user's directory. Null if stored in the root
+     */
+    private String directory;
+    /**
+     * The name of the file
+     */
+    private String filename;
+    /**
+     * The hash of the blob holding the content of the file
+     */
+    private String hash;
+    /**
+     * The content type of the file, resolved from its name when it is stored so downloads do not resolve it on every
+     * request. Null for files stored before it was recorded
+     */
+    private String contentType;
+    /**
+     * The time the content of the file was last stored, so that files which were never attached can be collected once
+     * they are old enough. Null if stored before this was recorded
+     */
+    private LocalDateTime storedAt;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        StoredFile that = (StoredFile) o;
+        return Objects.equals(id, that.id) && Objects.equals(username, that.username) && Objects.equals(directory, that.directory)
+                && Objects.equals(filename, that.filename) && Objects.equals(hash, that.hash)
+                && Objects.equals(contentType, that.contentType) && Objects.equals(storedAt, that.storedAt);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, username, directory, filename, hash, contentType, storedAt);
+    }
+}
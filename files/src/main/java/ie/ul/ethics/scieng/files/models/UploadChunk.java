@@ -0,0 +1,77 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Objects;
+
+/**
+ * This class represents a chunk of a resumable upload that has been received and verified against its checksum. Each
+ * chunk is its own row so that chunks received in parallel never contend on the same row
+ */
+@Entity
+@Table(indexes = @Index(name = "upload_chunk_session", columnList = "sessionId"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadChunk {
+    /**
+     * The ID of the chunk, made up of the session ID and chunk index
+     */
+    @Id
+    private String id;
+    /**
+     * The ID of the upload session the chunk belongs to
+     */
+    private String sessionId;
+    /**
+     * The index of the chunk in the upload
+     */
+    private int chunkIndex;
+    /**
+     * The size of the chunk in bytes
+     */
+    private long size;
+    /**
+     * The hex encoded SHA-256 hash of the chunk
+     */
+    private String sha256;
+
+    /**
+     * Create the ID of the chunk with the provided session ID and index
+     * @param sessionId the ID of the upload session
+     * @param chunkIndex the index of the chunk
+     * @return the ID of the chunk
+     */
+    public static String createId(String sessionId, int chunkIndex) {
+        return sessionId + ":" + chunkIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        UploadChunk that = (UploadChunk) o;
+        return chunkIndex == that.chunkIndex && size == that.size && Objects.equals(id, that.id)
+                && Objects.equals(sessionId, that.sessionId) && Objects.equals(sha256, that.sha256);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, sessionId, chunkIndex, size, sha256);
+    }
+}
@@ -29,4 +29,23 @@ public class UploadFileResponse {
      * The size of the file
      */
     private long size;
+    /**
+     * The ID to poll the scan status of the upload with, null if the upload was scanned before responding
+     */
+    private String scanId;
+    /**
+     * The status of the antivirus scan of the upload, null if the upload was scanned before responding
+     */
+    private ScanStatus scanStatus;
+
+    /**
+     * Create a response for an upload that was scanned and stored before responding
+     * @param fileName the name of the file uploaded
+     * @param downloadUri the uri to download the file
+     * @param type the type of file uploaded
+     * @param size the size of the file
+     */
+    public UploadFileResponse(String fileName, String downloadUri, String type, long size) {
+        this(fileName, downloadUri, type, size, null, null);
+    }
 }
@@ -0,0 +1,104 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * This class represents a resumable upload. The upload is sent in fixed-size chunks which are written at their offsets
+ * in a file preallocated to the length of the upload, so chunks can be sent in any order, in parallel and retried
+ * individually. Once every chunk has been received, the upload is completed and stored like any other upload
+ */
+@Entity
+@Table(indexes = @Index(name = "upload_session_expires_at", columnList = "expiresAt"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSession {
+    /**
+     * The ID of the upload session
+     */
+    @Id
+    private String id;
+    /**
+     * The username of the user uploading the file
+     */
+    private String username;
+    /**
+     * The directory to store the file in, relative to the user's directory. Null if the root
+     */
+    private String directory;
+    /**
+     * The name to store the file as
+     */
+    private String target;
+    /**
+     * The content type of the file
+     */
+    private String contentType;
+    /**
+     * The total length of the upload in bytes
+     */
+    private long length;
+    /**
+     * The size of each chunk in bytes. The last chunk may be smaller
+     */
+    private int chunkSize;
+    /**
+     * The timestamp of when the session was created
+     */
+    private LocalDateTime createdAt;
+    /**
+     * The timestamp after which the session can no longer be resumed and is discarded
+     */
+    private LocalDateTime expiresAt;
+
+    /**
+     * Get the number of chunks the upload is sent in
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return (int)((length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Get the length of the chunk with the provided index
+     * @param index the index of the chunk
+     * @return the length of the chunk in bytes
+     */
+    public long getChunkLength(int index) {
+        return Math.min(chunkSize, length - (long)index * chunkSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        UploadSession that = (UploadSession) o;
+        return length == that.length && chunkSize == that.chunkSize && Objects.equals(id, that.id)
+                && Objects.equals(username, that.username) && Objects.equals(directory, that.directory)
+                && Objects.equals(target, that.target) && Objects.equals(contentType, that.contentType)
+                && Objects.equals(createdAt, that.createdAt) && Objects.equals(expiresAt, that.expiresAt);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, username, directory, target, contentType, length, chunkSize, createdAt, expiresAt);
+    }
+}
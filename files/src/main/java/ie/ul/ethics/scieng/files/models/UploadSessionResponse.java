@@ -0,0 +1,43 @@
+package ie.ul.ethics.scieng.files.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The response describing the progress of a resumable upload
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionResponse {
+    /**
+     * The ID of the upload session
+     */
+    private String id;
+    /**
+     * The total length of the file in bytes
+     */
+    private long length;
+    /**
+     * The size of each chunk in bytes. Every chunk but the last must be exactly this size
+     */
+    private int chunkSize;
+    /**
+     * The number of bytes received contiguously from the start of the file
+     */
+    private long offset;
+    /**
+     * The indices of the chunks that have been received
+     */
+    private List<Integer> receivedChunks;
+    /**
+     * The timestamp after which the upload can no longer be resumed
+     */
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,145 @@
+package ie.ul.ethics.scieng.files.renditions;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads the EXIF orientation of JPEG images and applies it, since ImageIO decodes pixels as stored and
+ * photos taken by phones are often stored sideways with an orientation telling viewers how to rotate them. Renditions
+ * carry no EXIF, so without this they would be displayed sideways while the original is not
+ */
+final class ExifOrientation {
+    /**
+     * The native metadata format of the JPEG reader
+     */
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+    /**
+     * The marker of the APP1 segment holding EXIF
+     */
+    private static final int APP1 = 0xE1;
+    /**
+     * The EXIF tag of the orientation
+     */
+    private static final int ORIENTATION_TAG = 0x0112;
+    /**
+     * The orientation of images stored upright
+     */
+    static final int NORMAL = 1;
+
+    /**
+     * Prevent instantiation
+     */
+    private ExifOrientation() {}
+
+    /**
+     * Read the orientation from the image metadata
+     * @param metadata the metadata of the image, null if not read
+     * @return the orientation from 1 to 8, NORMAL if the image has none
+     */
+    static int read(IIOMetadata metadata) {
+        if (metadata == null || !JPEG_METADATA.equals(metadata.getNativeMetadataFormatName()))
+            return NORMAL;
+
+        Node root = metadata.getAsTree(JPEG_METADATA);
+
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ("markerSequence".equals(child.getNodeName())) {
+                for (Node marker = child.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                    if (marker instanceof IIOMetadataNode && "unknown".equals(marker.getNodeName())
+                            && String.valueOf(APP1).equals(((IIOMetadataNode) marker).getAttribute("MarkerTag"))) {
+                        Object data = ((IIOMetadataNode) marker).getUserObject();
+
+                        if (data instanceof byte[]) {
+                            int orientation = parse((byte[]) data);
+
+                            if (orientation != 0)
+                                return orientation;
+                        }
+                    }
+                }
+            }
+        }
+
+        return NORMAL;
+    }
+
+    /**
+     * Parse the orientation from the content of an APP1 segment, which is "Exif\0\0" followed by a TIFF header and the
+     * first image file directory
+     * @param data the content of the segment
+     * @return the orientation, 0 if the segment is not EXIF or has no valid orientation
+     */
+    static int parse(byte[] data) {
+        if (data.length < 14 || !"Exif".equals(new String(data, 0, 4, StandardCharsets.US_ASCII)))
+            return 0;
+
+        ByteBuffer tiff = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+        char order = (char) tiff.get(0);
+        tiff.order(order == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        try {
+            int directory = tiff.getInt(4);
+            int entries = tiff.getShort(directory) & 0xFFFF;
+
+            for (int i = 0; i < entries; i++) {
+                int entry = directory + 2 + i * 12;
+
+                if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                    int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+
+                    return (orientation >= 1 && orientation <= 8) ? orientation : 0;
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            return 0;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Apply the orientation to the image, rotating and flipping it upright
+     * @param image the image as stored
+     * @param orientation the orientation from 1 to 8
+     * @return the upright image, the same image if the orientation is NORMAL
+     */
+    static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation <= NORMAL || orientation > 8)
+            return image;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean transposed = orientation >= 5;
+        AffineTransform transform;
+
+        switch (orientation) {
+            case 2: transform = new AffineTransform(-1, 0, 0, 1, width, 0); break;
+            case 3: transform = new AffineTransform(-1, 0, 0, -1, width, height); break;
+            case 4: transform = new AffineTransform(1, 0, 0, -1, 0, height); break;
+            case 5: transform = new AffineTransform(0, 1, 1, 0, 0, 0); break;
+            case 6: transform = new AffineTransform(0, 1, -1, 0, height, 0); break;
+            case 7: transform = new AffineTransform(0, -1, -1, 0, height, width); break;
+            default: transform = new AffineTransform(0, -1, 1, 0, 0, width); break;
+        }
+
+        BufferedImage upright = new BufferedImage(transposed ? height : width, transposed ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = upright.createGraphics();
+
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return upright;
+    }
+}
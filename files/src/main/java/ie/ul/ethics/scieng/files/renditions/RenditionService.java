@@ -0,0 +1,43 @@
+package ie.ul.ethics.scieng.files.renditions;
+
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.storage.StorageObject;
+
+/**
+ * This interface represents a service for generating resized renditions of uploaded images, such as the thumbnails of
+ * profile photos. Renditions are keyed by the hash of the image's content, so identical uploads share them, and they
+ * never change once generated
+ */
+public interface RenditionService {
+    /**
+     * Determine if renditions can be generated for the file, from the content type of its name
+     * @param filename the name of the file
+     * @return true if the file is an image renditions can be generated for
+     */
+    boolean isRenderable(String filename);
+
+    /**
+     * Resolve the requested size to the smallest configured rendition size at least as large, or the largest configured
+     * size if none is
+     * @param requested the requested size in pixels
+     * @return the size of the rendition to serve
+     */
+    int resolveSize(int requested);
+
+    /**
+     * Generate the renditions of every configured size for the content in the background if the file is renderable. If
+     * the background queue is full, the renditions are generated when first requested instead
+     * @param hash the hash of the content
+     * @param filename the name of the file
+     */
+    void renderAsync(String hash, String filename);
+
+    /**
+     * Get the rendition of the content with the provided size, generating it if it does not exist yet
+     * @param hash the hash of the content
+     * @param size the size of the rendition, one of the configured sizes
+     * @return the rendition in the storage backend, null if the content is not an image that can be decoded
+     * @throws FileException if the rendition cannot be generated
+     */
+    StorageObject render(String hash, int size) throws FileException;
+}
@@ -0,0 +1,481 @@
+package ie.ul.ethics.scieng.files.renditions;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.services.BlobStore;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the implementing class of RenditionService. Renditions are JPEGs stored in the storage backend next to the
+ * blob they are generated from. Uploaded images are decoded once, subsampled while decoding to about twice the largest
+ * missing size so that large photos are not decoded at full resolution, and scaled down to each size by repeated halving
+ * for quality. Background generation runs on a bounded pool of threads so uploads are not held while images are scaled,
+ * and a rendition being generated is not generated again by a concurrent request for it. Content that could not be
+ * decoded is remembered for a while, so requests for its renditions are answered with the original straight away
+ */
+@Service
+@Log4j2
+public class RenditionServiceImpl implements RenditionService {
+    /**
+     * The name of the counter recording generated renditions
+     */
+    public static final String RENDITION_COUNTER = "files.renditions";
+    /**
+     * The name of the cache of content that could not be decoded
+     */
+    public static final String FAILURE_CACHE_NAME = "files.renditions.failures";
+    /**
+     * The maximum number of hashes of content that could not be decoded to remember
+     */
+    private static final long FAILURE_CACHE_SIZE = 10000;
+    /**
+     * The content types renditions can be generated for, all of which ImageIO can decode
+     */
+    private static final Set<MediaType> RENDERABLE = new HashSet<>(Arrays.asList(MediaType.IMAGE_JPEG,
+            MediaType.IMAGE_PNG, MediaType.IMAGE_GIF, MediaType.parseMediaType("image/bmp")));
+
+    /**
+     * The backend the blobs and renditions are stored in
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * The store giving the keys of blobs and their renditions
+     */
+    private final BlobStore blobStore;
+    /**
+     * The directory renditions are written to before being put in the storage backend
+     */
+    private final Path tempLocation;
+    /**
+     * True if renditions are generated in the background on upload
+     */
+    private final boolean enabled;
+    /**
+     * The configured sizes in ascending order
+     */
+    private final List<Integer> sizes;
+    /**
+     * The JPEG quality of renditions
+     */
+    private final float quality;
+    /**
+     * The maximum number of pixels of an image that renditions are generated from
+     */
+    private final long maxPixels;
+    /**
+     * The executor generating renditions in the background
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * The renditions currently being generated, by their key
+     */
+    private final ConcurrentMap<String, CompletableFuture<StorageObject>> inFlight;
+    /**
+     * The hashes of content that could not be decoded, which are not decoded again until they expire
+     */
+    private final Cache<String, Boolean> failures;
+    /**
+     * The counter of generated renditions
+     */
+    private final Counter rendered;
+    /**
+     * The counter of renditions that failed to generate
+     */
+    private final Counter failed;
+    /**
+     * The counter of uploads whose renditions were not generated in the background because the queue was full
+     */
+    private final Counter skipped;
+
+    /**
+     * Create a RenditionServiceImpl
+     * @param properties the configuration properties for the files module
+     * @param storageBackend the backend the blobs and renditions are stored in
+     * @param blobStore the store giving the keys of blobs and their renditions
+     * @param meterRegistry the registry to record the metrics of renditions in
+     */
+    @Autowired
+    public RenditionServiceImpl(FilesConfigurationProperties properties, StorageBackend storageBackend, BlobStore blobStore,
+                                MeterRegistry meterRegistry) {
+        this.storageBackend = storageBackend;
+        this.blobStore = blobStore;
+        this.tempLocation = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize().resolve("tmp");
+
+        FilesConfigurationProperties.Renditions renditions = properties.getRenditions();
+        this.enabled = renditions.isEnabled();
+        List<Integer> sizes = new ArrayList<>(renditions.getSizes());
+        Collections.sort(sizes);
+        this.sizes = Collections.unmodifiableList(sizes);
+        this.quality = renditions.getQuality();
+        this.maxPixels = renditions.getMaxPixels();
+        this.inFlight = new ConcurrentHashMap<>();
+        this.failures = Caffeine.newBuilder()
+                .maximumSize(FAILURE_CACHE_SIZE)
+                .expireAfterWrite(Duration.ofMinutes(renditions.getFailureExpiry()))
+                .recordStats()
+                .build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(renditions.getThreads(), renditions.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(renditions.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "rendition-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.rendered = Counter.builder(RENDITION_COUNTER).tag("result", "rendered").register(meterRegistry);
+        this.failed = Counter.builder(RENDITION_COUNTER).tag("result", "failed").register(meterRegistry);
+        this.skipped = Counter.builder(RENDITION_COUNTER).tag("result", "skipped").register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, failures, FAILURE_CACHE_NAME);
+    }
+
+    /**
+     * Determine if renditions can be generated for the file, from the content type of its name
+     *
+     * @param filename the name of the file
+     * @return true if the file is an image renditions can be generated for
+     */
+    @Override
+    public boolean isRenderable(String filename) {
+        return !sizes.isEmpty() && MediaTypeFactory.getMediaType(filename)
+                .map(RENDERABLE::contains)
+                .orElse(false);
+    }
+
+    /**
+     * Resolve the requested size to the smallest configured rendition size at least as large, or the largest configured
+     * size if none is
+     *
+     * @param requested the requested size in pixels
+     * @return the size of the rendition to serve
+     */
+    @Override
+    public int resolveSize(int requested) {
+        for (int size : sizes)
+            if (size >= requested)
+                return size;
+
+        return sizes.get(sizes.size() - 1);
+    }
+
+    /**
+     * Generate the renditions of every configured size for the content in the background if the file is renderable. If
+     * the background queue is full, the renditions are generated when first requested instead
+     *
+     * @param hash     the hash of the content
+     * @param filename the name of the file
+     */
+    @Override
+    public void renderAsync(String hash, String filename) {
+        if (!enabled || hash == null || !isRenderable(filename) || failures.getIfPresent(hash) != null)
+            return;
+
+        try {
+            executor.execute(() -> renderAll(hash));
+        } catch (RejectedExecutionException ex) {
+            skipped.increment();
+            log.debug("Rendition queue is full, renditions of {} will be generated on request", hash);
+        }
+    }
+
+    /**
+     * Generate every missing rendition of the content, decoding it once for all of them
+     * @param hash the hash of the content
+     */
+    private void renderAll(String hash) {
+        try {
+            List<Integer> missing = new ArrayList<>();
+
+            for (int size : sizes)
+                if (storageBackend.stat(blobStore.getRenditionKey(hash, size)) == null)
+                    missing.add(size);
+
+            if (missing.isEmpty())
+                return;
+
+            BufferedImage source = decode(hash, missing.get(missing.size() - 1));
+
+            if (source != null)
+                for (int size : missing)
+                    generate(hash, size, source);
+        } catch (IOException | RuntimeException ex) {
+            failed.increment();
+            log.warn("Failed to generate renditions of {}", hash, ex);
+        }
+    }
+
+    /**
+     * Get the rendition of the content with the provided size, generating it if it does not exist yet. Content that
+     * recently could not be decoded is not decoded again, and null is returned so the original is served
+     *
+     * @param hash the hash of the content
+     * @param size the size of the rendition, one of the configured sizes
+     * @return the rendition in the storage backend, null if the content is not an image that can be decoded
+     * @throws FileException if the rendition cannot be generated
+     */
+    @Override
+    public StorageObject render(String hash, int size) throws FileException {
+        if (failures.getIfPresent(hash) != null)
+            return null;
+
+        try {
+            StorageObject object = storageBackend.stat(blobStore.getRenditionKey(hash, size));
+
+            return (object != null) ? object : generate(hash, size, null);
+        } catch (IOException | RuntimeException ex) {
+            failed.increment();
+            throw new FileException("Failed to generate rendition of " + hash, ex);
+        }
+    }
+
+    /**
+     * Generate the rendition unless it already exists, or wait for it if it is already being generated
+     * @param hash the hash of the content
+     * @param size the size of the rendition
+     * @param source the decoded content, null to decode it
+     * @return the rendition, null if the content is not an image that can be decoded
+     * @throws IOException if the rendition cannot be generated
+     */
+    private StorageObject generate(String hash, int size, BufferedImage source) throws IOException {
+        String key = blobStore.getRenditionKey(hash, size);
+        CompletableFuture<StorageObject> future = new CompletableFuture<>();
+        CompletableFuture<StorageObject> running = inFlight.putIfAbsent(key, future);
+
+        if (running != null)
+            return await(running);
+
+        try {
+            StorageObject object = storageBackend.stat(key);
+
+            if (object == null) {
+                BufferedImage image = (source != null) ? source : decode(hash, size);
+
+                if (image != null) {
+                    object = write(key, scale(image, size));
+                    rendered.increment();
+                }
+            }
+
+            future.complete(object);
+
+            return object;
+        } catch (IOException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Wait for a rendition being generated by another thread
+     * @param running the generation of the rendition
+     * @return the rendition, null if the content is not an image that can be decoded
+     * @throws IOException if the rendition could not be generated
+     */
+    private static StorageObject await(CompletableFuture<StorageObject> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Decode the content as an image, remembering the content as failed if it cannot be decoded so that it is not
+     * decoded again until the failure expires
+     * @param hash the hash of the content
+     * @param size the largest size renditions will be scaled to from the image
+     * @return the image, null if the content is not an image that can be decoded or is too large
+     * @throws IOException if the content cannot be read or is a corrupt image
+     */
+    private BufferedImage decode(String hash, int size) throws IOException {
+        try {
+            BufferedImage image = readImage(hash, size);
+
+            if (image == null)
+                failures.put(hash, Boolean.TRUE);
+
+            return image;
+        } catch (IOException | RuntimeException ex) {
+            failures.put(hash, Boolean.TRUE);
+            throw ex;
+        }
+    }
+
+    /**
+     * Read the content as an image upright, subsampled to no less than twice the size. Images with more pixels than
+     * the maximum are refused, so that an image with huge dimensions cannot exhaust the memory of the server
+     * @param hash the hash of the content
+     * @param size the largest size renditions will be scaled to from the image
+     * @return the image, null if the content is not an image that can be decoded or is too large
+     * @throws IOException if the content cannot be read or is a corrupt image
+     */
+    private BufferedImage readImage(String hash, int size) throws IOException {
+        try (InputStream inputStream = storageBackend.read(blobStore.getKey(hash));
+             ImageInputStream input = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = (input == null) ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                log.debug("Content {} is not an image that can be decoded", hash);
+
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, false);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                if ((long) width * height > maxPixels) {
+                    log.warn("Not generating renditions of {} as it is {}x{} pixels", hash, width, height);
+
+                    return null;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (size * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+
+                return ExifOrientation.apply(image, ExifOrientation.read(reader.getImageMetadata(0)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale the image so its longest side is the size, halving it repeatedly with bilinear interpolation so that every
+     * source pixel contributes to the result. Images are never scaled up, and transparency is flattened onto white as
+     * JPEG has none
+     * @param source the image to scale
+     * @param size the size of the longest side in pixels
+     * @return the scaled image
+     */
+    static BufferedImage scale(BufferedImage source, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) size / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        BufferedImage current = source;
+
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    /**
+     * Encode the image as a JPEG and put it in the storage backend
+     * @param key the key of the rendition
+     * @param image the scaled image
+     * @return the rendition in the storage backend
+     * @throws IOException if the rendition cannot be written
+     */
+    private StorageObject write(String key, BufferedImage image) throws IOException {
+        Files.createDirectories(tempLocation);
+        Path temp = Files.createTempFile(tempLocation, "rendition-", ".jpg");
+
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+
+            storageBackend.put(key, temp);
+
+            return storageBackend.stat(key);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stop generating renditions when the application stops. Renditions not yet generated are generated on request
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.FileBlob;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * This interface represents a repository used for storing/retrieving file blobs. References are counted with atomic
+ * updates in the database rather than read-modify-write of the entity, so that concurrent changes from any node are not
+ * lost
+ */
+@Repository
+public interface FileBlobRepository extends CrudRepository<FileBlob, String> {
+    /**
+     * Add a reference to the blob with the provided hash
+     * @param hash the hash of the blob
+     * @return the number of blobs updated, 0 if the blob does not exist
+     */
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = ?1")
+    int incrementRefCount(String hash);
+
+    /**
+     * Remove a reference from the blob with the provided hash
+     * @param hash the hash of the blob
+     * @return the number of blobs updated, 0 if the blob does not exist
+     */
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = ?1")
+    int decrementRefCount(String hash);
+
+    /**
+     * Delete the blob with the provided hash if it is no longer referenced
+     * @param hash the hash of the blob
+     * @return the number of blobs deleted, 0 if the blob is still referenced or does not exist
+     */
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.hash = ?1 AND b.refCount <= 0")
+    int deleteUnreferenced(String hash);
+}
@@ -0,0 +1,35 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * This interface represents a repository used for storing/retrieving quarantined uploads
+ */
+@Repository
+public interface QuarantinedUploadRepository extends CrudRepository<QuarantinedUpload, String> {
+    /**
+     * Find the quarantined uploads with the provided scan status
+     * @param status the status to search for
+     * @return the list of quarantined uploads
+     */
+    List<QuarantinedUpload> findByStatus(ScanStatus status);
+
+    /**
+     * Delete the quarantined uploads whose scans completed before the provided time
+     * @param time the time to delete uploads completed before
+     * @return the number of uploads deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM QuarantinedUpload q WHERE q.completedAt < ?1")
+    int deleteByCompletedAtBefore(LocalDateTime time);
+}
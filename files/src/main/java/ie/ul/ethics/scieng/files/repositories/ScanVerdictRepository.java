@@ -0,0 +1,24 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.ScanVerdict;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This interface represents a repository used for storing/retrieving cached scan verdicts
+ */
+@Repository
+public interface ScanVerdictRepository extends CrudRepository<ScanVerdict, String> {
+    /**
+     * Delete the verdicts produced by any signature version other than the provided one
+     * @param signatureVersion the current signature version
+     * @return the number of verdicts deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ScanVerdict v WHERE v.signatureVersion <> ?1")
+    int deleteBySignatureVersionNot(String signatureVersion);
+}
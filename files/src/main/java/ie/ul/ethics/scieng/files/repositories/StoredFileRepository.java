@@ -0,0 +1,22 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * This interface represents a repository used for storing/retrieving the files stored in users' directories
+ */
+@Repository
+public interface StoredFileRepository extends CrudRepository<StoredFile, Long> {
+    /**
+     * Find the file stored at the provided logical path
+     * @param username the username of the user owning the file
+     * @param directory the directory of the file, null if in the root of the user directory
+     * @param filename the name of the file
+     * @return the stored file if found
+     */
+    Optional<StoredFile> findByUsernameAndDirectoryAndFilename(String username, String directory, String filename);
+}
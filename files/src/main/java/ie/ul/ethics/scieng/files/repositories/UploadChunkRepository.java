@@ -0,0 +1,41 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.UploadChunk;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * This interface represents a repository used for storing/retrieving the received chunks of resumable uploads
+ */
+@Repository
+public interface UploadChunkRepository extends CrudRepository<UploadChunk, String> {
+    /**
+     * Find the indices of the chunks received for the upload session, in order
+     * @param sessionId the ID of the upload session
+     * @return the list of received chunk indices
+     */
+    @Query("SELECT c.chunkIndex FROM UploadChunk c WHERE c.sessionId = ?1 ORDER BY c.chunkIndex")
+    List<Integer> findChunkIndicesBySessionId(String sessionId);
+
+    /**
+     * Count the chunks received for the upload session
+     * @param sessionId the ID of the upload session
+     * @return the number of received chunks
+     */
+    long countBySessionId(String sessionId);
+
+    /**
+     * Delete the chunks of the upload session
+     * @param sessionId the ID of the upload session
+     * @return the number of chunks deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UploadChunk c WHERE c.sessionId = ?1")
+    int deleteBySessionId(String sessionId);
+}
@@ -0,0 +1,21 @@
+package ie.ul.ethics.scieng.files.repositories;
+
+import ie.ul.ethics.scieng.files.models.UploadSession;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * This interface represents a repository used for storing/retrieving resumable upload sessions
+ */
+@Repository
+public interface UploadSessionRepository extends CrudRepository<UploadSession, String> {
+    /**
+     * Find the upload sessions that expired before the provided time
+     * @param time the time to find sessions expired before
+     * @return the list of expired sessions
+     */
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime time);
+}
@@ -0,0 +1,63 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+
+import java.nio.file.Path;
+
+/**
+ * This interface represents a content-addressed store of uploaded files. The content of each file is stored once, keyed
+ * by its SHA-256 hash, and exposed at logical paths in user directories by hard links, so a duplicate upload only adds
+ * metadata. If the storage backend is not local, the logical paths are only recorded as stored files and their content
+ * is read from the backend
+ */
+public interface BlobStore {
+    /**
+     * Store the staged upload in the blob store, or discard it if a blob with the same content already exists, and
+     * expose it at the target path. Any content previously stored at the target path is released. The target path is
+     * only linked if the storage backend is local
+     * @param upload the scanned upload to store
+     * @param target the logical path to expose the file at
+     * @param username the username of the user owning the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename the name of the file
+     * @return the hash of the stored content
+     * @throws FileException if an error occurs
+     */
+    String store(StagedUpload upload, Path target, String username, String directory, String filename) throws FileException;
+
+    /**
+     * Get the key the blob with the provided hash is stored under in the storage backend
+     * @param hash the hash of the blob
+     * @return the key of the blob
+     */
+    String getKey(String hash);
+
+    /**
+     * Get the key a rendition of the blob with the provided hash is stored under in the storage backend, next to the blob.
+     * Renditions are deleted along with their blob
+     * @param hash the hash of the blob
+     * @param size the size of the rendition in pixels
+     * @return the key of the rendition
+     */
+    String getRenditionKey(String hash, int size);
+
+    /**
+     * Release the reference the logical path holds on its blob, deleting the blob if it is no longer referenced. The
+     * file at the logical path itself is not deleted. This does nothing if the path was not stored through the blob store
+     * @param username the username of the user owning the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename the name of the file
+     * @throws FileException if an error occurs
+     */
+    void release(String username, String directory, String filename) throws FileException;
+
+    /**
+     * Expose the source file at the target path by a hard link, replacing any existing file at the target. If the file
+     * system does not support hard links between the paths, the file is copied instead
+     * @param source the existing file
+     * @param target the path to expose the file at
+     * @throws FileException if an error occurs
+     */
+    void link(Path source, Path target) throws FileException;
+}
@@ -0,0 +1,296 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.models.FileBlob;
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import ie.ul.ethics.scieng.files.repositories.FileBlobRepository;
+import ie.ul.ethics.scieng.files.repositories.StoredFileRepository;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import ie.ul.ethics.scieng.files.upload.UploadPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+
+/**
+ * This is the implementing class of BlobStore. Blobs are stored in the storage backend under blobs/, fanned out by the
+ * first two characters of their hash. References are counted with atomic updates in short transactions, so counts are
+ * not lost when the same content is uploaded concurrently on any node, while content is written to the backend outside
+ * of any transaction
+ */
+@Service
+@Log4j2
+public class BlobStoreImpl implements BlobStore {
+    /**
+     * The name of the counter recording uploads that matched an existing blob
+     */
+    public static final String DEDUPLICATED_COUNTER = "files.blobs.deduplicated";
+    /**
+     * The maximum number of attempts to reference a blob that is being created concurrently
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The configuration properties for the files module
+     */
+    private final FilesConfigurationProperties properties;
+    /**
+     * The backend the blobs are stored in
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * The repository for blobs
+     */
+    private final FileBlobRepository blobRepository;
+    /**
+     * The repository for the files stored in users' directories
+     */
+    private final StoredFileRepository storedFileRepository;
+    /**
+     * The pipeline that staged the uploads
+     */
+    private final UploadPipeline uploadPipeline;
+    /**
+     * The template running changes to references in transactions
+     */
+    private final TransactionTemplate transaction;
+    /**
+     * The counter of uploads that matched an existing blob
+     */
+    private final Counter deduplicated;
+    /**
+     * The counter of bytes not written because an upload matched an existing blob
+     */
+    private final Counter deduplicatedBytes;
+
+    /**
+     * Create a BlobStoreImpl
+     * @param properties the configuration properties for the files module
+     * @param storageBackend the backend the blobs are stored in
+     * @param blobRepository the repository for blobs
+     * @param storedFileRepository the repository for the files stored in users' directories
+     * @param uploadPipeline the pipeline that staged the uploads
+     * @param transactionManager the manager of the transactions references are changed in
+     * @param meterRegistry the registry to record the metrics of deduplication in
+     */
+    @Autowired
+    public BlobStoreImpl(FilesConfigurationProperties properties, StorageBackend storageBackend,
+                         FileBlobRepository blobRepository, StoredFileRepository storedFileRepository,
+                         UploadPipeline uploadPipeline, PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.storageBackend = storageBackend;
+        this.blobRepository = blobRepository;
+        this.storedFileRepository = storedFileRepository;
+        this.uploadPipeline = uploadPipeline;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.deduplicated = Counter.builder(DEDUPLICATED_COUNTER).register(meterRegistry);
+        this.deduplicatedBytes = Counter.builder(DEDUPLICATED_COUNTER + ".bytes").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Get the key the blob with the provided hash is stored under in the storage backend
+     *
+     * @param hash the hash of the blob
+     * @return the key of the blob
+     */
+    @Override
+    public String getKey(String hash) {
+        return "blobs/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    /**
+     * Get the key a rendition of the blob with the provided hash is stored under in the storage backend, next to the blob.
+     * Renditions are deleted along with their blob
+     *
+     * @param hash the hash of the blob
+     * @param size the size of the rendition in pixels
+     * @return the key of the rendition
+     */
+    @Override
+    public String getRenditionKey(String hash, int size) {
+        return getKey(hash) + "-" + size + ".jpg";
+    }
+
+    /**
+     * Store the staged upload in the blob store, or discard it if a blob with the same content already exists, and
+     * expose it at the target path. Any content previously stored at the target path is released. The target path is
+     * only linked if the storage backend is local
+     *
+     * @param upload    the scanned upload to store
+     * @param target    the logical path to expose the file at
+     * @param username  the username of the user owning the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename  the name of the file
+     * @return the hash of the stored content
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public String store(StagedUpload upload, Path target, String username, String directory, String filename) throws FileException {
+        String hash = upload.getSha256();
+        String key = getKey(hash);
+
+        try {
+            boolean written = storageBackend.stat(key) == null;
+
+            if (written)
+                storageBackend.put(key, upload.getFile());
+
+            String previous = reference(hash, upload.getSize(), username, directory, filename);
+
+            if (!written) {
+                if (storageBackend.stat(key) == null) {
+                    // the last reference was released while this one was being taken, so the content is written again
+                    storageBackend.put(key, upload.getFile());
+                } else {
+                    uploadPipeline.discard(upload);
+                    deduplicated.increment();
+                    deduplicatedBytes.increment(upload.getSize());
+                    log.debug("Upload matched existing blob {}, discarded {} bytes", hash, upload.getSize());
+                }
+            }
+
+            if (storageBackend.isLocal())
+                link(storageBackend.localPath(key), target);
+
+            if (previous != null)
+                transaction.executeWithoutResult(status -> releaseBlob(previous));
+
+            return hash;
+        } catch (IOException | UncheckedIOException ex) {
+            throw new FileException("Failed to store file in the blob store", ex);
+        }
+    }
+
+    /**
+     * Record the logical path as referencing the blob with the provided hash, creating the blob if it does not exist.
+     * The content type is resolved from the filename here so that downloads never have to write it. This is retried if
+     * another node created the same blob or stored file concurrently
+     * @param hash the hash of the content
+     * @param size the size of the content in bytes
+     * @param username the username of the user owning the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename the name of the file
+     * @return the hash of the content previously stored at the logical path whose reference should be released, null
+     * if none
+     */
+    private String reference(String hash, long size, String username, String directory, String filename) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> {
+                    StoredFile stored = storedFileRepository
+                            .findByUsernameAndDirectoryAndFilename(username, directory, filename)
+                            .orElseGet(() -> new StoredFile(null, username, directory, filename, null, null, null));
+                    String previous = stored.getHash();
+                    stored.setStoredAt(LocalDateTime.now());
+
+                    if (!hash.equals(previous)) {
+                        if (blobRepository.incrementRefCount(hash) == 0)
+                            blobRepository.save(new FileBlob(hash, size, 1));
+
+                        stored.setHash(hash);
+                        stored.setContentType(MediaTypeFactory.getMediaType(filename)
+                                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                                .toString());
+                    }
+
+                    storedFileRepository.save(stored);
+
+                    return hash.equals(previous) ? null : previous;
+                });
+            } catch (DataIntegrityViolationException ex) {
+                if (attempt >= MAX_ATTEMPTS)
+                    throw ex;
+
+                log.debug("Concurrent reference to blob {}, retrying", hash);
+            }
+        }
+    }
+
+    /**
+     * Decrement the references to the blob, deleting it if it is no longer referenced. This must be called in a
+     * transaction, which holds the blob's row until the content is deleted so that a concurrent reference to the same
+     * content waits for the deletion and writes the content again
+     * @param hash the hash of the blob
+     * @throws UncheckedIOException if the blob cannot be deleted
+     */
+    private void releaseBlob(String hash) {
+        blobRepository.decrementRefCount(hash);
+
+        if (blobRepository.deleteUnreferenced(hash) > 0) {
+            try {
+                storageBackend.delete(getKey(hash));
+
+                for (int size : properties.getRenditions().getSizes())
+                    storageBackend.delete(getRenditionKey(hash, size));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            log.debug("Deleted blob {} as it is no longer referenced", hash);
+        }
+    }
+
+    /**
+     * Release the reference the logical path holds on its blob, deleting the blob if it is no longer referenced. The
+     * file at the logical path itself is not deleted. This does nothing if the path was not stored through the blob store
+     *
+     * @param username  the username of the user owning the file
+     * @param directory the directory of the file relative to the user's directory, null if the root
+     * @param filename  the name of the file
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public void release(String username, String directory, String filename) throws FileException {
+        try {
+            transaction.executeWithoutResult(status ->
+                    storedFileRepository.findByUsernameAndDirectoryAndFilename(username, directory, filename)
+                            .ifPresent(stored -> {
+                                storedFileRepository.delete(stored);
+                                releaseBlob(stored.getHash());
+                            }));
+        } catch (UncheckedIOException ex) {
+            throw new FileException("Failed to release blob of " + filename, ex.getCause());
+        }
+    }
+
+    /**
+     * Expose the source file at the target path by a hard link, replacing any existing file at the target. If the file
+     * system does not support hard links between the paths, the file is copied instead
+     *
+     * @param source the existing file
+     * @param target the path to expose the file at
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public void link(Path source, Path target) throws FileException {
+        try {
+            Files.deleteIfExists(target);
+
+            try {
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | FileSystemException ex) {
+                log.debug("Could not hard link {} to {}, copying instead", target, source);
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new FileException("Failed to link " + target + " to " + source, ex);
+        }
+    }
+}
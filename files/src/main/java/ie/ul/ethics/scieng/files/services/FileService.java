@@ -1,6 +1,11 @@
 package ie.ul.ethics.scieng.files.services;
 
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.download.FileDownload;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.exceptions.VirusFoundException;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -11,16 +16,59 @@ import java.nio.file.Path;
  */
 public interface FileService {
     /**
-     * Store the file in the provided target. Upload dir is always prepended to the target path
+     * Store the file in the provided target. Upload dir is always prepended to the target path. The file is scanned for
+     * viruses as it is stored and is not stored if it contains any
      * @param file the file to store
      * @param directory the directory within the uploads to store target. If null, just save it to the root
      * @param target the target file name
      * @return the name of the saved file
      * @param username the username of the user storing the file
+     * @throws VirusFoundException if the file contains a virus
      * @throws FileException if an error occurs
      */
     String storeFile(MultipartFile file, String directory, String target, String username) throws FileException;
 
+    /**
+     * Accept the file into quarantine to be scanned for viruses in the background. The file is stored in the provided
+     * target once the scan finds it to be virus-free
+     * @param file the file to store
+     * @param directory the directory within the uploads to store target. If null, just save it to the root
+     * @param target the target file name
+     * @param username the username of the user storing the file
+     * @return the quarantined upload, used to poll the status of the scan
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if an error occurs
+     */
+    QuarantinedUpload quarantineFile(MultipartFile file, String directory, String target, String username)
+            throws ScanRejectedException, FileException;
+
+    /**
+     * Store an upload that has already been written to the storage directory, such as an assembled resumable upload,
+     * in the provided target. The upload is scanned for viruses and is not stored if it contains any
+     * @param upload the staged, unscanned upload
+     * @param directory the directory within the uploads to store target. If null, just save it to the root
+     * @param target the target file name
+     * @param username the username of the user storing the file
+     * @return the name of the saved file
+     * @throws VirusFoundException if the upload contains a virus
+     * @throws FileException if an error occurs
+     */
+    String storeUpload(StagedUpload upload, String directory, String target, String username) throws FileException;
+
+    /**
+     * Accept an upload that has already been written to the storage directory, such as an assembled resumable upload,
+     * into quarantine to be scanned for viruses in the background
+     * @param upload the staged, unscanned upload
+     * @param directory the directory within the uploads to store target. If null, just save it to the root
+     * @param target the target file name
+     * @param username the username of the user storing the file
+     * @return the quarantined upload, used to poll the status of the scan
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if an error occurs
+     */
+    QuarantinedUpload quarantineUpload(StagedUpload upload, String directory, String target, String username)
+            throws ScanRejectedException, FileException;
+
     /**
      * Load the file from upload dir.
      * @param filename the name of the file to load
@@ -31,6 +79,30 @@ public interface FileService {
      */
     Resource loadFile(String filename, String directory, String username) throws FileException;
 
+    /**
+     * Describe the file for download, with its size, last modified time, content type and an ETag from the hash of its
+     * content, so that it can be served with conditional and ranged requests
+     * @param filename the name of the file to download
+     * @param directory the directory of the file
+     * @param username the username of the user owning the file
+     * @return the file to download, null if not found
+     * @throws FileException if an error occurs
+     */
+    FileDownload describeFile(String filename, String directory, String username) throws FileException;
+
+    /**
+     * Describe a resized rendition of the image for download, such as the thumbnail of a profile photo. The rendition is
+     * keyed by the hash of the image's content, so its ETag is strong and can be used as the version in its URL
+     * @param filename the name of the image
+     * @param directory the directory of the image
+     * @param username the username of the user owning the image
+     * @param size the requested size in pixels of the longest side, resolved to the nearest configured size
+     * @return the rendition to download, null if the file is not an image stored through the blob store, in which case
+     * the original should be served
+     * @throws FileException if an error occurs
+     */
+    FileDownload describeRendition(String filename, String directory, String username, int size) throws FileException;
+
     /**
      * Delete the file with filename and directory from the filesystem
      * @param filename the name of the file
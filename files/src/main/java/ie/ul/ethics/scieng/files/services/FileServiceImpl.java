@@ -1,11 +1,28 @@
 package ie.ul.ethics.scieng.files.services;
 
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.antivirus.ScanVerdictCache;
 import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.download.FileDownload;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
 import ie.ul.ethics.scieng.files.exceptions.PermissionDeniedException;
+import ie.ul.ethics.scieng.files.exceptions.VirusFoundException;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import ie.ul.ethics.scieng.files.renditions.RenditionService;
+import ie.ul.ethics.scieng.files.repositories.StoredFileRepository;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageObject;
+import ie.ul.ethics.scieng.files.storage.StorageResource;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import ie.ul.ethics.scieng.files.upload.UploadPipeline;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
@@ -15,13 +32,18 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 
 /**
- * This is the implementing class of FileService
+ * This is the implementing class of FileService. The content of stored files is kept in the storage backend through the
+ * blob store. With a local backend, files are exposed at their paths in users' directories and served from there. With
+ * a remote backend, they are only recorded as stored files, read from the backend and downloaded from presigned URLs
  */
 @Service
+@Log4j2
 public class FileServiceImpl implements FileService {
     /**
      * The path object representing the storage location
@@ -31,18 +53,68 @@ public class FileServiceImpl implements FileService {
      * The service for managing a user's directory
      */
     private final UserDirectoryService userDirectoryService;
+    /**
+     * The pipeline uploads are scanned, hashed and staged through
+     */
+    private final UploadPipeline uploadPipeline;
+    /**
+     * The content-addressed store the content of files is kept in
+     */
+    private final BlobStore blobStore;
+    /**
+     * The service holding uploads in quarantine while they are scanned in the background
+     */
+    private final QuarantineService quarantineService;
+    /**
+     * The cache of verdicts of previously scanned content
+     */
+    private final ScanVerdictCache verdictCache;
+    /**
+     * The repository of files stored through the blob store
+     */
+    private final StoredFileRepository storedFileRepository;
+    /**
+     * The backend the content of files is kept in
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * How long presigned download URLs are valid for
+     */
+    private final Duration presignExpiry;
+    /**
+     * The service generating resized renditions of uploaded images
+     */
+    private final RenditionService renditionService;
 
     /**
      * Construct a FileService with the provided properties
      * @param properties the properties configuration
      * @param userDirectoryService the service for managing a user's directory
+     * @param uploadPipeline the pipeline uploads are scanned, hashed and staged through
+     * @param blobStore the content-addressed store the content of files is kept in
+     * @param quarantineService the service holding uploads in quarantine while they are scanned in the background
+     * @param verdictCache the cache of verdicts of previously scanned content
+     * @param storedFileRepository the repository of files stored through the blob store
+     * @param storageBackend the backend the content of files is kept in
+     * @param renditionService the service generating resized renditions of uploaded images
      */
     @Autowired
-    public FileServiceImpl(FilesConfigurationProperties properties, UserDirectoryService userDirectoryService) {
+    public FileServiceImpl(FilesConfigurationProperties properties, UserDirectoryService userDirectoryService,
+                           UploadPipeline uploadPipeline, BlobStore blobStore, QuarantineService quarantineService,
+                           ScanVerdictCache verdictCache, StoredFileRepository storedFileRepository,
+                           StorageBackend storageBackend, RenditionService renditionService) {
         this.storageLocation = Paths.get(properties.getStorageDir())
                 .toAbsolutePath().normalize();
         createStorageLocation(this.storageLocation);
         this.userDirectoryService = userDirectoryService;
+        this.uploadPipeline = uploadPipeline;
+        this.blobStore = blobStore;
+        this.quarantineService = quarantineService;
+        this.verdictCache = verdictCache;
+        this.storedFileRepository = storedFileRepository;
+        this.storageBackend = storageBackend;
+        this.presignExpiry = Duration.ofMinutes(properties.getStorage().getPresignExpiry());
+        this.renditionService = renditionService;
     }
 
     /**
@@ -57,45 +129,243 @@ public class FileServiceImpl implements FileService {
     }
 
     /**
-     * Store the file in the provided target. Upload dir is always prepended to the target path
+     * Validate the name of the uploaded file
+     * @param file the uploaded file
+     * @throws FileException if the name is invalid
+     */
+    private void validateFilename(MultipartFile file) throws FileException {
+        String name = file.getOriginalFilename();
+
+        if (name == null)
+            throw new FileException("Illegal File. getOriginalFilename returned null", null);
+
+        name = StringUtils.cleanPath(name);
+
+        if (name.contains(".."))
+            throw new FileException("You cannot include .. in the file path", null);
+    }
+
+    /**
+     * Scan the staged upload, taking its verdict from the scan verdict cache if the content has already been scanned
+     * with the current signatures. The staged file is discarded if an error occurs
+     * @param upload the staged, unscanned upload
+     * @param version the current signature version, null if the cache is bypassed
+     * @return the staged upload, marked as safe if virus-free
+     * @throws IOException if the upload cannot be read
+     */
+    private StagedUpload scan(StagedUpload upload, String version) throws IOException {
+        try {
+            ScanStatus verdict = verdictCache.lookup(upload.getSha256(), version);
+
+            if (verdict == null) {
+                upload = uploadPipeline.scan(upload);
+                verdictCache.record(upload.getSha256(), version, upload.isSafe() ? ScanStatus.CLEAN : ScanStatus.INFECTED);
+
+                return upload;
+            }
+
+            return new StagedUpload(upload.getFile(), upload.getSha256(), upload.getSize(), verdict == ScanStatus.CLEAN);
+        } catch (IOException | RuntimeException ex) {
+            uploadPipeline.discard(upload);
+            throw ex;
+        }
+    }
+
+    /**
+     * Stage the upload, taking its verdict from the scan verdict cache if the content has already been scanned with the
+     * current signatures. If the cache is bypassed, the upload is scanned, hashed and written in a single pass. Otherwise
+     * it is hashed and written first so its verdict can be looked up, and only scanned on a miss
+     * @param file the uploaded file
+     * @return the staged upload
+     * @throws IOException if the upload cannot be read or written
+     */
+    private StagedUpload stage(MultipartFile file) throws IOException {
+        Path temp = this.storageLocation.resolve("tmp");
+        String version = verdictCache.currentVersion();
+
+        if (version == null)
+            return uploadPipeline.stage(file.getInputStream(), temp);
+
+        return scan(uploadPipeline.stage(file.getInputStream(), temp, false), version);
+    }
+
+    /**
+     * Store the scanned upload in the provided target, discarding it if it contains a virus. Renditions of images are
+     * generated in the background once stored
+     * @param upload the scanned upload
+     * @param directory the directory to create the file in
+     * @param target the target file name
+     * @param username the username of the user storing the file
+     * @return the name of the saved file
+     * @throws VirusFoundException if the upload contains a virus
+     * @throws IOException if the upload cannot be discarded
+     */
+    private String store(StagedUpload upload, String directory, String target, String username) throws IOException {
+        if (!upload.isSafe()) {
+            uploadPipeline.discard(upload);
+            throw new VirusFoundException("The uploaded file contains a virus", null);
+        }
+
+        Path storageLocation = this.storageLocation.resolve("data");
+        createStorageLocation(storageLocation);
+
+        String targetPath = (directory == null) ? target:directory + "/" + target;
+
+        Path path = (storageBackend.isLocal()) ? userDirectoryService.createFilePath(storageLocation, target, directory, username)
+                : userDirectoryService.resolveFilePath(storageLocation, target, directory, username);
+
+        String hash;
+
+        try {
+            hash = blobStore.store(upload, path, username, directory, target);
+        } catch (RuntimeException ex) {
+            uploadPipeline.discard(upload);
+            throw ex;
+        }
+
+        renditionService.renderAsync(hash, target);
+
+        return targetPath;
+    }
+
+    /**
+     * Store the file in the provided target. Upload dir is always prepended to the target path. The file is scanned for
+     * viruses, hashed and written to a temporary file, and only stored if it is virus-free. Content that has already been
+     * scanned with the current signatures is not scanned again. The content is kept in the blob store, so uploading the
+     * same content again only adds a link to the existing blob
      *
      * @param file   the file to store
      * @param directory the directory to create the file in
      * @param target the target file name
      * @param username the username of the user storing the file
      * @return the name of the saved file
+     * @throws VirusFoundException if the file contains a virus
      * @throws FileException if an error occurs
      */
     @Override
     public String storeFile(MultipartFile file, String directory, String target, String username) throws FileException {
-        String name = file.getOriginalFilename();
+        validateFilename(file);
 
-        if (name == null)
-            throw new FileException("Illegal File. getOriginalFilename returned null", null);
+        try {
+            return store(stage(file), directory, target, username);
+        } catch (IOException ex) {
+            throw new FileException("Failed to store file", ex);
+        }
+    }
 
-        name = StringUtils.cleanPath(file.getOriginalFilename());
+    /**
+     * Store an upload that has already been written to the storage directory, such as an assembled resumable upload.
+     * The upload is scanned for viruses, unless the content has already been scanned with the current signatures, and
+     * only stored if it is virus-free
+     *
+     * @param upload    the staged, unscanned upload
+     * @param directory the directory to create the file in
+     * @param target    the target file name
+     * @param username  the username of the user storing the file
+     * @return the name of the saved file
+     * @throws VirusFoundException if the upload contains a virus
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public String storeUpload(StagedUpload upload, String directory, String target, String username) throws FileException {
+        try {
+            return store(scan(upload, verdictCache.currentVersion()), directory, target, username);
+        } catch (IOException ex) {
+            throw new FileException("Failed to store file", ex);
+        }
+    }
 
-        if (name.contains(".."))
-            throw new FileException("You cannot include .. in the file path", null);
+    /**
+     * Accept the file into quarantine to be scanned for viruses in the background. The file is written to the quarantine
+     * and hashed in a single pass, and stored in the provided target once the scan finds it to be virus-free
+     *
+     * @param file      the file to store
+     * @param directory the directory to create the file in
+     * @param target    the target file name
+     * @param username  the username of the user storing the file
+     * @return the quarantined upload, used to poll the status of the scan
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public QuarantinedUpload quarantineFile(MultipartFile file, String directory, String target, String username)
+            throws ScanRejectedException, FileException {
+        validateFilename(file);
 
         try {
-            Path storageLocation = this.storageLocation.resolve("data");
-            createStorageLocation(storageLocation);
+            StagedUpload upload = uploadPipeline.stage(file.getInputStream(), this.storageLocation.resolve("tmp"), false);
+
+            try {
+                return quarantineService.quarantine(upload, username, directory, target);
+            } catch (RuntimeException ex) {
+                uploadPipeline.discard(upload);
+                throw ex;
+            }
+        } catch (IOException ex) {
+            throw new FileException("Failed to quarantine file", ex);
+        }
+    }
 
-            String targetPath = (directory == null) ? target:directory + "/" + target;
+    /**
+     * Accept an upload that has already been written to the storage directory, such as an assembled resumable upload,
+     * into quarantine to be scanned for viruses in the background
+     *
+     * @param upload    the staged, unscanned upload
+     * @param directory the directory to create the file in
+     * @param target    the target file name
+     * @param username  the username of the user storing the file
+     * @return the quarantined upload, used to poll the status of the scan
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public QuarantinedUpload quarantineUpload(StagedUpload upload, String directory, String target, String username)
+            throws ScanRejectedException, FileException {
+        try {
+            try {
+                return quarantineService.quarantine(upload, username, directory, target);
+            } catch (RuntimeException ex) {
+                uploadPipeline.discard(upload);
+                throw ex;
+            }
+        } catch (IOException ex) {
+            throw new FileException("Failed to quarantine file", ex);
+        }
+    }
 
-            Path path = userDirectoryService.createFilePath(storageLocation, target, directory, username);
+    /**
+     * Find the content of the file in the storage backend if the backend is remote and the file was stored through the
+     * blob store
+     * @param filename the name of the file
+     * @param directory the directory of the file
+     * @param username the username of the user owning the file
+     * @return the stored file with a hash, or null if the backend is local or the file is only on the local file system
+     */
+    private StoredFile findRemote(String filename, String directory, String username) {
+        if (storageBackend.isLocal())
+            return null;
 
-            Files.copy(file.getInputStream(), path, StandardCopyOption.REPLACE_EXISTING);
+        return storedFileRepository.findByUsernameAndDirectoryAndFilename(username, directory, filename)
+                .filter(stored -> stored.getHash() != null)
+                .orElse(null);
+    }
 
-            return targetPath;
+    /**
+     * Get the metadata of the content of the stored file in the storage backend
+     * @param stored the stored file
+     * @return the metadata of its content, null if missing
+     * @throws FileException if the backend cannot be reached
+     */
+    private StorageObject stat(StoredFile stored) throws FileException {
+        try {
+            return storageBackend.stat(blobStore.getKey(stored.getHash()));
         } catch (IOException ex) {
-            throw new FileException("Failed to store file", ex);
+            throw new FileException("Failed to load file", ex);
         }
     }
 
     /**
-     * Load the file from upload dir.
+     * Load the file from upload dir, or from the storage backend if it is remote.
      *
      * @param filename the name of the file to load
      * @return the loaded file as a resource, null if not found
@@ -109,8 +379,16 @@ public class FileServiceImpl implements FileService {
         if (!userDirectoryService.canViewFile(storageLocation, filename, directory, username))
             throw new PermissionDeniedException("The user cannot view the file", null);
 
+        StoredFile stored = findRemote(filename, directory, username);
+
+        if (stored != null) {
+            StorageObject object = stat(stored);
+
+            return (object == null) ? null : new StorageResource(storageBackend, object, filename);
+        }
+
         try {
-            Path path = userDirectoryService.createFilePath(storageLocation, filename, directory, username);
+            Path path = userDirectoryService.resolveFilePath(storageLocation, filename, directory, username);
 
             Resource resource = new UrlResource(path.toUri());
 
@@ -121,7 +399,151 @@ public class FileServiceImpl implements FileService {
     }
 
     /**
-     * Delete the file with filename and directory from the filesystem
+     * Resolve the content type of the file from its name
+     * @param filename the name of the file
+     * @return the content type, application/octet-stream if it cannot be determined
+     */
+    private static String resolveContentType(String filename) {
+        return MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+
+    /**
+     * Get the content type of the stored file, which is recorded when it is stored. Files stored before the content
+     * type was recorded have it resolved from their name without saving it, so downloads stay read-only
+     * @param stored the stored file
+     * @param name the name of the file
+     * @return the content type
+     */
+    private static String getContentType(StoredFile stored, String name) {
+        String contentType = stored.getContentType();
+
+        return (contentType == null) ? resolveContentType(name) : contentType;
+    }
+
+    /**
+     * Describe the file for download, with its size, last modified time, content type and an ETag from the hash of its
+     * content. The hash and content type are taken from the stored file, which is looked up once per download and never
+     * written. Files stored before the blob store existed have no recorded hash, so they are given a weak ETag from
+     * their size and last modified time instead. If the storage backend is remote, the download is given a presigned
+     * URL so the content is sent by the backend
+     *
+     * @param filename  the name of the file to download
+     * @param directory the directory of the file
+     * @param username  the username of the user owning the file
+     * @return the file to download, null if not found
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public FileDownload describeFile(String filename, String directory, String username) throws FileException {
+        Path storageLocation = this.storageLocation.resolve("data");
+
+        if (!userDirectoryService.canViewFile(storageLocation, filename, directory, username))
+            throw new PermissionDeniedException("The user cannot view the file", null);
+
+        StoredFile remote = findRemote(filename, directory, username);
+
+        if (remote != null) {
+            StorageObject object = stat(remote);
+
+            if (object == null)
+                return null;
+
+            String contentType = getContentType(remote, filename);
+
+            return new FileDownload(null, filename, object.getSize(), object.getLastModified(),
+                    FileDownload.strongETag(remote.getHash()), contentType,
+                    storageBackend.presign(object.getKey(), filename, contentType, presignExpiry));
+        }
+
+        Path path = userDirectoryService.resolveFilePath(storageLocation, filename, directory, username);
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new FileException("Failed to load file", ex);
+        }
+
+        if (!attributes.isRegularFile())
+            return null;
+
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        StoredFile stored = storedFileRepository.findByUsernameAndDirectoryAndFilename(username, directory, filename)
+                .orElse(null);
+        String name = path.getFileName().toString();
+
+        if (stored == null || stored.getHash() == null)
+            return new FileDownload(path, name, size, lastModified, FileDownload.weakETag(size, lastModified),
+                    resolveContentType(name));
+
+        return new FileDownload(path, name, size, lastModified, FileDownload.strongETag(stored.getHash()),
+                getContentType(stored, name));
+    }
+
+    /**
+     * Describe a resized rendition of the image for download, generating it if it does not exist yet. Renditions are
+     * only generated for images stored through the blob store, as they are keyed by the hash of the content. If the
+     * rendition cannot be generated, null is returned so that the original is served instead
+     *
+     * @param filename  the name of the image
+     * @param directory the directory of the image
+     * @param username  the username of the user owning the image
+     * @param size      the requested size in pixels of the longest side, resolved to the nearest configured size
+     * @return the rendition to download, null if the file is not an image stored through the blob store
+     * @throws FileException if an error occurs
+     */
+    @Override
+    public FileDownload describeRendition(String filename, String directory, String username, int size) throws FileException {
+        Path storageLocation = this.storageLocation.resolve("data");
+
+        if (!userDirectoryService.canViewFile(storageLocation, filename, directory, username))
+            throw new PermissionDeniedException("The user cannot view the file", null);
+
+        if (!renditionService.isRenderable(filename))
+            return null;
+
+        StoredFile stored = storedFileRepository.findByUsernameAndDirectoryAndFilename(username, directory, filename)
+                .filter(file -> file.getHash() != null)
+                .orElse(null);
+
+        if (stored == null)
+            return null;
+
+        int resolved = renditionService.resolveSize(size);
+        StorageObject rendition;
+
+        try {
+            rendition = renditionService.render(stored.getHash(), resolved);
+        } catch (FileException ex) {
+            log.warn("Failed to render {} at {}px, serving the original", filename, resolved, ex);
+
+            return null;
+        }
+
+        if (rendition == null)
+            return null;
+
+        String name = StringUtils.stripFilenameExtension(filename) + "-" + resolved + ".jpg";
+        String contentType = MediaType.IMAGE_JPEG_VALUE;
+        String eTag = FileDownload.strongETag(stored.getHash() + "-" + resolved);
+
+        if (storageBackend.isLocal())
+            return new FileDownload(storageBackend.localPath(rendition.getKey()), name, rendition.getSize(),
+                    rendition.getLastModified(), eTag, contentType);
+
+        return new FileDownload(null, name, rendition.getSize(), rendition.getLastModified(), eTag, contentType,
+                storageBackend.presign(rendition.getKey(), name, contentType, presignExpiry));
+    }
+
+    /**
+     * Delete the file with filename and directory from the filesystem, releasing its reference on the blob holding its
+     * content, which removes the stored file and updates the blob in the database. If the storage backend is remote, the
+     * file is only on the local file system if stored before the backend
      *
      * @param filename  the name of the file
      * @param directory the directory the file is contained in
@@ -135,15 +557,19 @@ public class FileServiceImpl implements FileService {
         if (!userDirectoryService.canDeleteFile(storageLocation, filename, directory, username))
             throw new PermissionDeniedException("The user cannot delete this file", null);
 
-        Path file = userDirectoryService.createFilePath(storageLocation, filename, directory, username);
+        Path file = userDirectoryService.resolveFilePath(storageLocation, filename, directory, username);
 
         try {
-            Files.delete(file);
-            Path parent = file.getParent();
-            File[] files = parent.toFile().listFiles();
+            boolean deleted = Files.deleteIfExists(file);
+            blobStore.release(username, directory, filename);
+
+            if (deleted) {
+                Path parent = file.getParent();
+                File[] files = parent.toFile().listFiles();
 
-            if (files != null && files.length == 0)
-                Files.delete(parent);
+                if (files != null && files.length == 0)
+                    Files.delete(parent);
+            }
         } catch (IOException ex) {
             throw new FileException("Failed to delete file " + file, ex);
         }
@@ -0,0 +1,33 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+
+/**
+ * This interface represents a service that holds uploads in quarantine while they are scanned for viruses in the
+ * background, storing them once found to be virus-free
+ */
+public interface QuarantineService {
+    /**
+     * Move the staged upload into quarantine and queue it to be scanned. Once the scan completes, the upload is stored
+     * at its logical path if virus-free, or deleted otherwise
+     * @param upload the staged, unscanned upload
+     * @param username the username of the user that uploaded the file
+     * @param directory the directory to store the file in, relative to the user's directory. Null if the root
+     * @param filename the name to store the file as
+     * @return the quarantined upload
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if the upload cannot be quarantined
+     */
+    QuarantinedUpload quarantine(StagedUpload upload, String username, String directory, String filename)
+            throws ScanRejectedException, FileException;
+
+    /**
+     * Get the quarantined upload with the provided ID
+     * @param id the ID of the quarantined upload
+     * @return the quarantined upload, null if not found
+     */
+    QuarantinedUpload getUpload(String id);
+}
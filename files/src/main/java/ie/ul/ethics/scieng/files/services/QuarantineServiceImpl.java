@@ -0,0 +1,380 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.antivirus.AntivirusException;
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.antivirus.ScanVerdictCache;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.renditions.RenditionService;
+import ie.ul.ethics.scieng.files.repositories.QuarantinedUploadRepository;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the implementing class of QuarantineService. Quarantined uploads are kept under quarantine/ in the storage
+ * directory and scanned on a bounded pool of threads, one per connection to the antivirus daemon, so that request
+ * threads are not held for the duration of a scan. Content that has already been scanned with the current signatures
+ * takes its verdict from the scan verdict cache instead of being scanned again. When the queue is full, further
+ * uploads are rejected rather than queued indefinitely. Uploads still pending when the application stopped are
+ * requeued on startup
+ */
+@Service
+@Log4j2
+public class QuarantineServiceImpl implements QuarantineService {
+    /**
+     * The name of the timer recording the latency of background scans
+     */
+    public static final String SCAN_TIMER = "files.antivirus.scan";
+    /**
+     * The name of the counter recording scan verdicts
+     */
+    public static final String VERDICT_COUNTER = "files.antivirus.verdicts";
+    /**
+     * The name of the gauge recording the number of uploads waiting to be scanned
+     */
+    public static final String QUEUE_GAUGE = "files.antivirus.queue";
+    /**
+     * The number of seconds to wait on shutdown for scans in progress to finish
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    /**
+     * The path of the directory quarantined uploads are kept in
+     */
+    private final Path quarantineLocation;
+    /**
+     * The path of the directory users' files are stored in
+     */
+    private final Path dataLocation;
+    /**
+     * The scanner for antivirus in uploaded files
+     */
+    private final AntivirusScanner antivirusScanner;
+    /**
+     * The repository for quarantined uploads
+     */
+    private final QuarantinedUploadRepository repository;
+    /**
+     * The store the content of clean uploads is kept in
+     */
+    private final BlobStore blobStore;
+    /**
+     * The service for resolving the logical paths of files in user directories
+     */
+    private final UserDirectoryService userDirectoryService;
+    /**
+     * The cache of verdicts of previously scanned content
+     */
+    private final ScanVerdictCache verdictCache;
+    /**
+     * The service generating resized renditions of clean images
+     */
+    private final RenditionService renditionService;
+    /**
+     * The number of seconds a client should wait before retrying a rejected upload
+     */
+    private final long retryAfter;
+    /**
+     * The number of hours the records of completed scans are kept for
+     */
+    private final long retention;
+    /**
+     * The executor scanning quarantined uploads
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * The timer for scans
+     */
+    private final Timer scanTimer;
+    /**
+     * The counters of each scan verdict
+     */
+    private final Map<ScanStatus, Counter> verdicts;
+
+    /**
+     * Create a QuarantineServiceImpl
+     * @param properties the properties configuration
+     * @param antivirusScanner the scanner for antivirus in uploaded files
+     * @param repository the repository for quarantined uploads
+     * @param blobStore the store the content of clean uploads is kept in
+     * @param userDirectoryService the service for resolving the logical paths of files in user directories
+     * @param verdictCache the cache of verdicts of previously scanned content
+     * @param renditionService the service generating resized renditions of clean images
+     * @param meterRegistry the registry to record the metrics of scans in
+     */
+    @Autowired
+    public QuarantineServiceImpl(FilesConfigurationProperties properties, AntivirusScanner antivirusScanner,
+                                 QuarantinedUploadRepository repository, BlobStore blobStore,
+                                 UserDirectoryService userDirectoryService, ScanVerdictCache verdictCache,
+                                 RenditionService renditionService, MeterRegistry meterRegistry) {
+        Path storageLocation = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize();
+        this.quarantineLocation = storageLocation.resolve("quarantine");
+        this.dataLocation = storageLocation.resolve("data");
+        this.antivirusScanner = antivirusScanner;
+        this.repository = repository;
+        this.blobStore = blobStore;
+        this.userDirectoryService = userDirectoryService;
+        this.verdictCache = verdictCache;
+        this.renditionService = renditionService;
+
+        FilesConfigurationProperties.Antivirus antivirus = properties.getAntivirus();
+        this.retryAfter = antivirus.getRetryAfter();
+        this.retention = antivirus.getRetention();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(antivirus.getConnections(), antivirus.getConnections(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(antivirus.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "antivirus-scan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.scanTimer = Timer.builder(SCAN_TIMER).register(meterRegistry);
+        this.verdicts = new EnumMap<>(ScanStatus.class);
+
+        for (ScanStatus status : ScanStatus.values())
+            if (status != ScanStatus.PENDING)
+                verdicts.put(status, Counter.builder(VERDICT_COUNTER).tag("verdict", status.name().toLowerCase())
+                        .register(meterRegistry));
+
+        meterRegistry.gauge(QUEUE_GAUGE, executor, e -> e.getQueue().size());
+    }
+
+    /**
+     * Get the path of the quarantined file of the upload with the provided ID
+     * @param id the ID of the quarantined upload
+     * @return the path of the quarantined file
+     */
+    private Path quarantinePath(String id) {
+        return quarantineLocation.resolve(id);
+    }
+
+    /**
+     * Move the staged upload into quarantine and queue it to be scanned. Once the scan completes, the upload is stored
+     * at its logical path if virus-free, or deleted otherwise
+     *
+     * @param upload    the staged, unscanned upload
+     * @param username  the username of the user that uploaded the file
+     * @param directory the directory to store the file in, relative to the user's directory. Null if the root
+     * @param filename  the name to store the file as
+     * @return the quarantined upload
+     * @throws ScanRejectedException if the scan queue is full
+     * @throws FileException if the upload cannot be quarantined
+     */
+    @Override
+    public QuarantinedUpload quarantine(StagedUpload upload, String username, String directory, String filename)
+            throws ScanRejectedException, FileException {
+        String id = UUID.randomUUID().toString();
+        Path path = quarantinePath(id);
+
+        try {
+            Files.createDirectories(quarantineLocation);
+            Files.move(upload.getFile(), path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new FileException("Failed to quarantine upload", ex);
+        }
+
+        QuarantinedUpload quarantined = repository.save(new QuarantinedUpload(id, username, directory, filename,
+                upload.getSha256(), upload.getSize(), ScanStatus.PENDING, LocalDateTime.now(), null));
+
+        if (!submit(quarantined)) {
+            complete(quarantined, ScanStatus.FAILED);
+            throw new ScanRejectedException("The antivirus scan queue is full", retryAfter);
+        }
+
+        return quarantined;
+    }
+
+    /**
+     * Submit the quarantined upload to be scanned
+     * @param quarantined the upload to scan
+     * @return true if submitted, false if the queue is full
+     */
+    private boolean submit(QuarantinedUpload quarantined) {
+        try {
+            executor.execute(() -> scan(quarantined));
+
+            return true;
+        } catch (RejectedExecutionException ex) {
+            log.warn("Rejected quarantined upload {} as the antivirus scan queue is full", quarantined.getId());
+
+            return false;
+        }
+    }
+
+    /**
+     * Scan the quarantined upload, storing it if it is virus-free. Any unexpected failure marks the upload as FAILED
+     * rather than leaving it PENDING until the next restart
+     * @param quarantined the upload to scan
+     */
+    private void scan(QuarantinedUpload quarantined) {
+        try {
+            scanAndStore(quarantined);
+        } catch (RuntimeException ex) {
+            log.error("Failed to process quarantined upload {}", quarantined.getId(), ex);
+            complete(quarantined, ScanStatus.FAILED);
+        }
+    }
+
+    /**
+     * Scan the quarantined upload, storing it if it is virus-free. If the content has already been scanned with the
+     * current signatures, the cached verdict is used instead
+     * @param quarantined the upload to scan
+     */
+    private void scanAndStore(QuarantinedUpload quarantined) {
+        String id = quarantined.getId();
+        String version = verdictCache.currentVersion();
+        ScanStatus status = verdictCache.lookup(quarantined.getSha256(), version);
+
+        if (status == null) {
+            status = scanFile(id);
+            verdictCache.record(quarantined.getSha256(), version, status);
+        } else {
+            log.debug("Using cached {} verdict for quarantined upload {}", status, id);
+        }
+
+        Path path = quarantinePath(id);
+
+        if (status == ScanStatus.CLEAN) {
+            try {
+                String username = quarantined.getUsername();
+                String directory = quarantined.getDirectory();
+                String filename = quarantined.getFilename();
+                Path target = userDirectoryService.createFilePath(dataLocation, filename, directory, username);
+
+                String hash = blobStore.store(new StagedUpload(path, quarantined.getSha256(), quarantined.getSize(), true),
+                        target, username, directory, filename);
+                renditionService.renderAsync(hash, filename);
+            } catch (FileException ex) {
+                log.error("Failed to store quarantined upload {}", id, ex);
+                status = ScanStatus.FAILED;
+            }
+        } else if (status == ScanStatus.INFECTED) {
+            log.warn("Quarantined upload {} from {} contains a virus", id, quarantined.getUsername());
+        }
+
+        complete(quarantined, status);
+    }
+
+    /**
+     * Scan the quarantined file of the upload with the provided ID
+     * @param id the ID of the quarantined upload
+     * @return the verdict of the scan
+     */
+    private ScanStatus scanFile(String id) {
+        long start = System.nanoTime();
+
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(quarantinePath(id)))) {
+            return antivirusScanner.isFileSafe(inputStream) ? ScanStatus.CLEAN : ScanStatus.INFECTED;
+        } catch (IOException | AntivirusException ex) {
+            log.error("Failed to scan quarantined upload {}", id, ex);
+
+            return ScanStatus.FAILED;
+        } finally {
+            scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Record the verdict of the quarantined upload, deleting its quarantined file if it was not stored
+     * @param quarantined the quarantined upload
+     * @param status the verdict
+     */
+    private void complete(QuarantinedUpload quarantined, ScanStatus status) {
+        if (status != ScanStatus.CLEAN) {
+            try {
+                Files.deleteIfExists(quarantinePath(quarantined.getId()));
+            } catch (IOException ex) {
+                log.error("Failed to delete quarantined upload {}", quarantined.getId(), ex);
+            }
+        }
+
+        verdicts.get(status).increment();
+        quarantined.setStatus(status);
+        quarantined.setCompletedAt(LocalDateTime.now());
+        repository.save(quarantined);
+    }
+
+    /**
+     * Requeue the uploads that were still pending when the application last stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        for (QuarantinedUpload quarantined : repository.findByStatus(ScanStatus.PENDING)) {
+            if (!Files.isRegularFile(quarantinePath(quarantined.getId())))
+                complete(quarantined, ScanStatus.FAILED);
+            else if (!submit(quarantined))
+                break;
+        }
+    }
+
+    /**
+     * Purge the records of scans that completed longer ago than the configured retention, by which time clients have
+     * stopped polling them
+     */
+    @Scheduled(cron = "${files.antivirus.purge-cron:0 15 * * * ?}")
+    public void purgeCompleted() {
+        int purged = repository.deleteByCompletedAtBefore(LocalDateTime.now().minusHours(retention));
+
+        if (purged > 0)
+            log.info("Purged {} completed quarantined uploads", purged);
+    }
+
+    /**
+     * Get the quarantined upload with the provided ID
+     *
+     * @param id the ID of the quarantined upload
+     * @return the quarantined upload, null if not found
+     */
+    @Override
+    public QuarantinedUpload getUpload(String id) {
+        return repository.findById(id).orElse(null);
+    }
+
+    /**
+     * Stop scanning quarantined uploads, waiting for the scans in progress to finish so that they do not fail and
+     * delete their files while the daemon or the storage is being shut down. Uploads still pending are requeued on the
+     * next startup
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS))
+                log.warn("Antivirus scans did not finish within {} seconds of shutdown", SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.exceptions.ChecksumMismatchException;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.exceptions.InvalidChunkException;
+import ie.ul.ethics.scieng.files.exceptions.UploadIncompleteException;
+import ie.ul.ethics.scieng.files.models.UploadSession;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * This interface represents a service for resumable uploads. An upload session is created with the length of the file,
+ * the file is then sent in fixed-size chunks, each with a checksum, which can be sent in any order, in parallel and
+ * retried individually. The received chunks are stored server-side so a client can find which chunks are missing and
+ * resume after a dropped connection. Once every chunk has been received, the session is completed into a staged upload
+ * to be stored like any other upload
+ */
+public interface ResumableUploadService {
+    /**
+     * Create an upload session
+     * @param username the username of the user uploading the file
+     * @param directory the directory to store the file in, relative to the user's directory. Null if the root
+     * @param target the name to store the file as
+     * @param contentType the content type of the file
+     * @param length the total length of the file in bytes
+     * @return the created session
+     * @throws FileException if the target is invalid or the session cannot be created
+     */
+    UploadSession createSession(String username, String directory, String target, String contentType, long length)
+            throws FileException;
+
+    /**
+     * Get the upload session with the provided ID belonging to the user
+     * @param id the ID of the session
+     * @param username the username of the user the session should belong to
+     * @return the session, or null if not found, expired or belonging to another user
+     */
+    UploadSession getSession(String id, String username);
+
+    /**
+     * Get the indices of the chunks of the session that have been received, in order
+     * @param session the upload session
+     * @return the list of received chunk indices
+     */
+    List<Integer> getReceivedChunks(UploadSession session);
+
+    /**
+     * Write a chunk of the upload. The chunk is written at its offset and only recorded as received if its content
+     * matches the checksum, so a chunk that fails verification can simply be sent again
+     * @param session the upload session
+     * @param index the index of the chunk
+     * @param inputStream the content of the chunk
+     * @param checksum the checksum of the chunk in the form "sha256 base64-digest"
+     * @throws InvalidChunkException if the index is outside the upload or the content is not the expected size
+     * @throws ChecksumMismatchException if the checksum is missing, malformed or does not match the content
+     * @throws FileException if the chunk cannot be written
+     */
+    void writeChunk(UploadSession session, int index, InputStream inputStream, String checksum)
+            throws InvalidChunkException, ChecksumMismatchException, FileException;
+
+    /**
+     * Complete the upload session once every chunk has been received. The session is deleted and the assembled file is
+     * returned hashed, but not scanned, to be stored
+     * @param session the upload session
+     * @return the staged, unscanned upload
+     * @throws UploadIncompleteException if any chunks have not been received
+     * @throws FileException if the upload cannot be assembled
+     */
+    StagedUpload complete(UploadSession session) throws UploadIncompleteException, FileException;
+
+    /**
+     * Abort the upload session, deleting it and any chunks received
+     * @param session the upload session
+     * @throws FileException if the session cannot be deleted
+     */
+    void abort(UploadSession session) throws FileException;
+}
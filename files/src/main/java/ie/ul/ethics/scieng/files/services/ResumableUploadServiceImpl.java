@@ -0,0 +1,410 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.ChecksumMismatchException;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.exceptions.InvalidChunkException;
+import ie.ul.ethics.scieng.files.exceptions.UploadIncompleteException;
+import ie.ul.ethics.scieng.files.models.UploadChunk;
+import ie.ul.ethics.scieng.files.models.UploadSession;
+import ie.ul.ethics.scieng.files.repositories.UploadChunkRepository;
+import ie.ul.ethics.scieng.files.repositories.UploadSessionRepository;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import ie.ul.ethics.scieng.files.upload.UploadPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This is the implementing class of ResumableUploadService. The chunks of each session are written at their offsets in
+ * a file under sessions/ in the storage directory, preallocated to the length of the upload, so the file is assembled
+ * as the chunks arrive and completing the session does not copy anything. Chunks are written under a shared lock so
+ * they can be received in parallel, while completing or aborting a session takes the exclusive lock so that it never
+ * races a chunk still being written. A completed upload is moved out of sessions/ before its lock is released, and a
+ * chunk that was waiting for the lock checks the session is still open before writing, so it cannot write into a file
+ * that has already been staged
+ */
+@Service
+@Log4j2
+public class ResumableUploadServiceImpl implements ResumableUploadService {
+    /**
+     * The name of the counter recording received chunks
+     */
+    public static final String CHUNK_COUNTER = "files.upload.chunks";
+    /**
+     * The only supported checksum algorithm
+     */
+    private static final String CHECKSUM_ALGORITHM = "sha256";
+    /**
+     * The size of the buffer for writing chunks
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The path of the directory the files of upload sessions are assembled in
+     */
+    private final Path sessionLocation;
+    /**
+     * The path of the directory completed uploads are moved to before they are staged
+     */
+    private final Path tempLocation;
+    /**
+     * The size of each chunk in bytes
+     */
+    private final int chunkSize;
+    /**
+     * The number of hours a session can be resumed for
+     */
+    private final long expiry;
+    /**
+     * The repository of upload sessions
+     */
+    private final UploadSessionRepository sessionRepository;
+    /**
+     * The repository of received chunks
+     */
+    private final UploadChunkRepository chunkRepository;
+    /**
+     * The pipeline completed uploads are staged through
+     */
+    private final UploadPipeline uploadPipeline;
+    /**
+     * The locks of the sessions keyed by session ID
+     */
+    private final ConcurrentHashMap<String, ReadWriteLock> locks;
+    /**
+     * The counter of chunks accepted
+     */
+    private final Counter accepted;
+    /**
+     * The counter of chunks rejected
+     */
+    private final Counter rejected;
+
+    /**
+     * Create a ResumableUploadServiceImpl
+     * @param properties the properties configuration
+     * @param sessionRepository the repository of upload sessions
+     * @param chunkRepository the repository of received chunks
+     * @param uploadPipeline the pipeline completed uploads are staged through
+     * @param meterRegistry the registry to record the metrics of chunks in
+     */
+    @Autowired
+    public ResumableUploadServiceImpl(FilesConfigurationProperties properties, UploadSessionRepository sessionRepository,
+                                      UploadChunkRepository chunkRepository, UploadPipeline uploadPipeline,
+                                      MeterRegistry meterRegistry) {
+        Path storageLocation = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize();
+        this.sessionLocation = storageLocation.resolve("sessions");
+        this.tempLocation = storageLocation.resolve("tmp");
+        this.chunkSize = properties.getResumable().getChunkSize();
+        this.expiry = properties.getResumable().getExpiry();
+        this.sessionRepository = sessionRepository;
+        this.chunkRepository = chunkRepository;
+        this.uploadPipeline = uploadPipeline;
+        this.locks = new ConcurrentHashMap<>();
+        this.accepted = Counter.builder(CHUNK_COUNTER).tag("result", "accepted").register(meterRegistry);
+        this.rejected = Counter.builder(CHUNK_COUNTER).tag("result", "rejected").register(meterRegistry);
+    }
+
+    /**
+     * Get the path of the file the session is assembled in
+     * @param id the ID of the session
+     * @return the path of the file
+     */
+    private Path sessionPath(String id) {
+        return sessionLocation.resolve(id + ".part");
+    }
+
+    /**
+     * Get the lock of the session
+     * @param id the ID of the session
+     * @return the lock
+     */
+    private ReadWriteLock lock(String id) {
+        return locks.computeIfAbsent(id, key -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Validate that the path does not escape the user's directory
+     * @param path the directory or file name to validate, may be null
+     * @throws FileException if the path is invalid
+     */
+    private static void validatePath(String path) throws FileException {
+        if (path != null && StringUtils.cleanPath(path).contains(".."))
+            throw new FileException("You cannot include .. in the file path", null);
+    }
+
+    /**
+     * Create an upload session, preallocating the file it is assembled in
+     *
+     * @param username    the username of the user uploading the file
+     * @param directory   the directory to store the file in, relative to the user's directory. Null if the root
+     * @param target      the name to store the file as
+     * @param contentType the content type of the file
+     * @param length      the total length of the file in bytes
+     * @return the created session
+     * @throws FileException if the target is invalid or the session cannot be created
+     */
+    @Override
+    public UploadSession createSession(String username, String directory, String target, String contentType, long length)
+            throws FileException {
+        validatePath(directory);
+        validatePath(target);
+
+        String id = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+
+        try {
+            Files.createDirectories(sessionLocation);
+
+            try (RandomAccessFile file = new RandomAccessFile(sessionPath(id).toFile(), "rw")) {
+                file.setLength(length);
+            }
+        } catch (IOException ex) {
+            throw new FileException("Failed to create upload session", ex);
+        }
+
+        return sessionRepository.save(new UploadSession(id, username, directory, target, contentType, length, chunkSize,
+                now, now.plusHours(expiry)));
+    }
+
+    /**
+     * Get the upload session with the provided ID belonging to the user
+     *
+     * @param id       the ID of the session
+     * @param username the username of the user the session should belong to
+     * @return the session, or null if not found, expired or belonging to another user
+     */
+    @Override
+    public UploadSession getSession(String id, String username) {
+        return sessionRepository.findById(id)
+                .filter(session -> session.getUsername().equals(username))
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()))
+                .orElse(null);
+    }
+
+    /**
+     * Get the indices of the chunks of the session that have been received, in order
+     *
+     * @param session the upload session
+     * @return the list of received chunk indices
+     */
+    @Override
+    public List<Integer> getReceivedChunks(UploadSession session) {
+        return chunkRepository.findChunkIndicesBySessionId(session.getId());
+    }
+
+    /**
+     * Parse the checksum of a chunk
+     * @param checksum the checksum in the form "sha256 base64-digest"
+     * @return the expected digest
+     * @throws ChecksumMismatchException if the checksum is missing or malformed
+     */
+    private static byte[] parseChecksum(String checksum) throws ChecksumMismatchException {
+        if (checksum == null)
+            throw new ChecksumMismatchException("The chunk has no checksum", null);
+
+        String[] parts = checksum.trim().split(" ");
+
+        if (parts.length != 2 || !parts[0].equalsIgnoreCase(CHECKSUM_ALGORITHM))
+            throw new ChecksumMismatchException("Only " + CHECKSUM_ALGORITHM + " checksums are supported", null);
+
+        try {
+            return Base64.getDecoder().decode(parts[1]);
+        } catch (IllegalArgumentException ex) {
+            throw new ChecksumMismatchException("The checksum is not valid base64", ex);
+        }
+    }
+
+    /**
+     * Write a chunk of the upload at its offset, verifying it against the checksum before recording it as received
+     *
+     * @param session     the upload session
+     * @param index       the index of the chunk
+     * @param inputStream the content of the chunk
+     * @param checksum    the checksum of the chunk in the form "sha256 base64-digest"
+     * @throws InvalidChunkException if the index is outside the upload, the content is not the expected size or the
+     * session has already been completed or aborted
+     * @throws ChecksumMismatchException if the checksum is missing, malformed or does not match the content
+     * @throws FileException if the chunk cannot be written
+     */
+    @Override
+    public void writeChunk(UploadSession session, int index, InputStream inputStream, String checksum)
+            throws InvalidChunkException, ChecksumMismatchException, FileException {
+        if (index < 0 || index >= session.getChunkCount())
+            throw new InvalidChunkException("Chunk " + index + " is outside the upload", null);
+
+        byte[] expected = parseChecksum(checksum);
+        String id = session.getId();
+        long length = session.getChunkLength(index);
+        long position = (long)index * session.getChunkSize();
+        MessageDigest digest = UploadPipeline.newDigest();
+        ReadWriteLock lock = lock(id);
+        lock.readLock().lock();
+
+        if (locks.get(id) != lock || !Files.isRegularFile(sessionPath(id))) {
+            lock.readLock().unlock();
+            locks.remove(id, lock);
+            rejected.increment();
+
+            throw new InvalidChunkException("Upload " + id + " has already been completed or aborted", null);
+        }
+
+        try (InputStream source = inputStream;
+             FileChannel channel = FileChannel.open(sessionPath(id), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int read;
+
+            while ((read = source.read(buffer)) != -1) {
+                if (written + read > length)
+                    throw new InvalidChunkException("Chunk " + index + " is larger than " + length + " bytes", null);
+
+                digest.update(buffer, 0, read);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+
+                while (byteBuffer.hasRemaining())
+                    channel.write(byteBuffer, position + written + byteBuffer.position());
+
+                written += read;
+            }
+
+            if (written != length)
+                throw new InvalidChunkException("Chunk " + index + " is " + written + " bytes but should be " + length, null);
+
+            byte[] actual = digest.digest();
+
+            if (!MessageDigest.isEqual(expected, actual))
+                throw new ChecksumMismatchException("The checksum of chunk " + index + " does not match its content", null);
+
+            chunkRepository.save(new UploadChunk(UploadChunk.createId(id, index), id, index, written,
+                    UploadPipeline.toHex(actual)));
+            accepted.increment();
+        } catch (InvalidChunkException | ChecksumMismatchException ex) {
+            rejected.increment();
+            throw ex;
+        } catch (IOException ex) {
+            throw new FileException("Failed to write chunk " + index + " of upload " + id, ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete the session and its chunks, and release its lock
+     * @param session the session to delete
+     */
+    private void deleteSession(UploadSession session) {
+        chunkRepository.deleteBySessionId(session.getId());
+        sessionRepository.delete(session);
+        locks.remove(session.getId());
+    }
+
+    /**
+     * Complete the upload session once every chunk has been received, moving the assembled file out of sessions/ and
+     * hashing it there
+     *
+     * @param session the upload session
+     * @return the staged, unscanned upload
+     * @throws UploadIncompleteException if any chunks have not been received
+     * @throws FileException if the upload cannot be assembled
+     */
+    @Override
+    public StagedUpload complete(UploadSession session) throws UploadIncompleteException, FileException {
+        String id = session.getId();
+        Path assembled = tempLocation.resolve(id + ".part");
+        ReadWriteLock lock = lock(id);
+        lock.writeLock().lock();
+
+        try {
+            long received = chunkRepository.countBySessionId(id);
+
+            if (received != session.getChunkCount())
+                throw new UploadIncompleteException("Received " + received + " of " + session.getChunkCount() + " chunks", null);
+
+            Files.createDirectories(tempLocation);
+            Files.move(sessionPath(id), assembled, StandardCopyOption.ATOMIC_MOVE);
+            deleteSession(session);
+        } catch (IOException ex) {
+            throw new FileException("Failed to assemble upload " + id, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            return uploadPipeline.stage(assembled);
+        } catch (IOException ex) {
+            try {
+                Files.deleteIfExists(assembled);
+            } catch (IOException ex1) {
+                log.error("Failed to delete assembled upload {}", assembled, ex1);
+            }
+
+            throw new FileException("Failed to assemble upload " + id, ex);
+        }
+    }
+
+    /**
+     * Abort the upload session, deleting it and any chunks received
+     *
+     * @param session the upload session
+     * @throws FileException if the session cannot be deleted
+     */
+    @Override
+    public void abort(UploadSession session) throws FileException {
+        String id = session.getId();
+        ReadWriteLock lock = lock(id);
+        lock.writeLock().lock();
+
+        try {
+            Files.deleteIfExists(sessionPath(id));
+            deleteSession(session);
+        } catch (IOException ex) {
+            throw new FileException("Failed to abort upload " + id, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the upload sessions that have expired, along with their chunks and assembled files
+     */
+    @Scheduled(cron = "${files.resumable.purge-cron:0 0 * * * ?}")
+    public void purgeExpiredSessions() {
+        List<UploadSession> expired = sessionRepository.findByExpiresAtBefore(LocalDateTime.now());
+
+        for (UploadSession session : expired) {
+            try {
+                abort(session);
+            } catch (FileException ex) {
+                log.error("Failed to discard expired upload session {}", session.getId(), ex);
+            }
+        }
+
+        if (!expired.isEmpty())
+            log.info("Discarded {} expired upload sessions", expired.size());
+    }
+}
@@ -14,9 +14,21 @@ public interface UserDirectoryService {
      */
     Path getUserDirectory(Path base, String username);
 
+    /**
+     * Resolve the full filepath with the base and the user directory as root, and then look for filename and directory
+     * there. Nothing is created on disk, so this should be used for reading, downloading or deleting files
+     * @param base the base the user directory is rooted at
+     * @param filename the name of the file
+     * @param directory the directory the file is located in (relative to the user directory)
+     * @param username the username of the user to get the file path for
+     * @return the Path object representing the resolved path
+     */
+    Path resolveFilePath(Path base, String filename, String directory, String username);
+
     /**
      * Construct the full filepath with the base and the user directory as constructed root, and then look for
-     * filename and directory there.
+     * filename and directory there. The directories of the path are created if needed, so this should be used for
+     * writing files
      * @param base the base the user directory is rooted at
      * @param filename the name of the file
      * @param directory the directory the file is located in (relative to the user directory)
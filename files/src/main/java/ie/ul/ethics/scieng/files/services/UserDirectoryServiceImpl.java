@@ -1,26 +1,49 @@
 package ie.ul.ethics.scieng.files.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.files.exceptions.FileException;
 import ie.ul.ethics.scieng.users.authorization.Permissions;
+import ie.ul.ethics.scieng.users.cache.UserEvictionListener;
 import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
 import ie.ul.ethics.scieng.users.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 /**
- * This class represents the implementation of the UserDirectoryService
+ * This class represents the implementation of the UserDirectoryService. Paths are resolved lexically and directories are
+ * only created when writing, so reads, downloads and deletes do not touch the file system here. The inputs to the
+ * permission checks, i.e. whether a user exists and the file permissions of its role, are cached per user and evicted
+ * along with the user in the user cache, so permission checks are in-memory once a user has been seen. This only covers
+ * path resolution and permissions: the callers still look up the stored file of a download and release its blob on
+ * delete in the database
  */
 @Service
-public class UserDirectoryServiceImpl implements UserDirectoryService {
+public class UserDirectoryServiceImpl implements UserDirectoryService, UserEvictionListener {
+    /**
+     * The name the access cache metrics are registered under
+     */
+    public static final String CACHE_NAME = "useraccess";
+
     /**
      * The service for loading users
      */
     private final UserService userService;
+    /**
+     * The cache of the file permissions of users keyed by username
+     */
+    private final Cache<String, UserAccess> access;
     /**
      * The information of the authenticated user
      */
@@ -30,46 +53,74 @@ public class UserDirectoryServiceImpl implements UserDirectoryService {
     /**
      * Create an UserDirectoryServiceImpl instance
      * @param userService the user service for loading users
+     * @param size the maximum number of users to cache the permissions of
+     * @param expiry the number of minutes after which the permissions of a user are reloaded even if not evicted
+     * @param meterRegistry the registry to record the cache metrics in
      */
-    public UserDirectoryServiceImpl(UserService userService) {
+    @Autowired
+    public UserDirectoryServiceImpl(UserService userService, @Value("${users.cache.size:10000}") long size,
+                                    @Value("${users.cache.expiry:60}") long expiry, MeterRegistry meterRegistry) {
         this.userService = userService;
+        this.access = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofMinutes(expiry))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, access, CACHE_NAME);
     }
 
     /**
-     * Get the user identified by username
+     * Get the file permissions of the user identified by username, loading the user if they are not cached
      * @param username the username of the user
-     * @return the loaded authenticated user
+     * @return the file permissions of the user
      */
-    private User getUser(String username) {
+    private UserAccess getAccess(String username) {
         if (username == null)
             throw new FileException("The username must not be null to use the files module", null);
 
-        User user = userService.loadUser(username);
+        UserAccess userAccess = access.get(username, key -> {
+            User user = userService.loadUser(key);
 
-        if (user == null)
+            return (user == null) ? null : UserAccess.of(user);
+        });
+
+        if (userAccess == null)
             throw new FileException("User does not exist, so it's not possible to have a user directory", null);
 
-        return user;
+        return userAccess;
     }
 
     /**
-     * Create the user directory for the given base and user
-     * @param base the base the user directory will be rooted at
-     * @param user the user to create the directory for
-     * @return the path object representing the user directory
+     * Resolve the path of the file without checking the user exists
+     * @param base the base the user directory is rooted at
+     * @param filename the name of the file
+     * @param directory the directory the file is located in (relative to the user directory)
+     * @param username the username of the user
+     * @return the resolved path
      */
-    private Path getUserDirectory(Path base, User user) {
-        Path userDir = base.resolve(user.getUsername());
+    private static Path resolve(Path base, String filename, String directory, String username) {
+        Path path = base.resolve(username);
+
+        if (directory != null)
+            path = path.resolve(directory);
+
+        return path.resolve(filename);
+    }
 
-        if (!Files.isDirectory(userDir)) {
+    /**
+     * Create the directory if it does not exist
+     * @param directory the directory to create
+     * @param message the message of the exception thrown if it cannot be created
+     */
+    private static void createDirectory(Path directory, String message) {
+        if (!Files.isDirectory(directory)) {
             try {
-                Files.createDirectories(userDir);
+                Files.createDirectories(directory);
             } catch (IOException ex) {
-                throw new FileException("Failed to create user's directory", ex);
+                throw new FileException(message, ex);
             }
         }
-
-        return userDir;
     }
 
     /**
@@ -81,66 +132,48 @@ public class UserDirectoryServiceImpl implements UserDirectoryService {
      */
     @Override
     public Path getUserDirectory(Path base, String username) {
-        User user = getUser(username);
+        getAccess(username);
+        Path userDir = base.resolve(username);
+        createDirectory(userDir, "Failed to create user's directory");
 
-        return getUserDirectory(base, user);
+        return userDir;
     }
 
     /**
-     * Construct the full filepath with the base and the user directory as constructed root, and then look for
-     * filename and directory there.
+     * Resolve the full filepath with the base and the user directory as root, and then look for filename and directory
+     * there. Nothing is created on disk
      *
      * @param base      the base the user directory is rooted at
      * @param filename  the name of the file
      * @param directory the directory the file is located in (relative to the user directory)
-     * @param username the username of the user
-     * @return the Path object representing the created path
+     * @param username  the username of the user
+     * @return the Path object representing the resolved path
      */
     @Override
-    public Path createFilePath(Path base, String filename, String directory, String username) {
-        User user = getUser(username);
-        Path path = getUserDirectory(base, user);
+    public Path resolveFilePath(Path base, String filename, String directory, String username) {
+        getAccess(username);
 
-        if (directory != null) {
-            path = path.resolve(directory);
-
-            try {
-                Files.createDirectories(path);
-            } catch (IOException ex) {
-                throw new FileException("Failed to create directories for path", ex);
-            }
-        }
-
-        return path.resolve(filename);
+        return resolve(base, filename, directory, username);
     }
 
     /**
      * Construct the full filepath with the base and the user directory as constructed root, and then look for
-     * filename and directory there.
+     * filename and directory there. The directories of the path are created if needed
      *
      * @param base      the base the user directory is rooted at
      * @param filename  the name of the file
      * @param directory the directory the file is located in (relative to the user directory)
-     * @param user the loaded user
+     * @param username the username of the user
      * @return the Path object representing the created path
      */
-    private Path createFilePath(Path base, String filename, String directory, User user) {
-        Path path = getUserDirectory(base, user);
-
-        if (directory != null) {
-            path = path.resolve(directory);
-
-            try {
-                Files.createDirectories(path);
-            } catch (IOException ex) {
-                throw new FileException("Failed to create directories for path", ex);
-            }
-        }
+    @Override
+    public Path createFilePath(Path base, String filename, String directory, String username) {
+        Path path = resolveFilePath(base, filename, directory, username);
+        createDirectory(path.getParent(), "Failed to create directories for path");
 
-        return path.resolve(filename);
+        return path;
     }
 
-
     /**
      * Determine if the authenticated user can view (i.e. download) the file
      *
@@ -152,14 +185,14 @@ public class UserDirectoryServiceImpl implements UserDirectoryService {
      */
     @Override
     public boolean canViewFile(Path base, String filename, String directory, String username) {
-        User user = getUser(username);
+        UserAccess user = getAccess(username);
         String authenticatedUsername = authenticationInformation.getUsername();
-        User authenticated = (authenticatedUsername.equals(username)) ? user:getUser(authenticatedUsername);
-        Path file = createFilePath(base, filename, directory, user);
+        UserAccess authenticated = (authenticatedUsername.equals(username)) ? user:getAccess(authenticatedUsername);
+        Path file = resolve(base, filename, directory, username);
 
         // you can only retrieve a file if it is your own file, or you have the permission to review applications, or it is a profile photo.
         return filename.contains("profile-photo") || file.toString().contains(authenticatedUsername) ||
-                authenticated.getRole().getPermissions().contains(Permissions.REVIEW_APPLICATIONS);
+                authenticated.canReview;
     }
 
     /**
@@ -173,13 +206,64 @@ public class UserDirectoryServiceImpl implements UserDirectoryService {
      */
     @Override
     public boolean canDeleteFile(Path base, String filename, String directory, String username) {
-        User user = getUser(username);
+        UserAccess user = getAccess(username);
         String authenticatedUsername = authenticationInformation.getUsername();
-        User authenticated = (authenticatedUsername.equals(username)) ? user:getUser(authenticatedUsername);
-        Path file = createFilePath(base, filename, directory, user);
+        UserAccess authenticated = (authenticatedUsername.equals(username)) ? user:getAccess(authenticatedUsername);
+        Path file = resolve(base, filename, directory, username);
 
         // you can only delete a file if it is your own file, or you have the admin permission
-        return file.toString().contains(authenticatedUsername) ||
-                authenticated.getRole().getPermissions().contains(Permissions.ADMIN);
+        return file.toString().contains(authenticatedUsername) || authenticated.admin;
+    }
+
+    /**
+     * Evict the cached permissions of the user, as the user's role may have changed
+     * @param username the username of the evicted user
+     */
+    @Override
+    public void userEvicted(String username) {
+        access.invalidate(username);
+    }
+
+    /**
+     * Evict the cached permissions of all users
+     */
+    @Override
+    public void allUsersEvicted() {
+        access.invalidateAll();
+    }
+
+    /**
+     * This class holds the inputs to the file permission checks for a user
+     */
+    private static final class UserAccess {
+        /**
+         * True if the user can review applications, and so view any file
+         */
+        private final boolean canReview;
+        /**
+         * True if the user is an administrator, and so can delete any file
+         */
+        private final boolean admin;
+
+        /**
+         * Create a UserAccess
+         * @param canReview true if the user can review applications
+         * @param admin true if the user is an administrator
+         */
+        private UserAccess(boolean canReview, boolean admin) {
+            this.canReview = canReview;
+            this.admin = admin;
+        }
+
+        /**
+         * Create the access of the provided user from its role
+         * @param user the loaded user
+         * @return the access of the user
+         */
+        private static UserAccess of(User user) {
+            Role role = user.getRole();
+
+            return new UserAccess(role.hasPermission(Permissions.REVIEW_APPLICATIONS), role.hasPermission(Permissions.ADMIN));
+        }
     }
 }
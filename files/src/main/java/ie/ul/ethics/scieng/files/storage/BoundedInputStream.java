@@ -0,0 +1,85 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class provides an input stream that reads at most a fixed number of bytes from the stream it wraps
+ */
+class BoundedInputStream extends FilterInputStream {
+    /**
+     * The number of bytes that can still be read
+     */
+    private long remaining;
+
+    /**
+     * Create a BoundedInputStream
+     * @param inputStream the stream to read from
+     * @param limit the maximum number of bytes to read
+     */
+    BoundedInputStream(InputStream inputStream, long limit) {
+        super(inputStream);
+        this.remaining = limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0)
+            return -1;
+
+        int read = super.read();
+
+        if (read != -1)
+            remaining--;
+
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0)
+            return -1;
+
+        int read = super.read(b, off, (int)Math.min(len, remaining));
+
+        if (read > 0)
+            remaining -= read;
+
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining));
+        remaining -= skipped;
+
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(super.available(), remaining);
+    }
+
+    /**
+     * Marking is not supported as the remaining count would not be restored
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
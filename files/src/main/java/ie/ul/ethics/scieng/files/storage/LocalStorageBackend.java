@@ -0,0 +1,222 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+/**
+ * This class provides a storage backend keeping objects as files under a directory on the local file system, which is
+ * the storage directory of the module. This is the default backend, and suits a single application node or nodes
+ * sharing the directory over a network file system
+ */
+@Log4j2
+public class LocalStorageBackend implements StorageBackend {
+    /**
+     * The directory the objects are stored under
+     */
+    private final Path root;
+
+    /**
+     * Create a LocalStorageBackend
+     * @param root the directory to store objects under
+     */
+    public LocalStorageBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolve the path of the object, ensuring it does not escape the root directory
+     * @param key the key of the object
+     * @return the path of the object
+     * @throws FileException if the key escapes the root directory
+     */
+    private Path resolve(String key) throws FileException {
+        Path path = root.resolve(key).normalize();
+
+        if (!path.startsWith(root))
+            throw new FileException("The key " + key + " is outside the storage directory", null);
+
+        return path;
+    }
+
+    /**
+     * Move the file to the target, atomically where the file system supports it so that a partially written file is
+     * never visible at the target
+     * @param source the file to move
+     * @param target the path to move the file to
+     * @throws IOException if the file cannot be moved
+     */
+    static void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            log.warn("Atomic moves are not supported moving {} to {}, falling back to a regular move", source, target);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Objects are files on the local file system
+     * @return true
+     */
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    /**
+     * Get the metadata of the object
+     *
+     * @param key the key of the object
+     * @return the metadata of the object, null if it does not exist
+     * @throws IOException if the file cannot be read
+     */
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+
+            return attributes.isRegularFile() ?
+                    new StorageObject(key, attributes.size(), attributes.lastModifiedTime().toMillis()) : null;
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Open a stream reading the whole object
+     *
+     * @param key the key of the object
+     * @return the stream of the content of the object
+     * @throws IOException if the object cannot be read
+     */
+    @Override
+    public InputStream read(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    /**
+     * Open a stream reading a range of the object
+     *
+     * @param key    the key of the object
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read
+     * @return the stream of the range of the object
+     * @throws IOException if the object cannot be read
+     */
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+
+        try {
+            channel.position(offset);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    /**
+     * Write the object from the stream to a temporary file and then move it into place
+     *
+     * @param key         the key of the object
+     * @param inputStream the content of the object
+     * @param length      the number of bytes to read from the stream
+     * @throws IOException if the object cannot be written
+     */
+    @Override
+    public void write(String key, InputStream inputStream, long length) throws IOException {
+        Path target = resolve(key);
+        Path temp = root.resolve("tmp");
+        Files.createDirectories(temp);
+        temp = Files.createTempFile(temp, "write-", ".part");
+
+        try {
+            long written = Files.copy(new BoundedInputStream(inputStream, length), temp, StandardCopyOption.REPLACE_EXISTING);
+
+            if (written != length)
+                throw new EOFException("Expected " + length + " bytes for " + key + " but the stream ended after " + written);
+
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Move the local file into place under the key
+     *
+     * @param key    the key of the object
+     * @param source the local file to move into the backend
+     * @throws IOException if the file cannot be moved
+     */
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = resolve(key);
+
+        if (!target.equals(source.toAbsolutePath().normalize()))
+            move(source, target);
+    }
+
+    /**
+     * Delete the object. This does nothing if the object does not exist
+     *
+     * @param key the key of the object
+     * @throws IOException if the object cannot be deleted
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    /**
+     * Local objects can only be downloaded through the application
+     *
+     * @param key         the key of the object
+     * @param filename    the name to give the file in the Content-Disposition of the download
+     * @param contentType the content type of the download
+     * @param expiry      how long the URL is valid for
+     * @return null
+     */
+    @Override
+    public URI presign(String key, String filename, String contentType, Duration expiry) {
+        return null;
+    }
+
+    /**
+     * Get the path of the object on the local file system
+     *
+     * @param key the key of the object
+     * @return the path of the object
+     */
+    @Override
+    public Path localPath(String key) {
+        return resolve(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "LocalStorageBackend(" + root + ")";
+    }
+}
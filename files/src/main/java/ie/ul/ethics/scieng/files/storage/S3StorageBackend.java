@@ -0,0 +1,404 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import lombok.extern.log4j.Log4j2;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides a storage backend keeping objects in a bucket of an S3-compatible object store, such as AWS S3 or
+ * MinIO, so that any number of application nodes can share the files without a shared file system. Files larger than
+ * the part size are sent with multipart uploads, and downloads can be presigned so clients fetch the content from the
+ * object store directly rather than through the application
+ */
+@Log4j2
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+    /**
+     * The client for the object store
+     */
+    private final S3Client client;
+    /**
+     * The presigner for download URLs
+     */
+    private final S3Presigner presigner;
+    /**
+     * The bucket the objects are stored in
+     */
+    private final String bucket;
+    /**
+     * The size in bytes of each part of a multipart upload, and the size above which files are sent in parts
+     */
+    private final int partSize;
+
+    /**
+     * Create a S3StorageBackend
+     * @param client the client for the object store
+     * @param presigner the presigner for download URLs
+     * @param bucket the bucket the objects are stored in
+     * @param partSize the size in bytes of each part of a multipart upload
+     */
+    public S3StorageBackend(S3Client client, S3Presigner presigner, String bucket, int partSize) {
+        this.client = client;
+        this.presigner = presigner;
+        this.bucket = bucket;
+        this.partSize = partSize;
+    }
+
+    /**
+     * Create a S3StorageBackend from the configuration properties. If no access key is configured, the credentials are
+     * taken from the default AWS provider chain, i.e. the environment, system properties or instance profile
+     * @param properties the S3 configuration properties
+     * @return the created backend
+     */
+    public static S3StorageBackend create(FilesConfigurationProperties.S3 properties) {
+        Region region = Region.of(properties.getRegion());
+        AwsCredentialsProvider credentials = (properties.getAccessKey() == null) ? DefaultCredentialsProvider.create() :
+                StaticCredentialsProvider.create(AwsBasicCredentials.create(properties.getAccessKey(), properties.getSecretKey()));
+        S3Configuration configuration = S3Configuration.builder()
+                .pathStyleAccessEnabled(properties.isPathStyle())
+                .build();
+        S3ClientBuilder client = S3Client.builder()
+                .region(region)
+                .credentialsProvider(credentials)
+                .serviceConfiguration(configuration);
+        S3Presigner.Builder presigner = S3Presigner.builder()
+                .region(region)
+                .credentialsProvider(credentials)
+                .serviceConfiguration(configuration);
+
+        if (properties.getEndpoint() != null) {
+            URI endpoint = URI.create(properties.getEndpoint());
+            client.endpointOverride(endpoint);
+            presigner.endpointOverride(endpoint);
+        }
+
+        return new S3StorageBackend(client.build(), presigner.build(), properties.getBucket(), properties.getPartSize());
+    }
+
+    /**
+     * Determine if the exception is the object store reporting that the object does not exist
+     * @param ex the exception thrown by the client
+     * @return true if the object does not exist
+     */
+    private static boolean isNotFound(SdkException ex) {
+        return ex instanceof NoSuchKeyException || (ex instanceof S3Exception && ((S3Exception)ex).statusCode() == 404);
+    }
+
+    /**
+     * Objects are held in the object store
+     * @return false
+     */
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    /**
+     * Get the metadata of the object
+     *
+     * @param key the key of the object
+     * @return the metadata of the object, null if it does not exist
+     * @throws IOException if the object store cannot be reached
+     */
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        try {
+            HeadObjectResponse response = client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build());
+
+            return new StorageObject(key, response.contentLength(), response.lastModified().toEpochMilli());
+        } catch (SdkException ex) {
+            if (isNotFound(ex))
+                return null;
+
+            throw new IOException("Failed to get the metadata of " + key, ex);
+        }
+    }
+
+    /**
+     * Read the object, or a range of it if the range header is not null
+     * @param key the key of the object
+     * @param range the range header, null to read the whole object
+     * @return the stream of the content
+     * @throws IOException if the object cannot be read
+     */
+    private InputStream read(String key, String range) throws IOException {
+        try {
+            return client.getObject(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .range(range)
+                    .build());
+        } catch (SdkException ex) {
+            if (isNotFound(ex))
+                throw new NoSuchFileException(key);
+
+            throw new IOException("Failed to read " + key, ex);
+        }
+    }
+
+    /**
+     * Open a stream reading the whole object
+     *
+     * @param key the key of the object
+     * @return the stream of the content of the object
+     * @throws IOException if the object cannot be read
+     */
+    @Override
+    public InputStream read(String key) throws IOException {
+        return read(key, null);
+    }
+
+    /**
+     * Open a stream reading a range of the object with a ranged GET
+     *
+     * @param key    the key of the object
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read
+     * @return the stream of the range of the object
+     * @throws IOException if the object cannot be read
+     */
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        if (length <= 0)
+            return new ByteArrayInputStream(new byte[0]);
+
+        return read(key, "bytes=" + offset + "-" + (offset + length - 1));
+    }
+
+    /**
+     * Write the object from the stream with a single PUT
+     *
+     * @param key         the key of the object
+     * @param inputStream the content of the object
+     * @param length      the number of bytes to read from the stream
+     * @throws IOException if the object cannot be written
+     */
+    @Override
+    public void write(String key, InputStream inputStream, long length) throws IOException {
+        try {
+            client.putObject(PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentLength(length)
+                    .build(), RequestBody.fromInputStream(inputStream, length));
+        } catch (SdkException ex) {
+            throw new IOException("Failed to write " + key, ex);
+        }
+    }
+
+    /**
+     * Upload the local file under the key, in parts if it is larger than the part size, and then delete the file
+     *
+     * @param key    the key of the object
+     * @param source the local file to move into the backend
+     * @throws IOException if the file cannot be uploaded
+     */
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+
+        try {
+            if (size <= partSize) {
+                client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentLength(size)
+                        .build(), RequestBody.fromFile(source));
+            } else {
+                putMultipart(key, source, size);
+            }
+        } catch (SdkException ex) {
+            throw new IOException("Failed to upload " + key, ex);
+        }
+
+        Files.deleteIfExists(source);
+    }
+
+    /**
+     * Upload the local file under the key with a multipart upload, aborting the upload if any part fails so the parts
+     * are not left behind in the bucket
+     * @param key the key of the object
+     * @param source the local file to upload
+     * @param size the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private void putMultipart(String key, Path source, long size) throws IOException {
+        String uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build()).uploadId();
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<CompletedPart> parts = new ArrayList<>();
+            ByteBuffer buffer = ByteBuffer.allocate(partSize);
+            int number = 1;
+
+            for (long position = 0; position < size; position += partSize, number++) {
+                buffer.clear();
+                buffer.limit((int)Math.min(partSize, size - position));
+
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0)
+                        throw new EOFException("File " + source + " was truncated while being uploaded");
+                }
+
+                buffer.flip();
+                String eTag = client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(number)
+                        .contentLength((long)buffer.remaining())
+                        .build(), RequestBody.fromByteBuffer(buffer)).eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(eTag).build());
+            }
+
+            client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            log.debug("Uploaded {} in {} parts", key, parts.size());
+        } catch (IOException | SdkException ex) {
+            abortMultipart(key, uploadId);
+            throw ex;
+        }
+    }
+
+    /**
+     * Abort the multipart upload, logging rather than throwing if it cannot be aborted as the original error is more
+     * useful to the caller
+     * @param key the key of the object
+     * @param uploadId the ID of the multipart upload
+     */
+    private void abortMultipart(String key, String uploadId) {
+        try {
+            client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException ex) {
+            log.warn("Failed to abort multipart upload {} of {}", uploadId, key, ex);
+        }
+    }
+
+    /**
+     * Delete the object. This does nothing if the object does not exist
+     *
+     * @param key the key of the object
+     * @throws IOException if the object cannot be deleted
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build());
+        } catch (SdkException ex) {
+            if (!isNotFound(ex))
+                throw new IOException("Failed to delete " + key, ex);
+        }
+    }
+
+    /**
+     * Create a presigned GET URL for the object, overriding the Content-Disposition and Content-Type of the response so
+     * the download is named and typed as if served by the application
+     *
+     * @param key         the key of the object
+     * @param filename    the name to give the file in the Content-Disposition of the download
+     * @param contentType the content type of the download
+     * @param expiry      how long the URL is valid for
+     * @return the presigned URL
+     */
+    @Override
+    public URI presign(String key, String filename, String contentType, Duration expiry) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .responseContentDisposition("attachment; filename=\"" + filename + "\"")
+                .responseContentType(contentType)
+                .build();
+
+        try {
+            return presigner.presignGetObject(GetObjectPresignRequest.builder()
+                    .signatureDuration(expiry)
+                    .getObjectRequest(request)
+                    .build()).url().toURI();
+        } catch (URISyntaxException ex) {
+            throw new IllegalStateException("The presigned URL for " + key + " is not a valid URI", ex);
+        }
+    }
+
+    /**
+     * Objects are not on the local file system
+     *
+     * @param key the key of the object
+     * @return null
+     */
+    @Override
+    public Path localPath(String key) {
+        return null;
+    }
+
+    /**
+     * Close the client and presigner
+     */
+    @Override
+    public void close() {
+        client.close();
+        presigner.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "S3StorageBackend(" + bucket + ")";
+    }
+}
@@ -0,0 +1,93 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * This interface represents where the content of files is kept. Objects are addressed by keys of '/' separated
+ * segments, such as blobs/ab/abcdef, so the same keys can be mapped to paths under a local directory or to the keys of
+ * an object store bucket shared by every application node
+ */
+public interface StorageBackend {
+    /**
+     * Determine if objects are files on the local file system. If so, their paths are available through
+     * {@link #localPath(String)} and they can be served or linked directly
+     * @return true if local, false if the objects are held remotely
+     */
+    boolean isLocal();
+
+    /**
+     * Get the metadata of the object
+     * @param key the key of the object
+     * @return the metadata of the object, null if it does not exist
+     * @throws IOException if the backend cannot be reached
+     */
+    StorageObject stat(String key) throws IOException;
+
+    /**
+     * Open a stream reading the whole object
+     * @param key the key of the object
+     * @return the stream of the content of the object, which must be closed by the caller
+     * @throws java.nio.file.NoSuchFileException if the object does not exist
+     * @throws IOException if the object cannot be read
+     */
+    InputStream read(String key) throws IOException;
+
+    /**
+     * Open a stream reading a range of the object
+     * @param key the key of the object
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read
+     * @return the stream of the range of the object, which must be closed by the caller
+     * @throws java.nio.file.NoSuchFileException if the object does not exist
+     * @throws IOException if the object cannot be read
+     */
+    InputStream read(String key, long offset, long length) throws IOException;
+
+    /**
+     * Write the object from the stream, replacing any existing object with the key. The object is not visible under the
+     * key until it has been written completely
+     * @param key the key of the object
+     * @param inputStream the content of the object, not closed by this method
+     * @param length the number of bytes to read from the stream
+     * @throws IOException if the object cannot be written
+     */
+    void write(String key, InputStream inputStream, long length) throws IOException;
+
+    /**
+     * Move the local file into the backend under the key, replacing any existing object with the key. The file should
+     * not be used by the caller once it has been put. Large files are sent to remote backends in parts
+     * @param key the key of the object
+     * @param source the local file to move into the backend
+     * @throws IOException if the file cannot be moved
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Delete the object. This does nothing if the object does not exist
+     * @param key the key of the object
+     * @throws IOException if the object cannot be deleted
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Create a URL that a client can download the object from directly for a limited time, so the download does not
+     * pass through the application
+     * @param key the key of the object
+     * @param filename the name to give the file in the Content-Disposition of the download
+     * @param contentType the content type of the download
+     * @param expiry how long the URL is valid for
+     * @return the presigned URL, null if the backend cannot be downloaded from directly
+     */
+    URI presign(String key, String filename, String contentType, Duration expiry);
+
+    /**
+     * Get the path of the object on the local file system
+     * @param key the key of the object
+     * @return the path of the object, which may not exist, or null if the backend is not local
+     */
+    Path localPath(String key);
+}
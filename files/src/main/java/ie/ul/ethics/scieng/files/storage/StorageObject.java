@@ -0,0 +1,24 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * This class represents the metadata of an object held by a storage backend
+ */
+@Getter
+@AllArgsConstructor
+public class StorageObject {
+    /**
+     * The key of the object
+     */
+    private final String key;
+    /**
+     * The size of the object in bytes
+     */
+    private final long size;
+    /**
+     * The last modified time of the object in epoch milliseconds
+     */
+    private final long lastModified;
+}
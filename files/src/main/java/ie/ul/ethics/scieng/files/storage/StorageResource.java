@@ -0,0 +1,87 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class provides a resource for an object held by a storage backend. Each call to {@link #getInputStream()} reads
+ * the object from the backend, and since the object may not be on the local file system, {@link #getFile()} is not
+ * supported, so callers needing a file should check {@link #isFile()} and copy the stream otherwise
+ */
+public class StorageResource extends AbstractResource {
+    /**
+     * The backend holding the object
+     */
+    private final StorageBackend storageBackend;
+    /**
+     * The metadata of the object
+     */
+    private final StorageObject object;
+    /**
+     * The name of the file the object is the content of
+     */
+    private final String filename;
+
+    /**
+     * Create a StorageResource
+     * @param storageBackend the backend holding the object
+     * @param object the metadata of the object
+     * @param filename the name of the file the object is the content of
+     */
+    public StorageResource(StorageBackend storageBackend, StorageObject object, String filename) {
+        this.storageBackend = storageBackend;
+        this.object = object;
+        this.filename = filename;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return storageBackend.read(object.getKey());
+    }
+
+    /**
+     * The object existed when the resource was created
+     * @return true
+     */
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength() {
+        return object.getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lastModified() {
+        return object.getLastModified();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDescription() {
+        return "Storage object [" + object.getKey() + "] of " + storageBackend;
+    }
+}
@@ -0,0 +1,31 @@
+package ie.ul.ethics.scieng.files.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * This class represents an upload that has been written to a temporary file, hashed and scanned, but not yet moved to
+ * its final location
+ */
+@Getter
+@AllArgsConstructor
+public class StagedUpload {
+    /**
+     * The temporary file the upload was written to
+     */
+    private final Path file;
+    /**
+     * The hex encoded SHA-256 hash of the upload
+     */
+    private final String sha256;
+    /**
+     * The size of the upload in bytes
+     */
+    private final long size;
+    /**
+     * True if the antivirus scanner found the upload to be virus-free
+     */
+    private final boolean safe;
+}
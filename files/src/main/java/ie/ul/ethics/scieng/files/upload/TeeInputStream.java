@@ -0,0 +1,195 @@
+package ie.ul.ethics.scieng.files.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * This class provides an input stream that copies every byte read from it to an output stream and a message digest, so
+ * that a consumer reading the stream (such as the antivirus scanner) drives the write and the hash in the same pass.
+ * The time spent reading the source, updating the digest and writing the copy is recorded so the cost of each stage
+ * can be reported
+ */
+public class TeeInputStream extends FilterInputStream {
+    /**
+     * The size of the buffer used to drain the stream
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * The stream receiving a copy of the bytes read
+     */
+    private final OutputStream copy;
+    /**
+     * The digest receiving the bytes read
+     */
+    private final MessageDigest digest;
+    /**
+     * The number of bytes read from the source
+     */
+    private long bytes;
+    /**
+     * The nanoseconds spent reading from the source
+     */
+    private long readNanos;
+    /**
+     * The nanoseconds spent updating the digest
+     */
+    private long digestNanos;
+    /**
+     * The nanoseconds spent writing the copy
+     */
+    private long writeNanos;
+    /**
+     * True if the end of the source has been reached
+     */
+    private boolean eof;
+    /**
+     * True if the stream has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Create a TeeInputStream
+     * @param source the stream to read from
+     * @param copy the stream to write a copy of the bytes read to
+     * @param digest the digest to update with the bytes read
+     */
+    public TeeInputStream(InputStream source, OutputStream copy, MessageDigest digest) {
+        super(source);
+        this.copy = copy;
+        this.digest = digest;
+    }
+
+    /**
+     * Read a single byte from the source, copying it to the output stream and digest
+     * @return the byte read or -1 if the end of the stream is reached
+     * @throws IOException if an error occurs reading or writing
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+
+        return (read == -1) ? -1 : single[0] & 0xFF;
+    }
+
+    /**
+     * Read up to len bytes from the source, copying them to the output stream and digest
+     * @param b the buffer to read into
+     * @param off the offset in the buffer to start at
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read or -1 if the end of the stream is reached
+     * @throws IOException if an error occurs reading or writing
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(b, off, len);
+        long readEnd = System.nanoTime();
+        readNanos += readEnd - start;
+
+        if (read == -1) {
+            eof = true;
+        } else if (read > 0) {
+            digest.update(b, off, read);
+            long digested = System.nanoTime();
+            copy.write(b, off, read);
+            writeNanos += System.nanoTime() - digested;
+            digestNanos += digested - readEnd;
+            bytes += read;
+        }
+
+        return read;
+    }
+
+    /**
+     * Skipping is not supported as skipped bytes would not be copied, so this reads and copies the bytes instead
+     * @param n the number of bytes to skip
+     * @return the number of bytes skipped
+     * @throws IOException if an error occurs reading or writing
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int)Math.min(BUFFER_SIZE, Math.max(n, 0))];
+        long skipped = 0;
+
+        while (skipped < n) {
+            int read = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+
+            if (read == -1)
+                break;
+
+            skipped += read;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Mark is not supported as re-reading would copy the bytes twice
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Read and copy whatever remains of the source, for example if the consumer did not read it to the end
+     * @throws IOException if the stream was closed before it was fully read or an error occurs
+     */
+    public void drain() throws IOException {
+        if (eof)
+            return;
+        else if (closed)
+            throw new IOException("The stream was closed before it was fully read");
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        while (read(buffer, 0, buffer.length) != -1);
+    }
+
+    /**
+     * Close the source stream. The copy stream is left open for the owner to close
+     * @throws IOException if an error occurs closing the source
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        super.close();
+    }
+
+    /**
+     * Get the number of bytes read from the source
+     * @return the number of bytes read
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the nanoseconds spent reading from the source
+     * @return the read time in nanoseconds
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Get the nanoseconds spent updating the digest
+     * @return the digest time in nanoseconds
+     */
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+
+    /**
+     * Get the nanoseconds spent writing the copy
+     * @return the write time in nanoseconds
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+}
@@ -0,0 +1,252 @@
+package ie.ul.ethics.scieng.files.upload;
+
+import ie.ul.ethics.scieng.files.antivirus.AntivirusException;
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class provides the pipeline uploads are stored through. The upload stream is read once, with the antivirus
+ * scanner consuming it while every byte is also written to a temporary file in the storage directory and added to a
+ * SHA-256 digest. The temporary file is only put into the storage backend once the scan has passed
+ */
+@Component
+@Log4j2
+public class UploadPipeline {
+    /**
+     * The name of the timer recording the time spent in each stage of the pipeline
+     */
+    public static final String STAGE_TIMER = "files.upload.stage";
+    /**
+     * The name of the summary recording the size of uploads
+     */
+    public static final String SIZE_SUMMARY = "files.upload.size";
+    /**
+     * The size of the buffer for writing the temporary file
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The scanner for antivirus in uploaded files
+     */
+    private final AntivirusScanner antivirusScanner;
+    /**
+     * The timer for reading the upload
+     */
+    private final Timer readTimer;
+    /**
+     * The timer for hashing the upload
+     */
+    private final Timer digestTimer;
+    /**
+     * The timer for writing the upload to the temporary file
+     */
+    private final Timer writeTimer;
+    /**
+     * The timer for scanning the upload
+     */
+    private final Timer scanTimer;
+    /**
+     * The summary of upload sizes
+     */
+    private final DistributionSummary sizes;
+
+    /**
+     * Create an UploadPipeline
+     * @param antivirusScanner the scanner for antivirus in uploaded files
+     * @param meterRegistry the registry to record the timings of each stage in
+     */
+    public UploadPipeline(AntivirusScanner antivirusScanner, MeterRegistry meterRegistry) {
+        this.antivirusScanner = antivirusScanner;
+        this.readTimer = Timer.builder(STAGE_TIMER).tag("stage", "read").register(meterRegistry);
+        this.digestTimer = Timer.builder(STAGE_TIMER).tag("stage", "digest").register(meterRegistry);
+        this.writeTimer = Timer.builder(STAGE_TIMER).tag("stage", "write").register(meterRegistry);
+        this.scanTimer = Timer.builder(STAGE_TIMER).tag("stage", "scan").register(meterRegistry);
+        this.sizes = DistributionSummary.builder(SIZE_SUMMARY).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Create a new SHA-256 digest
+     * @return the digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Encode the bytes as a lowercase hex string
+     * @param bytes the bytes to encode
+     * @return the hex string
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+        return builder.toString();
+    }
+
+    /**
+     * Calculate the throughput of a stage in megabytes per second
+     * @param bytes the bytes processed
+     * @param nanos the nanoseconds spent
+     * @return the throughput in MB/s
+     */
+    private static double throughput(long bytes, long nanos) {
+        return (nanos == 0) ? 0 : (bytes / 1048576.0) / (nanos / 1e9);
+    }
+
+    /**
+     * Record the time spent in each stage of the upload
+     * @param tee the stream the upload was read through
+     * @param total the total nanoseconds the upload took
+     * @param scanned true if the upload was scanned as it was read
+     */
+    private void recordStages(TeeInputStream tee, long total, boolean scanned) {
+        long bytes = tee.getBytes();
+        long read = tee.getReadNanos();
+        long digest = tee.getDigestNanos();
+        long write = tee.getWriteNanos();
+        long scan = Math.max(0, total - read - digest - write);
+
+        readTimer.record(read, TimeUnit.NANOSECONDS);
+        digestTimer.record(digest, TimeUnit.NANOSECONDS);
+        writeTimer.record(write, TimeUnit.NANOSECONDS);
+
+        if (scanned)
+            scanTimer.record(scan, TimeUnit.NANOSECONDS);
+
+        sizes.record(bytes);
+
+        log.debug("Staged upload of {} bytes, read {} MB/s, digest {} MB/s, write {} MB/s, scan {} MB/s", bytes,
+                String.format("%.1f", throughput(bytes, read)), String.format("%.1f", throughput(bytes, digest)),
+                String.format("%.1f", throughput(bytes, write)), String.format("%.1f", throughput(bytes, scan)));
+    }
+
+    /**
+     * Read the upload once, scanning it for viruses while writing it to a temporary file in the provided directory and
+     * hashing it. The stream is closed once it has been read
+     * @param inputStream the stream of the upload
+     * @param directory the directory to create the temporary file in. This should be on the same file system as the
+     *                  final location so that it can be moved atomically
+     * @return the staged upload
+     * @throws IOException if the upload cannot be read or written
+     * @throws AntivirusException if an error occurs scanning the upload
+     */
+    public StagedUpload stage(InputStream inputStream, Path directory) throws IOException, AntivirusException {
+        return stage(inputStream, directory, true);
+    }
+
+    /**
+     * Read the upload once, writing it to a temporary file in the provided directory and hashing it, and optionally
+     * scanning it for viruses as it is read. The stream is closed once it has been read
+     * @param inputStream the stream of the upload
+     * @param directory the directory to create the temporary file in. This should be on the same file system as the
+     *                  final location so that it can be moved atomically
+     * @param scan true to scan the upload as it is read. If false, the staged upload is not marked as safe and must be
+     *             scanned before it is stored
+     * @return the staged upload
+     * @throws IOException if the upload cannot be read or written
+     * @throws AntivirusException if an error occurs scanning the upload
+     */
+    public StagedUpload stage(InputStream inputStream, Path directory, boolean scan) throws IOException, AntivirusException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "upload-", ".part");
+        MessageDigest digest = newDigest();
+
+        try (InputStream source = inputStream;
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+            TeeInputStream tee = new TeeInputStream(source, out, digest);
+            long start = System.nanoTime();
+
+            boolean safe = scan && antivirusScanner.isFileSafe(tee);
+            tee.drain();
+            out.flush();
+
+            recordStages(tee, System.nanoTime() - start, scan);
+
+            return new StagedUpload(temp, toHex(digest.digest()), tee.getBytes(), safe);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Stage a file that has already been written to the storage directory, such as an assembled resumable upload, by
+     * hashing it in place. The file is not copied or scanned, so the staged upload is not marked as safe and must be
+     * scanned before it is stored
+     * @param file the file to stage. This should be on the same file system as the final location so that it can be
+     *             moved atomically
+     * @return the staged upload
+     * @throws IOException if the file cannot be read
+     */
+    public StagedUpload stage(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        long start = System.nanoTime();
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+
+        digestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        sizes.record(size);
+
+        return new StagedUpload(file, toHex(digest.digest()), size, false);
+    }
+
+    /**
+     * Scan an upload that was staged without being scanned, for example because its hash was needed first to look up a
+     * cached verdict
+     * @param upload the staged, unscanned upload
+     * @return the staged upload, marked as safe if the antivirus scanner found it to be virus-free
+     * @throws IOException if the staged file cannot be read
+     * @throws AntivirusException if an error occurs scanning the upload
+     */
+    public StagedUpload scan(StagedUpload upload) throws IOException, AntivirusException {
+        long start = System.nanoTime();
+
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(upload.getFile()), BUFFER_SIZE)) {
+            boolean safe = antivirusScanner.isFileSafe(inputStream);
+
+            return new StagedUpload(upload.getFile(), upload.getSha256(), upload.getSize(), safe);
+        } finally {
+            scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Delete the temporary file of the staged upload, for example if it contains a virus
+     * @param upload the staged upload to discard
+     * @throws IOException if the file cannot be deleted
+     */
+    public void discard(StagedUpload upload) throws IOException {
+        Files.deleteIfExists(upload.getFile());
+    }
+}
@@ -0,0 +1,95 @@
+package ie.ul.ethics.scieng.files.antivirus;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides tests for the ClamAvAntivirusScanner against a fake ClamAV daemon
+ */
+public class ClamAvAntivirusScannerTest {
+    /**
+     * The EICAR test file content
+     */
+    public static final String EICAR = "X5O!P%@AP[4\\PZX54(P^)7CC)7}$EICAR-STANDARD-ANTIVIRUS-TEST-FILE!$H+H*";
+
+    /**
+     * The fake daemon being scanned against
+     */
+    private FakeClamd clamd;
+    /**
+     * The scanner being tested
+     */
+    private ClamAvAntivirusScanner scanner;
+
+    /**
+     * Start the fake daemon before each test
+     * @throws IOException if the daemon cannot be started
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        clamd = new FakeClamd();
+        scanner = new ClamAvAntivirusScanner(true, "localhost", clamd.getPort(), "UNIX");
+    }
+
+    /**
+     * Stop the fake daemon after each test
+     * @throws IOException if the daemon cannot be stopped
+     */
+    @AfterEach
+    public void shutdown() throws IOException {
+        clamd.close();
+    }
+
+    /**
+     * This method tests that a clean stream is reported as safe
+     */
+    @Test
+    public void shouldReportCleanFileSafe() {
+        byte[] content = "%PDF-1.4 a perfectly clean file".getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(scanner.isFileSafe(new ByteArrayInputStream(content)));
+        assertEquals(1, clamd.getScans());
+    }
+
+    /**
+     * This method tests that a stream containing a virus is reported as not safe
+     */
+    @Test
+    public void shouldReportInfectedFileNotSafe() {
+        byte[] content = EICAR.getBytes(StandardCharsets.US_ASCII);
+
+        assertFalse(scanner.isFileSafe(new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * This method tests that a disabled scanner reports everything as safe without contacting the daemon
+     */
+    @Test
+    public void shouldReportSafeWhenDisabled() {
+        ClamAvAntivirusScanner disabled = new ClamAvAntivirusScanner(false, "localhost", clamd.getPort(), "UNIX");
+        byte[] content = EICAR.getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(disabled.isFileSafe(new ByteArrayInputStream(content)));
+        assertEquals(0, clamd.getScans());
+    }
+
+    /**
+     * This method tests that the signature version is queried from the daemon without the build date
+     */
+    @Test
+    public void shouldGetSignatureVersion() {
+        assertEquals("ClamAV 0.103.8/26950", scanner.getSignatureVersion());
+
+        clamd.setSignatureVersion(26951);
+
+        assertEquals("ClamAV 0.103.8/26951", scanner.getSignatureVersion());
+        assertNull(new ClamAvAntivirusScanner(false, "localhost", clamd.getPort(), "UNIX").getSignatureVersion());
+    }
+}
@@ -0,0 +1,264 @@
+package ie.ul.ethics.scieng.files.antivirus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides a minimal local stand-in for the ClamAV daemon for tests. It speaks enough of the clamd protocol
+ * for the ClamAV client: VERSIONCOMMANDS, VERSION, PING and INSTREAM. Streams containing the EICAR test signature are
+ * reported as infected and everything else as clean
+ */
+public class FakeClamd implements AutoCloseable {
+    /**
+     * The signature that marks a stream as infected
+     */
+    private static final String EICAR = "EICAR-STANDARD-ANTIVIRUS-TEST-FILE";
+    /**
+     * The commands the fake daemon reports as supported
+     */
+    private static final String COMMANDS = "SCAN QUIT RELOAD PING CONTSCAN VERSIONCOMMANDS VERSION END SHUTDOWN MULTISCAN "
+            + "FILDES STATS IDSESSION INSTREAM DETSTATSCLEAR DETSTATS ALLMATCHSCAN";
+
+    /**
+     * The socket the fake daemon listens on
+     */
+    private final ServerSocket serverSocket;
+    /**
+     * The executor handling connections
+     */
+    private final ExecutorService executor;
+    /**
+     * The number of INSTREAM scans performed
+     */
+    private final AtomicInteger scans = new AtomicInteger();
+    /**
+     * The number of scans currently in progress
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    /**
+     * The most scans that have been in progress at once
+     */
+    private final AtomicInteger maxActive = new AtomicInteger();
+    /**
+     * The version of the signature database reported by VERSION
+     */
+    private volatile int signatureVersion = 26950;
+    /**
+     * The number of milliseconds each scan takes
+     */
+    private volatile long scanDelay;
+    /**
+     * The number of milliseconds each VERSION command takes
+     */
+    private volatile long versionDelay;
+    /**
+     * The number of VERSION commands received
+     */
+    private final AtomicInteger versionRequests = new AtomicInteger();
+
+    /**
+     * Start a fake daemon on an ephemeral port on the loopback address
+     * @throws IOException if the socket cannot be opened
+     */
+    public FakeClamd() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-clamd");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.executor.execute(this::acceptConnections);
+    }
+
+    /**
+     * Get the port the fake daemon is listening on
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of INSTREAM scans performed
+     * @return the number of scans
+     */
+    public int getScans() {
+        return scans.get();
+    }
+
+    /**
+     * Get the most scans that have been in progress at once
+     * @return the most concurrent scans
+     */
+    public int getMaxActive() {
+        return maxActive.get();
+    }
+
+    /**
+     * Set the version of the signature database reported by VERSION
+     * @param signatureVersion the signature database version
+     */
+    public void setSignatureVersion(int signatureVersion) {
+        this.signatureVersion = signatureVersion;
+    }
+
+    /**
+     * Set the number of milliseconds each scan takes
+     * @param scanDelay the scan delay in milliseconds
+     */
+    public void setScanDelay(long scanDelay) {
+        this.scanDelay = scanDelay;
+    }
+
+    /**
+     * Set the number of milliseconds each VERSION command takes
+     * @param versionDelay the version delay in milliseconds
+     */
+    public void setVersionDelay(long versionDelay) {
+        this.versionDelay = versionDelay;
+    }
+
+    /**
+     * Get the number of VERSION commands received
+     * @return the number of version requests
+     */
+    public int getVersionRequests() {
+        return versionRequests.get();
+    }
+
+    /**
+     * Accept connections until the socket is closed
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> handle(socket));
+            } catch (IOException ex) {
+                // the socket has been closed
+            }
+        }
+    }
+
+    /**
+     * Read a command terminated by a null or newline character, keeping the z or n prefix that selects the terminator
+     * of the reply
+     * @param inputStream the stream to read from
+     * @return the command
+     * @throws IOException if the command cannot be read
+     */
+    private static String readCommand(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream command = new ByteArrayOutputStream();
+        int read;
+
+        while ((read = inputStream.read()) != -1 && read != 0 && read != '\n')
+            command.write(read);
+
+        return command.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Handle a single command on the connection and close it
+     * @param socket the connection
+     */
+    private void handle(Socket socket) {
+        try (socket; DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+             OutputStream outputStream = socket.getOutputStream()) {
+            String command = readCommand(inputStream);
+            String terminator = command.startsWith("n") ? "\n" : "\0";
+            String response;
+
+            if (command.startsWith("z") || command.startsWith("n"))
+                command = command.substring(1);
+
+            switch (command) {
+                case "VERSIONCOMMANDS":
+                    response = version() + "| COMMANDS: " + COMMANDS;
+                    break;
+                case "VERSION":
+                    versionRequests.incrementAndGet();
+
+                    if (versionDelay > 0)
+                        Thread.sleep(versionDelay);
+
+                    response = version();
+                    break;
+                case "PING":
+                    response = "PONG";
+                    break;
+                case "INSTREAM":
+                    response = scan(inputStream);
+                    break;
+                default:
+                    response = "UNKNOWN COMMAND";
+            }
+
+            outputStream.write((response + terminator).getBytes(StandardCharsets.US_ASCII));
+            outputStream.flush();
+        } catch (IOException | InterruptedException ex) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Get the version string reported by the daemon
+     * @return the version string
+     */
+    private String version() {
+        return "ClamAV 0.103.8/" + signatureVersion + "/Mon Jun 12 07:00:00 2023";
+    }
+
+    /**
+     * Read the chunks of an INSTREAM command and scan them
+     * @param inputStream the stream to read the chunks from
+     * @return the scan response
+     * @throws IOException if the chunks cannot be read
+     * @throws InterruptedException if interrupted while simulating the scan delay
+     */
+    private String scan(DataInputStream inputStream) throws IOException, InterruptedException {
+        int current = active.incrementAndGet();
+        maxActive.accumulateAndGet(current, Math::max);
+
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            int length;
+
+            while ((length = inputStream.readInt()) > 0) {
+                byte[] chunk = new byte[length];
+                inputStream.readFully(chunk);
+                content.write(chunk);
+            }
+
+            if (scanDelay > 0)
+                Thread.sleep(scanDelay);
+
+            scans.incrementAndGet();
+
+            return content.toString(StandardCharsets.US_ASCII).contains(EICAR) ?
+                    "stream: Eicar-Signature FOUND" : "stream: OK";
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stop the fake daemon
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+}
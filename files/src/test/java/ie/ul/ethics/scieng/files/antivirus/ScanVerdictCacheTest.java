@@ -0,0 +1,184 @@
+package ie.ul.ethics.scieng.files.antivirus;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.models.ScanVerdict;
+import ie.ul.ethics.scieng.files.repositories.ScanVerdictRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for the scan verdict cache against a fake ClamAV daemon
+ */
+public class ScanVerdictCacheTest {
+    /**
+     * The hash of the content being cached
+     */
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    /**
+     * The signature version initially reported by the fake daemon
+     */
+    private static final String VERSION = "ClamAV 0.103.8/26950";
+
+    /**
+     * The fake daemon being queried
+     */
+    private FakeClamd clamd;
+    /**
+     * The mocked repository of verdicts
+     */
+    private ScanVerdictRepository repository;
+
+    /**
+     * Start the fake daemon and create the mocks before each test
+     * @throws IOException if the daemon cannot be started
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        clamd = new FakeClamd();
+        repository = mock(ScanVerdictRepository.class);
+    }
+
+    /**
+     * Stop the fake daemon after each test
+     * @throws IOException if the daemon cannot be stopped
+     */
+    @AfterEach
+    public void shutdown() throws IOException {
+        clamd.close();
+    }
+
+    /**
+     * Create the cache being tested
+     * @param enabled true to enable the cache
+     * @param versionCheck the seconds between checks of the signature version
+     * @return the cache
+     */
+    private ScanVerdictCache createCache(boolean enabled, long versionCheck) {
+        FilesConfigurationProperties properties = new FilesConfigurationProperties();
+        properties.getAntivirus().setVerdictCache(enabled);
+        properties.getAntivirus().setVersionCheck(versionCheck);
+
+        return new ScanVerdictCache(properties, new ClamAvAntivirusScanner(true, "localhost", clamd.getPort(), "UNIX"),
+                repository, new SimpleMeterRegistry());
+    }
+
+    /**
+     * This method tests that a recorded verdict is returned for the same hash and version
+     */
+    @Test
+    public void shouldReturnRecordedVerdict() {
+        ScanVerdictCache cache = createCache(true, 60);
+        String version = cache.currentVersion();
+
+        assertEquals(VERSION, version);
+
+        cache.record(HASH, version, ScanStatus.CLEAN);
+
+        verify(repository).save(argThat(v -> v.getId().equals(ScanVerdict.createId(HASH, VERSION))
+                && v.getVerdict() == ScanStatus.CLEAN));
+
+        given(repository.findById(ScanVerdict.createId(HASH, VERSION)))
+                .willReturn(Optional.of(new ScanVerdict(ScanVerdict.createId(HASH, VERSION), HASH, VERSION,
+                        ScanStatus.CLEAN, null)));
+
+        assertEquals(ScanStatus.CLEAN, cache.lookup(HASH, version));
+        assertNull(cache.lookup("other", version));
+        assertEquals(0.5, cache.hitRatio());
+    }
+
+    /**
+     * This method tests that failed scans are not recorded
+     */
+    @Test
+    public void shouldNotRecordFailedScan() {
+        ScanVerdictCache cache = createCache(true, 60);
+
+        cache.record(HASH, cache.currentVersion(), ScanStatus.FAILED);
+        cache.record(HASH, null, ScanStatus.CLEAN);
+
+        verify(repository, never()).save(any());
+    }
+
+    /**
+     * This method tests that verdicts of the previous signatures are purged when the signatures are updated
+     */
+    @Test
+    public void shouldPurgeOnSignatureUpdate() {
+        ScanVerdictCache cache = createCache(true, 0);
+
+        assertEquals(VERSION, cache.currentVersion());
+        verify(repository).deleteBySignatureVersionNot(VERSION);
+
+        assertEquals(VERSION, cache.currentVersion());
+        verify(repository, times(1)).deleteBySignatureVersionNot(anyString());
+
+        clamd.setSignatureVersion(26951);
+
+        assertEquals("ClamAV 0.103.8/26951", cache.currentVersion());
+        verify(repository).deleteBySignatureVersionNot("ClamAV 0.103.8/26951");
+    }
+
+    /**
+     * This method tests that the version is not queried again within the check interval
+     */
+    @Test
+    public void shouldNotRecheckVersionWithinInterval() {
+        ScanVerdictCache cache = createCache(true, 3600);
+
+        assertEquals(VERSION, cache.currentVersion());
+
+        clamd.setSignatureVersion(26951);
+
+        assertEquals(VERSION, cache.currentVersion());
+    }
+
+    /**
+     * This method tests that while one thread queries a slow daemon for the signature version, other threads get the
+     * last known version without waiting, and only the one query is made
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotBlockOnVersionRefresh() throws Exception {
+        ScanVerdictCache cache = createCache(true, 0);
+        assertEquals(VERSION, cache.currentVersion());
+
+        clamd.setVersionDelay(2000);
+        clamd.setSignatureVersion(26951);
+        CompletableFuture<String> refresh = CompletableFuture.supplyAsync(cache::currentVersion);
+
+        while (clamd.getVersionRequests() < 2)
+            Thread.sleep(10);
+
+        long start = System.nanoTime();
+        assertEquals(VERSION, cache.currentVersion());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertEquals("ClamAV 0.103.8/26951", refresh.get(10, TimeUnit.SECONDS));
+        assertEquals(2, clamd.getVersionRequests());
+    }
+
+    /**
+     * This method tests that a disabled cache is bypassed
+     */
+    @Test
+    public void shouldBypassWhenDisabled() {
+        ScanVerdictCache cache = createCache(false, 60);
+
+        assertNull(cache.currentVersion());
+        assertNull(cache.lookup(HASH, null));
+        verifyNoInteractions(repository);
+    }
+}
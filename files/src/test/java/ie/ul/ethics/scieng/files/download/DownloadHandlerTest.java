@@ -0,0 +1,251 @@
+package ie.ul.ethics.scieng.files.download;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides tests for serving downloads with conditional and ranged requests
+ */
+public class DownloadHandlerTest {
+    /**
+     * The content of the file being downloaded
+     */
+    private static final String CONTENT = "0123456789abcdefghij";
+    /**
+     * The hash the content of the file being downloaded is stored under
+     */
+    private static final String HASH = "abcd";
+
+    /**
+     * The directory the file being downloaded is in
+     */
+    @TempDir
+    Path directory;
+    /**
+     * The registry the handler records its metrics in
+     */
+    private SimpleMeterRegistry meterRegistry;
+    /**
+     * The handler being tested
+     */
+    private DownloadHandler handler;
+    /**
+     * The path of the file being downloaded
+     */
+    private Path file;
+    /**
+     * The file being downloaded, described with a strong ETag from the hash of its content
+     */
+    private FileDownload download;
+
+    /**
+     * Create the handler and the file being downloaded before each test
+     * @throws Exception if the file cannot be created
+     */
+    @BeforeEach
+    public void setup() throws Exception {
+        file = directory.resolve("file.pdf");
+        Files.writeString(file, CONTENT, StandardCharsets.US_ASCII);
+
+        meterRegistry = new SimpleMeterRegistry();
+        handler = new DownloadHandler(meterRegistry);
+        download = new FileDownload(file, "file.pdf", CONTENT.length(), Files.getLastModifiedTime(file).toMillis(),
+                FileDownload.strongETag(HASH), "application/pdf");
+    }
+
+    /**
+     * Create a GET request for the file
+     * @return the request
+     */
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/api/files/download/file.pdf");
+    }
+
+    /**
+     * This method tests that the whole file is served with validators and Accept-Ranges
+     */
+    @Test
+    public void shouldServeFullFile() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(handler.serve(download, get(), response));
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(download.getETag(), response.getHeader(HttpHeaders.ETAG));
+        assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+        assertTrue(download.isStrongETag());
+    }
+
+    /**
+     * This method tests that a matching If-None-Match is answered with a 304 and no body
+     */
+    @Test
+    public void shouldAnswerNotModified() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, download.getETag());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(handler.serve(download, request, response));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(1, meterRegistry.get(DownloadHandler.DOWNLOAD_COUNTER).tag("response", "not_modified").counter().count());
+    }
+
+    /**
+     * This method tests that a single range is served as partial content
+     */
+    @Test
+    public void shouldServeRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(handler.serve(download, request, response));
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("abcde", response.getContentAsString());
+        assertEquals("bytes 10-14/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(5, response.getContentLengthLong());
+    }
+
+    /**
+     * This method tests that a suffix range resumes from the end of the file
+     */
+    @Test
+    public void shouldServeSuffixRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handler.serve(download, request, response);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("hij", response.getContentAsString());
+    }
+
+    /**
+     * This method tests that a range whose If-Range does not match is answered with the full file
+     */
+    @Test
+    public void shouldIgnoreRangeIfStale() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handler.serve(download, request, response);
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    /**
+     * This method tests that a malformed Range header is ignored and the full file served
+     */
+    @Test
+    public void shouldIgnoreMalformedRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=14-10");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(handler.serve(download, request, response));
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    /**
+     * This method tests that a file without a known content hash is described with a weak ETag from its size and last
+     * modified time, which changes when the file does
+     */
+    @Test
+    public void shouldDescribeWithWeakETag() throws Exception {
+        FileDownload described = handler.describe(file, "export.zip", "application/zip");
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        assertFalse(described.isStrongETag());
+        assertEquals(FileDownload.weakETag(CONTENT.length(), lastModified), described.getETag());
+        assertEquals(CONTENT.length(), described.getSize());
+
+        Files.writeString(file, CONTENT + CONTENT, StandardCharsets.US_ASCII);
+
+        assertNotEquals(described.getETag(), handler.describe(file, "export.zip", "application/zip").getETag());
+    }
+
+    /**
+     * This method tests that a range beyond the end of the file cannot be satisfied
+     */
+    @Test
+    public void shouldRejectUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=50-60");
+
+        ResponseEntity<?> response = handler.serve(download, request, new MockHttpServletResponse());
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */20", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    /**
+     * This method tests that a file with a presigned location is redirected to it unless the client's copy is current
+     */
+    @Test
+    public void shouldRedirectToLocation() throws Exception {
+        URI location = URI.create("https://bucket.example.com/blobs/ab/abcd?X-Amz-Signature=signature");
+        FileDownload remote = new FileDownload(null, "file.pdf", 20, download.getLastModified(), download.getETag(),
+                "application/pdf", location);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseEntity<?> redirect = handler.serve(remote, get(), response);
+
+        assertNotNull(redirect);
+        assertEquals(HttpStatus.FOUND, redirect.getStatusCode());
+        assertEquals(location, redirect.getHeaders().getLocation());
+        assertEquals("private, no-store", response.getHeader(HttpHeaders.CACHE_CONTROL));
+
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, download.getETag());
+        response = new MockHttpServletResponse();
+
+        assertNull(handler.serve(remote, request, response));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+    }
+
+    /**
+     * This method tests that an immutable download can be cached without revalidation while others must be revalidated
+     */
+    @Test
+    public void shouldCacheImmutableDownloads() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handler.serve(download, get(), response);
+
+        assertEquals("private, no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertFalse(download.isImmutable());
+
+        response = new MockHttpServletResponse();
+        FileDownload immutable = download.immutable();
+
+        handler.serve(immutable, get(), response);
+
+        assertEquals(DownloadHandler.IMMUTABLE_CACHE_CONTROL, response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(download.getETag(), "\"" + immutable.getVersion() + "\"");
+    }
+}
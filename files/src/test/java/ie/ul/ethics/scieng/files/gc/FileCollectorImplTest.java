@@ -0,0 +1,308 @@
+package ie.ul.ethics.scieng.files.gc;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.models.FileBlob;
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import ie.ul.ethics.scieng.files.repositories.FileBlobRepository;
+import ie.ul.ethics.scieng.files.repositories.StoredFileRepository;
+import ie.ul.ethics.scieng.files.services.BlobStore;
+import ie.ul.ethics.scieng.files.storage.LocalStorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageBackend;
+import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.services.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for collecting unreferenced files
+ */
+public class FileCollectorImplTest {
+    /**
+     * The username of the user owning the files
+     */
+    private static final String USERNAME = "username";
+    /**
+     * The grace period in hours used in the tests
+     */
+    private static final long GRACE_PERIOD = 72;
+
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The mocked blob store
+     */
+    private BlobStore blobStore;
+    /**
+     * The mocked repository of stored files
+     */
+    private StoredFileRepository storedFileRepository;
+    /**
+     * The mocked repository of blobs
+     */
+    private FileBlobRepository blobRepository;
+    /**
+     * The mocked user service
+     */
+    private UserService userService;
+    /**
+     * The stored files returned by the mocked repository
+     */
+    private List<StoredFile> storedFiles;
+    /**
+     * The references marked by the provider
+     */
+    private List<FileReference> references;
+    /**
+     * The mocked provider of references
+     */
+    private FileReferenceProvider provider;
+    /**
+     * The configuration properties
+     */
+    private FilesConfigurationProperties properties;
+    /**
+     * The registry the collector records its metrics in
+     */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Create the mocks before each test
+     */
+    @BeforeEach
+    public void setup() {
+        blobStore = mock(BlobStore.class);
+        storedFileRepository = mock(StoredFileRepository.class);
+        blobRepository = mock(FileBlobRepository.class);
+        userService = mock(UserService.class);
+        storedFiles = new ArrayList<>();
+        references = new ArrayList<>();
+        provider = marker -> references.forEach(marker);
+
+        given(storedFileRepository.findAll())
+                .willAnswer(invocation -> storedFiles);
+
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new FilesConfigurationProperties();
+        properties.setStorageDir(storage.toString());
+        properties.getGc().setGracePeriod(GRACE_PERIOD);
+        properties.getGc().setMaxOperationsPerSecond(0);
+    }
+
+    /**
+     * Create the collector with the provided storage backend
+     * @param storageBackend the storage backend
+     * @return the collector
+     */
+    @SuppressWarnings("unchecked")
+    private FileCollectorImpl collector(StorageBackend storageBackend) {
+        ObjectProvider<FileReferenceProvider> providers = mock(ObjectProvider.class);
+        given(providers.orderedStream())
+                .willAnswer(invocation -> Stream.of(provider));
+
+        return new FileCollectorImpl(properties, storageBackend, blobStore, storedFileRepository, blobRepository,
+                userService, providers, meterRegistry);
+    }
+
+    /**
+     * Create the collector with a local storage backend
+     * @return the collector
+     */
+    private FileCollectorImpl collector() {
+        return collector(new LocalStorageBackend(storage));
+    }
+
+    /**
+     * Write a file in the user's directory
+     * @param directory the directory of the file, null if the root
+     * @param filename the name of the file
+     * @param size the size of the file
+     * @param age the age of the file
+     * @return the path of the file
+     * @throws Exception if the file cannot be written
+     */
+    private Path write(String directory, String filename, int size, Duration age) throws Exception {
+        Path parent = storage.resolve("data").resolve(USERNAME);
+
+        if (directory != null)
+            parent = parent.resolve(directory);
+
+        Files.createDirectories(parent);
+        Path file = Files.write(parent.resolve(filename), new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(age)));
+
+        return file;
+    }
+
+    /**
+     * Get a duration older than the grace period
+     * @return the duration
+     */
+    private static Duration expired() {
+        return Duration.ofHours(GRACE_PERIOD + 1);
+    }
+
+    /**
+     * Tests that only unreferenced files older than the grace period are deleted, and that profile photos and their
+     * directories are kept
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDeleteUnreferencedExpiredFiles() throws Exception {
+        Path orphan = write("drafts", "orphan.pdf", 100, expired());
+        Path attached = write("drafts", "attached.pdf", 200, expired());
+        Path recent = write(null, "recent.pdf", 300, Duration.ofHours(1));
+        Path photo = write(null, "profile-photo.png", 400, expired());
+        Path abandoned = write("abandoned", "abandoned.pdf", 500, expired());
+        references.add(new FileReference(USERNAME, "drafts", "attached.pdf"));
+        given(userService.loadUser(USERNAME))
+                .willReturn(mock(User.class));
+
+        CollectionReport report = collector().collect(false);
+
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(abandoned));
+        assertFalse(Files.exists(abandoned.getParent()));
+        assertTrue(Files.exists(attached));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(photo));
+        assertEquals(1, report.getMarked());
+        assertEquals(5, report.getExamined());
+        assertEquals(2, report.getFilesDeleted());
+        assertEquals(600, report.getBytesReclaimed());
+        assertEquals(600, meterRegistry.get(FileCollectorImpl.RECLAIMED_COUNTER).tag("dryRun", "false").counter().count());
+        verify(blobStore, never()).release(any(), any(), any());
+    }
+
+    /**
+     * Tests that a dry run reports the files it would delete without deleting anything
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldOnlyReportInDryRun() throws Exception {
+        Path orphan = write(null, "orphan.pdf", 100, expired());
+        Path photo = write(null, "profile-photo.png", 400, expired());
+        storedFiles.add(new StoredFile(1L, USERNAME, null, "orphan.pdf", "hash", null,
+                LocalDateTime.now().minus(expired())));
+
+        CollectionReport report = collector().collect(true);
+
+        assertTrue(report.isDryRun());
+        assertTrue(Files.exists(orphan));
+        assertTrue(Files.exists(photo));
+        assertEquals(2, report.getFilesDeleted());
+        assertEquals(500, report.getBytesReclaimed());
+        verify(blobStore, never()).release(any(), any(), any());
+    }
+
+    /**
+     * Tests that the age of a stored file is taken from when it was stored rather than the file, and that a stored file
+     * without a recorded time is stamped and kept
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldUseStoredTimeOfStoredFiles() throws Exception {
+        Path linked = write(null, "linked.pdf", 100, expired());
+        Path expired = write(null, "expired.pdf", 200, Duration.ZERO);
+        Path unstamped = write(null, "unstamped.pdf", 300, expired());
+        StoredFile legacy = new StoredFile(3L, USERNAME, null, "unstamped.pdf", "c", null, null);
+        storedFiles.add(new StoredFile(1L, USERNAME, null, "linked.pdf", "a", null, LocalDateTime.now()));
+        storedFiles.add(new StoredFile(2L, USERNAME, null, "expired.pdf", "b", null, LocalDateTime.now().minus(expired())));
+        storedFiles.add(legacy);
+
+        CollectionReport report = collector().collect(false);
+
+        assertTrue(Files.exists(linked));
+        assertFalse(Files.exists(expired));
+        assertTrue(Files.exists(unstamped));
+        assertEquals(1, report.getFilesDeleted());
+        assertNotNull(legacy.getStoredAt());
+        verify(storedFileRepository).save(legacy);
+        verify(blobStore).release(USERNAME, null, "expired.pdf");
+        verify(blobStore, never()).release(USERNAME, null, "linked.pdf");
+    }
+
+    /**
+     * Tests that with a remote backend, the stored files kept only in the backend are released
+     */
+    @Test
+    public void shouldReleaseRemoteStoredFiles() {
+        StorageBackend remote = mock(StorageBackend.class);
+        given(remote.isLocal())
+                .willReturn(false);
+        given(blobRepository.findById("a"))
+                .willReturn(Optional.of(new FileBlob("a", 1000, 1)));
+        storedFiles.add(new StoredFile(1L, USERNAME, "dir", "orphan.pdf", "a", null, LocalDateTime.now().minus(expired())));
+        storedFiles.add(new StoredFile(2L, USERNAME, "dir", "attached.pdf", "b", null, LocalDateTime.now().minus(expired())));
+        references.add(new FileReference(USERNAME, "dir", "attached.pdf"));
+
+        CollectionReport report = collector(remote).collect(false);
+
+        assertEquals(1, report.getFilesDeleted());
+        assertEquals(1000, report.getBytesReclaimed());
+        verify(blobStore).release(USERNAME, "dir", "orphan.pdf");
+        verify(blobStore, never()).release(USERNAME, "dir", "attached.pdf");
+    }
+
+    /**
+     * Tests that exports older than the retention are deleted along with the directories they were assembled in
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDeleteExpiredExports() throws Exception {
+        properties.getGc().setExportRetention(24);
+        Path exports = Files.createDirectories(storage.resolve("exports"));
+        Path stale = Files.write(exports.resolve("stale.zip"), new byte[100]);
+        Path fresh = Files.write(exports.resolve("fresh.zip"), new byte[100]);
+        Path range = Files.createDirectories(exports.resolve("2021-01-01_to_2021-02-01"));
+        Files.write(range.resolve("application.pdf"), new byte[50]);
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofHours(25)));
+        Files.setLastModifiedTime(stale, old);
+        Files.setLastModifiedTime(range, old);
+
+        CollectionReport report = collector().collect(false);
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(range));
+        assertTrue(Files.exists(fresh));
+        assertEquals(2, report.getExportsDeleted());
+        assertEquals(150, report.getBytesReclaimed());
+    }
+
+    /**
+     * Tests that nothing is swept if a provider fails to mark its references
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotSweepIfMarkingFails() throws Exception {
+        Path orphan = write(null, "orphan.pdf", 100, expired());
+        provider = marker -> {
+            throw new IllegalStateException("Database unavailable");
+        };
+
+        assertThrows(FileException.class, () -> collector().collect(false));
+        assertTrue(Files.exists(orphan));
+    }
+}
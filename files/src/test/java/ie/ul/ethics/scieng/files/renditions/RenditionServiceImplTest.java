@@ -0,0 +1,267 @@
+package ie.ul.ethics.scieng.files.renditions;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.services.BlobStore;
+import ie.ul.ethics.scieng.files.storage.LocalStorageBackend;
+import ie.ul.ethics.scieng.files.storage.StorageObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for generating resized renditions of images
+ */
+public class RenditionServiceImplTest {
+    /**
+     * The hash of the content renditions are generated from
+     */
+    private static final String HASH = "abcdef0123456789";
+    /**
+     * The key the content is stored under
+     */
+    private static final String KEY = "blobs/" + HASH;
+
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The backend the content and renditions are stored in
+     */
+    private LocalStorageBackend storageBackend;
+    /**
+     * The mocked blob store
+     */
+    private BlobStore blobStore;
+    /**
+     * The configuration properties
+     */
+    private FilesConfigurationProperties properties;
+    /**
+     * The service being tested
+     */
+    private RenditionServiceImpl renditionService;
+
+    /**
+     * Create the service before each test
+     */
+    @BeforeEach
+    public void setup() {
+        storageBackend = new LocalStorageBackend(storage);
+        blobStore = mock(BlobStore.class);
+        given(blobStore.getKey(anyString()))
+                .willAnswer(invocation -> "blobs/" + invocation.getArgument(0));
+        given(blobStore.getRenditionKey(anyString(), anyInt()))
+                .willAnswer(invocation -> "blobs/" + invocation.getArgument(0) + "-" + invocation.getArgument(1) + ".jpg");
+
+        properties = new FilesConfigurationProperties();
+        properties.setStorageDir(storage.toString());
+        createService();
+    }
+
+    /**
+     * Stop the service after each test
+     */
+    @AfterEach
+    public void teardown() {
+        renditionService.shutdown();
+    }
+
+    /**
+     * Create the service from the properties
+     */
+    private void createService() {
+        if (renditionService != null)
+            renditionService.shutdown();
+
+        renditionService = new RenditionServiceImpl(properties, storageBackend, blobStore, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Store an image of the provided dimensions as the content
+     * @param width the width of the image
+     * @param height the height of the image
+     * @throws Exception if the image cannot be written
+     */
+    private void storeImage(int width, int height) throws Exception {
+        Path path = storageBackend.localPath(KEY);
+        Files.createDirectories(path.getParent());
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", path.toFile());
+    }
+
+    /**
+     * Read the rendition as an image
+     * @param rendition the rendition
+     * @return the decoded rendition
+     * @throws Exception if the rendition cannot be read
+     */
+    private BufferedImage read(StorageObject rendition) throws Exception {
+        return ImageIO.read(storageBackend.localPath(rendition.getKey()).toFile());
+    }
+
+    /**
+     * Tests that the longest side of the image is scaled to the size, keeping its aspect ratio
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldScaleKeepingAspectRatio() throws Exception {
+        storeImage(1000, 500);
+
+        StorageObject rendition = renditionService.render(HASH, 128);
+        BufferedImage image = read(rendition);
+
+        assertEquals("blobs/" + HASH + "-128.jpg", rendition.getKey());
+        assertEquals(128, image.getWidth());
+        assertEquals(64, image.getHeight());
+    }
+
+    /**
+     * Tests that images smaller than the size are not scaled up
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotScaleUp() throws Exception {
+        storeImage(50, 40);
+
+        BufferedImage image = read(renditionService.render(HASH, 256));
+
+        assertEquals(50, image.getWidth());
+        assertEquals(40, image.getHeight());
+    }
+
+    /**
+     * Tests that a rendition is generated once and reused afterwards
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldReuseRendition() throws Exception {
+        storeImage(300, 300);
+
+        StorageObject first = renditionService.render(HASH, 64);
+        StorageObject second = renditionService.render(HASH, 64);
+
+        assertEquals(first.getKey(), second.getKey());
+        assertEquals(first.getLastModified(), second.getLastModified());
+        verify(blobStore, times(1)).getKey(HASH);
+    }
+
+    /**
+     * Tests that no rendition is generated from content that is not an image, or an image with too many pixels
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotRenderInvalidImages() throws Exception {
+        Path path = storageBackend.localPath(KEY);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, "not an image", StandardCharsets.US_ASCII);
+
+        assertNull(renditionService.render(HASH, 64));
+
+        storeImage(200, 200);
+        properties.getRenditions().setMaxPixels(100);
+        createService();
+
+        assertNull(renditionService.render(HASH, 64));
+        assertNull(storageBackend.stat(blobStore.getRenditionKey(HASH, 64)));
+    }
+
+    /**
+     * Tests that corrupt content fails to render once and is then answered with the original without being decoded
+     * again, until the failure expires
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotDecodeFailedContentAgain() throws Exception {
+        storeImage(200, 200);
+        Path path = storageBackend.localPath(KEY);
+        byte[] image = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(image, image.length / 2));
+
+        assertThrows(FileException.class, () -> renditionService.render(HASH, 64));
+        assertNull(renditionService.render(HASH, 128));
+        renditionService.renderAsync(HASH, "image.png");
+
+        verify(blobStore, times(1)).getKey(HASH);
+        assertNull(storageBackend.stat(blobStore.getRenditionKey(HASH, 128)));
+
+        properties.getRenditions().setFailureExpiry(0);
+        createService();
+
+        assertThrows(FileException.class, () -> renditionService.render(HASH, 64));
+        assertThrows(FileException.class, () -> renditionService.render(HASH, 64));
+    }
+
+    /**
+     * Tests that requested sizes are resolved to the smallest configured size at least as large
+     */
+    @Test
+    public void shouldResolveSize() {
+        assertEquals(64, renditionService.resolveSize(1));
+        assertEquals(64, renditionService.resolveSize(64));
+        assertEquals(128, renditionService.resolveSize(100));
+        assertEquals(256, renditionService.resolveSize(1000));
+        assertTrue(renditionService.isRenderable("profile-photo.jpg"));
+        assertTrue(renditionService.isRenderable("diagram.png"));
+        assertFalse(renditionService.isRenderable("application.pdf"));
+    }
+
+    /**
+     * Tests that renditions of every size are generated in the background for uploaded images only
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldRenderAsync() throws Exception {
+        storeImage(600, 400);
+
+        renditionService.renderAsync(HASH, "document.pdf");
+        renditionService.renderAsync(HASH, "photo.png");
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        for (int size : properties.getRenditions().getSizes())
+            while (storageBackend.stat(blobStore.getRenditionKey(HASH, size)) == null && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+
+        for (int size : properties.getRenditions().getSizes())
+            assertEquals(size, read(storageBackend.stat(blobStore.getRenditionKey(HASH, size))).getWidth());
+
+        verify(blobStore, times(1)).getKey(HASH);
+    }
+
+    /**
+     * Tests that the EXIF orientation is read and applied so that sideways photos are rendered upright
+     */
+    @Test
+    public void shouldApplyExifOrientation() {
+        ByteBuffer exif = ByteBuffer.allocate(28);
+        exif.put("Exif\0\0MM".getBytes(StandardCharsets.US_ASCII))
+                .putShort((short) 42).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+
+        assertEquals(6, ExifOrientation.parse(exif.array()));
+        assertEquals(0, ExifOrientation.parse("not exif".getBytes(StandardCharsets.US_ASCII)));
+
+        BufferedImage upright = ExifOrientation.apply(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), 6);
+
+        assertEquals(30, upright.getWidth());
+        assertEquals(40, upright.getHeight());
+    }
+}
@@ -0,0 +1,289 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.models.FileBlob;
+import ie.ul.ethics.scieng.files.models.StoredFile;
+import ie.ul.ethics.scieng.files.repositories.FileBlobRepository;
+import ie.ul.ethics.scieng.files.repositories.StoredFileRepository;
+import ie.ul.ethics.scieng.files.storage.LocalStorageBackend;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import ie.ul.ethics.scieng.files.upload.UploadPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for storing uploads in the content-addressed blob store
+ */
+public class BlobStoreImplTest {
+    /**
+     * The username of the user owning the files
+     */
+    private static final String USERNAME = "username";
+
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The blobs held by the mocked blob repository keyed by hash
+     */
+    private Map<String, FileBlob> blobs;
+    /**
+     * The stored files held by the mocked stored file repository keyed by their logical path
+     */
+    private Map<String, StoredFile> storedFiles;
+    /**
+     * The backend the blobs are stored in
+     */
+    private LocalStorageBackend storageBackend;
+    /**
+     * The mocked repository of blobs
+     */
+    private FileBlobRepository blobRepository;
+    /**
+     * The pipeline uploads are staged through
+     */
+    private UploadPipeline uploadPipeline;
+    /**
+     * The registry the blob store records its metrics in
+     */
+    private SimpleMeterRegistry meterRegistry;
+    /**
+     * The blob store being tested
+     */
+    private BlobStoreImpl blobStore;
+
+    /**
+     * Get the key the stored file is held under in the mocked repository
+     * @param username the username of the user owning the file
+     * @param directory the directory of the file, null if the root
+     * @param filename the name of the file
+     * @return the key of the stored file
+     */
+    private static String storedKey(String username, String directory, String filename) {
+        return username + "/" + directory + "/" + filename;
+    }
+
+    /**
+     * Create the repositories backed by maps and the blob store before each test
+     */
+    @BeforeEach
+    public void setup() {
+        blobs = new HashMap<>();
+        storedFiles = new HashMap<>();
+        storageBackend = new LocalStorageBackend(storage.resolve("store"));
+        blobRepository = mock(FileBlobRepository.class);
+        StoredFileRepository storedFileRepository = mock(StoredFileRepository.class);
+
+        given(blobRepository.findById(anyString()))
+                .willAnswer(invocation -> Optional.ofNullable(blobs.get(invocation.<String>getArgument(0))));
+        given(blobRepository.save(any()))
+                .willAnswer(invocation -> {
+                    FileBlob blob = invocation.getArgument(0);
+                    blobs.put(blob.getHash(), blob);
+
+                    return blob;
+                });
+        given(blobRepository.incrementRefCount(anyString()))
+                .willAnswer(invocation -> adjust(invocation.getArgument(0), 1));
+        given(blobRepository.decrementRefCount(anyString()))
+                .willAnswer(invocation -> adjust(invocation.getArgument(0), -1));
+        given(blobRepository.deleteUnreferenced(anyString()))
+                .willAnswer(invocation -> {
+                    FileBlob blob = blobs.get(invocation.<String>getArgument(0));
+
+                    return (blob != null && blob.getRefCount() <= 0 && blobs.remove(blob.getHash()) != null) ? 1 : 0;
+                });
+        given(storedFileRepository.findByUsernameAndDirectoryAndFilename(anyString(), any(), anyString()))
+                .willAnswer(invocation -> Optional.ofNullable(storedFiles.get(storedKey(invocation.getArgument(0),
+                        invocation.getArgument(1), invocation.getArgument(2)))));
+        given(storedFileRepository.save(any()))
+                .willAnswer(invocation -> {
+                    StoredFile stored = invocation.getArgument(0);
+                    storedFiles.put(storedKey(stored.getUsername(), stored.getDirectory(), stored.getFilename()), stored);
+
+                    return stored;
+                });
+        doAnswer(invocation -> {
+            StoredFile stored = invocation.getArgument(0);
+
+            return storedFiles.remove(storedKey(stored.getUsername(), stored.getDirectory(), stored.getFilename()));
+        }).when(storedFileRepository).delete(any());
+
+        FilesConfigurationProperties properties = new FilesConfigurationProperties();
+        properties.setStorageDir(storage.toString());
+        meterRegistry = new SimpleMeterRegistry();
+        uploadPipeline = new UploadPipeline(mock(AntivirusScanner.class), meterRegistry);
+        blobStore = new BlobStoreImpl(properties, storageBackend, blobRepository, storedFileRepository, uploadPipeline,
+                mock(PlatformTransactionManager.class), meterRegistry);
+    }
+
+    /**
+     * Adjust the references to the blob held by the mocked repository
+     * @param hash the hash of the blob
+     * @param delta the number of references to add
+     * @return the number of blobs updated
+     */
+    private int adjust(String hash, int delta) {
+        FileBlob blob = blobs.get(hash);
+
+        if (blob == null)
+            return 0;
+
+        blob.setRefCount(blob.getRefCount() + delta);
+
+        return 1;
+    }
+
+    /**
+     * Stage an upload with the provided content
+     * @param content the content of the upload
+     * @return the staged upload
+     * @throws Exception if the upload cannot be staged
+     */
+    private StagedUpload stage(String content) throws Exception {
+        return uploadPipeline.stage(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                storage.resolve("tmp"), false);
+    }
+
+    /**
+     * Get the logical path of the file in the user's directory, creating its parent directory
+     * @param filename the name of the file
+     * @return the logical path
+     * @throws Exception if the directory cannot be created
+     */
+    private Path target(String filename) throws Exception {
+        return Files.createDirectories(storage.resolve("data").resolve(USERNAME)).resolve(filename);
+    }
+
+    /**
+     * Get the path of the blob with the provided hash
+     * @param hash the hash of the blob
+     * @return the path of the blob
+     */
+    private Path blobPath(String hash) {
+        return storageBackend.localPath(blobStore.getKey(hash));
+    }
+
+    /**
+     * Tests that identical uploads are stored once, counted as references to the same blob and linked to it
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDeduplicateIdenticalUploads() throws Exception {
+        StagedUpload second = stage("content");
+        String hash = blobStore.store(stage("content"), target("first.pdf"), USERNAME, null, "first.pdf");
+
+        assertEquals(hash, blobStore.store(second, target("second.pdf"), USERNAME, null, "second.pdf"));
+        assertEquals(2, blobs.get(hash).getRefCount());
+        assertEquals(1, blobs.size());
+        assertFalse(Files.exists(second.getFile()));
+        assertTrue(Files.isSameFile(blobPath(hash), target("first.pdf")));
+        assertTrue(Files.isSameFile(blobPath(hash), target("second.pdf")));
+        assertEquals(1, meterRegistry.get(BlobStoreImpl.DEDUPLICATED_COUNTER).counter().count());
+    }
+
+    /**
+     * Tests that storing different content at the same path releases the previous content, and that storing the same
+     * content again does not add a reference
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldReleasePreviousContentOnOverwrite() throws Exception {
+        String original = blobStore.store(stage("original"), target("file.pdf"), USERNAME, null, "file.pdf");
+        String replaced = blobStore.store(stage("replaced"), target("file.pdf"), USERNAME, null, "file.pdf");
+
+        assertNotEquals(original, replaced);
+        assertFalse(blobs.containsKey(original));
+        assertFalse(Files.exists(blobPath(original)));
+        assertEquals("replaced", Files.readString(target("file.pdf")));
+        assertEquals(replaced, storedFiles.get(storedKey(USERNAME, null, "file.pdf")).getHash());
+        assertEquals("application/pdf", storedFiles.get(storedKey(USERNAME, null, "file.pdf")).getContentType());
+
+        blobStore.store(stage("replaced"), target("file.pdf"), USERNAME, null, "file.pdf");
+
+        assertEquals(1, blobs.get(replaced).getRefCount());
+    }
+
+    /**
+     * Tests that the blob and its renditions are only deleted once its last reference is released
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDeleteBlobWhenLastReferenceReleased() throws Exception {
+        String hash = blobStore.store(stage("content"), target("first.pdf"), USERNAME, null, "first.pdf");
+        blobStore.store(stage("content"), target("second.pdf"), USERNAME, null, "second.pdf");
+        Path rendition = storageBackend.localPath(blobStore.getRenditionKey(hash, 64));
+        Files.writeString(rendition, "rendition");
+
+        blobStore.release(USERNAME, null, "first.pdf");
+
+        assertEquals(1, blobs.get(hash).getRefCount());
+        assertTrue(Files.exists(blobPath(hash)));
+
+        blobStore.release(USERNAME, null, "second.pdf");
+
+        assertFalse(blobs.containsKey(hash));
+        assertFalse(Files.exists(blobPath(hash)));
+        assertFalse(Files.exists(rendition));
+        assertTrue(storedFiles.isEmpty());
+
+        blobStore.release(USERNAME, null, "unknown.pdf");
+    }
+
+    /**
+     * Tests that content matching a blob whose last reference is released while the new reference is taken is written
+     * again rather than discarded
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldRewriteContentReleasedConcurrently() throws Exception {
+        String hash = blobStore.store(stage("content"), target("first.pdf"), USERNAME, null, "first.pdf");
+        given(blobRepository.incrementRefCount(hash))
+                .willAnswer(invocation -> {
+                    blobStore.release(USERNAME, null, "first.pdf");
+
+                    return 0;
+                });
+
+        blobStore.store(stage("content"), target("second.pdf"), USERNAME, null, "second.pdf");
+
+        assertEquals(1, blobs.get(hash).getRefCount());
+        assertEquals("content", Files.readString(blobPath(hash)));
+        assertTrue(Files.isSameFile(blobPath(hash), target("second.pdf")));
+    }
+
+    /**
+     * Tests that exports are exposed by hard links to the source, replacing any existing file at the target
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldHardLinkExports() throws Exception {
+        Path source = Files.writeString(storage.resolve("export.zip"), "export");
+        Path target = Files.createDirectories(storage.resolve("exports")).resolve("application.zip");
+        Files.writeString(target, "previous export");
+
+        blobStore.link(source, target);
+
+        assertTrue(Files.isSameFile(source, target));
+        assertEquals("export", Files.readString(target));
+    }
+}
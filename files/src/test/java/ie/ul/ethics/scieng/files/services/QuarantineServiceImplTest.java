@@ -0,0 +1,275 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.antivirus.ClamAvAntivirusScanner;
+import ie.ul.ethics.scieng.files.antivirus.ClamAvAntivirusScannerTest;
+import ie.ul.ethics.scieng.files.antivirus.FakeClamd;
+import ie.ul.ethics.scieng.files.antivirus.ScanRejectedException;
+import ie.ul.ethics.scieng.files.antivirus.ScanVerdictCache;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.models.QuarantinedUpload;
+import ie.ul.ethics.scieng.files.models.ScanStatus;
+import ie.ul.ethics.scieng.files.renditions.RenditionService;
+import ie.ul.ethics.scieng.files.repositories.QuarantinedUploadRepository;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for quarantining uploads and scanning them in the background against a fake ClamAV daemon
+ */
+public class QuarantineServiceImplTest {
+    /**
+     * The username of the uploading user
+     */
+    private static final String USERNAME = "username";
+
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The fake daemon being scanned against
+     */
+    private FakeClamd clamd;
+    /**
+     * The mocked repository for quarantined uploads
+     */
+    private QuarantinedUploadRepository repository;
+    /**
+     * The mocked blob store
+     */
+    private BlobStore blobStore;
+    /**
+     * The mocked user directory service
+     */
+    private UserDirectoryService userDirectoryService;
+    /**
+     * The mocked scan verdict cache
+     */
+    private ScanVerdictCache verdictCache;
+    /**
+     * The service being tested
+     */
+    private QuarantineServiceImpl quarantineService;
+
+    /**
+     * Start the fake daemon and create the mocks before each test
+     * @throws IOException if the daemon cannot be started
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        clamd = new FakeClamd();
+        repository = mock(QuarantinedUploadRepository.class);
+        blobStore = mock(BlobStore.class);
+        userDirectoryService = mock(UserDirectoryService.class);
+        verdictCache = mock(ScanVerdictCache.class);
+
+        given(repository.save(any()))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        given(userDirectoryService.createFilePath(any(), anyString(), any(), anyString()))
+                .willAnswer(invocation -> storage.resolve("data").resolve(invocation.getArgument(1, String.class)));
+    }
+
+    /**
+     * Stop the service and the fake daemon after each test
+     * @throws IOException if the daemon cannot be stopped
+     */
+    @AfterEach
+    public void shutdown() throws IOException {
+        if (quarantineService != null)
+            quarantineService.shutdown();
+
+        clamd.close();
+    }
+
+    /**
+     * Create the service being tested
+     * @param connections the number of concurrent scans
+     * @param queueCapacity the number of uploads that can wait for a scan
+     */
+    private void createService(int connections, int queueCapacity) {
+        FilesConfigurationProperties properties = new FilesConfigurationProperties();
+        properties.setStorageDir(storage.toString());
+        properties.getAntivirus().setConnections(connections);
+        properties.getAntivirus().setQueueCapacity(queueCapacity);
+
+        ClamAvAntivirusScanner scanner = new ClamAvAntivirusScanner(true, "localhost", clamd.getPort(), "UNIX");
+        quarantineService = new QuarantineServiceImpl(properties, scanner, repository, blobStore, userDirectoryService,
+                verdictCache, mock(RenditionService.class), new SimpleMeterRegistry());
+    }
+
+    /**
+     * Stage an upload with the provided content
+     * @param content the content of the upload
+     * @return the staged upload
+     * @throws IOException if the upload cannot be written
+     */
+    private StagedUpload stage(String content) throws IOException {
+        Path tmp = Files.createDirectories(storage.resolve("tmp"));
+        Path file = Files.createTempFile(tmp, "upload-", ".part");
+        Files.writeString(file, content, StandardCharsets.US_ASCII);
+
+        return new StagedUpload(file, "hash", Files.size(file), false);
+    }
+
+    /**
+     * Wait for the scan of the quarantined upload to complete
+     * @param quarantined the quarantined upload
+     * @return the status it completed with
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static ScanStatus awaitScan(QuarantinedUpload quarantined) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (quarantined.getStatus() == ScanStatus.PENDING && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        return quarantined.getStatus();
+    }
+
+    /**
+     * This method tests that a clean upload is scanned in the background and stored
+     */
+    @Test
+    public void shouldStoreCleanUpload() throws Exception {
+        createService(2, 10);
+
+        QuarantinedUpload quarantined = quarantineService.quarantine(stage("clean"), USERNAME, null, "file.pdf");
+
+        assertEquals(ScanStatus.CLEAN, awaitScan(quarantined));
+        assertNotNull(quarantined.getCompletedAt());
+        verify(blobStore).store(any(), eq(storage.resolve("data").resolve("file.pdf")), eq(USERNAME), isNull(), eq("file.pdf"));
+    }
+
+    /**
+     * This method tests that an infected upload is deleted from quarantine and not stored
+     */
+    @Test
+    public void shouldRejectInfectedUpload() throws Exception {
+        createService(2, 10);
+
+        QuarantinedUpload quarantined = quarantineService.quarantine(stage(ClamAvAntivirusScannerTest.EICAR), USERNAME,
+                null, "file.pdf");
+
+        assertEquals(ScanStatus.INFECTED, awaitScan(quarantined));
+        assertFalse(Files.exists(storage.resolve("quarantine").resolve(quarantined.getId())));
+        verifyNoInteractions(blobStore);
+    }
+
+    /**
+     * This method tests that no more scans run at once than there are connections
+     */
+    @Test
+    public void shouldBoundConcurrentScans() throws Exception {
+        clamd.setScanDelay(100);
+        createService(2, 10);
+
+        List<QuarantinedUpload> uploads = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++)
+            uploads.add(quarantineService.quarantine(stage("clean " + i), USERNAME, null, "file" + i + ".pdf"));
+
+        for (QuarantinedUpload upload : uploads)
+            assertEquals(ScanStatus.CLEAN, awaitScan(upload));
+
+        assertEquals(6, clamd.getScans());
+        assertTrue(clamd.getMaxActive() <= 2);
+    }
+
+    /**
+     * This method tests that uploads are rejected when the scan queue is full
+     */
+    @Test
+    public void shouldRejectWhenQueueFull() throws Exception {
+        clamd.setScanDelay(2000);
+        createService(1, 1);
+
+        quarantineService.quarantine(stage("first"), USERNAME, null, "first.pdf");
+        quarantineService.quarantine(stage("second"), USERNAME, null, "second.pdf");
+
+        assertThrows(ScanRejectedException.class,
+                () -> quarantineService.quarantine(stage("third"), USERNAME, null, "third.pdf"));
+    }
+
+    /**
+     * This method tests that an upload whose content has a cached clean verdict is stored without being scanned
+     */
+    @Test
+    public void shouldUseCachedVerdict() throws Exception {
+        given(verdictCache.currentVersion())
+                .willReturn("ClamAV 0.103.8/26950");
+        given(verdictCache.lookup("hash", "ClamAV 0.103.8/26950"))
+                .willReturn(ScanStatus.CLEAN);
+        createService(2, 10);
+
+        QuarantinedUpload quarantined = quarantineService.quarantine(stage("clean"), USERNAME, null, "file.pdf");
+
+        assertEquals(ScanStatus.CLEAN, awaitScan(quarantined));
+        assertEquals(0, clamd.getScans());
+        verify(blobStore).store(any(), eq(storage.resolve("data").resolve("file.pdf")), eq(USERNAME), isNull(), eq("file.pdf"));
+        verify(verdictCache, never()).record(anyString(), anyString(), any());
+    }
+
+    /**
+     * This method tests that the verdict of a scan is recorded in the cache on a miss
+     */
+    @Test
+    public void shouldRecordVerdictOnMiss() throws Exception {
+        given(verdictCache.currentVersion())
+                .willReturn("ClamAV 0.103.8/26950");
+        createService(2, 10);
+
+        QuarantinedUpload quarantined = quarantineService.quarantine(stage(ClamAvAntivirusScannerTest.EICAR), USERNAME,
+                null, "file.pdf");
+
+        assertEquals(ScanStatus.INFECTED, awaitScan(quarantined));
+        assertEquals(1, clamd.getScans());
+        verify(verdictCache).record("hash", "ClamAV 0.103.8/26950", ScanStatus.INFECTED);
+    }
+
+    /**
+     * This method tests that an unexpected failure while storing a clean upload marks it as failed instead of leaving it
+     * pending
+     */
+    @Test
+    public void shouldFailOnUnexpectedException() throws Exception {
+        given(blobStore.store(any(), any(), anyString(), any(), anyString()))
+                .willThrow(new IllegalStateException("Database unavailable"));
+        createService(2, 10);
+
+        QuarantinedUpload quarantined = quarantineService.quarantine(stage("clean"), USERNAME, null, "file.pdf");
+
+        assertEquals(ScanStatus.FAILED, awaitScan(quarantined));
+        assertFalse(Files.exists(storage.resolve("quarantine").resolve(quarantined.getId())));
+    }
+
+    /**
+     * This method tests that completed scans older than the retention are purged
+     */
+    @Test
+    public void shouldPurgeCompletedScans() {
+        createService(2, 10);
+
+        quarantineService.purgeCompleted();
+
+        verify(repository).deleteByCompletedAtBefore(argThat(time -> time.isBefore(LocalDateTime.now().minusHours(23))
+                && time.isAfter(LocalDateTime.now().minusHours(25))));
+    }
+}
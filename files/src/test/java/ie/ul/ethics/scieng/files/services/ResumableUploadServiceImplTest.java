@@ -0,0 +1,307 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import ie.ul.ethics.scieng.files.exceptions.ChecksumMismatchException;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.files.exceptions.InvalidChunkException;
+import ie.ul.ethics.scieng.files.exceptions.UploadIncompleteException;
+import ie.ul.ethics.scieng.files.models.UploadChunk;
+import ie.ul.ethics.scieng.files.models.UploadSession;
+import ie.ul.ethics.scieng.files.repositories.UploadChunkRepository;
+import ie.ul.ethics.scieng.files.repositories.UploadSessionRepository;
+import ie.ul.ethics.scieng.files.upload.StagedUpload;
+import ie.ul.ethics.scieng.files.upload.UploadPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for receiving resumable uploads in chunks
+ */
+public class ResumableUploadServiceImplTest {
+    /**
+     * The username of the uploading user
+     */
+    private static final String USERNAME = "username";
+    /**
+     * The size of each chunk in the tests
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The mocked repository for upload sessions
+     */
+    private UploadSessionRepository sessionRepository;
+    /**
+     * The mocked repository for received chunks
+     */
+    private UploadChunkRepository chunkRepository;
+    /**
+     * The indices of the chunks saved to the mocked repository
+     */
+    private ConcurrentSkipListSet<Integer> received;
+    /**
+     * The service being tested
+     */
+    private ResumableUploadServiceImpl uploadService;
+
+    /**
+     * Create the mocks and the service before each test
+     */
+    @BeforeEach
+    public void setup() {
+        sessionRepository = mock(UploadSessionRepository.class);
+        chunkRepository = mock(UploadChunkRepository.class);
+        received = new ConcurrentSkipListSet<>();
+
+        given(sessionRepository.save(any()))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        given(chunkRepository.save(any()))
+                .willAnswer(invocation -> {
+                    UploadChunk chunk = invocation.getArgument(0);
+                    received.add(chunk.getChunkIndex());
+
+                    return chunk;
+                });
+        given(chunkRepository.countBySessionId(anyString()))
+                .willAnswer(invocation -> (long)received.size());
+        given(chunkRepository.findChunkIndicesBySessionId(anyString()))
+                .willAnswer(invocation -> new ArrayList<>(received));
+
+        FilesConfigurationProperties properties = new FilesConfigurationProperties();
+        properties.setStorageDir(storage.toString());
+        properties.getResumable().setChunkSize(CHUNK_SIZE);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        uploadService = new ResumableUploadServiceImpl(properties, sessionRepository, chunkRepository,
+                new UploadPipeline(mock(AntivirusScanner.class), meterRegistry), meterRegistry);
+    }
+
+    /**
+     * Generate random content
+     * @param length the length of the content
+     * @return the content
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+
+        return content;
+    }
+
+    /**
+     * Get the checksum header of the data
+     * @param data the data to checksum
+     * @return the checksum in the form "sha256 base64-digest"
+     */
+    private static String checksum(byte[] data) {
+        return "sha256 " + Base64.getEncoder().encodeToString(UploadPipeline.newDigest().digest(data));
+    }
+
+    /**
+     * Get the chunk of the content at the index
+     * @param content the full content
+     * @param index the index of the chunk
+     * @return the chunk
+     */
+    private static byte[] chunk(byte[] content, int index) {
+        int start = index * CHUNK_SIZE;
+
+        return Arrays.copyOfRange(content, start, Math.min(start + CHUNK_SIZE, content.length));
+    }
+
+    /**
+     * Write the chunk of the content at the index to the session
+     * @param session the upload session
+     * @param content the full content
+     * @param index the index of the chunk
+     */
+    private void writeChunk(UploadSession session, byte[] content, int index) {
+        byte[] chunk = chunk(content, index);
+        uploadService.writeChunk(session, index, new ByteArrayInputStream(chunk), checksum(chunk));
+    }
+
+    /**
+     * Tests that chunks sent out of order and in parallel are assembled into the original content
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldAssembleChunksSentOutOfOrderInParallel() throws Exception {
+        byte[] content = content(CHUNK_SIZE * 7 + 100);
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", content.length);
+        assertEquals(8, session.getChunkCount());
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < session.getChunkCount(); i++)
+            order.add(i);
+        Collections.shuffle(order, new Random(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int index : order)
+                futures.add(executor.submit(() -> writeChunk(session, content, index)));
+
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(order.size(), uploadService.getReceivedChunks(session).size());
+
+        StagedUpload upload = uploadService.complete(session);
+
+        assertArrayEquals(content, Files.readAllBytes(upload.getFile()));
+        assertEquals(content.length, upload.getSize());
+        assertEquals(UploadPipeline.toHex(UploadPipeline.newDigest().digest(content)), upload.getSha256());
+        assertFalse(upload.isSafe());
+        verify(chunkRepository).deleteBySessionId(session.getId());
+        verify(sessionRepository).delete(session);
+    }
+
+    /**
+     * Tests that a chunk whose content does not match its checksum is rejected and not recorded
+     */
+    @Test
+    public void shouldRejectChecksumMismatch() {
+        byte[] content = content(CHUNK_SIZE * 2);
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", content.length);
+        byte[] chunk = chunk(content, 0);
+        String wrongChecksum = checksum(chunk(content, 1));
+
+        assertThrows(ChecksumMismatchException.class, () ->
+                uploadService.writeChunk(session, 0, new ByteArrayInputStream(chunk), wrongChecksum));
+        assertThrows(ChecksumMismatchException.class, () ->
+                uploadService.writeChunk(session, 0, new ByteArrayInputStream(chunk), "md5 abc"));
+        assertThrows(ChecksumMismatchException.class, () ->
+                uploadService.writeChunk(session, 0, new ByteArrayInputStream(chunk), null));
+        verify(chunkRepository, never()).save(any());
+    }
+
+    /**
+     * Tests that chunks of the wrong size or outside the upload are rejected
+     */
+    @Test
+    public void shouldRejectInvalidChunks() {
+        byte[] content = content(CHUNK_SIZE * 2);
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", content.length);
+        byte[] small = Arrays.copyOf(content, CHUNK_SIZE - 1);
+        byte[] large = Arrays.copyOf(content, CHUNK_SIZE + 1);
+
+        assertThrows(InvalidChunkException.class, () ->
+                uploadService.writeChunk(session, 0, new ByteArrayInputStream(small), checksum(small)));
+        assertThrows(InvalidChunkException.class, () ->
+                uploadService.writeChunk(session, 0, new ByteArrayInputStream(large), checksum(large)));
+        assertThrows(InvalidChunkException.class, () ->
+                uploadService.writeChunk(session, 2, new ByteArrayInputStream(small), checksum(small)));
+        assertThrows(InvalidChunkException.class, () ->
+                uploadService.writeChunk(session, -1, new ByteArrayInputStream(small), checksum(small)));
+        verify(chunkRepository, never()).save(any());
+    }
+
+    /**
+     * Tests that an upload cannot be completed until every chunk has been received
+     */
+    @Test
+    public void shouldNotCompleteIncompleteUpload() {
+        byte[] content = content(CHUNK_SIZE * 3);
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", content.length);
+        writeChunk(session, content, 0);
+        writeChunk(session, content, 2);
+
+        assertThrows(UploadIncompleteException.class, () -> uploadService.complete(session));
+        verify(sessionRepository, never()).delete(any());
+    }
+
+    /**
+     * Tests that sessions belonging to other users or that have expired are not found
+     */
+    @Test
+    public void shouldOnlyFindOwnUnexpiredSessions() {
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", CHUNK_SIZE);
+        given(sessionRepository.findById(session.getId()))
+                .willReturn(Optional.of(session));
+
+        assertSame(session, uploadService.getSession(session.getId(), USERNAME));
+        assertNull(uploadService.getSession(session.getId(), "other"));
+
+        session.setExpiresAt(session.getCreatedAt().minusMinutes(1));
+        assertNull(uploadService.getSession(session.getId(), USERNAME));
+    }
+
+    /**
+     * Tests that aborting a session deletes the file it was assembled in
+     */
+    @Test
+    public void shouldDeleteFileOnAbort() {
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", CHUNK_SIZE);
+        Path part = storage.resolve("sessions").resolve(session.getId() + ".part");
+        assertTrue(Files.exists(part));
+
+        uploadService.abort(session);
+
+        assertFalse(Files.exists(part));
+        verify(chunkRepository).deleteBySessionId(session.getId());
+        verify(sessionRepository).delete(session);
+    }
+
+    /**
+     * Tests that a completed upload is moved out of the session directory and that a chunk sent for the session
+     * afterwards is rejected instead of being written into the staged file
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldRejectChunkAfterComplete() throws Exception {
+        byte[] content = content(CHUNK_SIZE * 2);
+        UploadSession session = uploadService.createSession(USERNAME, null, "file.pdf", "application/pdf", content.length);
+        writeChunk(session, content, 0);
+        writeChunk(session, content, 1);
+
+        StagedUpload upload = uploadService.complete(session);
+
+        assertEquals(storage.resolve("tmp"), upload.getFile().getParent());
+        assertFalse(Files.exists(storage.resolve("sessions").resolve(session.getId() + ".part")));
+        assertThrows(InvalidChunkException.class, () -> writeChunk(session, content(CHUNK_SIZE * 3), 0));
+        assertArrayEquals(content, Files.readAllBytes(upload.getFile()));
+    }
+
+    /**
+     * Tests that a target escaping the user's directory is rejected
+     */
+    @Test
+    public void shouldRejectPathTraversal() {
+        assertThrows(FileException.class, () ->
+                uploadService.createSession(USERNAME, "../other", "file.pdf", "application/pdf", CHUNK_SIZE));
+        verify(sessionRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,131 @@
+package ie.ul.ethics.scieng.files.services;
+
+import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import ie.ul.ethics.scieng.users.authorization.Roles;
+import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.services.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for resolving paths and checking permissions in user directories
+ */
+public class UserDirectoryServiceImplTest {
+    /**
+     * The username of the applicant owning the files
+     */
+    private static final String APPLICANT = "applicant";
+    /**
+     * The username of the reviewing committee member
+     */
+    private static final String REVIEWER = "reviewer";
+
+    /**
+     * The base the user directories are rooted at
+     */
+    @TempDir
+    Path base;
+    /**
+     * The mocked user service
+     */
+    private UserService userService;
+    /**
+     * The authentication information of the requesting user
+     */
+    private AuthenticationInformation authenticationInformation;
+    /**
+     * The service being tested
+     */
+    private UserDirectoryServiceImpl userDirectoryService;
+
+    /**
+     * Create the service being tested before each test
+     */
+    @BeforeEach
+    public void setup() {
+        userService = mock(UserService.class);
+        authenticationInformation = new AuthenticationInformation(null, REVIEWER, null);
+        userDirectoryService = new UserDirectoryServiceImpl(userService, 100, 60, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userDirectoryService, "authenticationInformation", authenticationInformation);
+
+        User applicant = new User(APPLICANT, "Applicant", "Department");
+        User reviewer = new User(REVIEWER, "Reviewer", "Department");
+        reviewer.setRole(Roles.COMMITTEE_MEMBER);
+
+        given(userService.loadUser(APPLICANT))
+                .willReturn(applicant);
+        given(userService.loadUser(REVIEWER))
+                .willReturn(reviewer);
+    }
+
+    /**
+     * This method tests that resolving a path does not create any directories
+     */
+    @Test
+    public void shouldNotCreateDirectoriesOnResolve() {
+        Path path = userDirectoryService.resolveFilePath(base, "file.pdf", "application", APPLICANT);
+
+        assertEquals(base.resolve(APPLICANT).resolve("application").resolve("file.pdf"), path);
+        assertFalse(Files.exists(base.resolve(APPLICANT)));
+    }
+
+    /**
+     * This method tests that creating a path creates its directories
+     */
+    @Test
+    public void shouldCreateDirectoriesOnCreate() {
+        Path path = userDirectoryService.createFilePath(base, "file.pdf", "application", APPLICANT);
+
+        assertTrue(Files.isDirectory(path.getParent()));
+        assertFalse(Files.exists(path));
+    }
+
+    /**
+     * This method tests that permission checks only load each user once
+     */
+    @Test
+    public void shouldCachePermissionInputs() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(userDirectoryService.canViewFile(base, "file.pdf", null, APPLICANT));
+            assertFalse(userDirectoryService.canDeleteFile(base, "file.pdf", null, APPLICANT));
+        }
+
+        verify(userService, times(1)).loadUser(APPLICANT);
+        verify(userService, times(1)).loadUser(REVIEWER);
+        assertFalse(Files.exists(base.resolve(APPLICANT)));
+    }
+
+    /**
+     * This method tests that the permissions of a user are reloaded once the user is evicted
+     */
+    @Test
+    public void shouldReloadPermissionsOnEviction() {
+        assertTrue(userDirectoryService.canViewFile(base, "file.pdf", null, APPLICANT));
+
+        given(userService.loadUser(REVIEWER))
+                .willReturn(new User(REVIEWER, "Reviewer", "Department"));
+        userDirectoryService.userEvicted(REVIEWER);
+
+        assertFalse(userDirectoryService.canViewFile(base, "file.pdf", null, APPLICANT));
+        verify(userService, times(2)).loadUser(REVIEWER);
+    }
+
+    /**
+     * This method tests that an unknown user cannot have a user directory
+     */
+    @Test
+    public void shouldRejectUnknownUser() {
+        assertThrows(FileException.class, () -> userDirectoryService.resolveFilePath(base, "file.pdf", null, "unknown"));
+    }
+}
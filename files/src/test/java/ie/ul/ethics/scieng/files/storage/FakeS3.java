@@ -0,0 +1,473 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides a minimal in-process stand-in for an S3-compatible object store for tests. It serves a single
+ * bucket with path-style addressing and speaks enough of the S3 API for the storage backend: PUT, GET with ranges,
+ * HEAD and DELETE of objects, and multipart uploads. Request signatures are not checked, but aws-chunked bodies are
+ * decoded and ETags are the MD5 of the content so the client's checksum validation passes
+ */
+public class FakeS3 implements AutoCloseable {
+    /**
+     * The formatter of the Last-Modified header
+     */
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    /**
+     * The name of the bucket
+     */
+    private final String bucket;
+    /**
+     * The server handling requests
+     */
+    private final HttpServer server;
+    /**
+     * The objects in the bucket keyed by key
+     */
+    private final Map<String, FakeObject> objects = new ConcurrentHashMap<>();
+    /**
+     * The parts of the multipart uploads in progress keyed by upload ID and then part number
+     */
+    private final Map<String, TreeMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    /**
+     * The number of multipart uploads completed
+     */
+    private final AtomicInteger completedUploads = new AtomicInteger();
+    /**
+     * True if uploads of parts should be rejected
+     */
+    private volatile boolean rejectParts;
+
+    /**
+     * Start a fake object store on an ephemeral port on the loopback address
+     * @param bucket the name of the bucket
+     * @throws IOException if the server cannot be started
+     */
+    public FakeS3(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Get the endpoint of the fake object store
+     * @return the endpoint URL
+     */
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Get the content of the object
+     * @param key the key of the object
+     * @return the content, null if the object does not exist
+     */
+    public byte[] getObject(String key) {
+        FakeObject object = objects.get(key);
+
+        return (object == null) ? null : object.content;
+    }
+
+    /**
+     * Get the number of multipart uploads in progress
+     * @return the number of uploads in progress
+     */
+    public int getPendingUploads() {
+        return uploads.size();
+    }
+
+    /**
+     * Get the number of multipart uploads completed
+     * @return the number of uploads completed
+     */
+    public int getCompletedUploads() {
+        return completedUploads.get();
+    }
+
+    /**
+     * Set whether uploads of parts should be rejected
+     * @param rejectParts true to reject uploads of parts
+     */
+    public void setRejectParts(boolean rejectParts) {
+        this.rejectParts = rejectParts;
+    }
+
+    /**
+     * Parse the query string of the request
+     * @param query the raw query string, may be null
+     * @return the query parameters, with an empty value for parameters without one
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = (equals < 0) ? parameter : parameter.substring(0, equals);
+                String value = (equals < 0) ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Read a line terminated by CRLF
+     * @param inputStream the stream to read from
+     * @return the line without the terminator
+     * @throws IOException if the stream ends before the line does
+     */
+    private static String readLine(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+
+        while ((read = inputStream.read()) != '\n') {
+            if (read == -1)
+                throw new EOFException("The stream ended in the middle of a line");
+            else if (read != '\r')
+                line.write(read);
+        }
+
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read the body of the request, decoding it if it was sent with aws-chunked encoding
+     * @param exchange the exchange
+     * @return the content of the body
+     * @throws IOException if the body cannot be read
+     */
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        String payload = headers.getFirst("x-amz-content-sha256");
+        String encoding = headers.getFirst("Content-Encoding");
+        InputStream inputStream = exchange.getRequestBody();
+        boolean chunked = (payload != null && payload.startsWith("STREAMING-")) || (encoding != null && encoding.contains("aws-chunked"));
+
+        if (!chunked)
+            return inputStream.readAllBytes();
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        while (true) {
+            String header = readLine(inputStream);
+            int semicolon = header.indexOf(';');
+            int size = Integer.parseInt((semicolon < 0) ? header : header.substring(0, semicolon), 16);
+
+            if (size == 0)
+                break;
+
+            content.write(inputStream.readNBytes(size));
+            readLine(inputStream);
+        }
+
+        inputStream.readAllBytes();
+
+        return content.toByteArray();
+    }
+
+    /**
+     * Get the quoted MD5 entity tag of the content
+     * @param content the content
+     * @return the entity tag
+     */
+    private static String eTag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+            StringBuilder hex = new StringBuilder("\"");
+
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+
+            return hex.append('"').toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Send a response with a body
+     * @param exchange the exchange
+     * @param status the status code
+     * @param contentType the content type of the body
+     * @param body the body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    /**
+     * Send an S3 error response
+     * @param exchange the exchange
+     * @param status the status code
+     * @param code the S3 error code
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String code) throws IOException {
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        } else {
+            send(exchange, status, "application/xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                    + "</Code><Message>" + code + "</Message></Error>").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Send an empty response
+     * @param exchange the exchange
+     * @param status the status code
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    /**
+     * Handle a request to the fake object store
+     * @param exchange the exchange
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String prefix = "/" + bucket + "/";
+
+            if (!path.startsWith(prefix)) {
+                sendError(exchange, 404, "NoSuchBucket");
+                return;
+            }
+
+            String key = path.substring(prefix.length());
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    if (query.containsKey("uploadId"))
+                        uploadPart(exchange, query);
+                    else
+                        putObject(exchange, key);
+                    break;
+                case "POST":
+                    if (query.containsKey("uploads"))
+                        createUpload(exchange, key);
+                    else
+                        completeUpload(exchange, key, query.get("uploadId"));
+                    break;
+                case "GET":
+                case "HEAD":
+                    getObject(exchange, key);
+                    break;
+                case "DELETE":
+                    if (query.containsKey("uploadId"))
+                        uploads.remove(query.get("uploadId"));
+                    else
+                        objects.remove(key);
+
+                    sendEmpty(exchange, 204);
+                    break;
+                default:
+                    sendError(exchange, 405, "MethodNotAllowed");
+            }
+        } catch (RuntimeException ex) {
+            sendError(exchange, 500, "InternalError");
+        }
+    }
+
+    /**
+     * Store the object in the body of the request
+     * @param exchange the exchange
+     * @param key the key of the object
+     * @throws IOException if the request cannot be handled
+     */
+    private void putObject(HttpExchange exchange, String key) throws IOException {
+        byte[] content = readBody(exchange);
+        objects.put(key, new FakeObject(content, Instant.now().truncatedTo(ChronoUnit.SECONDS)));
+        exchange.getResponseHeaders().set("ETag", eTag(content));
+        sendEmpty(exchange, 200);
+    }
+
+    /**
+     * Start a multipart upload
+     * @param exchange the exchange
+     * @param key the key of the object
+     * @throws IOException if the request cannot be handled
+     */
+    private void createUpload(HttpExchange exchange, String key) throws IOException {
+        readBody(exchange);
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new TreeMap<>());
+
+        send(exchange, 200, "application/xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><InitiateMultipartUploadResult>"
+                + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><UploadId>" + uploadId + "</UploadId>"
+                + "</InitiateMultipartUploadResult>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Store a part of a multipart upload
+     * @param exchange the exchange
+     * @param query the query parameters of the request
+     * @throws IOException if the request cannot be handled
+     */
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException {
+        byte[] content = readBody(exchange);
+        TreeMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload");
+        } else if (rejectParts) {
+            sendError(exchange, 400, "InvalidPart");
+        } else {
+            synchronized (parts) {
+                parts.put(Integer.parseInt(query.get("partNumber")), content);
+            }
+
+            exchange.getResponseHeaders().set("ETag", eTag(content));
+            sendEmpty(exchange, 200);
+        }
+    }
+
+    /**
+     * Complete a multipart upload, joining its parts in order
+     * @param exchange the exchange
+     * @param key the key of the object
+     * @param uploadId the ID of the multipart upload
+     * @throws IOException if the request cannot be handled
+     */
+    private void completeUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+        readBody(exchange);
+        TreeMap<Integer, byte[]> parts = (uploadId == null) ? null : uploads.remove(uploadId);
+
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload");
+            return;
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        synchronized (parts) {
+            for (byte[] part : parts.values())
+                content.write(part);
+        }
+
+        byte[] bytes = content.toByteArray();
+        objects.put(key, new FakeObject(bytes, Instant.now().truncatedTo(ChronoUnit.SECONDS)));
+        completedUploads.incrementAndGet();
+
+        send(exchange, 200, "application/xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><CompleteMultipartUploadResult>"
+                + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><ETag>" + eTag(bytes) + "</ETag>"
+                + "</CompleteMultipartUploadResult>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the object, or a single range of it, or only its metadata if the request is a HEAD
+     * @param exchange the exchange
+     * @param key the key of the object
+     * @throws IOException if the request cannot be handled
+     */
+    private void getObject(HttpExchange exchange, String key) throws IOException {
+        readBody(exchange);
+        FakeObject object = objects.get(key);
+
+        if (object == null) {
+            sendError(exchange, 404, "NoSuchKey");
+            return;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        byte[] content = object.content;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            headers.set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            content = Arrays.copyOfRange(content, start, end + 1);
+            status = 206;
+        }
+
+        headers.set("ETag", eTag(object.content));
+        headers.set("Last-Modified", HTTP_DATE.format(object.lastModified));
+        headers.set("Content-Type", "application/octet-stream");
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            headers.set("Content-Length", String.valueOf(content.length));
+            sendEmpty(exchange, status);
+        } else {
+            exchange.sendResponseHeaders(status, content.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(content);
+            }
+        }
+    }
+
+    /**
+     * Stop the fake object store
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * This class represents an object in the fake bucket
+     */
+    private static final class FakeObject {
+        /**
+         * The content of the object
+         */
+        private final byte[] content;
+        /**
+         * The time the object was last modified
+         */
+        private final Instant lastModified;
+
+        /**
+         * Create a FakeObject
+         * @param content the content of the object
+         * @param lastModified the time the object was last modified
+         */
+        private FakeObject(byte[] content, Instant lastModified) {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import ie.ul.ethics.scieng.files.exceptions.FileException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.spi.FileSystemProvider;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for the local file system storage backend
+ */
+public class LocalStorageBackendTest {
+    /**
+     * The storage directory
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The backend being tested
+     */
+    private LocalStorageBackend backend;
+
+    /**
+     * Create the backend before each test
+     */
+    @BeforeEach
+    public void setup() {
+        backend = new LocalStorageBackend(storage);
+    }
+
+    /**
+     * Generate random content
+     * @param length the length of the content
+     * @return the content
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+
+        return content;
+    }
+
+    /**
+     * Tests that a file put into the backend is moved under its key and can be read back whole and in ranges
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldPutAndRead() throws Exception {
+        byte[] content = content(4096);
+        Path source = Files.write(storage.resolve("upload.bin"), content);
+
+        backend.put("blobs/ab/abc", source);
+
+        Path path = backend.localPath("blobs/ab/abc");
+        assertFalse(Files.exists(source));
+        assertArrayEquals(content, Files.readAllBytes(path));
+
+        StorageObject object = backend.stat("blobs/ab/abc");
+        assertNotNull(object);
+        assertEquals(content.length, object.getSize());
+
+        try (InputStream inputStream = backend.read("blobs/ab/abc", 1000, 24)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 1024), inputStream.readAllBytes());
+        }
+
+        backend.delete("blobs/ab/abc");
+        assertNull(backend.stat("blobs/ab/abc"));
+    }
+
+    /**
+     * Tests that an object is written from a stream, and that a stream shorter than declared leaves nothing behind
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldWriteFromStream() throws Exception {
+        byte[] content = content(1024);
+
+        backend.write("exports/export.zip", new ByteArrayInputStream(content), content.length);
+        assertArrayEquals(content, Files.readAllBytes(backend.localPath("exports/export.zip")));
+
+        assertThrows(EOFException.class, () ->
+                backend.write("exports/short.zip", new ByteArrayInputStream(content), content.length + 1));
+        assertNull(backend.stat("exports/short.zip"));
+    }
+
+    /**
+     * Tests that a key escaping the storage directory is rejected
+     */
+    @Test
+    public void shouldRejectKeyOutsideRoot() {
+        assertThrows(FileException.class, () -> backend.stat("../outside"));
+        assertThrows(FileException.class, () -> backend.localPath("blobs/../../outside"));
+    }
+
+    /**
+     * Tests that local objects are not presigned and are served by the application
+     */
+    @Test
+    public void shouldNotPresign() {
+        assertTrue(backend.isLocal());
+        assertNull(backend.presign("blobs/ab/abc", "file.pdf", "application/pdf", Duration.ofMinutes(5)));
+    }
+
+    /**
+     * Tests that a file is moved without the atomic option when the file system does not support atomic moves
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldFallBackToRegularMove() throws Exception {
+        FileSystemProvider provider = mock(FileSystemProvider.class);
+        FileSystem fileSystem = mock(FileSystem.class);
+        Path source = mock(Path.class);
+        Path target = mock(Path.class);
+        Path parent = mock(Path.class);
+        given(fileSystem.provider())
+                .willReturn(provider);
+
+        for (Path path : Arrays.asList(source, target, parent))
+            given(path.getFileSystem())
+                    .willReturn(fileSystem);
+
+        given(target.getParent())
+                .willReturn(parent);
+        willThrow(new AtomicMoveNotSupportedException("source", "target", "Not supported"))
+                .given(provider).move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        LocalStorageBackend.move(source, target);
+
+        verify(provider).move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,217 @@
+package ie.ul.ethics.scieng.files.storage;
+
+import ie.ul.ethics.scieng.files.config.FilesConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides tests for the S3 storage backend against an in-process fake object store
+ */
+public class S3StorageBackendTest {
+    /**
+     * The bucket used in the tests
+     */
+    private static final String BUCKET = "ethics";
+    /**
+     * The part size used in the tests
+     */
+    private static final int PART_SIZE = 64 * 1024;
+
+    /**
+     * The directory for local source files
+     */
+    @TempDir
+    Path directory;
+    /**
+     * The fake object store
+     */
+    private FakeS3 s3;
+    /**
+     * The backend being tested
+     */
+    private S3StorageBackend backend;
+
+    /**
+     * Start the fake object store and create the backend before each test
+     * @throws Exception if the fake cannot be started
+     */
+    @BeforeEach
+    public void setup() throws Exception {
+        s3 = new FakeS3(BUCKET);
+
+        FilesConfigurationProperties.S3 properties = new FilesConfigurationProperties.S3();
+        properties.setEndpoint(s3.getEndpoint());
+        properties.setBucket(BUCKET);
+        properties.setAccessKey("test");
+        properties.setSecretKey("test");
+        properties.setPathStyle(true);
+        properties.setPartSize(PART_SIZE);
+
+        backend = S3StorageBackend.create(properties);
+    }
+
+    /**
+     * Stop the backend and the fake object store after each test
+     */
+    @AfterEach
+    public void teardown() {
+        backend.close();
+        s3.close();
+    }
+
+    /**
+     * Generate random content
+     * @param length the length of the content
+     * @return the content
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+
+        return content;
+    }
+
+    /**
+     * Write the content to a local file
+     * @param content the content to write
+     * @return the path of the file
+     * @throws Exception if the file cannot be written
+     */
+    private Path source(byte[] content) throws Exception {
+        return Files.write(Files.createTempFile(directory, "source-", ".bin"), content);
+    }
+
+    /**
+     * Tests that a small file is sent in a single request and the local file is removed
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldPutSmallFile() throws Exception {
+        byte[] content = content(1000);
+        Path source = source(content);
+
+        backend.put("blobs/ab/abc", source);
+
+        assertArrayEquals(content, s3.getObject("blobs/ab/abc"));
+        assertFalse(Files.exists(source));
+        assertEquals(0, s3.getCompletedUploads());
+
+        StorageObject object = backend.stat("blobs/ab/abc");
+        assertNotNull(object);
+        assertEquals(content.length, object.getSize());
+        assertTrue(object.getLastModified() > 0);
+    }
+
+    /**
+     * Tests that a file larger than the part size is sent with a multipart upload
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldPutLargeFileInParts() throws Exception {
+        byte[] content = content(PART_SIZE * 3 + 123);
+        Path source = source(content);
+
+        backend.put("blobs/cd/cde", source);
+
+        assertArrayEquals(content, s3.getObject("blobs/cd/cde"));
+        assertFalse(Files.exists(source));
+        assertEquals(1, s3.getCompletedUploads());
+        assertEquals(0, s3.getPendingUploads());
+    }
+
+    /**
+     * Tests that a failed part aborts the multipart upload and leaves the local file in place
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldAbortFailedMultipartUpload() throws Exception {
+        byte[] content = content(PART_SIZE * 2 + 1);
+        Path source = source(content);
+        s3.setRejectParts(true);
+
+        assertThrows(IOException.class, () -> backend.put("blobs/ef/efg", source));
+
+        assertNull(s3.getObject("blobs/ef/efg"));
+        assertEquals(0, s3.getPendingUploads());
+        assertTrue(Files.exists(source));
+    }
+
+    /**
+     * Tests that a range of an object can be read
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldReadRange() throws Exception {
+        byte[] content = content(4096);
+        backend.put("exports/export.zip", source(content));
+
+        try (InputStream inputStream = backend.read("exports/export.zip", 100, 50)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 150), inputStream.readAllBytes());
+        }
+
+        try (InputStream inputStream = backend.read("exports/export.zip")) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    /**
+     * Tests that a missing object has no metadata and cannot be read
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldHandleMissingObject() throws Exception {
+        assertNull(backend.stat("missing"));
+        assertThrows(NoSuchFileException.class, () -> backend.read("missing"));
+    }
+
+    /**
+     * Tests that an object can be written from a stream and deleted
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldWriteAndDelete() throws Exception {
+        byte[] content = content(2048);
+
+        backend.write("blobs/12/123", new ByteArrayInputStream(content), content.length);
+        assertArrayEquals(content, s3.getObject("blobs/12/123"));
+
+        backend.delete("blobs/12/123");
+        assertNull(s3.getObject("blobs/12/123"));
+        assertNull(backend.stat("blobs/12/123"));
+    }
+
+    /**
+     * Tests that a presigned URL names the download and can be fetched without credentials
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldPresignDownload() throws Exception {
+        byte[] content = content(512);
+        backend.put("blobs/34/345", source(content));
+
+        URI uri = backend.presign("blobs/34/345", "report.pdf", "application/pdf", Duration.ofMinutes(5));
+
+        assertNotNull(uri);
+        assertTrue(uri.getQuery().contains("X-Amz-Signature"));
+        assertTrue(uri.getRawQuery().contains("response-content-disposition"));
+
+        try (InputStream inputStream = uri.toURL().openStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ie.ul.ethics.scieng.files.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides tests for the stream copying the bytes read to an output stream and a digest
+ */
+public class TeeInputStreamTest {
+    /**
+     * Generate random content
+     * @param length the length of the content
+     * @return the content
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+
+        return content;
+    }
+
+    /**
+     * Tests that bytes read singly and in blocks are copied and digested in order
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldCopyAndDigestBytesRead() throws Exception {
+        byte[] content = content(1000);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        MessageDigest digest = UploadPipeline.newDigest();
+
+        try (TeeInputStream tee = new TeeInputStream(new ByteArrayInputStream(content), copy, digest)) {
+            assertEquals(content[0] & 0xFF, tee.read());
+            assertEquals(499, tee.read(new byte[499], 0, 499));
+            assertEquals(500, tee.read(new byte[600], 0, 600));
+            assertEquals(-1, tee.read());
+            assertEquals(content.length, tee.getBytes());
+            assertFalse(tee.markSupported());
+        }
+
+        assertArrayEquals(content, copy.toByteArray());
+        assertArrayEquals(UploadPipeline.newDigest().digest(content), digest.digest());
+    }
+
+    /**
+     * Tests that skipped bytes are read and copied rather than skipped in the source, stopping at the end of the stream
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldCopySkippedBytes() throws Exception {
+        byte[] content = content(200 * 1024);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        MessageDigest digest = UploadPipeline.newDigest();
+
+        try (TeeInputStream tee = new TeeInputStream(new ByteArrayInputStream(content), copy, digest)) {
+            assertEquals(100 * 1024, tee.skip(100 * 1024));
+            assertEquals(0, tee.skip(-1));
+            assertEquals(100 * 1024, tee.skip(content.length));
+        }
+
+        assertArrayEquals(content, copy.toByteArray());
+        assertArrayEquals(UploadPipeline.newDigest().digest(content), digest.digest());
+    }
+
+    /**
+     * Tests that draining copies whatever the consumer did not read, and does nothing once the end has been reached
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDrainRemainder() throws Exception {
+        byte[] content = content(100 * 1024);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        TeeInputStream tee = new TeeInputStream(new ByteArrayInputStream(content), copy, UploadPipeline.newDigest());
+
+        assertEquals(10, tee.read(new byte[10], 0, 10));
+        tee.drain();
+        tee.close();
+        tee.drain();
+
+        assertArrayEquals(content, copy.toByteArray());
+        assertEquals(content.length, tee.getBytes());
+    }
+
+    /**
+     * Tests that draining a stream the consumer closed before reading it to the end fails instead of leaving a
+     * truncated copy
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldNotDrainAfterEarlyClose() throws Exception {
+        byte[] content = content(1000);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        TeeInputStream tee = new TeeInputStream(new ByteArrayInputStream(content), copy, UploadPipeline.newDigest());
+
+        assertEquals(10, tee.read(new byte[10], 0, 10));
+        tee.close();
+
+        assertThrows(IOException.class, tee::drain);
+        assertArrayEquals(Arrays.copyOf(content, 10), copy.toByteArray());
+    }
+}
@@ -0,0 +1,178 @@
+package ie.ul.ethics.scieng.files.upload;
+
+import ie.ul.ethics.scieng.files.antivirus.AntivirusScanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class provides tests for staging uploads by scanning, hashing and writing them in a single pass
+ */
+public class UploadPipelineTest {
+    /**
+     * The directory uploads are staged in
+     */
+    @TempDir
+    Path storage;
+    /**
+     * The mocked antivirus scanner
+     */
+    private AntivirusScanner antivirusScanner;
+    /**
+     * The registry the pipeline records its metrics in
+     */
+    private SimpleMeterRegistry meterRegistry;
+    /**
+     * The pipeline being tested
+     */
+    private UploadPipeline uploadPipeline;
+
+    /**
+     * Create the pipeline before each test
+     */
+    @BeforeEach
+    public void setup() {
+        antivirusScanner = mock(AntivirusScanner.class);
+        meterRegistry = new SimpleMeterRegistry();
+        uploadPipeline = new UploadPipeline(antivirusScanner, meterRegistry);
+    }
+
+    /**
+     * Generate random content
+     * @param length the length of the content
+     * @return the content
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+
+        return content;
+    }
+
+    /**
+     * Get the number of times the stage was recorded
+     * @param stage the name of the stage
+     * @return the number of times recorded
+     */
+    private long stageCount(String stage) {
+        return meterRegistry.get(UploadPipeline.STAGE_TIMER).tag("stage", stage).timer().count();
+    }
+
+    /**
+     * Get the number of files left in the staging directory
+     * @return the number of files
+     * @throws IOException if the directory cannot be listed
+     */
+    private long stagedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(storage.resolve("tmp"))) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Tests that an upload read by the scanner is written and hashed in the same pass, and that each stage is recorded
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldStageScanAndHashInOnePass() throws Exception {
+        byte[] content = content(300 * 1024);
+        given(antivirusScanner.isFileSafe(any()))
+                .willAnswer(invocation -> {
+                    invocation.<InputStream>getArgument(0).readAllBytes();
+
+                    return true;
+                });
+
+        StagedUpload upload = uploadPipeline.stage(new ByteArrayInputStream(content), storage.resolve("tmp"));
+
+        assertTrue(upload.isSafe());
+        assertEquals(content.length, upload.getSize());
+        assertArrayEquals(content, Files.readAllBytes(upload.getFile()));
+        assertEquals(UploadPipeline.toHex(UploadPipeline.newDigest().digest(content)), upload.getSha256());
+        assertEquals(1, stageCount("read"));
+        assertEquals(1, stageCount("digest"));
+        assertEquals(1, stageCount("write"));
+        assertEquals(1, stageCount("scan"));
+        assertEquals(content.length, meterRegistry.get(UploadPipeline.SIZE_SUMMARY).summary().totalAmount());
+    }
+
+    /**
+     * Tests that the rest of the upload is drained into the staged file if the scanner stops reading early
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldDrainWhenScannerStopsEarly() throws Exception {
+        byte[] content = content(300 * 1024);
+        given(antivirusScanner.isFileSafe(any()))
+                .willAnswer(invocation -> {
+                    invocation.<InputStream>getArgument(0).readNBytes(1024);
+
+                    return true;
+                });
+
+        StagedUpload upload = uploadPipeline.stage(new ByteArrayInputStream(content), storage.resolve("tmp"));
+
+        assertArrayEquals(content, Files.readAllBytes(upload.getFile()));
+        assertEquals(UploadPipeline.toHex(UploadPipeline.newDigest().digest(content)), upload.getSha256());
+    }
+
+    /**
+     * Tests that the upload fails and the staged file is deleted if the scanner closes the stream before reading it to
+     * the end, rather than a truncated file being staged
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldFailWhenScannerClosesEarly() throws Exception {
+        given(antivirusScanner.isFileSafe(any()))
+                .willAnswer(invocation -> {
+                    InputStream inputStream = invocation.getArgument(0);
+                    inputStream.readNBytes(1024);
+                    inputStream.close();
+
+                    return true;
+                });
+
+        assertThrows(IOException.class,
+                () -> uploadPipeline.stage(new ByteArrayInputStream(content(300 * 1024)), storage.resolve("tmp")));
+        assertEquals(0, stagedFiles());
+    }
+
+    /**
+     * Tests that an upload staged without scanning is not marked as safe and can be scanned afterwards
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void shouldStageWithoutScanning() throws Exception {
+        byte[] content = content(1024);
+        given(antivirusScanner.isFileSafe(any()))
+                .willReturn(true);
+
+        StagedUpload upload = uploadPipeline.stage(new ByteArrayInputStream(content), storage.resolve("tmp"), false);
+
+        assertFalse(upload.isSafe());
+        assertEquals(0, stageCount("scan"));
+        assertArrayEquals(content, Files.readAllBytes(upload.getFile()));
+        verifyNoInteractions(antivirusScanner);
+
+        assertTrue(uploadPipeline.scan(upload).isSafe());
+        assertEquals(1, stageCount("scan"));
+
+        uploadPipeline.discard(upload);
+
+        assertEquals(0, stagedFiles());
+    }
+}
@@ -0,0 +1,110 @@
+package ie.ul.ethics.scieng.users.authorization;
+
+import ie.ul.ethics.scieng.users.models.authorization.Permission;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * This class represents an immutable set of permissions compiled into a bitmask, with one bit for each permission defined
+ * in {@link Permissions}. Checking membership or matching sets is a constant time operation on the masks. Any permission
+ * not defined in {@link Permissions} has no bit and is held separately, falling back to equality checks
+ */
+public final class PermissionSet {
+    /**
+     * An empty permission set
+     */
+    public static final PermissionSet EMPTY = new PermissionSet(0L, Collections.emptySet());
+
+    /**
+     * The mask of the bits of the defined permissions in this set
+     */
+    private final long mask;
+    /**
+     * The permissions in this set that are not defined in {@link Permissions} and so have no bit
+     */
+    private final Set<Permission> unmapped;
+
+    /**
+     * Create a permission set
+     * @param mask the mask of the defined permissions
+     * @param unmapped the permissions with no bit
+     */
+    private PermissionSet(long mask, Set<Permission> unmapped) {
+        this.mask = mask;
+        this.unmapped = unmapped;
+    }
+
+    /**
+     * Compile the collection of permissions into a permission set
+     * @param permissions the permissions to compile
+     * @return the compiled permission set
+     */
+    public static PermissionSet of(Collection<Permission> permissions) {
+        long mask = 0L;
+        Set<Permission> unmapped = null;
+
+        for (Permission permission : permissions) {
+            long bit = Permissions.bitOf(permission);
+
+            if (bit != 0L) {
+                mask |= bit;
+            } else {
+                if (unmapped == null)
+                    unmapped = new LinkedHashSet<>();
+
+                unmapped.add(permission);
+            }
+        }
+
+        return (mask == 0L && unmapped == null) ? EMPTY
+                : new PermissionSet(mask, (unmapped == null) ? Collections.emptySet() : Collections.unmodifiableSet(unmapped));
+    }
+
+    /**
+     * Get the mask of the bits of the defined permissions in this set
+     * @return the permission mask
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Determine if this set contains the provided permission
+     * @param permission the permission to check
+     * @return true if contained, false if not
+     */
+    public boolean contains(Permission permission) {
+        long bit = Permissions.bitOf(permission);
+
+        return (bit != 0L) ? (mask & bit) != 0L : unmapped.contains(permission);
+    }
+
+    /**
+     * Determine if this set contains all the permissions in the other set
+     * @param other the set of permissions to check
+     * @return true if all are contained, false if not
+     */
+    public boolean containsAll(PermissionSet other) {
+        return (mask & other.mask) == other.mask && unmapped.containsAll(other.unmapped);
+    }
+
+    /**
+     * Determine if this set contains at least one of the permissions in the other set
+     * @param other the set of permissions to check
+     * @return true if at least one is contained, false if not
+     */
+    public boolean containsAny(PermissionSet other) {
+        if ((mask & other.mask) != 0L)
+            return true;
+
+        for (Permission permission : other.unmapped) {
+            if (unmapped.contains(permission))
+                return true;
+        }
+
+        return false;
+    }
+}
@@ -7,7 +7,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -131,6 +134,19 @@ public final class Permissions {
                 .orElse(null);
     }
 
+    /**
+     * Get the bit identifying the provided permission in a {@link PermissionSet}. Permissions are identified by their
+     * unique name so that persisted permissions map to the same bit as the permissions defined here
+     * @param permission the permission to get the bit of
+     * @return the bit of the permission, 0 if the permission is not defined in this class
+     */
+    public static long bitOf(Permission permission) {
+        String name = permission.getName();
+        Long bit = (name == null) ? null : Bits.BITS.get(name);
+
+        return (bit == null) ? 0L : bit;
+    }
+
     /**
      * Update the permission with the same tag if it exists
      * @param permission the permission to update
@@ -160,4 +176,33 @@ public final class Permissions {
      * Don't allow external instantiation
      */
     private Permissions() {}
+
+    /**
+     * Holds the bits assigned to the defined permissions, computed once on first use
+     */
+    private static final class Bits {
+        /**
+         * The map of permission names to their bits
+         */
+        private static final Map<String, Long> BITS = assign();
+
+        /**
+         * Assign a bit to each defined permission in the order they are defined
+         * @return the map of permission names to bits
+         */
+        private static Map<String, Long> assign() {
+            Collection<Permission> permissions = getPermissions();
+
+            if (permissions.size() > Long.SIZE)
+                throw new IllegalStateException("At most " + Long.SIZE + " permissions can be defined");
+
+            Map<String, Long> bits = new HashMap<>();
+            int index = 0;
+
+            for (Permission permission : permissions)
+                bits.put(permission.getName(), 1L << index++);
+
+            return Collections.unmodifiableMap(bits);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package ie.ul.ethics.scieng.users.authorization;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import ie.ul.ethics.scieng.users.config.UserPermissionsConfig;
 import ie.ul.ethics.scieng.users.models.User;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
@@ -10,14 +12,33 @@ import org.springframework.util.AntPathMatcher;
 import java.util.*;
 
 /**
- * This class provides authorization to API operations based on a user's roles/permissions
+ * This class provides authorization to API operations based on a user's roles/permissions.
+ *
+ * The configured paths are compiled on first use into a table of routes indexed by request method, where each route
+ * records the static prefix of its pattern so that patterns that cannot match a path are skipped without running the
+ * ANT matcher. The resolved permissions for a (normalised path, method) pair are kept in a bounded cache
  */
 public class PermissionsAuthorizer {
+    /**
+     * The maximum number of (path, method) resolutions to cache
+     */
+    public static final int DECISION_CACHE_SIZE = 10000;
+
     /**
      * The map of ANT paths and their required permissions
      */
     private final Map<Path, RequiredPermissions> pathPermissions;
 
+    /**
+     * The compiled routes indexed by request method name. Null if the routes need to be compiled
+     */
+    private volatile Map<String, List<Route>> routes;
+
+    /**
+     * The cache of the permissions required for a request, keyed by request method and normalised path
+     */
+    private final Cache<String, List<RequiredPermissions>> decisions;
+
     /**
      * The matcher for matching paths
      */
@@ -33,6 +54,21 @@ public class PermissionsAuthorizer {
      */
     public PermissionsAuthorizer(Map<Path, RequiredPermissions> pathPermissions) {
         this.pathPermissions = pathPermissions;
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(DECISION_CACHE_SIZE)
+                .build();
+    }
+
+    /**
+     * Discard the compiled routes and cached decisions so that they are rebuilt from the configured paths on next use.
+     * Should be called when the configured paths change
+     */
+    public void reset() {
+        synchronized (this) {
+            routes = null;
+        }
+
+        decisions.invalidateAll();
     }
 
     /**
@@ -47,11 +83,7 @@ public class PermissionsAuthorizer {
         if (UserPermissionsConfig.permissionsDisabled())
             return true; // always authorise if disabled
 
-        Map<String, List<RequiredPermissions>> requiredPermissions = permissionsRequired(path);
-        List<RequiredPermissions> matchedPermissionsList = requiredPermissions.get(method);
-
-        if (matchedPermissionsList == null && requiredPermissions.containsKey("ALL"))
-            matchedPermissionsList = requiredPermissions.get("ALL");
+        List<RequiredPermissions> matchedPermissionsList = permissionsRequired(path, method);
 
         if (matchedPermissionsList != null) {
             boolean authorized = true;
@@ -66,7 +98,7 @@ public class PermissionsAuthorizer {
                     if (role == null)
                         return false;
                     else
-                        authorized = authorized && matchedPermissions.match(role.getPermissions());
+                        authorized = authorized && matchedPermissions.match(role);
                 }
             }
 
@@ -76,6 +108,29 @@ public class PermissionsAuthorizer {
         return true;
     }
 
+    /**
+     * Get the permissions required to access the path with the given request method. Permissions configured for the
+     * specific request method take precedence over those configured for all request methods
+     * @param path the path to match
+     * @param method the request method
+     * @return the list of required permissions that match the path, null if the path does not require permissions
+     */
+    public List<RequiredPermissions> permissionsRequired(String path, String method) {
+        String normalised = normalise(path);
+
+        List<RequiredPermissions> required = decisions.get(method + " " + normalised, key -> {
+            Map<String, List<Route>> compiled = getRoutes();
+            List<RequiredPermissions> matched = match(compiled.get(method), normalised);
+
+            if (matched.isEmpty() && !RequestMethod.ALL.toString().equals(method))
+                matched = match(compiled.get(RequestMethod.ALL.toString()), normalised);
+
+            return Collections.unmodifiableList(matched);
+        });
+
+        return (required.isEmpty()) ? null : required;
+    }
+
     /**
      * This method returns the required permissions gor the given path. If the path has been configured to need
      * permissions, it will be matched. Otherwise, null is returned to indicate no permissions are required.
@@ -85,23 +140,145 @@ public class PermissionsAuthorizer {
      */
     public Map<String, List<RequiredPermissions>> permissionsRequired(String path) {
         Map<String, List<RequiredPermissions>> permissionsMap = new HashMap<>();
+        String normalised = normalise(path);
 
-        if (!path.endsWith("/"))
-            path += "/";
+        for (Map.Entry<String, List<Route>> e : getRoutes().entrySet()) {
+            List<RequiredPermissions> requiredPermissions = match(e.getValue(), normalised);
+
+            if (requiredPermissions.size() > 0)
+                permissionsMap.put(e.getKey(), requiredPermissions);
+        }
+
+        return permissionsMap;
+    }
+
+    /**
+     * Match the normalised path against the list of routes
+     * @param routes the routes to match against, may be null
+     * @param path the normalised path
+     * @return the permissions of the matched routes in the order they were configured
+     */
+    private static List<RequiredPermissions> match(List<Route> routes, String path) {
+        List<RequiredPermissions> matched = new ArrayList<>();
+
+        if (routes != null) {
+            for (Route route : routes) {
+                if (path.startsWith(route.prefix) && matcher.match(route.pattern, path))
+                    matched.add(route.permissions);
+            }
+        }
+
+        return matched;
+    }
+
+    /**
+     * Get the compiled routes, compiling them from the configured paths if required
+     * @return the compiled routes indexed by request method name
+     */
+    private Map<String, List<Route>> getRoutes() {
+        Map<String, List<Route>> current = routes;
+
+        if (current == null) {
+            synchronized (this) {
+                current = routes;
+
+                if (current == null) {
+                    current = compile();
+                    routes = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Compile the configured paths into routes indexed by request method name
+     * @return the compiled routes
+     */
+    private Map<String, List<Route>> compile() {
+        Map<String, List<Route>> compiled = new HashMap<>();
 
         for (Map.Entry<Path, RequiredPermissions> e : pathPermissions.entrySet()) {
             Path key = e.getKey();
 
-            String requestMethod = key.requestMethod.toString();
-            List<RequiredPermissions> requiredPermissions = permissionsMap.computeIfAbsent(requestMethod, k -> new ArrayList<>());
+            compiled.computeIfAbsent(key.requestMethod.toString(), k -> new ArrayList<>())
+                    .add(new Route(key.path, e.getValue()));
+        }
+
+        compiled.replaceAll((k, v) -> Collections.unmodifiableList(v));
+
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * Normalise the path by removing repeated separators and adding a trailing / since the matcher expects it
+     * @param path the path to normalise
+     * @return the normalised path
+     */
+    private static String normalise(String path) {
+        if (path.contains("//"))
+            path = path.replaceAll("/{2,}", "/");
+
+        if (!path.endsWith("/"))
+            path += "/";
+
+        return path;
+    }
 
-            if (matcher.match(key.path, path))
-                requiredPermissions.add(e.getValue());
+    /**
+     * This class represents a configured path compiled for matching
+     */
+    private static class Route {
+        /**
+         * The ANT pattern of the route
+         */
+        private final String pattern;
+        /**
+         * The literal prefix of the pattern that any matching path must start with
+         */
+        private final String prefix;
+        /**
+         * The permissions required by the route
+         */
+        private final RequiredPermissions permissions;
+
+        /**
+         * Compile a route from the configured pattern
+         * @param pattern the ANT pattern of the route
+         * @param permissions the permissions required by the route
+         */
+        private Route(String pattern, RequiredPermissions permissions) {
+            this.pattern = pattern;
+            this.prefix = staticPrefix(pattern);
+            this.permissions = permissions;
         }
 
-        permissionsMap.values().removeIf(v -> v.size() == 0);
+        /**
+         * Get the prefix of the pattern made up of the complete segments before the first segment containing a wildcard
+         * or variable, or that may be affected by whitespace trimming
+         * @param pattern the pattern to get the prefix of
+         * @return the static prefix
+         */
+        private static String staticPrefix(String pattern) {
+            int end = pattern.length();
 
-        return permissionsMap;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+
+                if (c == '*' || c == '?' || c == '{' || Character.isWhitespace(c)) {
+                    end = i;
+                    break;
+                }
+            }
+
+            String prefix = pattern.substring(0, end);
+
+            if (prefix.contains("//"))
+                return "";
+
+            return prefix.substring(0, prefix.lastIndexOf('/') + 1);
+        }
     }
 
     /**
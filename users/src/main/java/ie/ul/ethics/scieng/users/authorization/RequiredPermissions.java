@@ -2,6 +2,8 @@ package ie.ul.ethics.scieng.users.authorization;
 
 import ie.ul.ethics.scieng.users.config.UserPermissionsConfig;
 import ie.ul.ethics.scieng.users.models.authorization.Permission;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
@@ -24,6 +26,12 @@ public class RequiredPermissions {
      * A flag indicating that all permissions are required
      */
     private final boolean requireAll;
+    /**
+     * The required permissions compiled into a permission set
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private final PermissionSet permissionSet;
 
     /**
      * Create RequiredPermissions object with the list of permissions and require all set to false
@@ -42,6 +50,7 @@ public class RequiredPermissions {
     public RequiredPermissions(Collection<Permission> permissions, boolean requireAll) {
         this.permissions = new LinkedHashSet<>(permissions);
         this.requireAll = requireAll;
+        this.permissionSet = PermissionSet.of(this.permissions);
     }
 
     /**
@@ -50,13 +59,27 @@ public class RequiredPermissions {
      * @return true if satisfied, false if not
      */
     public boolean match(Collection<Permission> permissions) {
+        return match(PermissionSet.of(permissions));
+    }
+
+    /**
+     * Returns true if the permissions of the given role satisfy the required permissions of this object
+     * @param role the role to match
+     * @return true if satisfied, false if not
+     */
+    public boolean match(Role role) {
+        return match(role.getPermissionSet());
+    }
+
+    /**
+     * Returns true if the given permission set satisfies the required permissions of this object
+     * @param permissions the permission set given
+     * @return true if satisfied, false if not
+     */
+    public boolean match(PermissionSet permissions) {
         if (UserPermissionsConfig.permissionsDisabled())
             return true; // always return true if disabled
 
-        Set<Permission> permissionSet = new LinkedHashSet<>(permissions);
-        Set<Permission> difference = new LinkedHashSet<>(this.permissions);
-        difference.retainAll(permissionSet);
-
-        return (requireAll) ? difference.size() == this.permissions.size():difference.size() > 0;
+        return (requireAll) ? permissions.containsAll(permissionSet):permissions.containsAny(permissionSet);
     }
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package ie.ul.ethics.scieng.users.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import ie.ul.ethics.scieng.authentication.cache.AccountChangeListener;
+import ie.ul.ethics.scieng.authentication.models.Account;
+import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class provides a bounded in-memory cache of users. The cache holds detached snapshots of the loaded users and
+ * every lookup returns a fresh copy of the snapshot, so callers modifying a returned user can never modify the cached
+ * state. Users are cached by username with a secondary index from email to username, and entries are evicted per user.
+ *
+ * It also listens for account changes so that a user is evicted once a change to the account embedded in it commits,
+ * and notifies any {@link UserEvictionListener} beans of evictions
+ */
+@Component
+@Log4j2
+public class UserCache implements AccountChangeListener {
+    /**
+     * The name the user cache metrics are registered under
+     */
+    public static final String CACHE_NAME = "users";
+    /**
+     * The name the all users cache metrics are registered under
+     */
+    public static final String ALL_CACHE_NAME = "allusers";
+    /**
+     * The single key the list of all users is cached under
+     */
+    private static final String ALL_KEY = "all";
+    /**
+     * The name the user pages cache metrics are registered under
+     */
+    public static final String PAGES_CACHE_NAME = "userpages";
+    /**
+     * The maximum number of user pages to cache
+     */
+    private static final long PAGES_CACHE_SIZE = 1000;
+
+    /**
+     * The snapshots of users keyed by username
+     */
+    private final Cache<String, User> users;
+    /**
+     * The index of email to the username of the user owning the email
+     */
+    private final Cache<String, String> emails;
+    /**
+     * The snapshot of the list of all users
+     */
+    private final Cache<String, List<User>> allUsers;
+    /**
+     * The pages of shortened users keyed by permission and page
+     */
+    private final Cache<String, Page<UserResponseShortened>> pages;
+    /**
+     * The provider of the listeners notified of evictions. Resolved on each eviction as listeners may depend on the
+     * user service, which depends on this cache
+     */
+    private final ObjectProvider<UserEvictionListener> listeners;
+
+    /**
+     * Create the user cache
+     * @param size the maximum number of users to cache
+     * @param expiry the number of minutes after which a cached user is reloaded even if not evicted
+     * @param listeners the provider of the listeners to notify of evictions
+     * @param meterRegistry the registry to record the cache metrics in
+     */
+    @Autowired
+    public UserCache(@Value("${users.cache.size:10000}") long size, @Value("${users.cache.expiry:60}") long expiry,
+                     ObjectProvider<UserEvictionListener> listeners, MeterRegistry meterRegistry) {
+        this.listeners = listeners;
+        Duration expireAfter = Duration.ofMinutes(expiry);
+
+        this.users = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+        this.emails = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(expireAfter)
+                .build();
+        this.allUsers = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(PAGES_CACHE_SIZE)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, users, CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, allUsers, ALL_CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, PAGES_CACHE_NAME);
+    }
+
+    /**
+     * Get the user with the provided username, loading the user if it is not cached
+     * @param username the username of the user
+     * @param loader the function to load the user by username. May return null if not found
+     * @return a copy of the user, or null if not found
+     */
+    public User get(String username, Function<String, User> loader) {
+        User snapshot = users.get(username, key -> copy(loader.apply(key)));
+        index(snapshot);
+
+        return copy(snapshot);
+    }
+
+    /**
+     * Get the user with the provided email, loading the user if it is not cached
+     * @param email the email of the user
+     * @param loader the function to load the user by email. May return null if not found
+     * @return a copy of the user, or null if not found
+     */
+    public User getByEmail(String email, Function<String, User> loader) {
+        String username = emails.getIfPresent(email);
+        User snapshot = (username == null) ? null : users.getIfPresent(username);
+
+        if (snapshot == null || !email.equals(snapshot.getAccount().getEmail())) {
+            snapshot = copy(loader.apply(email));
+
+            if (snapshot != null) {
+                users.put(snapshot.getUsername(), snapshot);
+                index(snapshot);
+            }
+        }
+
+        return copy(snapshot);
+    }
+
+    /**
+     * Get the list of all users, loading the list if it is not cached
+     * @param loader the supplier to load all users with
+     * @return a list of copies of all the users
+     */
+    public List<User> getAll(Supplier<List<User>> loader) {
+        List<User> snapshots = allUsers.get(ALL_KEY, key -> {
+            List<User> loaded = new ArrayList<>();
+            loader.get().forEach(user -> loaded.add(copy(user)));
+
+            return Collections.unmodifiableList(loaded);
+        });
+
+        List<User> copies = new ArrayList<>(snapshots.size());
+        snapshots.forEach(user -> copies.add(copy(user)));
+
+        return copies;
+    }
+
+    /**
+     * Get the page of shortened users with the provided permission, loading the page if it is not cached
+     * @param permission the tag of the permission the users have, null for all users
+     * @param pageable the page and sort of the page
+     * @param loader the supplier to load the page with
+     * @return a page of copies of the shortened users
+     */
+    public Page<UserResponseShortened> getPage(String permission, Pageable pageable, Supplier<Page<UserResponseShortened>> loader) {
+        String key = permission + "|" + (pageable.isPaged() ?
+                pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + pageable.getSort() : ALL_KEY);
+
+        return pages.get(key, k -> loader.get()).map(UserCache::copyShortened);
+    }
+
+    /**
+     * Evict the user with the provided username, along with its email index entry, the list of all users and the pages
+     * of users, since the user's role or details may have changed
+     * @param username the username of the user to evict
+     */
+    public void evict(String username) {
+        User snapshot = users.getIfPresent(username);
+
+        if (snapshot != null && snapshot.getAccount() != null)
+            emails.invalidate(snapshot.getAccount().getEmail());
+
+        users.invalidate(username);
+        allUsers.invalidateAll();
+        pages.invalidateAll();
+
+        notifyListeners(listener -> listener.userEvicted(username));
+    }
+
+    /**
+     * Evict all cached users
+     */
+    public void clear() {
+        users.invalidateAll();
+        emails.invalidateAll();
+        allUsers.invalidateAll();
+        pages.invalidateAll();
+
+        notifyListeners(UserEvictionListener::allUsersEvicted);
+    }
+
+    /**
+     * Notify the eviction listeners, logging rather than propagating any failure so that an eviction is never undone
+     * @param notification the notification to send to each listener
+     */
+    private void notifyListeners(Consumer<UserEvictionListener> notification) {
+        listeners.orderedStream().forEach(listener -> {
+            try {
+                notification.accept(listener);
+            } catch (RuntimeException ex) {
+                log.error("Failed to notify {} of a user eviction", listener, ex);
+            }
+        });
+    }
+
+    /**
+     * Evict the user whose account has changed, as the user embeds the account
+     * @param username the username of the changed account
+     */
+    @Override
+    public void accountChanged(String username) {
+        evict(username);
+    }
+
+    /**
+     * Get the statistics of the user cache, such as hit rate
+     * @return the user cache statistics
+     */
+    public CacheStats getStats() {
+        return users.stats();
+    }
+
+    /**
+     * Index the email of the snapshot to its username
+     * @param snapshot the snapshot to index, may be null
+     */
+    private void index(User snapshot) {
+        if (snapshot != null && snapshot.getAccount() != null)
+            emails.put(snapshot.getAccount().getEmail(), snapshot.getUsername());
+    }
+
+    /**
+     * Create a copy of the shortened user
+     * @param user the user to copy
+     * @return the copy
+     */
+    private static UserResponseShortened copyShortened(UserResponseShortened user) {
+        return new UserResponseShortened(user.getUsername(), user.getEmail(), user.getName(), user.getDepartment(), user.getRole());
+    }
+
+    /**
+     * Create a copy of the user and its account. The role is shared as roles are not modified through users
+     * @param user the user to copy, may be null
+     * @return the copy, null if the user is null
+     */
+    private static User copy(User user) {
+        if (user == null)
+            return null;
+
+        Account account = user.getAccount();
+        User copy = new User(user.getUsername(), user.getName(), user.getDepartment());
+
+        if (account != null)
+            copy.setAccount(new Account(account.getUsername(), account.getEmail(), account.getPassword(), account.isConfirmed()));
+
+        copy.setRole(user.getRole());
+        copy.setNotificationPreference(user.getNotificationPreference());
+
+        return copy;
+    }
+}
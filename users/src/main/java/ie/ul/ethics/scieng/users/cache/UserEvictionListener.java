@@ -0,0 +1,19 @@
+package ie.ul.ethics.scieng.users.cache;
+
+/**
+ * This interface represents a listener for users being evicted from the {@link UserCache}. Register an implementation
+ * as a bean to have it called whenever a user is evicted, so that state derived from the user, such as cached
+ * permissions, can be evicted along with it
+ */
+public interface UserEvictionListener {
+    /**
+     * Called when the user with the provided username has been evicted, since the user's role or details may have changed
+     * @param username the username of the evicted user
+     */
+    void userEvicted(String username);
+
+    /**
+     * Called when all cached users have been evicted
+     */
+    void allUsersEvicted();
+}
@@ -19,11 +19,17 @@ public class PermissionsAuthorizationConfigurer {
      */
     private final Map<PermissionsAuthorizer.Path, RequiredPermissions> requiredPermissions;
 
+    /**
+     * The authorizer built from the configuration. It compiles the configured paths on first use
+     */
+    private final PermissionsAuthorizer authorizer;
+
     /**
      * Create a permissions configurer object
      */
     public PermissionsAuthorizationConfigurer() {
         this.requiredPermissions = new HashMap<>();
+        this.authorizer = new PermissionsAuthorizer(this.requiredPermissions);
     }
 
     /**
@@ -166,15 +172,16 @@ public class PermissionsAuthorizationConfigurer {
 
         RequiredPermissions requiredPermissions = new RequiredPermissions(permissions, requireAll);
         this.requiredPermissions.put(new PermissionsAuthorizer.Path(antPath, requestMethod), requiredPermissions);
+        this.authorizer.reset(); // the configured paths changed so they need to be recompiled
 
         return this;
     }
 
     /**
-     * Builds the authorizer based on the configuration
+     * Get the authorizer based on the configuration. Paths configured after retrieving the authorizer are still applied
      * @return the PermissionsAuthorizer
      */
     public PermissionsAuthorizer getAuthorizer() {
-        return new PermissionsAuthorizer(this.requiredPermissions);
+        return this.authorizer;
     }
 }
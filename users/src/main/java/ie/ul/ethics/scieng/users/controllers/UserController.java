@@ -8,6 +8,7 @@ import ie.ul.ethics.scieng.common.search.SearchResponse;
 import ie.ul.ethics.scieng.users.authorization.Permissions;
 import ie.ul.ethics.scieng.users.authorization.Roles;
 import ie.ul.ethics.scieng.users.exceptions.AccountNotExistsException;
+import ie.ul.ethics.scieng.users.exceptions.UsersException;
 import ie.ul.ethics.scieng.users.models.*;
 import ie.ul.ethics.scieng.users.models.authorization.Permission;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
@@ -15,6 +16,9 @@ import ie.ul.ethics.scieng.users.search.UserSpecification;
 import ie.ul.ethics.scieng.users.services.UserService;
 import static ie.ul.ethics.scieng.common.Constants.*;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,8 +28,10 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -45,6 +51,20 @@ public class UserController implements SearchController<UserResponseShortened> {
     @Resource(name = "authenticationInformation")
     private AuthenticationInformation authenticationInformation;
 
+    /**
+     * The fields the list of users can be sorted by
+     */
+    private static final Set<String> SORTABLE_FIELDS = Set.of("username", "name", "department");
+
+    /**
+     * The maximum number of users that can be suggested in one request
+     */
+    private static final int MAX_SUGGESTIONS = 50;
+    /**
+     * The maximum number of users that can be requested in one page
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
     /**
      * Create the user controller with the provided user service
      * @param userService the user service for interacting with user business logic
@@ -54,19 +74,47 @@ public class UserController implements SearchController<UserResponseShortened> {
     }
 
     /**
-     * This endpoint retrieves all the users in the system or users with a given permission
+     * This endpoint retrieves all the users in the system or users with a given permission. If a page is requested, the
+     * page of users is returned, otherwise the list of all matching users is returned
      * @param permission return the list of users with the given permission. Expected to be the tag name
+     * @param page the number of the page to retrieve, starting at 0. If not provided, all users are returned
+     * @param size the number of users in a page, at most 100
+     * @param sort the field to sort the page by, one of username, name or department
+     * @param direction the direction to sort in, asc or desc
      * @return the response body
      */
     @GetMapping
-    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String permission) {
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String permission,
+                                         @RequestParam(required = false) Integer page,
+                                         @RequestParam(required = false, defaultValue = "50") int size,
+                                         @RequestParam(required = false, defaultValue = "username") String sort,
+                                         @RequestParam(required = false, defaultValue = "asc") String direction) {
         Permission mappedPermission = (permission != null) ? Permissions.getPermissionByFieldName(permission):null;
 
-        return ResponseEntity.ok(userService.getAllUsers()
-                .stream()
-                .filter(user -> mappedPermission == null || user.getRole().getPermissions().contains(mappedPermission))
-                .map(UserResponseShortened::new)
-                .collect(Collectors.toList()));
+        if (page == null)
+            return ResponseEntity.ok(userService.getUsers(mappedPermission, Pageable.unpaged()).getContent());
+
+        Sort.Direction sortDirection = Sort.Direction.fromOptionalString(direction).orElse(null);
+
+        if (!SORTABLE_FIELDS.contains(sort) || sortDirection == null || page < 0 || size < 1 || size > MAX_PAGE_SIZE)
+            return respondError(INVALID_SORT);
+
+        return ResponseEntity.ok(userService.getUsers(mappedPermission, PageRequest.of(page, size, Sort.by(sortDirection, sort))));
+    }
+
+    /**
+     * This endpoint suggests users whose username, name or email starts with the query, for autocompleting user pickers
+     * @param query the prefix to match, case-insensitive
+     * @param permission only suggest users with the given permission. Expected to be the tag name
+     * @param limit the maximum number of users to suggest, capped at 50
+     * @return the response body
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggest(@RequestParam String query, @RequestParam(required = false) String permission,
+                                     @RequestParam(required = false, defaultValue = "10") int limit) {
+        Permission mappedPermission = (permission != null) ? Permissions.getPermissionByFieldName(permission):null;
+
+        return ResponseEntity.ok(userService.suggest(query, mappedPermission, Math.min(limit, MAX_SUGGESTIONS)));
     }
 
     /**
@@ -102,6 +150,9 @@ public class UserController implements SearchController<UserResponseShortened> {
                 user.setName(request.getName());
                 user.setDepartment(request.getDepartment());
 
+                if (request.getNotificationPreference() != null)
+                    user.setNotificationPreference(request.getNotificationPreference());
+
                 userService.updateUser(user);
 
                 return ResponseEntity.ok(new UserResponse(user));
@@ -111,6 +162,7 @@ public class UserController implements SearchController<UserResponseShortened> {
                 }
 
                 user = new User(request.getUsername(), request.getName(), request.getDepartment());
+                user.setNotificationPreference(request.getNotificationPreference());
                 user = userService.createUser(user);
 
                 return ResponseEntity.status(HttpStatus.CREATED).body(new UserResponse(user));
@@ -179,6 +231,35 @@ public class UserController implements SearchController<UserResponseShortened> {
         }
     }
 
+    /**
+     * The endpoint for updating the roles of multiple users in one request. This should be locked behind a grant
+     * permissions permission
+     * @param request the request containing the role updates
+     * @return the response body summarising the update
+     */
+    @PutMapping("/user/role/bulk")
+    public ResponseEntity<?> updateUserRoles(@RequestBody @Valid BulkUpdateRoleRequest request) {
+        Map<Long, Role> rolesById = new HashMap<>();
+        Roles.getRoles().forEach(r -> rolesById.put(r.getId(), r));
+
+        Map<String, Role> roles = new LinkedHashMap<>();
+
+        for (UpdateRoleRequest update : request.getUpdates()) {
+            Role role = rolesById.get(update.getRole());
+
+            if (role == null)
+                return respondError(ROLE_NOT_FOUND);
+
+            roles.put(update.getUsername(), role);
+        }
+
+        try {
+            return ResponseEntity.ok(userService.updateRoles(roles));
+        } catch (UsersException ex) {
+            return respondError(ROLE_SINGLE_USER);
+        }
+    }
+
     /**
      * This endpoint returns a listing of all roles in the system
      * @return the response body
@@ -0,0 +1,28 @@
+package ie.ul.ethics.scieng.users.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * This request is used to update the roles of multiple users at once
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+public class BulkUpdateRoleRequest {
+    /**
+     * The role updates to apply. If a username appears more than once, the last update for it is applied
+     */
+    @NotEmpty
+    @Valid
+    private List<UpdateRoleRequest> updates;
+}
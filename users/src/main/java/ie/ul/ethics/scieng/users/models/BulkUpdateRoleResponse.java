@@ -0,0 +1,32 @@
+package ie.ul.ethics.scieng.users.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * This response summarises the result of updating the roles of multiple users at once
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+public class BulkUpdateRoleResponse {
+    /**
+     * The number of users whose role was updated
+     */
+    private int updated;
+    /**
+     * The usernames in the request that do not belong to any user and so were not updated
+     */
+    private List<String> notFound;
+    /**
+     * The usernames of the users downgraded because they held a single user role assigned to another user
+     */
+    private List<String> downgraded;
+}
@@ -33,4 +33,18 @@ public class CreateUpdateUserRequest {
      */
     @NotNull
     private String department;
+    /**
+     * How the user prefers to receive email notifications. If null, the existing preference is kept
+     */
+    private NotificationPreference notificationPreference;
+
+    /**
+     * Create a request without changing the notification preference
+     * @param username the username that matches the account
+     * @param name the name of the user
+     * @param department the department the user belongs to
+     */
+    public CreateUpdateUserRequest(String username, String name, String department) {
+        this(username, name, department, null);
+    }
 }
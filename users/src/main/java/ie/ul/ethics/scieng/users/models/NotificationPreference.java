@@ -0,0 +1,15 @@
+package ie.ul.ethics.scieng.users.models;
+
+/**
+ * This represents how a user prefers to receive email notifications
+ */
+public enum NotificationPreference {
+    /**
+     * Each notification is emailed to the user as soon as it occurs
+     */
+    IMMEDIATE,
+    /**
+     * Notifications are held and emailed to the user together in a periodic digest
+     */
+    DIGEST
+}
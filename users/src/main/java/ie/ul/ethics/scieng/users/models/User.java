@@ -5,6 +5,8 @@ import ie.ul.ethics.scieng.users.models.authorization.Role;
 import ie.ul.ethics.scieng.users.authorization.Roles;
 
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
@@ -41,6 +43,11 @@ public class User {
      */
     @OneToOne(fetch = FetchType.EAGER)
     private Role role;
+    /**
+     * How the user prefers to receive email notifications
+     */
+    @Enumerated(EnumType.STRING)
+    private NotificationPreference notificationPreference;
 
     /**
      * Create a default user
@@ -175,6 +182,22 @@ public class User {
         this.role = role;
     }
 
+    /**
+     * Get how the user prefers to receive email notifications. Defaults to immediate delivery if no preference is set
+     * @return the user's notification preference
+     */
+    public NotificationPreference getNotificationPreference() {
+        return (notificationPreference == null) ? NotificationPreference.IMMEDIATE : notificationPreference;
+    }
+
+    /**
+     * Set how the user prefers to receive email notifications
+     * @param notificationPreference the user's notification preference
+     */
+    public void setNotificationPreference(NotificationPreference notificationPreference) {
+        this.notificationPreference = notificationPreference;
+    }
+
     /**
      * Check if the provided object is equal to this User
      * @param o the object to check
@@ -186,7 +209,8 @@ public class User {
         if (o == null || getClass() != o.getClass()) return false;
         User user = (User) o;
         return Objects.equals(username, user.username) && Objects.equals(name, user.name) && Objects.equals(account, user.account)
-                && Objects.equals(department, user.department) && Objects.equals(role, user.role);
+                && Objects.equals(department, user.department) && Objects.equals(role, user.role)
+                && getNotificationPreference() == user.getNotificationPreference();
     }
 
     /**
@@ -195,6 +219,6 @@ public class User {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(username, name, account, department, role);
+        return Objects.hash(username, name, account, department, role, getNotificationPreference());
     }
 }
@@ -37,6 +37,10 @@ public class UserResponse {
      * The role of the user to include in the response
      */
     private Role role;
+    /**
+     * How the user prefers to receive email notifications
+     */
+    private NotificationPreference notificationPreference;
 
     /**
      * This constructor converts the given user into a UserResponse
@@ -53,5 +57,6 @@ public class UserResponse {
         this.name = user.getName();
         this.department = user.getDepartment();
         this.role = user.getRole();
+        this.notificationPreference = user.getNotificationPreference();
     }
 }
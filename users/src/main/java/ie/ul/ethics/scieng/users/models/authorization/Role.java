@@ -1,5 +1,7 @@
 package ie.ul.ethics.scieng.users.models.authorization;
 
+import ie.ul.ethics.scieng.users.authorization.PermissionSet;
+
 import javax.persistence.*;
 import java.util.*;
 
@@ -21,6 +23,11 @@ public class Role extends Authorization {
      * The role to downgrade users to if singleUser is true and users need to be downgraded
      */
     private String downgradeTo;
+    /**
+     * The permissions of this role compiled into a permission set. Null if it needs to be compiled
+     */
+    @Transient
+    private volatile PermissionSet permissionSet;
 
     /**
      * Create a default role
@@ -73,6 +80,7 @@ public class Role extends Authorization {
      */
     public void addPermission(Permission permission) {
         this.permissions.add(permission);
+        this.permissionSet = null;
     }
 
     /**
@@ -81,6 +89,7 @@ public class Role extends Authorization {
      */
     public void addAllPermissions(Collection<Permission> permissions) {
         this.permissions.addAll(permissions);
+        this.permissionSet = null;
     }
 
     /**
@@ -89,6 +98,7 @@ public class Role extends Authorization {
      */
     public void removePermission(Permission permission) {
         this.permissions.remove(permission);
+        this.permissionSet = null;
     }
 
     /**
@@ -97,6 +107,39 @@ public class Role extends Authorization {
      */
     public void removeAllPermissions(Collection<Permission> permissions) {
         this.permissions.removeAll(permissions);
+        this.permissionSet = null;
+    }
+
+    /**
+     * Get the permissions of this role compiled into a permission set, compiling it if required
+     * @return the compiled permission set
+     */
+    public PermissionSet getPermissionSet() {
+        PermissionSet compiled = permissionSet;
+
+        if (compiled == null) {
+            compiled = PermissionSet.of(permissions);
+            permissionSet = compiled;
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Determine if this role has the provided permission
+     * @param permission the permission to check
+     * @return true if the role has the permission, false if not
+     */
+    public boolean hasPermission(Permission permission) {
+        return getPermissionSet().contains(permission);
+    }
+
+    /**
+     * Discard the compiled permission set when the role is loaded, as the permissions are set after construction
+     */
+    @PostLoad
+    private void resetPermissionSet() {
+        this.permissionSet = null;
     }
 
     /**
@@ -2,9 +2,17 @@ package ie.ul.ethics.scieng.users.repositories;
 
 import ie.ul.ethics.scieng.common.search.SearchableRepository;
 import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,4 +42,53 @@ public interface UserRepository extends CrudRepository<User, String>, Searchable
      * @return the user if found, empty if not
      */
     Optional<User> findByAccount_Email(String email);
+
+    /**
+     * Find a page of users projected directly into the shortened response, without loading the users' roles and permissions
+     * @param pageable the page and sort to retrieve
+     * @return the page of shortened users
+     */
+    @Query(value = "SELECT new ie.ul.ethics.scieng.users.models.UserResponseShortened(u.username, a.email, u.name, u.department, r.name) " +
+            "FROM User u LEFT JOIN u.account a JOIN u.role r",
+            countQuery = "SELECT COUNT(u) FROM User u JOIN u.role r")
+    Page<UserResponseShortened> findAllShortened(Pageable pageable);
+
+    /**
+     * Find a page of the users whose role has the permission with the provided tag, filtering by joining the role
+     * permissions in the query and projecting directly into the shortened response
+     * @param tag the tag of the permission the users must have
+     * @param pageable the page and sort to retrieve
+     * @return the page of shortened users
+     */
+    @Query(value = "SELECT new ie.ul.ethics.scieng.users.models.UserResponseShortened(u.username, a.email, u.name, u.department, r.name) " +
+            "FROM User u LEFT JOIN u.account a JOIN u.role r JOIN r.permissions p WHERE p.tag = ?1",
+            countQuery = "SELECT COUNT(u) FROM User u JOIN u.role r JOIN r.permissions p WHERE p.tag = ?1")
+    Page<UserResponseShortened> findShortenedByPermission(String tag, Pageable pageable);
+
+    /**
+     * Find which of the provided usernames belong to existing users
+     * @param usernames the usernames to check
+     * @return the usernames of the existing users
+     */
+    @Query("SELECT u.username FROM User u WHERE u.username IN ?1")
+    List<String> findUsernamesIn(Collection<String> usernames);
+
+    /**
+     * Find the usernames of the users with the provided role
+     * @param name the name of the role
+     * @return the usernames of the users with the role
+     */
+    @Query("SELECT u.username FROM User u WHERE u.role.name = ?1")
+    List<String> findUsernamesByRole_Name(String name);
+
+    /**
+     * Assign the role to all the users with the provided usernames in a single statement
+     * @param role the role to assign
+     * @param usernames the usernames of the users to assign the role to
+     * @return the number of users updated
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE User u SET u.role = ?1 WHERE u.username IN ?2")
+    int updateRole(Role role, Collection<String> usernames);
 }
@@ -0,0 +1,377 @@
+package ie.ul.ethics.scieng.users.search;
+
+import ie.ul.ethics.scieng.authentication.cache.AccountChangeListener;
+import ie.ul.ethics.scieng.authentication.models.Account;
+import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import ie.ul.ethics.scieng.users.models.authorization.Permission;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
+import ie.ul.ethics.scieng.users.repositories.UserRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class provides an in-memory prefix index over the username, name and email of users for autocomplete suggestions.
+ * The index is held as sorted arrays of keys in an immutable snapshot, so lookups are a binary search without locking.
+ * Updates are copy-on-write, building a new snapshot from the current one and publishing it atomically.
+ *
+ * It also listens for account changes, so that a user is reindexed once a change to their account, such as their email,
+ * commits, and removed if they no longer exist
+ */
+@Component
+@Log4j2
+public class UserPrefixIndex implements AccountChangeListener {
+    /**
+     * The repository the index is built from
+     */
+    private final UserRepository userRepository;
+    /**
+     * The current snapshot of the index
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Create the user prefix index
+     * @param userRepository the repository the index is built from
+     */
+    @Autowired
+    public UserPrefixIndex(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Build the index from all the users in the repository once the application is ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        List<User> users = new ArrayList<>();
+        userRepository.findAll().forEach(users::add);
+
+        rebuild(users);
+        log.info("Built the user prefix index with {} users", users.size());
+    }
+
+    /**
+     * Replace the index with one containing only the provided users
+     * @param users the users to index
+     */
+    public synchronized void rebuild(Iterable<User> users) {
+        Map<String, Entry> entries = new HashMap<>();
+        List<String[]> keys = new ArrayList<>();
+
+        for (User user : users) {
+            Entry entry = new Entry(user);
+            entries.put(entry.username, entry);
+
+            for (String key : entry.keys)
+                keys.add(new String[]{key, entry.username});
+        }
+
+        keys.sort(Snapshot::compare);
+        snapshot = new Snapshot(keys, entries);
+    }
+
+    /**
+     * Add the user to the index, replacing the keys of any previously indexed version of the user
+     * @param user the user to index
+     */
+    public void put(User user) {
+        putAll(Collections.singletonList(user));
+    }
+
+    /**
+     * Add the users to the index in a single copy, replacing the keys of any previously indexed versions of the users
+     * @param users the users to index
+     */
+    public synchronized void putAll(Collection<User> users) {
+        if (users.isEmpty())
+            return;
+
+        Snapshot current = snapshot;
+        Map<String, Entry> entries = new HashMap<>(current.entries);
+        Set<String> replaced = new HashSet<>();
+        List<String[]> added = new ArrayList<>();
+
+        for (User user : users) {
+            Entry entry = new Entry(user);
+            entries.put(entry.username, entry);
+            replaced.add(entry.username);
+
+            for (String key : entry.keys)
+                added.add(new String[]{key, entry.username});
+        }
+
+        added.sort(Snapshot::compare);
+        snapshot = new Snapshot(merge(current, replaced, added), entries);
+    }
+
+    /**
+     * Remove the user with the provided username from the index
+     * @param username the username of the user to remove
+     */
+    public synchronized void remove(String username) {
+        Snapshot current = snapshot;
+
+        if (!current.entries.containsKey(username))
+            return;
+
+        Map<String, Entry> entries = new HashMap<>(current.entries);
+        entries.remove(username);
+
+        snapshot = new Snapshot(merge(current, Collections.singleton(username), Collections.emptyList()), entries);
+    }
+
+    /**
+     * Reload the user whose account has changed and reindex them, as the email of the account is indexed
+     * @param username the username of the changed account
+     */
+    @Override
+    public void accountChanged(String username) {
+        User user = userRepository.findByUsername(username).orElse(null);
+
+        if (user == null)
+            remove(username);
+        else
+            put(user);
+    }
+
+    /**
+     * Find the users with a username, name, word of their name or email starting with the provided prefix
+     * @param prefix the prefix to match, case-insensitive
+     * @param permission the permission the users' roles must have, null to match users with any role
+     * @param limit the maximum number of users to return
+     * @return the matching users, ordered by the matched key
+     */
+    public List<UserResponseShortened> suggest(String prefix, Permission permission, int limit) {
+        Snapshot current = snapshot;
+        String normalised = normalise(prefix);
+        List<UserResponseShortened> found = new ArrayList<>();
+
+        if (normalised.isEmpty() || limit < 1)
+            return found;
+
+        Set<String> seen = new LinkedHashSet<>();
+        String[] keys = current.keys;
+
+        for (int i = current.lowerBound(normalised); i < keys.length && keys[i].startsWith(normalised); i++) {
+            String username = current.owners[i];
+
+            if (seen.add(username)) {
+                Entry entry = current.entries.get(username);
+
+                if (permission == null || (entry.role != null && entry.role.hasPermission(permission))) {
+                    found.add(entry.response());
+
+                    if (found.size() >= limit)
+                        break;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Get the number of users in the index
+     * @return the number of indexed users
+     */
+    public int size() {
+        return snapshot.entries.size();
+    }
+
+    /**
+     * Merge the keys of the current snapshot with the added keys, dropping the keys owned by the removed user
+     * @param current the current snapshot
+     * @param removed the usernames of the users whose keys are dropped
+     * @param added the sorted keys to add as pairs of key and username
+     * @return the merged, sorted keys as pairs of key and username
+     */
+    private static List<String[]> merge(Snapshot current, Set<String> removed, List<String[]> added) {
+        List<String[]> merged = new ArrayList<>(current.keys.length + added.size());
+        int j = 0;
+
+        for (int i = 0; i < current.keys.length; i++) {
+            if (removed.contains(current.owners[i]))
+                continue;
+
+            String[] pair = {current.keys[i], current.owners[i]};
+
+            while (j < added.size() && Snapshot.compare(added.get(j), pair) < 0)
+                merged.add(added.get(j++));
+
+            merged.add(pair);
+        }
+
+        while (j < added.size())
+            merged.add(added.get(j++));
+
+        return merged;
+    }
+
+    /**
+     * Normalise the value into a key
+     * @param value the value to normalise, may be null
+     * @return the normalised key
+     */
+    private static String normalise(String value) {
+        return (value == null) ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * An indexed user
+     */
+    private static final class Entry {
+        /**
+         * The username of the user
+         */
+        private final String username;
+        /**
+         * The user's email
+         */
+        private final String email;
+        /**
+         * The user's name
+         */
+        private final String name;
+        /**
+         * The user's department
+         */
+        private final String department;
+        /**
+         * The user's role
+         */
+        private final Role role;
+        /**
+         * The keys the user is indexed under
+         */
+        private final Set<String> keys = new LinkedHashSet<>();
+
+        /**
+         * Create the entry from the user
+         * @param user the user to index
+         */
+        private Entry(User user) {
+            Account account = user.getAccount();
+
+            this.username = user.getUsername();
+            this.email = (account == null) ? null : account.getEmail();
+            this.name = user.getName();
+            this.department = user.getDepartment();
+            this.role = user.getRole();
+
+            addKey(username);
+            addKey(email);
+            addKey(name);
+
+            if (name != null)
+                Arrays.stream(name.split("\\s+")).forEach(this::addKey);
+        }
+
+        /**
+         * Add the value as a key if it is not empty
+         * @param value the value to add
+         */
+        private void addKey(String value) {
+            String key = normalise(value);
+
+            if (!key.isEmpty())
+                keys.add(key);
+        }
+
+        /**
+         * Create the shortened response of the indexed user
+         * @return the response
+         */
+        private UserResponseShortened response() {
+            return new UserResponseShortened(username, email, name, department, (role == null) ? null : role.getName());
+        }
+    }
+
+    /**
+     * An immutable snapshot of the index
+     */
+    private static final class Snapshot {
+        /**
+         * The empty snapshot
+         */
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyMap());
+
+        /**
+         * The sorted keys
+         */
+        private final String[] keys;
+        /**
+         * The username owning the key at the same position in keys
+         */
+        private final String[] owners;
+        /**
+         * The indexed users keyed by username
+         */
+        private final Map<String, Entry> entries;
+
+        /**
+         * Create the snapshot
+         * @param pairs the sorted pairs of key and username
+         * @param entries the indexed users keyed by username
+         */
+        private Snapshot(List<String[]> pairs, Map<String, Entry> entries) {
+            this.keys = new String[pairs.size()];
+            this.owners = new String[pairs.size()];
+            this.entries = entries;
+
+            for (int i = 0; i < pairs.size(); i++) {
+                String[] pair = pairs.get(i);
+                keys[i] = pair[0];
+                owners[i] = pair[1];
+            }
+        }
+
+        /**
+         * Find the position of the first key that is not less than the prefix
+         * @param prefix the prefix to search for
+         * @return the position of the first key not less than the prefix
+         */
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = keys.length;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (keys[mid].compareTo(prefix) < 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            return low;
+        }
+
+        /**
+         * Compare two pairs of key and username, by key then username
+         * @param a the first pair
+         * @param b the second pair
+         * @return the comparison result
+         */
+        private static int compare(String[] a, String[] b) {
+            int result = a[0].compareTo(b[0]);
+
+            return (result != 0) ? result : a[1].compareTo(b[1]);
+        }
+    }
+}
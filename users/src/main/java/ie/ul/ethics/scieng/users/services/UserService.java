@@ -1,11 +1,18 @@
 package ie.ul.ethics.scieng.users.services;
 
 import ie.ul.ethics.scieng.users.exceptions.AccountNotExistsException;
+import ie.ul.ethics.scieng.users.exceptions.UsersException;
+import ie.ul.ethics.scieng.users.models.BulkUpdateRoleResponse;
 import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import ie.ul.ethics.scieng.users.models.authorization.Permission;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * This interface represents the user service for providing the user's business logic
@@ -17,6 +24,23 @@ public interface UserService {
      */
     List<User> getAllUsers();
 
+    /**
+     * Retrieve a page of the users in the system in their shortened form, optionally only those with the given permission
+     * @param permission the permission the users must have, null to retrieve all users
+     * @param pageable the page and sort to retrieve. May be unpaged to retrieve all matching users
+     * @return the page of shortened users
+     */
+    Page<UserResponseShortened> getUsers(Permission permission, Pageable pageable);
+
+    /**
+     * Suggest users whose username, name or email starts with the provided query, without querying the database
+     * @param query the prefix to match, case-insensitive
+     * @param permission the permission the users must have, null to suggest users with any permission
+     * @param limit the maximum number of users to suggest
+     * @return the list of suggested users
+     */
+    List<UserResponseShortened> suggest(String query, Permission permission, int limit);
+
     /**
      * Load the user with the given username
      * @param username the username of the user to find
@@ -59,6 +83,15 @@ public interface UserService {
      */
     void updateRole(User user, Role role);
 
+    /**
+     * Update the roles of multiple users in one transaction. Users holding a single user role that is assigned to another
+     * user are downgraded
+     * @param roles the map of username to the role to assign to the user
+     * @return the summary of the update
+     * @throws UsersException if a single user role is assigned to more than one user
+     */
+    BulkUpdateRoleResponse updateRoles(Map<String, Role> roles);
+
     /**
      * Search for users with the given specification
      * @param specification the specification to search with
@@ -2,31 +2,41 @@ package ie.ul.ethics.scieng.users.services;
 
 import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.services.AccountService;
+import ie.ul.ethics.scieng.common.transaction.AfterCommit;
+import ie.ul.ethics.scieng.users.cache.UserCache;
 import ie.ul.ethics.scieng.users.config.UserPermissionsConfig;
 import ie.ul.ethics.scieng.users.exceptions.AccountNotExistsException;
+import ie.ul.ethics.scieng.users.exceptions.UsersException;
+import ie.ul.ethics.scieng.users.models.BulkUpdateRoleResponse;
 import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import ie.ul.ethics.scieng.users.models.authorization.Permission;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
 import ie.ul.ethics.scieng.users.repositories.UserRepository;
+import ie.ul.ethics.scieng.users.search.UserPrefixIndex;
 import ie.ul.ethics.scieng.users.authorization.Roles;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class provides the implementation of the UserService interface
  */
 @Service
 @Log4j2
-@CacheConfig(cacheNames = "users")
 public class UserServiceImpl implements UserService {
     /**
      * The account service for retrieving accounts
@@ -43,17 +53,32 @@ public class UserServiceImpl implements UserService {
      */
     private final UserPermissionsConfig userPermissionsConfig;
 
+    /**
+     * The cache of loaded users
+     */
+    private final UserCache userCache;
+
+    /**
+     * The prefix index of users used for suggestions
+     */
+    private final UserPrefixIndex prefixIndex;
+
     /**
      * Construct a UserService with the provided dependencies
      * @param accountService the service for loading accounts
      * @param userRepository the repository for storing users
      * @param userPermissionsConfig the configuration for user permissions
+     * @param userCache the cache of loaded users
+     * @param prefixIndex the prefix index of users used for suggestions
      */
     @Autowired
-    public UserServiceImpl(AccountService accountService, UserRepository userRepository, UserPermissionsConfig userPermissionsConfig) {
+    public UserServiceImpl(AccountService accountService, UserRepository userRepository, UserPermissionsConfig userPermissionsConfig,
+                           UserCache userCache, UserPrefixIndex prefixIndex) {
         this.accountService = accountService;
         this.userRepository = userRepository;
         this.userPermissionsConfig = userPermissionsConfig;
+        this.userCache = userCache;
+        this.prefixIndex = prefixIndex;
     }
 
     /**
@@ -62,13 +87,42 @@ public class UserServiceImpl implements UserService {
      * @return the list of users
      */
     @Override
-    @Cacheable(value = "allusers")
     public List<User> getAllUsers() {
-        Iterable<User> allUsers = userRepository.findAll();
-        List<User> users = new ArrayList<>();
-        allUsers.forEach(users::add);
+        return userCache.getAll(() -> {
+            List<User> users = new ArrayList<>();
+            userRepository.findAll().forEach(users::add);
+
+            return users;
+        });
+    }
+
+    /**
+     * Retrieve a page of the users in the system in their shortened form, optionally only those with the given permission.
+     * The filtering and paging are done in the database and the pages are cached until a user changes
+     *
+     * @param permission the permission the users must have, null to retrieve all users
+     * @param pageable   the page and sort to retrieve. May be unpaged to retrieve all matching users
+     * @return the page of shortened users
+     */
+    @Override
+    public Page<UserResponseShortened> getUsers(Permission permission, Pageable pageable) {
+        String tag = (permission == null) ? null : permission.getTag();
+
+        return userCache.getPage(tag, pageable, () -> (tag == null) ?
+                userRepository.findAllShortened(pageable) : userRepository.findShortenedByPermission(tag, pageable));
+    }
 
-        return users;
+    /**
+     * Suggest users whose username, name or email starts with the provided query, without querying the database
+     *
+     * @param query      the prefix to match, case-insensitive
+     * @param permission the permission the users must have, null to suggest users with any permission
+     * @param limit      the maximum number of users to suggest
+     * @return the list of suggested users
+     */
+    @Override
+    public List<UserResponseShortened> suggest(String query, Permission permission, int limit) {
+        return prefixIndex.suggest(query, permission, limit);
     }
 
     /**
@@ -78,7 +132,6 @@ public class UserServiceImpl implements UserService {
      * @return the user if found, null if not
      */
     @Override
-    @Cacheable(value = "user")
     public User loadUser(String username) {
         return loadUser(username, false);
     }
@@ -91,10 +144,11 @@ public class UserServiceImpl implements UserService {
      * @return the user if found, null if not
      */
     @Override
-    @Cacheable(value = "user")
     public User loadUser(String username, boolean email) {
-        Optional<User> optional = (email) ? userRepository.findByAccount_Email(username):userRepository.findByUsername(username);
-        return optional.orElse(null);
+        if (email)
+            return userCache.getByEmail(username, key -> userRepository.findByAccount_Email(key).orElse(null));
+        else
+            return userCache.get(username, key -> userRepository.findByUsername(key).orElse(null));
     }
 
     /**
@@ -127,10 +181,6 @@ public class UserServiceImpl implements UserService {
      * @throws IllegalStateException     if the account is not created using the {@link User#User(String, String, String)} constructor
      */
     @Override
-    @Caching(evict = {
-            @CacheEvict(value = "user", allEntries = true),
-            @CacheEvict(value = "allusers", allEntries = true)
-    })
     public User createUser(User user) {
         String username = user.getUsername();
         Account account = user.getAccount();
@@ -147,7 +197,13 @@ public class UserServiceImpl implements UserService {
         user.setAccount(account);
         checkUserRole(user);
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        AfterCommit.run(() -> {
+            userCache.evict(username);
+            prefixIndex.put(user);
+        });
+
+        return saved;
     }
 
     /**
@@ -159,10 +215,6 @@ public class UserServiceImpl implements UserService {
      * @throws AccountNotExistsException if there is no saved account for this user
      */
     @Override
-    @Caching(evict = {
-            @CacheEvict(value = "user", allEntries = true),
-            @CacheEvict(value = "allusers", allEntries = true)
-    })
     public void updateUser(User user) {
         String username = user.getUsername();
 
@@ -176,45 +228,122 @@ public class UserServiceImpl implements UserService {
         }
 
         userRepository.save(user);
+        AfterCommit.run(() -> {
+            userCache.evict(username);
+            prefixIndex.put(user);
+        });
     }
 
     /**
-     * Downgrade any users with the specified role to the role specified by downgrade
+     * Downgrade any users with the specified role to the role specified by downgrade in a single update statement
      * @param role the role to match users by
-     *
+     * @param excluded the usernames of the users not to downgrade, i.e. the users being assigned the role
+     * @return the usernames of the downgraded users
      */
-    private void downgradeRoles(Role role) {
+    private List<String> downgradeRoles(Role role, Collection<String> excluded) {
         String name = role.getName();
         Role downgrade = Roles.getRole(role.getDowngradeTo());
-        String downgradeName = downgrade.getName();
-        List<User> users = userRepository.findByRole_Name(name);
+        List<String> usernames = new ArrayList<>(userRepository.findUsernamesByRole_Name(name));
+        usernames.removeAll(excluded);
 
-        for (User u : users) {
-            log.info("Can only have one user with role {}, so downgrading user {} to role {}", name, u.getUsername(), downgradeName);
-            u.setRole(downgrade);
-            userRepository.save(u);
+        if (!usernames.isEmpty()) {
+            log.info("Can only have one user with role {}, so downgrading users {} to role {}", name, usernames, downgrade.getName());
+            userRepository.updateRole(downgrade, usernames);
         }
+
+        return usernames;
+    }
+
+    /**
+     * Reload the provided users and update them in the prefix index
+     * @param usernames the usernames of the users to reindex
+     */
+    private void reindex(Collection<String> usernames) {
+        if (usernames.isEmpty())
+            return;
+
+        List<User> users = new ArrayList<>();
+        userRepository.findAllById(usernames).forEach(users::add);
+        prefixIndex.putAll(users);
     }
 
     /**
      * This method updates the user's role. If the role is chair and a chair already exists, the existing chair is demoted
-     * to a committee member
+     * to a committee member. The affected users are evicted and reindexed once the transaction commits, since a
+     * concurrent lookup before the commit would otherwise re-cache their old roles
      *
      * @param user the user to update
      * @param role the role to change
      */
     @Override
-    @Caching(evict = {
-            @CacheEvict(value = "user", allEntries = true),
-            @CacheEvict(value = "allusers", allEntries = true)
-    })
+    @Transactional
     public void updateRole(User user, Role role) {
-        if (role.isSingleUser())
-            downgradeRoles(role);
+        String username = user.getUsername();
+        List<String> downgraded = (role.isSingleUser()) ?
+                downgradeRoles(role, Collections.singleton(username)) : Collections.emptyList();
 
         user.setRole(role);
 
         userRepository.save(user);
+        AfterCommit.run(() -> {
+            userCache.evict(username);
+            downgraded.forEach(userCache::evict);
+            prefixIndex.put(user);
+            reindex(downgraded);
+        });
+    }
+
+    /**
+     * Update the roles of multiple users in one transaction, using a single update statement per role. Users holding a
+     * single user role that is assigned to another user are downgraded. The user caches are cleared and the changed
+     * users reindexed once the transaction commits
+     *
+     * @param roles the map of username to the role to assign to the user
+     * @return the summary of the update
+     * @throws UsersException if a single user role is assigned to more than one user
+     */
+    @Override
+    @Transactional
+    public BulkUpdateRoleResponse updateRoles(Map<String, Role> roles) {
+        Set<String> existing = new HashSet<>(userRepository.findUsernamesIn(roles.keySet()));
+        List<String> notFound = new ArrayList<>();
+        Map<Role, List<String>> assignments = new LinkedHashMap<>();
+
+        roles.forEach((username, role) -> {
+            if (existing.contains(username))
+                assignments.computeIfAbsent(role, r -> new ArrayList<>()).add(username);
+            else
+                notFound.add(username);
+        });
+
+        List<String> downgraded = new ArrayList<>();
+        int updated = 0;
+
+        for (Map.Entry<Role, List<String>> assignment : assignments.entrySet()) {
+            Role role = assignment.getKey();
+            List<String> usernames = assignment.getValue();
+
+            if (role.isSingleUser()) {
+                if (usernames.size() > 1)
+                    throw new UsersException("The role " + role.getName() + " can only be assigned to a single user");
+
+                downgraded.addAll(downgradeRoles(role, usernames));
+            }
+        }
+
+        for (Map.Entry<Role, List<String>> assignment : assignments.entrySet())
+            updated += userRepository.updateRole(assignment.getKey(), assignment.getValue());
+
+        Set<String> changed = new HashSet<>(existing);
+        changed.addAll(downgraded);
+        AfterCommit.run(() -> {
+            userCache.clear();
+            reindex(changed);
+        });
+
+        log.info("Updated the roles of {} users in bulk, downgrading {}", updated, downgraded);
+
+        return new BulkUpdateRoleResponse(updated, notFound, downgraded);
     }
 
     /**
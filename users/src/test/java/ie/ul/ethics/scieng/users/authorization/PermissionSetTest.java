@@ -0,0 +1,83 @@
+package ie.ul.ethics.scieng.users.authorization;
+
+import ie.ul.ethics.scieng.users.models.authorization.Permission;
+import ie.ul.ethics.scieng.users.models.authorization.Role;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class provides unit tests for the PermissionSet and its use by roles
+ */
+public class PermissionSetTest {
+    /**
+     * Tests that each defined permission is assigned a distinct bit
+     */
+    @Test
+    public void shouldAssignDistinctBits() {
+        long combined = 0L;
+
+        for (Permission permission : Permissions.getPermissions()) {
+            long bit = Permissions.bitOf(permission);
+
+            assertEquals(1, Long.bitCount(bit));
+            assertEquals(0L, combined & bit);
+            combined |= bit;
+        }
+    }
+
+    /**
+     * Tests that a role's permission set agrees with its collection of permissions
+     */
+    @Test
+    public void shouldMatchRolePermissions() {
+        for (Role role : Roles.getRoles()) {
+            for (Permission permission : Permissions.getPermissions())
+                assertEquals(role.getPermissions().contains(permission), role.hasPermission(permission));
+        }
+    }
+
+    /**
+     * Tests that a persisted copy of a defined permission maps to the same bit
+     */
+    @Test
+    public void shouldMatchPersistedPermissionByName() {
+        Permission persisted = new Permission(1L, Permissions.ADMIN.getName(), Permissions.ADMIN.getDescription());
+
+        assertEquals(Permissions.bitOf(Permissions.ADMIN), Permissions.bitOf(persisted));
+        assertTrue(Roles.ADMINISTRATOR.hasPermission(persisted));
+    }
+
+    /**
+     * Tests that permissions that are not defined are matched by equality
+     */
+    @Test
+    public void shouldMatchUndefinedPermissions() {
+        Permission custom = new Permission(null, "Custom", "A permission that is not defined");
+        Role role = new Role(null, "Custom Role", "A role with a custom permission", List.of(custom, Permissions.ADMIN));
+
+        assertEquals(0L, Permissions.bitOf(custom));
+        assertTrue(role.hasPermission(custom));
+        assertTrue(role.getPermissionSet().containsAll(PermissionSet.of(List.of(custom, Permissions.ADMIN))));
+        assertFalse(role.getPermissionSet().containsAll(PermissionSet.of(List.of(custom, Permissions.GRANT_PERMISSIONS))));
+        assertTrue(role.getPermissionSet().containsAny(PermissionSet.of(List.of(custom, Permissions.GRANT_PERMISSIONS))));
+    }
+
+    /**
+     * Tests that the permission set is recompiled when the role's permissions change
+     */
+    @Test
+    public void shouldRecompileWhenPermissionsChange() {
+        Role role = new Role(null, "Role", "A test role", List.of(Permissions.ADMIN));
+
+        assertFalse(role.hasPermission(Permissions.EXPORT_APPLICATIONS));
+
+        role.addPermission(Permissions.EXPORT_APPLICATIONS);
+        assertTrue(role.hasPermission(Permissions.EXPORT_APPLICATIONS));
+
+        role.removePermission(Permissions.EXPORT_APPLICATIONS);
+        assertFalse(role.hasPermission(Permissions.EXPORT_APPLICATIONS));
+    }
+}
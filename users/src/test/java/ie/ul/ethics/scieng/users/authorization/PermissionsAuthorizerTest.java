@@ -1,5 +1,6 @@
 package ie.ul.ethics.scieng.users.authorization;
 
+import ie.ul.ethics.scieng.users.config.PermissionsAuthorizationConfigurer;
 import ie.ul.ethics.scieng.users.config.UserPermissionsConfig;
 import ie.ul.ethics.scieng.users.models.User;
 import ie.ul.ethics.scieng.users.services.UserServiceTest;
@@ -205,4 +206,45 @@ public class PermissionsAuthorizerTest {
 
         assertEquals(expected, returned);
     }
+
+    /**
+     * Tests that the permissions for a request method are resolved, falling back to those for all request methods
+     */
+    @Test
+    public void shouldGetRequiredPermissionsForMethod() {
+        List<RequiredPermissions> put = permissionsAuthorizer.permissionsRequired("/grant/permissions/user", "PUT");
+        List<RequiredPermissions> get = permissionsAuthorizer.permissionsRequired("/grant/permissions/user", "GET");
+        List<RequiredPermissions> all = permissionsAuthorizer.permissionsRequired("/test/auth/admin/account", "DELETE");
+
+        assertEquals(List.of(new RequiredPermissions(List.of(Permissions.GRANT_PERMISSIONS), true)), put);
+        assertNull(get);
+        assertEquals(List.of(new RequiredPermissions(Permissions.ADMIN)), all);
+        assertSame(put, permissionsAuthorizer.permissionsRequired("/grant/permissions/user/", "PUT")); // the decision is cached
+    }
+
+    /**
+     * Tests that repeated separators in the path are normalised before matching
+     */
+    @Test
+    public void shouldNormalisePath() {
+        User user = UserServiceTest.createTestUser();
+
+        assertFalse(permissionsAuthorizer.authorise("//test/auth//admin/account", "GET", user));
+    }
+
+    /**
+     * Tests that paths configured after the authorizer is retrieved from the configurer are applied
+     */
+    @Test
+    public void shouldApplyPathsConfiguredAfterFirstUse() {
+        PermissionsAuthorizationConfigurer configurer = new PermissionsAuthorizationConfigurer();
+        PermissionsAuthorizer authorizer = configurer.getAuthorizer();
+        User user = UserServiceTest.createTestUser();
+
+        assertTrue(authorizer.authorise(TEST_ANT_PATH1, "GET", user));
+
+        configurer.requireAllPermissions(TEST_ANT_PATH1, Permissions.ADMIN);
+
+        assertFalse(authorizer.authorise(TEST_ANT_PATH1, "GET", user));
+    }
 }
@@ -2,6 +2,7 @@ package ie.ul.ethics.scieng.users.controllers;
 
 import ie.ul.ethics.scieng.authentication.jwt.AuthenticationInformation;
 import ie.ul.ethics.scieng.users.exceptions.AccountNotExistsException;
+import ie.ul.ethics.scieng.users.exceptions.UsersException;
 import ie.ul.ethics.scieng.users.models.*;
 import ie.ul.ethics.scieng.users.models.authorization.Permission;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
@@ -30,12 +31,17 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -88,20 +94,16 @@ public class UserControllerTest {
      */
     @Test
     public void shouldGetAllUsers() throws Exception {
-        List<User> users = new ArrayList<>();
+        List<UserResponseShortened> response = new ArrayList<>();
 
         for (int i = 0; i < 5; i++) {
             User user = UserServiceTest.createTestUser();
             user.setName("User " + i);
-            users.add(user);
+            response.add(new UserResponseShortened(user));
         }
 
-        given(userService.getAllUsers())
-                .willReturn(users);
-
-        List<UserResponseShortened> response = users.stream()
-                .map(UserResponseShortened::new)
-                .collect(Collectors.toList());
+        given(userService.getUsers(null, Pageable.unpaged()))
+                .willReturn(new PageImpl<>(response));
 
         String result = JSON.convertJSON(response);
 
@@ -110,34 +112,25 @@ public class UserControllerTest {
                 .andExpect(content().contentType(MEDIA_TYPE))
                 .andExpect(content().json(result));
 
-        verify(userService).getAllUsers();
+        verify(userService).getUsers(null, Pageable.unpaged());
     }
 
     /**
-     * This test tests that all users should be retrieved
+     * This test tests that the users with a permission should be retrieved
      */
     @Test
     public void shouldGetAllUsersWithPermission() throws Exception {
-        List<User> users = new ArrayList<>();
-        List<User> returnedUsers = new ArrayList<>();
+        List<UserResponseShortened> response = new ArrayList<>();
 
-        for (int i = 0; i < 5; i++) {
+        for (int i = 3; i < 5; i++) {
             User user = UserServiceTest.createTestUser();
             user.setName("User " + i);
-            users.add(user);
-
-            if (i >= 3) {
-                user.setRole(Roles.COMMITTEE_MEMBER);
-                returnedUsers.add(user);
-            }
+            user.setRole(Roles.COMMITTEE_MEMBER);
+            response.add(new UserResponseShortened(user));
         }
 
-        given(userService.getAllUsers())
-                .willReturn(users);
-
-        List<UserResponseShortened> response = returnedUsers.stream()
-                .map(UserResponseShortened::new)
-                .collect(Collectors.toList());
+        given(userService.getUsers(Permissions.REVIEW_APPLICATIONS, Pageable.unpaged()))
+                .willReturn(new PageImpl<>(response));
 
         String result = JSON.convertJSON(response);
 
@@ -147,7 +140,95 @@ public class UserControllerTest {
                 .andExpect(content().contentType(MEDIA_TYPE))
                 .andExpect(content().json(result));
 
-        verify(userService).getAllUsers();
+        verify(userService).getUsers(Permissions.REVIEW_APPLICATIONS, Pageable.unpaged());
+    }
+
+    /**
+     * This test tests that a page of users with a permission should be retrieved when a page is requested
+     */
+    @Test
+    public void shouldGetPageOfUsersWithPermission() throws Exception {
+        User user = UserServiceTest.createTestUser();
+        user.setRole(Roles.COMMITTEE_MEMBER);
+        List<UserResponseShortened> content = List.of(new UserResponseShortened(user));
+        Pageable pageable = PageRequest.of(1, 10, Sort.by(Sort.Direction.DESC, "name"));
+
+        given(userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable))
+                .willReturn(new PageImpl<>(content, pageable, 11));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("content", content);
+        result.put("totalElements", 11);
+        result.put("number", 1);
+
+        mockMvc.perform(get(createApiPath(Endpoint.USERS))
+                        .param("permission", Permissions.REVIEW_APPLICATIONS.getTag())
+                        .param("page", "1")
+                        .param("size", "10")
+                        .param("sort", "name")
+                        .param("direction", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MEDIA_TYPE))
+                .andExpect(content().json(JSON.convertJSON(result)));
+
+        verify(userService).getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+    }
+
+    /**
+     * This test tests that users are suggested from the service and the limit is capped
+     */
+    @Test
+    public void shouldSuggestUsers() throws Exception {
+        User user = UserServiceTest.createTestUser();
+        user.setRole(Roles.COMMITTEE_MEMBER);
+        List<UserResponseShortened> response = List.of(new UserResponseShortened(user));
+
+        given(userService.suggest("us", Permissions.REVIEW_APPLICATIONS, 50))
+                .willReturn(response);
+
+        mockMvc.perform(get(createApiPath(Endpoint.USERS, "suggest"))
+                        .param("query", "us")
+                        .param("permission", Permissions.REVIEW_APPLICATIONS.getTag())
+                        .param("limit", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MEDIA_TYPE))
+                .andExpect(content().json(JSON.convertJSON(response)));
+
+        verify(userService).suggest("us", Permissions.REVIEW_APPLICATIONS, 50);
+    }
+
+    /**
+     * This test tests that a page of users cannot be sorted by a field that is not sortable
+     */
+    @Test
+    public void shouldNotGetPageWithInvalidSort() throws Exception {
+        Map<String, Object> result = new HashMap<>();
+        result.put(ERROR, INVALID_SORT);
+
+        mockMvc.perform(get(createApiPath(Endpoint.USERS))
+                        .param("page", "0")
+                        .param("sort", "password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(JSON.convertJSON(result)));
+
+        verifyNoInteractions(userService);
+    }
+
+    /**
+     * This test tests that a page larger than the maximum page size cannot be requested
+     */
+    @Test
+    public void shouldNotGetPageLargerThanMaximum() throws Exception {
+        Map<String, Object> result = new HashMap<>();
+        result.put(ERROR, INVALID_SORT);
+
+        mockMvc.perform(get(createApiPath(Endpoint.USERS))
+                        .param("page", "0")
+                        .param("size", "101"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(JSON.convertJSON(result)));
+
+        verifyNoInteractions(userService);
     }
 
     /**
@@ -574,4 +655,54 @@ public class UserControllerTest {
                 .andExpect(content().contentType(MEDIA_TYPE))
                 .andExpect(content().json(json));
     }
+
+    /**
+     * This method tests that the roles of multiple users can be updated in one request
+     */
+    @Test
+    public void shouldUpdateUserRolesInBulk() throws Exception {
+        BulkUpdateRoleRequest request = new BulkUpdateRoleRequest(List.of(
+                new UpdateRoleRequest(USERNAME, Roles.CHAIR.getId()),
+                new UpdateRoleRequest("unknown", Roles.COMMITTEE_MEMBER.getId())
+        ));
+        Map<String, Role> roles = new LinkedHashMap<>();
+        roles.put(USERNAME, Roles.CHAIR);
+        roles.put("unknown", Roles.COMMITTEE_MEMBER);
+
+        BulkUpdateRoleResponse response = new BulkUpdateRoleResponse(1, List.of("unknown"), List.of("oldchair"));
+
+        given(userService.updateRoles(roles))
+                .willReturn(response);
+
+        mockMvc.perform(put(createApiPath(Endpoint.USERS, "user", "role", "bulk"))
+                        .contentType(MEDIA_TYPE)
+                        .content(JSON.convertJSON(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MEDIA_TYPE))
+                .andExpect(content().json(JSON.convertJSON(response)));
+
+        verify(userService).updateRoles(roles);
+    }
+
+    /**
+     * This method tests that a single user role assigned to multiple users in bulk results in a bad request
+     */
+    @Test
+    public void shouldRejectBulkSingleUserRoleForMultipleUsers() throws Exception {
+        BulkUpdateRoleRequest request = new BulkUpdateRoleRequest(List.of(
+                new UpdateRoleRequest(USERNAME, Roles.CHAIR.getId()),
+                new UpdateRoleRequest("other", Roles.CHAIR.getId())
+        ));
+        Map<String, Object> error = new HashMap<>();
+        error.put(ERROR, ROLE_SINGLE_USER);
+
+        given(userService.updateRoles(any()))
+                .willThrow(new UsersException("single user"));
+
+        mockMvc.perform(put(createApiPath(Endpoint.USERS, "user", "role", "bulk"))
+                        .contentType(MEDIA_TYPE)
+                        .content(JSON.convertJSON(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(JSON.convertJSON(error)));
+    }
 }
@@ -0,0 +1,147 @@
+package ie.ul.ethics.scieng.users.search;
+
+import ie.ul.ethics.scieng.authentication.models.Account;
+import ie.ul.ethics.scieng.users.authorization.Permissions;
+import ie.ul.ethics.scieng.users.authorization.Roles;
+import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
+import ie.ul.ethics.scieng.users.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * This class provides unit tests for the UserPrefixIndex
+ */
+public class UserPrefixIndexTest {
+    /**
+     * The mocked repository the index reloads users from
+     */
+    private UserRepository userRepository;
+    /**
+     * The index being tested
+     */
+    private UserPrefixIndex index;
+
+    /**
+     * Create a user for testing
+     * @param username the username of the user
+     * @param name the name of the user
+     * @param email the email of the user
+     * @return the created user
+     */
+    private static User createUser(String username, String name, String email) {
+        User user = new User(username, name, "Department");
+        user.setAccount(new Account(username, email, "password", true));
+        user.setRole(Roles.APPLICANT);
+
+        return user;
+    }
+
+    /**
+     * Get the usernames of the suggested users
+     * @param users the suggested users
+     * @return the usernames
+     */
+    private static List<String> usernames(List<UserResponseShortened> users) {
+        return users.stream()
+                .map(UserResponseShortened::getUsername)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Create the index being tested with some users
+     */
+    @BeforeEach
+    public void setup() {
+        userRepository = mock(UserRepository.class);
+        index = new UserPrefixIndex(userRepository);
+        index.rebuild(List.of(
+                createUser("jdoe", "John Doe", "john@email.com"),
+                createUser("jsmith", "Jane Smith", "jane@email.com"),
+                createUser("asmith", "Adam Smith", "adam@email.com")
+        ));
+    }
+
+    /**
+     * Tests that a user is reindexed when their account changes, such as after an email change, and removed if they no
+     * longer exist
+     */
+    @Test
+    public void shouldReindexOnAccountChange() {
+        given(userRepository.findByUsername("jdoe"))
+                .willReturn(Optional.of(createUser("jdoe", "John Doe", "doe@email.com")));
+
+        index.accountChanged("jdoe");
+
+        assertEquals(List.of("jdoe"), usernames(index.suggest("doe@", null, 10)));
+        assertTrue(index.suggest("john@", null, 10).isEmpty());
+
+        given(userRepository.findByUsername("jdoe"))
+                .willReturn(Optional.empty());
+
+        index.accountChanged("jdoe");
+
+        assertTrue(index.suggest("jdoe", null, 10).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Tests that users are suggested by username, name, word of name and email, case-insensitively
+     */
+    @Test
+    public void shouldSuggestByPrefix() {
+        assertEquals(List.of("jsmith", "jdoe"), usernames(index.suggest("J", null, 10)));
+        assertEquals(List.of("jsmith"), usernames(index.suggest("jane@", null, 10)));
+        assertEquals(List.of("asmith", "jsmith"), usernames(index.suggest("smi", null, 10)));
+        assertEquals(List.of("jdoe"), usernames(index.suggest("john d", null, 10)));
+        assertTrue(index.suggest("x", null, 10).isEmpty());
+        assertTrue(index.suggest(" ", null, 10).isEmpty());
+    }
+
+    /**
+     * Tests that the number of suggestions is limited
+     */
+    @Test
+    public void shouldLimitSuggestions() {
+        assertEquals(1, index.suggest("j", null, 1).size());
+    }
+
+    /**
+     * Tests that a user updated in the index is only found under its new keys
+     */
+    @Test
+    public void shouldUpdateUser() {
+        index.put(createUser("jdoe", "Bob Jones", "bob@email.com"));
+
+        assertEquals(List.of("jsmith"), usernames(index.suggest("ja", null, 10)));
+        assertTrue(index.suggest("john", null, 10).isEmpty());
+        assertEquals(List.of("jdoe"), usernames(index.suggest("bob", null, 10)));
+        assertEquals(3, index.size());
+
+        index.put(createUser("bnew", "Bea New", "bea@email.com"));
+        assertEquals(List.of("bnew", "jdoe"), usernames(index.suggest("b", null, 10)));
+
+        index.remove("bnew");
+        assertEquals(List.of("jdoe"), usernames(index.suggest("b", null, 10)));
+    }
+
+    /**
+     * Tests that suggestions can be filtered by permission
+     */
+    @Test
+    public void shouldFilterByPermission() {
+        User reviewer = createUser("reviewer", "Jo Reviewer", "jo@email.com");
+        reviewer.setRole(Roles.COMMITTEE_MEMBER);
+        index.put(reviewer);
+
+        assertEquals(List.of("reviewer"), usernames(index.suggest("j", Permissions.REVIEW_APPLICATIONS, 10)));
+    }
+}
@@ -4,22 +4,36 @@ import ie.ul.ethics.scieng.authentication.jwt.JWT;
 import ie.ul.ethics.scieng.authentication.jwt.JwtRequestFilter;
 import ie.ul.ethics.scieng.authentication.models.Account;
 import ie.ul.ethics.scieng.authentication.services.AccountService;
+import ie.ul.ethics.scieng.users.models.BulkUpdateRoleResponse;
 import ie.ul.ethics.scieng.users.models.User;
+import ie.ul.ethics.scieng.users.models.UserResponseShortened;
 import ie.ul.ethics.scieng.users.models.authorization.Role;
 import ie.ul.ethics.scieng.users.repositories.UserRepository;
 import ie.ul.ethics.scieng.users.test.config.TestConfiguration;
+import ie.ul.ethics.scieng.users.cache.UserCache;
 import ie.ul.ethics.scieng.users.exceptions.AccountNotExistsException;
+import ie.ul.ethics.scieng.users.exceptions.UsersException;
+import ie.ul.ethics.scieng.users.authorization.Permissions;
 import ie.ul.ethics.scieng.users.authorization.Roles;
 import ie.ul.ethics.scieng.test.utils.TestApplication;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static ie.ul.ethics.scieng.test.utils.constants.Authentication.*;
@@ -58,6 +72,24 @@ public class UserServiceTest {
      */
     @Autowired
     private UserService userService;
+    /**
+     * The user cache, cleared before each test as the context is shared between tests
+     */
+    @Autowired
+    private UserCache userCache;
+    /**
+     * The transaction manager used to run updates in a transaction
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Clear the user cache so that each test loads from the mocked repository
+     */
+    @BeforeEach
+    public void clearCache() {
+        userCache.clear();
+    }
 
     /**
      * Creates a test account
@@ -113,6 +145,47 @@ public class UserServiceTest {
         verify(userRepository).findByUsername(USERNAME);
     }
 
+    /**
+     * This method tests that a loaded user is cached and cached copies are not affected by changes to returned users
+     */
+    @Test
+    public void shouldCacheLoadedUser() {
+        User user = createTestUser();
+
+        given(userRepository.findByUsername(USERNAME))
+                .willReturn(Optional.of(user));
+
+        User first = userService.loadUser(USERNAME);
+        first.setName("Modified");
+        User second = userService.loadUser(USERNAME);
+        User byEmail = userService.loadUser(EMAIL, true);
+
+        assertEquals(user, second);
+        assertEquals(user, byEmail);
+        assertNotSame(first, second);
+        verify(userRepository).findByUsername(USERNAME);
+        verify(userRepository, times(0)).findByAccount_Email(EMAIL);
+    }
+
+    /**
+     * This method tests that updating a user evicts it from the cache
+     */
+    @Test
+    public void shouldEvictUpdatedUser() {
+        User user = createTestUser();
+
+        given(userRepository.findByUsername(USERNAME))
+                .willReturn(Optional.of(user));
+        given(accountService.getAccount(USERNAME))
+                .willReturn(user.getAccount());
+
+        userService.loadUser(USERNAME);
+        userService.updateUser(user);
+        userService.loadUser(USERNAME);
+
+        verify(userRepository, times(2)).findByUsername(USERNAME);
+    }
+
     /**
      * This method tests that a user should be loaded by email successfully
      */
@@ -297,30 +370,20 @@ public class UserServiceTest {
      */
     private void testUpdateRoleDowngrade(Role role) {
         String name = role.getName();
-
-        List<User> userList = new ArrayList<>();
-
-        for (int i = 0; i < 2; i++) {
-            User user = createTestUser();
-            user.setRole(Roles.CHAIR);
-            userList.add(user);
-        }
-
+        List<String> usernames = List.of("chair0", "chair1");
         User user = createTestUser();
 
-        given(userRepository.findByRole_Name(name))
-                .willReturn(userList);
+        given(userRepository.findUsernamesByRole_Name(name))
+                .willReturn(usernames);
+        given(userRepository.findAllById(usernames))
+                .willReturn(Collections.emptyList());
 
         userService.updateRole(user, role);
 
         Assertions.assertEquals(user.getRole(), role);
 
-        for (User u : userList) {
-            assertEquals(u.getRole(), Roles.COMMITTEE_MEMBER);
-            verify(userRepository, times(userList.size())).save(u);
-        }
-
-        verify(userRepository).findByRole_Name(name);
+        verify(userRepository).findUsernamesByRole_Name(name);
+        verify(userRepository).updateRole(Roles.COMMITTEE_MEMBER, usernames);
         verify(userRepository).save(user);
     }
 
@@ -332,4 +395,109 @@ public class UserServiceTest {
     public void shouldUpdateRoleToChair() {
         testUpdateRoleDowngrade(Roles.CHAIR);
     }
+
+    /**
+     * This method tests that users with a permission are filtered by the repository query and the page is cached until
+     * a user changes
+     */
+    @Test
+    public void shouldGetCachedPageOfUsersWithPermission() {
+        User user = createTestUser();
+        user.setRole(Roles.COMMITTEE_MEMBER);
+        Pageable pageable = PageRequest.of(0, 10);
+        String tag = Permissions.REVIEW_APPLICATIONS.getTag();
+
+        given(userRepository.findShortenedByPermission(tag, pageable))
+                .willReturn(new PageImpl<>(List.of(new UserResponseShortened(user)), pageable, 1));
+        given(accountService.getAccount(USERNAME))
+                .willReturn(user.getAccount());
+
+        Page<UserResponseShortened> first = userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+        Page<UserResponseShortened> second = userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+
+        assertEquals(first.getContent(), second.getContent());
+        assertEquals(1, second.getTotalElements());
+        verify(userRepository).findShortenedByPermission(tag, pageable);
+        verify(userRepository, never()).findAll();
+
+        userService.updateRole(user, Roles.COMMITTEE_MEMBER);
+        userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+
+        verify(userRepository, times(2)).findShortenedByPermission(tag, pageable);
+    }
+
+    /**
+     * This method tests that a role change only evicts the cached users once the transaction commits, so that a lookup
+     * made before the commit cannot re-cache the old role
+     */
+    @Test
+    public void shouldEvictUpdatedRoleAfterCommit() {
+        User user = createTestUser();
+        user.setRole(Roles.COMMITTEE_MEMBER);
+        Pageable pageable = PageRequest.of(0, 10);
+        String tag = Permissions.REVIEW_APPLICATIONS.getTag();
+
+        given(userRepository.findShortenedByPermission(tag, pageable))
+                .willReturn(new PageImpl<>(List.of(new UserResponseShortened(user)), pageable, 1));
+
+        userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userService.updateRole(user, Roles.CHAIR);
+            userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+
+            verify(userRepository).findShortenedByPermission(tag, pageable);
+        });
+
+        userService.getUsers(Permissions.REVIEW_APPLICATIONS, pageable);
+
+        verify(userRepository, times(2)).findShortenedByPermission(tag, pageable);
+    }
+
+    /**
+     * This method tests that the roles of multiple users are updated with one statement per role and a summary returned
+     */
+    @Test
+    public void shouldUpdateRolesInBulk() {
+        Map<String, Role> roles = new LinkedHashMap<>();
+        roles.put("member0", Roles.COMMITTEE_MEMBER);
+        roles.put("member1", Roles.COMMITTEE_MEMBER);
+        roles.put("newchair", Roles.CHAIR);
+        roles.put("unknown", Roles.COMMITTEE_MEMBER);
+
+        given(userRepository.findUsernamesIn(roles.keySet()))
+                .willReturn(List.of("member0", "member1", "newchair"));
+        given(userRepository.findUsernamesByRole_Name(Roles.CHAIR.getName()))
+                .willReturn(List.of("oldchair"));
+        given(userRepository.updateRole(Roles.COMMITTEE_MEMBER, List.of("member0", "member1")))
+                .willReturn(2);
+        given(userRepository.updateRole(Roles.CHAIR, List.of("newchair")))
+                .willReturn(1);
+        given(userRepository.findAllById(any()))
+                .willReturn(Collections.emptyList());
+
+        BulkUpdateRoleResponse response = userService.updateRoles(roles);
+
+        assertEquals(new BulkUpdateRoleResponse(3, List.of("unknown"), List.of("oldchair")), response);
+        verify(userRepository).updateRole(Roles.COMMITTEE_MEMBER, List.of("oldchair"));
+        verify(userRepository).updateRole(Roles.COMMITTEE_MEMBER, List.of("member0", "member1"));
+        verify(userRepository).updateRole(Roles.CHAIR, List.of("newchair"));
+        verify(userRepository, never()).save(any());
+    }
+
+    /**
+     * This method tests that a single user role cannot be assigned to multiple users in bulk
+     */
+    @Test
+    public void shouldNotAssignSingleUserRoleToMultipleUsers() {
+        Map<String, Role> roles = new LinkedHashMap<>();
+        roles.put("chair0", Roles.CHAIR);
+        roles.put("chair1", Roles.CHAIR);
+
+        given(userRepository.findUsernamesIn(roles.keySet()))
+                .willReturn(List.of("chair0", "chair1"));
+
+        assertThrows(UsersException.class, () -> userService.updateRoles(roles));
+        verify(userRepository, never()).updateRole(any(), any());
+    }
 }